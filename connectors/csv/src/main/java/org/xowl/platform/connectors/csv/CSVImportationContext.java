@@ -17,16 +17,21 @@
 
 package org.xowl.platform.connectors.csv;
 
+import fr.cenotelie.commons.utils.IOUtils;
 import org.xowl.infra.store.rdf.IRINode;
 import org.xowl.infra.store.rdf.LiteralNode;
 import org.xowl.infra.store.rdf.Node;
 import org.xowl.infra.store.rdf.Quad;
 import org.xowl.infra.store.storage.NodeManager;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.UUID;
 
 /**
  * A context when importing from CSV through a mapping
+ * The entities resolved from the same identifier are the same in all the contexts with the same base URI,
+ * so that the rows of a document can be mapped in independent contexts.
  *
  * @author Laurent Wouters
  */
@@ -48,28 +53,34 @@ class CSVImportationContext {
      */
     private final String baseURI;
     /**
-     * The known entities
+     * The maximum number of cached nodes in a cache
      */
-    private final Map<String, IRINode> entities;
+    private final int cacheCapacity;
+    /**
+     * The cache of the resolved entities
+     */
+    private final CSVNodeCache<IRINode> entities;
     /**
      * The mapped quads
      */
-    private final Collection<Quad> quads;
+    private Collection<Quad> quads;
 
     /**
      * Initializes this context
      *
-     * @param textMarker The used text marker
-     * @param nodes      The node manager
-     * @param graphURI   The URI of the graph for the produced quads
-     * @param baseURI    The base URI for the resolved entities
+     * @param textMarker    The used text marker
+     * @param nodes         The node manager
+     * @param graphURI      The URI of the graph for the produced quads
+     * @param baseURI       The base URI for the resolved entities
+     * @param cacheCapacity The maximum number of cached nodes in a cache
      */
-    public CSVImportationContext(String textMarker, NodeManager nodes, String graphURI, String baseURI) {
+    public CSVImportationContext(String textMarker, NodeManager nodes, String graphURI, String baseURI, int cacheCapacity) {
         this.textMarker = textMarker;
         this.nodes = nodes;
         this.graph = nodes.getIRINode(graphURI);
         this.baseURI = baseURI;
-        this.entities = new HashMap<>();
+        this.cacheCapacity = cacheCapacity;
+        this.entities = new CSVNodeCache<>(cacheCapacity);
         this.quads = new ArrayList<>();
     }
 
@@ -82,6 +93,15 @@ class CSVImportationContext {
         return textMarker;
     }
 
+    /**
+     * Gets the maximum number of cached nodes in a cache
+     *
+     * @return The maximum number of cached nodes in a cache
+     */
+    public int getCacheCapacity() {
+        return cacheCapacity;
+    }
+
     /**
      * Gets the mapped quads
      *
@@ -91,6 +111,17 @@ class CSVImportationContext {
         return quads;
     }
 
+    /**
+     * Takes the quads mapped so far, the next quads are collected anew
+     *
+     * @return The mapped quads
+     */
+    public Collection<Quad> takeQuads() {
+        Collection<Quad> result = quads;
+        quads = new ArrayList<>();
+        return result;
+    }
+
     /**
      * Adds a quad to the result
      *
@@ -111,7 +142,7 @@ class CSVImportationContext {
     public IRINode resolveEntity(String id) {
         IRINode entity = entities.get(id);
         if (entity == null) {
-            entity = nodes.getIRINode(baseURI + "#" + UUID.randomUUID().toString());
+            entity = nodes.getIRINode(baseURI + "#" + UUID.nameUUIDFromBytes(id.getBytes(IOUtils.CHARSET)).toString());
             entities.put(id, entity);
         }
         return entity;
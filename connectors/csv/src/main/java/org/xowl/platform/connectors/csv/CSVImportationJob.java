@@ -51,6 +51,15 @@ public class CSVImportationJob extends ImportationJob<CSVConfiguration> {
 
     @Override
     public void run() {
-        result = CSVImporter.doImport(documentId, configuration, metadata);
+        result = CSVImporter.doImport(documentId, configuration, metadata, this);
+    }
+
+    /**
+     * When the importation progressed
+     *
+     * @param rate The new completion rate
+     */
+    void onProgress(float rate) {
+        completionRate = rate;
     }
 }
@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.connectors.csv;
+
+import fr.cenotelie.commons.utils.csv.CsvDocument;
+import org.xowl.infra.store.rdf.Quad;
+import org.xowl.infra.store.storage.cache.CachedNodes;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams the quads produced by the mapping of a CSV document
+ * The rows are read in chunks that are mapped on a pool of workers.
+ * At most a bounded number of chunks are in flight at any time, so that the memory used does not depend on the size of the document.
+ * The buffers for the chunks are reused and each worker maps the rows through its own compiled mapping.
+ * The quads are produced in the order of the rows.
+ *
+ * @author Laurent Wouters
+ */
+class CSVImportationStream implements Iterator<Quad>, Closeable {
+    /**
+     * Observes the progress of the importation
+     */
+    interface Progress {
+        /**
+         * When a chunk of rows has been consumed
+         *
+         * @param rows The total number of rows read so far
+         */
+        void onProgress(long rows);
+    }
+
+    /**
+     * The input document
+     */
+    private final CsvDocument document;
+    /**
+     * The mapping to apply
+     */
+    private final CSVMapping mapping;
+    /**
+     * The compiled mapping for each worker
+     */
+    private final ThreadLocal<CSVMappingPlan> plans;
+    /**
+     * The buffers for the chunks that are not in use
+     */
+    private final BlockingQueue<String[][]> buffers;
+    /**
+     * The number of allocated buffers for the chunks
+     */
+    private int buffersCount;
+    /**
+     * The number of rows in a chunk
+     */
+    private final int chunkSize;
+    /**
+     * The maximum number of chunks in flight
+     */
+    private final int maxPending;
+    /**
+     * The observer of the progress, if any
+     */
+    private final Progress progress;
+    /**
+     * The pool of workers
+     */
+    private final ExecutorService executor;
+    /**
+     * The chunks in flight, in the order of the rows
+     */
+    private final Deque<Future<Collection<Quad>>> pending;
+    /**
+     * The quads of the current chunk
+     */
+    private Iterator<Quad> current;
+    /**
+     * The total number of rows read so far
+     */
+    private long rows;
+
+    /**
+     * Initializes this stream
+     *
+     * @param document      The input document
+     * @param mapping       The mapping to apply
+     * @param textMarker    The used text marker
+     * @param graphURI      The URI of the graph for the produced quads
+     * @param baseURI       The base URI for the resolved entities
+     * @param cacheCapacity The maximum number of nodes in a cache of the resolved entities and literals for a worker
+     * @param chunkSize     The number of rows in a chunk
+     * @param workers       The number of workers
+     * @param maxPending    The maximum number of chunks in flight
+     * @param progress      The observer of the progress, if any
+     */
+    public CSVImportationStream(CsvDocument document, final CSVMapping mapping, final String textMarker, final String graphURI, final String baseURI, final int cacheCapacity, int chunkSize, int workers, int maxPending, Progress progress) {
+        this.document = document;
+        this.mapping = mapping;
+        this.plans = new ThreadLocal<CSVMappingPlan>() {
+            @Override
+            protected CSVMappingPlan initialValue() {
+                return mapping.compile(new CSVImportationContext(textMarker, new CachedNodes(), graphURI, baseURI, cacheCapacity));
+            }
+        };
+        this.buffers = new ArrayBlockingQueue<>(maxPending);
+        this.buffersCount = 0;
+        this.chunkSize = chunkSize;
+        this.maxPending = maxPending;
+        this.progress = progress;
+        this.executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            /**
+             * The number of created threads
+             */
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, CSVImportationStream.class.getCanonicalName() + ".Worker" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.pending = new ArrayDeque<>();
+        this.current = null;
+        this.rows = 0;
+    }
+
+    /**
+     * Skips the next row
+     */
+    public void skipRow() {
+        if (document.hasNext()) {
+            Iterator<String> row = document.next();
+            while (row.hasNext())
+                row.next();
+        }
+    }
+
+    /**
+     * Reads the next chunks of rows and submits them to the workers until the maximum number of chunks in flight is reached
+     */
+    private void fill() {
+        while (pending.size() < maxPending && document.hasNext()) {
+            final String[][] chunk = acquireBuffer();
+            int count = 0;
+            while (count < chunkSize && document.hasNext())
+                mapping.readRow(document.next(), chunk[count++]);
+            final int size = count;
+            rows += size;
+            pending.addLast(executor.submit(new Callable<Collection<Quad>>() {
+                @Override
+                public Collection<Quad> call() throws Exception {
+                    CSVMappingPlan plan = plans.get();
+                    try {
+                        for (int i = 0; i != size; i++)
+                            plan.applyRow(chunk[i]);
+                    } finally {
+                        buffers.offer(chunk);
+                    }
+                    return plan.getContext().takeQuads();
+                }
+            }));
+        }
+    }
+
+    /**
+     * Acquires a buffer for a chunk of rows
+     * As the buffers are released when the chunks are mapped, there is always a buffer available below the maximum number of chunks in flight.
+     *
+     * @return The buffer
+     */
+    private String[][] acquireBuffer() {
+        String[][] buffer = buffers.poll();
+        if (buffer != null)
+            return buffer;
+        if (buffersCount < maxPending) {
+            buffersCount++;
+            return new String[chunkSize][mapping.getColumnCount()];
+        }
+        try {
+            return buffers.take();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading the rows");
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (current == null || !current.hasNext()) {
+            fill();
+            Future<Collection<Quad>> next = pending.pollFirst();
+            if (next == null)
+                return false;
+            try {
+                current = next.get().iterator();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while mapping the rows");
+            } catch (ExecutionException exception) {
+                throw new IllegalStateException("Failed to map the rows: " + exception.getCause().getMessage());
+            }
+            if (progress != null)
+                progress.onProgress(rows);
+        }
+        return true;
+    }
+
+    @Override
+    public Quad next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        return current.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        for (Future<Collection<Quad>> future : pending)
+            future.cancel(true);
+        pending.clear();
+        executor.shutdownNow();
+    }
+}
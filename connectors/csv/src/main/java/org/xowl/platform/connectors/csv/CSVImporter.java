@@ -26,24 +26,25 @@ import fr.cenotelie.commons.utils.api.ReplyResult;
 import fr.cenotelie.commons.utils.csv.Csv;
 import fr.cenotelie.commons.utils.csv.CsvDocument;
 import fr.cenotelie.commons.utils.csv.CsvRow;
+import fr.cenotelie.commons.utils.ini.IniDocument;
 import fr.cenotelie.commons.utils.logging.Logging;
 import fr.cenotelie.hime.redist.ASTNode;
 import org.xowl.infra.store.rdf.Quad;
-import org.xowl.infra.store.storage.BaseStore;
-import org.xowl.infra.store.storage.StoreFactory;
+import org.xowl.platform.kernel.ConfigurationService;
 import org.xowl.platform.kernel.PlatformHttp;
 import org.xowl.platform.kernel.Register;
 import org.xowl.platform.kernel.ReplyServiceUnavailable;
 import org.xowl.platform.kernel.artifacts.Artifact;
 import org.xowl.platform.kernel.artifacts.ArtifactBase;
-import org.xowl.platform.kernel.artifacts.ArtifactSimple;
 import org.xowl.platform.kernel.artifacts.ArtifactStorageService;
 import org.xowl.platform.kernel.events.EventService;
 import org.xowl.platform.services.importation.*;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
@@ -59,6 +60,22 @@ public class CSVImporter extends Importer {
      * The singleton instance of the importer
      */
     public static final Importer INSTANCE = new CSVImporter();
+    /**
+     * The default number of rows in a chunk mapped by a worker
+     */
+    private static final int DEFAULT_CHUNK_SIZE = 1000;
+    /**
+     * The default number of workers mapping the rows
+     */
+    private static final int DEFAULT_WORKERS = 4;
+    /**
+     * The default maximum number of chunks in flight
+     */
+    private static final int DEFAULT_PENDING_CHUNKS = 8;
+    /**
+     * The default maximum number of nodes in a cache of the resolved entities and literals for a worker
+     */
+    private static final int DEFAULT_CACHE_SIZE = CSVMappingPlan.DEFAULT_CACHE_CAPACITY;
 
     /**
      * Initializes this importer
@@ -156,6 +173,21 @@ public class CSVImporter extends Importer {
      * @return The result
      */
     public static Reply doImport(String documentId, CSVConfiguration configuration, Artifact metadata) {
+        return doImport(documentId, configuration, metadata, null);
+    }
+
+    /**
+     * Imports a document
+     * The rows are streamed from the document and mapped by a pool of workers,
+     * and the produced quads are streamed to the storage that uploads them in batches.
+     *
+     * @param documentId    The identifier of the document to import
+     * @param configuration The configuration for the importation
+     * @param metadata      The metadata for the artifact to produce
+     * @param job           The importation job to report progress to, if any
+     * @return The result
+     */
+    static Reply doImport(String documentId, CSVConfiguration configuration, Artifact metadata, final CSVImportationJob job) {
         ImportationService importationService = Register.getComponent(ImportationService.class);
         if (importationService == null)
             return ReplyServiceUnavailable.instance();
@@ -165,6 +197,14 @@ public class CSVImporter extends Importer {
         ArtifactStorageService storageService = Register.getComponent(ArtifactStorageService.class);
         if (storageService == null)
             return ReplyServiceUnavailable.instance();
+        ConfigurationService configurationService = Register.getComponent(ConfigurationService.class);
+        if (configurationService == null)
+            return ReplyServiceUnavailable.instance();
+        IniDocument importerConfiguration = configurationService.getConfigFor(CSVImporter.class.getCanonicalName());
+        int chunkSize = getConfigValue(importerConfiguration, "chunkSize", DEFAULT_CHUNK_SIZE);
+        int workers = getConfigValue(importerConfiguration, "workers", DEFAULT_WORKERS);
+        int pendingChunks = getConfigValue(importerConfiguration, "pendingChunks", DEFAULT_PENDING_CHUNKS);
+        int cacheSize = getConfigValue(importerConfiguration, "cacheSize", DEFAULT_CACHE_SIZE);
 
         Reply reply = importationService.getDocument(documentId);
         if (!reply.isSuccess())
@@ -175,15 +215,51 @@ public class CSVImporter extends Importer {
             return reply;
         String artifactId = ArtifactBase.newArtifactID();
         try (InputStream stream = ((ReplyResult<InputStream>) reply).getData()) {
+            // the progress is estimated from the position in the document's file
+            CSVImportationStream.Progress progress = null;
+            if (job != null && stream instanceof FileInputStream) {
+                final FileChannel channel = ((FileInputStream) stream).getChannel();
+                final long size = channel.size();
+                if (size > 0) {
+                    progress = new CSVImportationStream.Progress() {
+                        @Override
+                        public void onProgress(long rows) {
+                            try {
+                                job.onProgress(Math.min(channel.position() / (float) size, 0.99f));
+                            } catch (IOException exception) {
+                                // do nothing
+                            }
+                        }
+                    };
+                }
+            }
             CsvDocument content = Csv.parse(new AutoReader(stream), configuration.getSeparator(), configuration.getTextMarker());
-            BaseStore store = StoreFactory.create().inMemory().make();
-            CSVImportationContext context = new CSVImportationContext(Character.toString(configuration.getTextMarker()), store, artifactId, artifactId);
-            configuration.getMapping().apply(content, context, configuration.getSkipFirstRow());
-            Collection<Quad> quads = context.getQuads();
-            Artifact artifact = new ArtifactSimple(metadata, artifactId, CSVImporter.class.getCanonicalName(), quads);
-            reply = storageService.store(artifact);
+            try (final CSVImportationStream quads = new CSVImportationStream(content, configuration.getMapping(), Character.toString(configuration.getTextMarker()), artifactId, artifactId, cacheSize, chunkSize, workers, pendingChunks, progress)) {
+                if (configuration.getSkipFirstRow())
+                    quads.skipRow();
+                Artifact artifact = new ArtifactBase(metadata, artifactId, CSVImporter.class.getCanonicalName()) {
+                    @Override
+                    public Collection<Quad> getContent() {
+                        Collection<Quad> result = new ArrayList<>();
+                        while (quads.hasNext())
+                            result.add(quads.next());
+                        return result;
+                    }
+
+                    @Override
+                    public Iterator<Quad> getContentIterator() {
+                        return quads;
+                    }
+                };
+                reply = storageService.store(artifact);
+                if (!reply.isSuccess())
+                    return reply;
+            }
+            // the streamed content cannot be read again, use the stored artifact
+            reply = storageService.retrieve(artifactId);
             if (!reply.isSuccess())
                 return reply;
+            Artifact artifact = ((ReplyResult<Artifact>) reply).getData();
             EventService eventService = Register.getComponent(EventService.class);
             if (eventService != null)
                 eventService.onEvent(new DocumentImportedEvent(document, artifact, importationService));
@@ -193,4 +269,24 @@ public class CSVImporter extends Importer {
             return new ReplyException(exception);
         }
     }
+
+    /**
+     * Gets an integer value from the importer's configuration
+     *
+     * @param configuration The importer's configuration
+     * @param key           The key of the value
+     * @param defaultValue  The default value
+     * @return The value
+     */
+    private static int getConfigValue(IniDocument configuration, String key, int defaultValue) {
+        String value = configuration.get(key);
+        if (value == null)
+            return defaultValue;
+        try {
+            int result = Integer.parseInt(value);
+            return result > 0 ? result : defaultValue;
+        } catch (NumberFormatException exception) {
+            return defaultValue;
+        }
+    }
 }
@@ -22,7 +22,6 @@ import fr.cenotelie.commons.utils.TextUtils;
 import fr.cenotelie.commons.utils.csv.CsvDocument;
 import fr.cenotelie.commons.utils.csv.CsvRow;
 import fr.cenotelie.hime.redist.ASTNode;
-import org.xowl.infra.store.rdf.IRINode;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -74,6 +73,25 @@ public class CSVMapping implements Serializable {
         this.columns.add(column);
     }
 
+    /**
+     * Gets the number of mapped columns
+     *
+     * @return The number of mapped columns
+     */
+    int getColumnCount() {
+        return columns.size();
+    }
+
+    /**
+     * Compiles this mapping for an importation context
+     *
+     * @param context The context
+     * @return The compiled mapping
+     */
+    CSVMappingPlan compile(CSVImportationContext context) {
+        return new CSVMappingPlan(columns, context);
+    }
+
     /**
      * Applies the mapping to an input document
      *
@@ -87,45 +105,29 @@ public class CSVMapping implements Serializable {
             while (row.hasNext())
                 row.next();
         }
+        CSVMappingPlan plan = compile(context);
+        String[] values = new String[columns.size()];
         while (document.hasNext()) {
-            Iterator<String> row = document.next();
-            applyRow(row, context);
+            readRow(document.next(), values);
+            plan.applyRow(values);
         }
     }
 
     /**
-     * Applies the mapping to a row
+     * Reads the values of a row for the mapped columns
      *
-     * @param row     The input row
-     * @param context The context
+     * @param row    The input row
+     * @param values The buffer for the values of the mapped columns
      */
-    private void applyRow(Iterator<String> row, CSVImportationContext context) {
-        String[] values = new String[columns.size()];
+    void readRow(Iterator<String> row, String[] values) {
         int i = 0;
         while (row.hasNext()) {
             String value = row.next();
             if (i < values.length)
                 values[i++] = value;
         }
-
-        IRINode id = null;
-        for (i = 0; i != columns.size(); i++) {
-            if (columns.get(i).isIdMapping()) {
-                if (values[i] == null || values[i].isEmpty())
-                    // no id => skip this
-                    return;
-                id = context.resolveEntity(values[i].trim());
-                break;
-            }
-        }
-        if (id == null)
-            id = context.newEntity();
-
-        for (i = 0; i != columns.size(); i++) {
-            if (values[i] != null && !values[i].isEmpty()) {
-                columns.get(i).apply(id, values[i], context);
-            }
-        }
+        for (; i < values.length; i++)
+            values[i] = null;
     }
 
     @Override
@@ -22,6 +22,7 @@ import fr.cenotelie.commons.utils.TextUtils;
 import fr.cenotelie.hime.redist.ASTNode;
 import org.xowl.infra.store.Vocabulary;
 import org.xowl.infra.store.rdf.IRINode;
+import org.xowl.infra.store.rdf.LiteralNode;
 
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -161,63 +162,97 @@ public class CSVMappingColumn implements Serializable {
     }
 
     /**
-     * Applies this mapping
+     * Compiles this mapping for a context
      *
-     * @param entity  The current entity
-     * @param value   The column's value
-     * @param context The current context
+     * @param context The context
+     * @return The compiled mapping
      */
-    public void apply(IRINode entity, String value, CSVImportationContext context) {
-        if (value.startsWith(context.getTextMarker()) && value.endsWith(context.getTextMarker()))
-            value = value.substring(1, value.length() - 1);
-        switch (type) {
-            case TYPE_ID:
-                value = value.trim();
-                if (property != null)
-                    context.addQuad(
-                            entity,
-                            context.getIRI(property),
-                            context.getLiteral(value, datatype)
-                    );
-                break;
-            case TYPE_RELATION:
-                if (regexp == null) {
-                    context.addQuad(
-                            entity,
-                            context.getIRI(property),
-                            context.resolveEntity(value.trim())
-                    );
-                } else {
-                    Matcher matcher = regexp.matcher(value);
-                    while (matcher.find()) {
-                        String v = matcher.group();
-                        context.addQuad(
-                                entity,
-                                context.getIRI(property),
-                                context.resolveEntity(v)
-                        );
+    Compiled compile(CSVImportationContext context) {
+        return new Compiled(context);
+    }
+
+    /**
+     * This mapping compiled for a context, with the nodes it produces resolved or cached
+     */
+    class Compiled {
+        /**
+         * The context
+         */
+        private final CSVImportationContext context;
+        /**
+         * The node for the mapped property, if any
+         */
+        private final IRINode propertyNode;
+        /**
+         * The used text marker, or 0 if none
+         */
+        private final char textMarker;
+        /**
+         * The cache of the literals produced by this mapping, if any
+         */
+        private final CSVNodeCache<LiteralNode> literals;
+
+        /**
+         * Initializes this compiled mapping
+         *
+         * @param context The context
+         */
+        private Compiled(CSVImportationContext context) {
+            this.context = context;
+            this.propertyNode = property == null ? null : context.getIRI(property);
+            this.textMarker = context.getTextMarker().isEmpty() ? 0 : context.getTextMarker().charAt(0);
+            this.literals = (type.equals(TYPE_ID) || type.equals(TYPE_ATTRIBUTE)) ? new CSVNodeCache<LiteralNode>(context.getCacheCapacity()) : null;
+        }
+
+        /**
+         * Gets the literal for a value
+         *
+         * @param lexical The lexical value of the literal
+         * @return The literal node
+         */
+        private LiteralNode getLiteral(String lexical) {
+            LiteralNode result = literals.get(lexical);
+            if (result == null) {
+                result = context.getLiteral(lexical, datatype);
+                literals.put(lexical, result);
+            }
+            return result;
+        }
+
+        /**
+         * Applies this mapping
+         *
+         * @param entity The current entity
+         * @param value  The column's value
+         */
+        public void apply(IRINode entity, String value) {
+            int length = value.length();
+            if (length >= 2 && value.charAt(0) == textMarker && value.charAt(length - 1) == textMarker)
+                value = value.substring(1, length - 1);
+            switch (type) {
+                case TYPE_ID:
+                    if (propertyNode != null)
+                        context.addQuad(entity, propertyNode, getLiteral(value.trim()));
+                    break;
+                case TYPE_RELATION:
+                    if (regexp == null) {
+                        context.addQuad(entity, propertyNode, context.resolveEntity(value.trim()));
+                    } else {
+                        Matcher matcher = regexp.matcher(value);
+                        while (matcher.find())
+                            context.addQuad(entity, propertyNode, context.resolveEntity(matcher.group()));
                     }
-                }
-                break;
-            case TYPE_ATTRIBUTE:
-                if (regexp == null) {
-                    context.addQuad(
-                            entity,
-                            context.getIRI(property),
-                            context.getLiteral(value.trim(), datatype)
-                    );
-                } else {
-                    Matcher matcher = regexp.matcher(value);
-                    while (matcher.find()) {
-                        String v = matcher.group();
-                        context.addQuad(
-                                entity,
-                                context.getIRI(property),
-                                context.getLiteral(v, datatype)
-                        );
+                    break;
+                case TYPE_ATTRIBUTE:
+                    if (regexp == null) {
+                        context.addQuad(entity, propertyNode, getLiteral(value.trim()));
+                    } else {
+                        Matcher matcher = regexp.matcher(value);
+                        while (matcher.find())
+                            context.addQuad(entity, propertyNode, getLiteral(matcher.group()));
                     }
-                }
-                break;
+                    break;
+            }
         }
     }
 
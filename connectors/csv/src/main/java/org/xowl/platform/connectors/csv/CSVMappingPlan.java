@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.connectors.csv;
+
+import org.xowl.infra.store.rdf.IRINode;
+
+import java.util.List;
+
+/**
+ * A mapping compiled for an importation context
+ * The nodes for the mapped properties are resolved once and the identifier column is located once,
+ * so that applying the mapping to a row only produces the resulting quads.
+ *
+ * @author Laurent Wouters
+ */
+class CSVMappingPlan {
+    /**
+     * The default maximum number of nodes in a cache of the resolved entities and literals
+     */
+    public static final int DEFAULT_CACHE_CAPACITY = 4096;
+
+    /**
+     * The context
+     */
+    private final CSVImportationContext context;
+    /**
+     * The compiled mappings for the columns
+     */
+    private final CSVMappingColumn.Compiled[] columns;
+    /**
+     * The index of the column that maps the identifier of the entities, or -1 if none
+     */
+    private final int idColumn;
+
+    /**
+     * Initializes this plan
+     *
+     * @param columns The mappings for the columns
+     * @param context The context
+     */
+    public CSVMappingPlan(List<CSVMappingColumn> columns, CSVImportationContext context) {
+        this.context = context;
+        this.columns = new CSVMappingColumn.Compiled[columns.size()];
+        int idColumn = -1;
+        for (int i = 0; i != this.columns.length; i++) {
+            this.columns[i] = columns.get(i).compile(context);
+            if (idColumn < 0 && columns.get(i).isIdMapping())
+                idColumn = i;
+        }
+        this.idColumn = idColumn;
+    }
+
+    /**
+     * Gets the context
+     *
+     * @return The context
+     */
+    public CSVImportationContext getContext() {
+        return context;
+    }
+
+    /**
+     * Gets the number of mapped columns
+     *
+     * @return The number of mapped columns
+     */
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * Applies the mapping to the values of a row
+     *
+     * @param values The values for the mapped columns
+     */
+    public void applyRow(String[] values) {
+        IRINode id;
+        if (idColumn >= 0) {
+            String value = values[idColumn];
+            if (value == null || value.isEmpty())
+                // no id => skip this
+                return;
+            id = context.resolveEntity(value.trim());
+        } else {
+            id = context.newEntity();
+        }
+        for (int i = 0; i != columns.length; i++) {
+            if (values[i] != null && !values[i].isEmpty())
+                columns[i].apply(id, values[i]);
+        }
+    }
+}
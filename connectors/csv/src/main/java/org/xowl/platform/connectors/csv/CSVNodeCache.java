@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.connectors.csv;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the nodes resolved from the values in a CSV document
+ * The least recently used nodes are evicted first.
+ *
+ * @param <T> The type of nodes
+ * @author Laurent Wouters
+ */
+class CSVNodeCache<T> extends LinkedHashMap<String, T> {
+    /**
+     * The maximum number of cached nodes
+     */
+    private final int capacity;
+
+    /**
+     * Initializes this cache
+     *
+     * @param capacity The maximum number of cached nodes
+     */
+    public CSVNodeCache(int capacity) {
+        super(16, 0.75f, true);
+        this.capacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+        return size() > capacity;
+    }
+}
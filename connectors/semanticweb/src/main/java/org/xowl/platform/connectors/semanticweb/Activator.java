@@ -21,6 +21,7 @@ import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.xowl.platform.kernel.Service;
 import org.xowl.platform.kernel.jobs.JobFactory;
+import org.xowl.platform.kernel.statistics.MeasurableService;
 import org.xowl.platform.kernel.ui.WebUIContribution;
 import org.xowl.platform.services.connection.ConnectorDescriptor;
 import org.xowl.platform.services.connection.ConnectorServiceFactory;
@@ -36,6 +37,7 @@ public class Activator implements BundleActivator {
     public void start(BundleContext bundleContext) throws Exception {
         bundleContext.registerService(Importer.class, SemanticWebImporter.INSTANCE, null);
         bundleContext.registerService(Service.class, SemanticWebImporter.INSTANCE, null);
+        bundleContext.registerService(MeasurableService.class, (MeasurableService) SemanticWebImporter.INSTANCE, null);
         bundleContext.registerService(JobFactory.class, new SemanticWebImportJobFactory(), null);
         bundleContext.registerService(ConnectorDescriptor.class, SemanticWebConnectorDescriptor.INSTANCE, null);
         bundleContext.registerService(ConnectorServiceFactory.class, new SemanticWebConnectorFactory(), null);
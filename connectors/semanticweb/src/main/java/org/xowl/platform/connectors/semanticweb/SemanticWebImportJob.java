@@ -28,6 +28,11 @@ import org.xowl.platform.services.importation.Importer;
  * @author Laurent Wouters
  */
 public class SemanticWebImportJob extends ImportationJob<SemanticWebImporterConfiguration> {
+    /**
+     * The parse throughput in quads per second
+     */
+    private volatile long parseThroughput;
+
     /**
      * Initializes this job
      *
@@ -51,6 +56,35 @@ public class SemanticWebImportJob extends ImportationJob<SemanticWebImporterConf
 
     @Override
     public void run() {
-        result = SemanticWebImporter.doImport(documentId, configuration, metadata);
+        result = SemanticWebImporter.doImport(documentId, configuration, metadata, this);
+    }
+
+    @Override
+    protected String getJSONSerializedPayload() {
+        String payload = super.getJSONSerializedPayload();
+        return payload.substring(0, payload.length() - 1) +
+                ", \"parseThroughput\": " +
+                Long.toString(parseThroughput) +
+                "}";
+    }
+
+    /**
+     * Gets the parse throughput
+     *
+     * @return The parse throughput in quads per second
+     */
+    public long getParseThroughput() {
+        return parseThroughput;
+    }
+
+    /**
+     * When the importation progressed
+     *
+     * @param rate       The new completion rate
+     * @param throughput The parse throughput in quads per second
+     */
+    void onProgress(float rate, long throughput) {
+        completionRate = rate;
+        parseThroughput = throughput;
     }
 }
\ No newline at end of file
@@ -24,12 +24,19 @@ import fr.cenotelie.commons.utils.api.Reply;
 import fr.cenotelie.commons.utils.api.ReplyException;
 import fr.cenotelie.commons.utils.api.ReplyResult;
 import fr.cenotelie.commons.utils.api.ReplyResultCollection;
+import fr.cenotelie.commons.utils.collections.Couple;
+import fr.cenotelie.commons.utils.ini.IniDocument;
 import fr.cenotelie.commons.utils.logging.BufferedLogger;
 import fr.cenotelie.commons.utils.logging.Logging;
+import fr.cenotelie.commons.utils.metrics.Metric;
+import fr.cenotelie.commons.utils.metrics.MetricBase;
+import fr.cenotelie.commons.utils.metrics.MetricSnapshot;
+import fr.cenotelie.commons.utils.metrics.MetricSnapshotLong;
 import fr.cenotelie.hime.redist.ASTNode;
 import org.xowl.infra.store.rdf.Quad;
 import org.xowl.infra.store.writers.NQuadsSerializer;
 import org.xowl.infra.store.writers.RDFSerializer;
+import org.xowl.platform.kernel.ConfigurationService;
 import org.xowl.platform.kernel.PlatformHttp;
 import org.xowl.platform.kernel.Register;
 import org.xowl.platform.kernel.ReplyServiceUnavailable;
@@ -38,29 +45,74 @@ import org.xowl.platform.kernel.artifacts.ArtifactBase;
 import org.xowl.platform.kernel.artifacts.ArtifactSimple;
 import org.xowl.platform.kernel.artifacts.ArtifactStorageService;
 import org.xowl.platform.kernel.events.EventService;
+import org.xowl.platform.kernel.statistics.MeasurableService;
 import org.xowl.platform.services.importation.*;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.StringWriter;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implements an importer for Semantic Web datasets
  *
  * @author Laurent Wouters
  */
-public class SemanticWebImporter extends Importer {
+public class SemanticWebImporter extends Importer implements MeasurableService {
+    /**
+     * The metric for the total number of quads parsed by the importer
+     */
+    public static final Metric METRIC_PARSED_QUADS = new MetricBase(SemanticWebImporter.class.getCanonicalName() + ".ParsedQuads",
+            "Semantic Web Importer - Parsed quads",
+            "quads",
+            1000000000,
+            new Couple<>(Metric.HINT_IS_NUMERIC, "true"),
+            new Couple<>(Metric.HINT_MIN_VALUE, "0"));
+    /**
+     * The metric for the parse throughput of the last importation
+     */
+    public static final Metric METRIC_PARSE_THROUGHPUT = new MetricBase(SemanticWebImporter.class.getCanonicalName() + ".ParseThroughput",
+            "Semantic Web Importer - Parse throughput",
+            "quads/s",
+            1000000000,
+            new Couple<>(Metric.HINT_IS_NUMERIC, "true"),
+            new Couple<>(Metric.HINT_MIN_VALUE, "0"));
+
     /**
      * The singleton instance of the importer
      */
     public static final Importer INSTANCE = new SemanticWebImporter();
+    /**
+     * The default number of lines in a chunk parsed by a worker
+     */
+    private static final int DEFAULT_CHUNK_SIZE = 10000;
+    /**
+     * The default number of workers parsing the lines
+     */
+    private static final int DEFAULT_WORKERS = 4;
+    /**
+     * The default maximum number of chunks in flight
+     */
+    private static final int DEFAULT_PENDING_CHUNKS = 8;
+
+    /**
+     * The total number of quads parsed by this importer
+     */
+    private final AtomicLong parsedQuads;
+    /**
+     * The throughput in quads per second of the last importation
+     */
+    private volatile long parseThroughput;
 
     /**
      * Initializes this importer
      */
     private SemanticWebImporter() {
+        this.parsedQuads = new AtomicLong(0);
+        this.parseThroughput = 0;
     }
 
     @Override
@@ -135,6 +187,22 @@ public class SemanticWebImporter extends Importer {
      * @return The result
      */
     public static Reply doImport(String documentId, SemanticWebImporterConfiguration configuration, Artifact metadata) {
+        return doImport(documentId, configuration, metadata, null);
+    }
+
+    /**
+     * Imports a document
+     * Datasets in a line-based syntax are streamed and parsed by a pool of workers,
+     * and the produced quads are streamed to the storage that uploads them in batches.
+     * Other datasets are entirely loaded before being stored.
+     *
+     * @param documentId    The identifier of the document to import
+     * @param configuration The configuration for the importation
+     * @param metadata      The metadata for the artifact to produce
+     * @param job           The importation job to report progress to, if any
+     * @return The result
+     */
+    static Reply doImport(String documentId, SemanticWebImporterConfiguration configuration, Artifact metadata, final SemanticWebImportJob job) {
         ImportationService importationService = Register.getComponent(ImportationService.class);
         if (importationService == null)
             return ReplyServiceUnavailable.instance();
@@ -149,27 +217,181 @@ public class SemanticWebImporter extends Importer {
         if (!reply.isSuccess())
             return reply;
         Document document = ((ReplyResult<Document>) reply).getData();
-        reply = importationService.getStreamFor(documentId);
+        reply = SemanticWebLoader.isLineBased(configuration.getSyntax()) ?
+                importer.doImportStreamed(importationService, storageService, documentId, configuration, metadata, job) :
+                importer.doImportLoaded(importationService, storageService, documentId, configuration, metadata, job);
+        if (!reply.isSuccess())
+            return reply;
+        Artifact artifact = ((ReplyResult<Artifact>) reply).getData();
+        EventService eventService = Register.getComponent(EventService.class);
+        if (eventService != null)
+            eventService.onEvent(new DocumentImportedEvent(document, artifact, importationService));
+        return new ReplyResult<>(artifact.getIdentifier());
+    }
+
+    /**
+     * Imports a document by loading it entirely
+     *
+     * @param importationService The importation service
+     * @param storageService     The artifact storage service
+     * @param documentId         The identifier of the document to import
+     * @param configuration      The configuration for the importation
+     * @param metadata           The metadata for the artifact to produce
+     * @param job                The importation job to report progress to, if any
+     * @return The result, with the stored artifact when successful
+     */
+    private Reply doImportLoaded(ImportationService importationService, ArtifactStorageService storageService, String documentId, SemanticWebImporterConfiguration configuration, Artifact metadata, SemanticWebImportJob job) {
+        Reply reply = importationService.getStreamFor(documentId);
         if (!reply.isSuccess())
             return reply;
         String artifactId = ArtifactBase.newArtifactID();
         try (InputStream stream = ((ReplyResult<InputStream>) reply).getData()) {
+            long start = System.nanoTime();
             SemanticWebLoader loader = new SemanticWebLoader();
             reply = loader.load(new AutoReader(stream), artifactId, configuration.getSyntax());
             if (!reply.isSuccess())
                 return reply;
             Collection<Quad> quads = ((ReplyResultCollection<Quad>) reply).getData();
+            long throughput = onParsed(quads.size(), System.nanoTime() - start);
+            if (job != null)
+                job.onProgress(job.getCompletionRate(), throughput);
             Artifact artifact = new ArtifactSimple(metadata, artifactId, SemanticWebImporter.class.getCanonicalName(), quads);
             reply = storageService.store(artifact);
             if (!reply.isSuccess())
                 return reply;
-            EventService eventService = Register.getComponent(EventService.class);
-            if (eventService != null)
-                eventService.onEvent(new DocumentImportedEvent(document, artifact, importationService));
-            return new ReplyResult<>(artifact.getIdentifier());
+            return new ReplyResult<>(artifact);
         } catch (IOException exception) {
             Logging.get().error(exception);
             return new ReplyException(exception);
         }
     }
+
+    /**
+     * Imports a document in a line-based syntax by streaming it
+     *
+     * @param importationService The importation service
+     * @param storageService     The artifact storage service
+     * @param documentId         The identifier of the document to import
+     * @param configuration      The configuration for the importation
+     * @param metadata           The metadata for the artifact to produce
+     * @param job                The importation job to report progress to, if any
+     * @return The result, with the stored artifact when successful
+     */
+    private Reply doImportStreamed(ImportationService importationService, ArtifactStorageService storageService, String documentId, SemanticWebImporterConfiguration configuration, Artifact metadata, final SemanticWebImportJob job) {
+        ConfigurationService configurationService = Register.getComponent(ConfigurationService.class);
+        if (configurationService == null)
+            return ReplyServiceUnavailable.instance();
+        IniDocument importerConfiguration = configurationService.getConfigFor(SemanticWebImporter.class.getCanonicalName());
+        int chunkSize = getConfigValue(importerConfiguration, "chunkSize", DEFAULT_CHUNK_SIZE);
+        int workers = getConfigValue(importerConfiguration, "workers", DEFAULT_WORKERS);
+        int pendingChunks = getConfigValue(importerConfiguration, "pendingChunks", DEFAULT_PENDING_CHUNKS);
+
+        Reply reply = importationService.getStreamFor(documentId);
+        if (!reply.isSuccess())
+            return reply;
+        String artifactId = ArtifactBase.newArtifactID();
+        try (InputStream stream = ((ReplyResult<InputStream>) reply).getData()) {
+            final long start = System.nanoTime();
+            // the progress is estimated from the position in the document's file
+            SemanticWebLoadingStream.Progress progress = null;
+            if (job != null) {
+                FileChannel channel = null;
+                long size = 0;
+                if (stream instanceof FileInputStream) {
+                    channel = ((FileInputStream) stream).getChannel();
+                    size = channel.size();
+                }
+                final FileChannel finalChannel = channel;
+                final long finalSize = size;
+                progress = new SemanticWebLoadingStream.Progress() {
+                    @Override
+                    public void onProgress(long lines, long quads) {
+                        float rate = 0;
+                        if (finalChannel != null && finalSize > 0) {
+                            try {
+                                rate = Math.min(finalChannel.position() / (float) finalSize, 0.99f);
+                            } catch (IOException exception) {
+                                // do nothing
+                            }
+                        }
+                        long elapsed = System.nanoTime() - start;
+                        job.onProgress(rate, elapsed > 0 ? (long) (quads * 1000000000.0 / elapsed) : quads);
+                    }
+                };
+            }
+            BufferedReader reader = new BufferedReader(new AutoReader(stream));
+            try (final SemanticWebLoadingStream quads = new SemanticWebLoadingStream(reader, artifactId, configuration.getSyntax(), chunkSize, workers, pendingChunks, progress)) {
+                Artifact artifact = new ArtifactBase(metadata, artifactId, SemanticWebImporter.class.getCanonicalName()) {
+                    @Override
+                    public Collection<Quad> getContent() {
+                        Collection<Quad> result = new ArrayList<>();
+                        while (quads.hasNext())
+                            result.add(quads.next());
+                        return result;
+                    }
+
+                    @Override
+                    public Iterator<Quad> getContentIterator() {
+                        return quads;
+                    }
+                };
+                reply = storageService.store(artifact);
+                onParsed(quads.getQuadsCount(), System.nanoTime() - start);
+                if (!reply.isSuccess())
+                    return reply;
+            }
+            // the streamed content cannot be read again, use the stored artifact
+            return storageService.retrieve(artifactId);
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+            return new ReplyException(exception);
+        }
+    }
+
+    /**
+     * When quads have been parsed by an importation
+     *
+     * @param count   The number of parsed quads
+     * @param elapsed The time elapsed for the importation in nanoseconds
+     * @return The throughput in quads per second
+     */
+    private long onParsed(long count, long elapsed) {
+        parsedQuads.addAndGet(count);
+        parseThroughput = elapsed > 0 ? (long) (count * 1000000000.0 / elapsed) : count;
+        return parseThroughput;
+    }
+
+    /**
+     * Gets an integer value from the importer's configuration
+     *
+     * @param configuration The importer's configuration
+     * @param key           The key of the value
+     * @param defaultValue  The default value
+     * @return The value
+     */
+    private static int getConfigValue(IniDocument configuration, String key, int defaultValue) {
+        String value = configuration.get(key);
+        if (value == null)
+            return defaultValue;
+        try {
+            int result = Integer.parseInt(value);
+            return result > 0 ? result : defaultValue;
+        } catch (NumberFormatException exception) {
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public Collection<Metric> getMetrics() {
+        return Arrays.asList(METRIC_PARSED_QUADS, METRIC_PARSE_THROUGHPUT);
+    }
+
+    @Override
+    public MetricSnapshot pollMetric(Metric metric) {
+        if (metric == METRIC_PARSED_QUADS)
+            return new MetricSnapshotLong(parsedQuads.get());
+        if (metric == METRIC_PARSE_THROUGHPUT)
+            return new MetricSnapshotLong(parseThroughput);
+        return null;
+    }
 }
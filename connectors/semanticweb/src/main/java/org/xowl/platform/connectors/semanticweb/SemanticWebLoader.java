@@ -66,20 +66,51 @@ class SemanticWebLoader {
             Collection<Quad> quads = load(bufferedLogger, reader, resourceIRI, syntax);
             if (quads == null || !bufferedLogger.getErrorMessages().isEmpty())
                 return new ReplyApiError(HttpApiService.ERROR_CONTENT_PARSING_FAILED, bufferedLogger.getErrorsAsString());
-            Collection<Quad> result = new ArrayList<>(quads.size());
-            for (Quad quad : quads) {
-                if (quad.getGraph() != graph)
-                    result.add(new Quad(graph, quad.getSubject(), quad.getProperty(), quad.getObject()));
-                else
-                    result.add(quad);
-            }
-            return new ReplyResultCollection<>(result);
+            return new ReplyResultCollection<>(rewriteGraph(quads, graph));
         } catch (TranslationException exception) {
             bufferedLogger.error(exception);
             return new ReplyApiError(HttpApiService.ERROR_CONTENT_PARSING_FAILED, bufferedLogger.getErrorsAsString());
         }
     }
 
+    /**
+     * Gets whether a syntax is line-based, i.e. each line of a dataset can be loaded on its own
+     *
+     * @param syntax The syntax
+     * @return Whether the syntax is line-based
+     */
+    public static boolean isLineBased(String syntax) {
+        return Repository.SYNTAX_NTRIPLES.equals(syntax) || Repository.SYNTAX_NQUADS.equals(syntax);
+    }
+
+    /**
+     * Rewrites the loaded quads into the graph of the resource
+     * The quads are only copied when some of them are in another graph.
+     *
+     * @param quads The loaded quads
+     * @param graph The graph of the resource
+     * @return The rewritten quads
+     */
+    private static Collection<Quad> rewriteGraph(Collection<Quad> quads, IRINode graph) {
+        boolean rewrite = false;
+        for (Quad quad : quads) {
+            if (quad.getGraph() != graph) {
+                rewrite = true;
+                break;
+            }
+        }
+        if (!rewrite)
+            return quads;
+        Collection<Quad> result = new ArrayList<>(quads.size());
+        for (Quad quad : quads) {
+            if (quad.getGraph() != graph)
+                result.add(new Quad(graph, quad.getSubject(), quad.getProperty(), quad.getObject()));
+            else
+                result.add(quad);
+        }
+        return result;
+    }
+
     /**
      * @param logger      The logger to use
      * @param reader      The reader to read from
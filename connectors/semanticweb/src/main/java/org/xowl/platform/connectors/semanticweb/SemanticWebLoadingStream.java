@@ -0,0 +1,381 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.connectors.semanticweb;
+
+import fr.cenotelie.commons.utils.logging.BufferedLogger;
+import org.xowl.infra.store.Repository;
+import org.xowl.infra.store.loaders.Loader;
+import org.xowl.infra.store.loaders.NQuadsLoader;
+import org.xowl.infra.store.loaders.NTriplesLoader;
+import org.xowl.infra.store.loaders.RDFLoaderResult;
+import org.xowl.infra.store.rdf.*;
+import org.xowl.infra.store.storage.NodeManager;
+import org.xowl.infra.store.storage.cache.CachedNodes;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams the quads loaded from a dataset in a line-based syntax (N-Triples or N-Quads)
+ * The lines are read in chunks that are parsed on a pool of workers.
+ * At most a bounded number of chunks are in flight at any time, so that the memory used does not depend on the size of the dataset.
+ * The graph of the quads is rewritten to the graph of the resource as they are parsed.
+ * The quads are produced in the order of the lines.
+ * The blank node labels are rewritten before the parsing and resolved against a map shared by the workers,
+ * so that a blank node remains the same across chunks.
+ *
+ * @author Laurent Wouters
+ */
+class SemanticWebLoadingStream implements Iterator<Quad>, Closeable {
+    /**
+     * The prefix of the IRIs that temporarily stand for the blank nodes
+     */
+    private static final String BLANK_PREFIX = "urn:xowl:import:blank:";
+
+    /**
+     * Observes the progress of the loading
+     */
+    interface Progress {
+        /**
+         * When a chunk of lines has been consumed
+         *
+         * @param lines The total number of lines read so far
+         * @param quads The total number of quads produced so far
+         */
+        void onProgress(long lines, long quads);
+    }
+
+    /**
+     * The input to read from
+     */
+    private final BufferedReader reader;
+    /**
+     * The IRI for the resource to load
+     */
+    private final String resourceIRI;
+    /**
+     * The syntax of the input
+     */
+    private final String syntax;
+    /**
+     * The number of lines in a chunk
+     */
+    private final int chunkSize;
+    /**
+     * The maximum number of chunks in flight
+     */
+    private final int maxPending;
+    /**
+     * The observer of the progress, if any
+     */
+    private final Progress progress;
+    /**
+     * The pool of workers
+     */
+    private final ExecutorService executor;
+    /**
+     * The node manager for the blank nodes
+     */
+    private final NodeManager nodes;
+    /**
+     * The blank nodes that have been encountered, by label
+     */
+    private final ConcurrentMap<String, BlankNode> blanks;
+    /**
+     * The chunks in flight, in the order of the lines
+     */
+    private final Deque<Future<Collection<Quad>>> pending;
+    /**
+     * The buffer for reading the next chunk
+     */
+    private final StringBuilder buffer;
+    /**
+     * The quads of the current chunk
+     */
+    private Iterator<Quad> current;
+    /**
+     * Whether the end of the input has been reached
+     */
+    private boolean finished;
+    /**
+     * The total number of lines read so far
+     */
+    private long lines;
+    /**
+     * The total number of quads produced so far
+     */
+    private long quads;
+
+    /**
+     * Initializes this stream
+     *
+     * @param reader      The input to read from
+     * @param resourceIRI The IRI for the resource to load
+     * @param syntax      The syntax of the input, N-Triples or N-Quads
+     * @param chunkSize   The number of lines in a chunk
+     * @param workers     The number of workers
+     * @param maxPending  The maximum number of chunks in flight
+     * @param progress    The observer of the progress, if any
+     */
+    public SemanticWebLoadingStream(BufferedReader reader, String resourceIRI, String syntax, int chunkSize, int workers, int maxPending, Progress progress) {
+        if (!SemanticWebLoader.isLineBased(syntax))
+            throw new IllegalArgumentException("Unsupported syntax: " + syntax);
+        this.reader = reader;
+        this.resourceIRI = resourceIRI;
+        this.syntax = syntax;
+        this.chunkSize = chunkSize;
+        this.maxPending = maxPending;
+        this.progress = progress;
+        this.executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            /**
+             * The number of created threads
+             */
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, SemanticWebLoadingStream.class.getCanonicalName() + ".Worker" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.nodes = new CachedNodes();
+        this.blanks = new ConcurrentHashMap<>();
+        this.pending = new ArrayDeque<>();
+        this.buffer = new StringBuilder();
+        this.current = null;
+        this.finished = false;
+        this.lines = 0;
+        this.quads = 0;
+    }
+
+    /**
+     * Reads the next chunks of lines and submits them to the workers until the maximum number of chunks in flight is reached
+     */
+    private void fill() {
+        while (pending.size() < maxPending && !finished) {
+            buffer.setLength(0);
+            int count = 0;
+            try {
+                while (count < chunkSize) {
+                    String line = reader.readLine();
+                    if (line == null) {
+                        finished = true;
+                        break;
+                    }
+                    buffer.append(line);
+                    buffer.append('\n');
+                    count++;
+                }
+            } catch (IOException exception) {
+                throw new IllegalStateException("Failed to read the lines: " + exception.getMessage());
+            }
+            if (count == 0)
+                return;
+            final String chunk = buffer.toString();
+            final long first = lines + 1;
+            lines += count;
+            pending.addLast(executor.submit(new Callable<Collection<Quad>>() {
+                @Override
+                public Collection<Quad> call() throws Exception {
+                    return parse(chunk, first);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Parses a chunk of lines
+     *
+     * @param chunk The chunk to parse
+     * @param first The number of the first line in the chunk
+     * @return The parsed quads, in the graph of the resource
+     */
+    private Collection<Quad> parse(String chunk, long first) {
+        StringBuilder builder = new StringBuilder(chunk.length());
+        rewriteBlanks(chunk, builder);
+        NodeManager nodes = new CachedNodes();
+        Loader loader = Repository.SYNTAX_NQUADS.equals(syntax) ? new NQuadsLoader(nodes) : new NTriplesLoader(nodes);
+        BufferedLogger logger = new BufferedLogger();
+        RDFLoaderResult input = loader.loadRDF(logger, new StringReader(builder.toString()), resourceIRI, resourceIRI);
+        if (input == null || !logger.getErrorMessages().isEmpty())
+            throw new IllegalStateException("Failed to parse the lines from " + first + ": " + logger.getErrorsAsString());
+        Collection<Quad> result = new ArrayList<>(input.getQuads().size());
+        IRINode graph = nodes.getIRINode(resourceIRI);
+        for (Quad quad : input.getQuads()) {
+            Node subject = resolveBlank(quad.getSubject());
+            Node object = resolveBlank(quad.getObject());
+            if (isInGraph(quad.getGraph()) && subject == quad.getSubject() && object == quad.getObject())
+                result.add(quad);
+            else
+                result.add(new Quad(graph, (SubjectNode) subject, quad.getProperty(), object));
+        }
+        return result;
+    }
+
+    /**
+     * Rewrites the blank node labels in a chunk into IRIs that can be resolved after the parsing
+     *
+     * @param chunk   The chunk of lines
+     * @param builder The buffer to write to
+     */
+    private static void rewriteBlanks(String chunk, StringBuilder builder) {
+        boolean inIRI = false;
+        boolean inLiteral = false;
+        int i = 0;
+        while (i < chunk.length()) {
+            char c = chunk.charAt(i);
+            if (c == '\n') {
+                builder.append(c);
+                inIRI = false;
+                inLiteral = false;
+                i++;
+            } else if (inLiteral) {
+                builder.append(c);
+                if (c == '\\' && i + 1 < chunk.length()) {
+                    builder.append(chunk.charAt(i + 1));
+                    i++;
+                } else if (c == '"') {
+                    inLiteral = false;
+                }
+                i++;
+            } else if (inIRI) {
+                builder.append(c);
+                inIRI = (c != '>');
+                i++;
+            } else if (c == '_' && i + 1 < chunk.length() && chunk.charAt(i + 1) == ':') {
+                int end = i + 2;
+                while (end < chunk.length() && isLabelChar(chunk.charAt(end)))
+                    end++;
+                while (end > i + 2 && chunk.charAt(end - 1) == '.')
+                    end--;
+                builder.append('<');
+                builder.append(BLANK_PREFIX);
+                builder.append(chunk, i + 2, end);
+                builder.append('>');
+                i = end;
+            } else {
+                builder.append(c);
+                inIRI = (c == '<');
+                inLiteral = (c == '"');
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Gets whether a character can be part of a blank node label
+     *
+     * @param c The character
+     * @return Whether the character can be part of a blank node label
+     */
+    private static boolean isLabelChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+    }
+
+    /**
+     * Resolves a node that may stand for a blank node
+     * The workers resolve the same label to the same blank node, whatever the chunk.
+     *
+     * @param node The node
+     * @return The resolved node
+     */
+    private Node resolveBlank(Node node) {
+        if (!(node instanceof IRINode))
+            return node;
+        String iri = ((IRINode) node).getIRIValue();
+        if (!iri.startsWith(BLANK_PREFIX))
+            return node;
+        String label = iri.substring(BLANK_PREFIX.length());
+        BlankNode blank = blanks.get(label);
+        if (blank != null)
+            return blank;
+        synchronized (nodes) {
+            blank = nodes.getBlankNode();
+        }
+        BlankNode previous = blanks.putIfAbsent(label, blank);
+        return previous != null ? previous : blank;
+    }
+
+    /**
+     * Gets whether a graph is the graph of the resource
+     *
+     * @param graph The graph of a quad
+     * @return Whether this is the graph of the resource
+     */
+    private boolean isInGraph(Node graph) {
+        return graph instanceof IRINode && resourceIRI.equals(((IRINode) graph).getIRIValue());
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (current == null || !current.hasNext()) {
+            fill();
+            Future<Collection<Quad>> next = pending.pollFirst();
+            if (next == null)
+                return false;
+            try {
+                Collection<Quad> chunk = next.get();
+                quads += chunk.size();
+                current = chunk.iterator();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while parsing the lines");
+            } catch (ExecutionException exception) {
+                throw new IllegalStateException(exception.getCause().getMessage());
+            }
+            if (progress != null)
+                progress.onProgress(lines, quads);
+        }
+        return true;
+    }
+
+    @Override
+    public Quad next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        return current.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        for (Future<Collection<Quad>> future : pending)
+            future.cancel(true);
+        pending.clear();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Gets the total number of quads produced so far
+     *
+     * @return The total number of quads produced so far
+     */
+    public long getQuadsCount() {
+        return quads;
+    }
+}
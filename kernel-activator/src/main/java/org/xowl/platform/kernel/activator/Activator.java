@@ -55,9 +55,10 @@ public class Activator implements BundleActivator {
                 bundleContext.registerService(PlatformHttp.class, platformHttp, null);
 
                 // register the logging service
-                KernelLoggingService loggingService = new KernelLoggingService();
+                KernelLoggingService loggingService = new KernelLoggingService(configurationService);
                 Logging.setDefault(loggingService);
                 bundleContext.registerService(Service.class, loggingService, null);
+                bundleContext.registerService(ManagedService.class, loggingService, null);
                 bundleContext.registerService(SecuredService.class, loggingService, null);
                 bundleContext.registerService(HttpApiService.class, loggingService, null);
                 bundleContext.registerService(MeasurableService.class, loggingService, null);
@@ -72,6 +73,7 @@ public class Activator implements BundleActivator {
                 bundleContext.registerService(Service.class, securityService, null);
                 bundleContext.registerService(SecuredService.class, securityService, null);
                 bundleContext.registerService(HttpApiService.class, securityService, null);
+                bundleContext.registerService(MeasurableService.class, securityService, null);
                 bundleContext.registerService(SecurityService.class, securityService, null);
 
                 // register the statistics service
@@ -82,7 +84,7 @@ public class Activator implements BundleActivator {
                 bundleContext.registerService(StatisticsService.class, statisticsService, null);
 
                 // register the event service
-                KernelEventService serviceEvents = new KernelEventService();
+                KernelEventService serviceEvents = new KernelEventService(configurationService);
                 bundleContext.registerService(Service.class, serviceEvents, null);
                 bundleContext.registerService(MeasurableService.class, serviceEvents, null);
                 bundleContext.registerService(ManagedService.class, serviceEvents, null);
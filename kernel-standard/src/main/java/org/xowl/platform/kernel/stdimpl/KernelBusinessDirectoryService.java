@@ -20,7 +20,6 @@ package org.xowl.platform.kernel.stdimpl;
 import fr.cenotelie.commons.utils.TextUtils;
 import fr.cenotelie.commons.utils.http.HttpConstants;
 import fr.cenotelie.commons.utils.http.HttpResponse;
-import fr.cenotelie.commons.utils.http.URIUtils;
 import org.xowl.platform.kernel.PlatformHttp;
 import org.xowl.platform.kernel.PlatformUtils;
 import org.xowl.platform.kernel.Register;
@@ -31,6 +30,7 @@ import org.xowl.platform.kernel.security.SecurityService;
 import org.xowl.platform.kernel.webapi.HttpApiRequest;
 import org.xowl.platform.kernel.webapi.HttpApiResource;
 import org.xowl.platform.kernel.webapi.HttpApiResourceBase;
+import org.xowl.platform.kernel.webapi.HttpApiRoute;
 import org.xowl.platform.kernel.webapi.HttpApiService;
 
 import java.net.HttpURLConnection;
@@ -55,12 +55,32 @@ public class KernelBusinessDirectoryService implements BusinessDirectoryService,
      * The URI for the API services
      */
     private final String apiUri;
+    /**
+     * The route for the archetypes resource
+     */
+    private final HttpApiRoute routeArchetypes;
+    /**
+     * The route for a specific archetype
+     */
+    private final HttpApiRoute routeArchetype;
+    /**
+     * The route for the schemas resource
+     */
+    private final HttpApiRoute routeSchemas;
+    /**
+     * The route for a specific schema
+     */
+    private final HttpApiRoute routeSchema;
 
     /**
      * Initializes this service
      */
     public KernelBusinessDirectoryService() {
         this.apiUri = PlatformHttp.getUriPrefixApi() + "/kernel/business";
+        this.routeArchetypes = new HttpApiRoute(apiUri + "/archetypes", HttpConstants.METHOD_GET);
+        this.routeArchetype = new HttpApiRoute(apiUri + "/archetypes/{archetypeId}", HttpConstants.METHOD_GET);
+        this.routeSchemas = new HttpApiRoute(apiUri + "/schemas", HttpConstants.METHOD_GET);
+        this.routeSchema = new HttpApiRoute(apiUri + "/schemas/{schemaId}", HttpConstants.METHOD_GET);
     }
 
     @Override
@@ -102,10 +122,13 @@ public class KernelBusinessDirectoryService implements BusinessDirectoryService,
     }
 
     @Override
-    public int canHandle(HttpApiRequest request) {
-        return request.getUri().startsWith(apiUri)
-                ? HttpApiService.PRIORITY_NORMAL
-                : HttpApiService.CANNOT_HANDLE;
+    public HttpApiRoute[] getRoutes() {
+        return new HttpApiRoute[]{
+                routeArchetypes,
+                routeArchetype,
+                routeSchemas,
+                routeSchema
+        };
     }
 
     @Override
@@ -115,23 +138,15 @@ public class KernelBusinessDirectoryService implements BusinessDirectoryService,
 
     @Override
     public HttpResponse handle(SecurityService securityService, HttpApiRequest request) {
-        if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-        if (request.getUri().equals(apiUri + "/archetypes")) {
+        HttpApiRoute route = request.getRoute();
+        if (route == routeArchetypes)
             return onGetArchetypes();
-        } else if (request.getUri().equals(apiUri + "/schemas")) {
+        if (route == routeSchemas)
             return onGetSchemas();
-        } else if (request.getUri().startsWith(apiUri + "/archetypes")) {
-            String rest = URIUtils.decodeComponent(request.getUri().substring(apiUri.length() + "/archetypes".length() + 1));
-            if (rest.isEmpty())
-                return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-            return onGetArchetype(rest);
-        } else if (request.getUri().startsWith(apiUri + "/schemas")) {
-            String rest = URIUtils.decodeComponent(request.getUri().substring(apiUri.length() + "/schemas".length() + 1));
-            if (rest.isEmpty())
-                return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-            return onGetSchema(rest);
-        }
+        if (route == routeArchetype)
+            return onGetArchetype(request.getPathParameter("archetypeId"));
+        if (route == routeSchema)
+            return onGetSchema(request.getPathParameter("schemaId"));
         return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
     }
 
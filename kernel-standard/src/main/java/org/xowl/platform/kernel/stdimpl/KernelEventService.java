@@ -17,10 +17,15 @@
 
 package org.xowl.platform.kernel.stdimpl;
 
+import fr.cenotelie.commons.utils.collections.Couple;
+import fr.cenotelie.commons.utils.ini.IniDocument;
 import fr.cenotelie.commons.utils.logging.Logging;
 import fr.cenotelie.commons.utils.metrics.Metric;
+import fr.cenotelie.commons.utils.metrics.MetricBase;
 import fr.cenotelie.commons.utils.metrics.MetricSnapshot;
 import fr.cenotelie.commons.utils.metrics.MetricSnapshotInt;
+import fr.cenotelie.commons.utils.metrics.MetricSnapshotLong;
+import org.xowl.platform.kernel.ConfigurationService;
 import org.xowl.platform.kernel.ManagedService;
 import org.xowl.platform.kernel.PlatformUtils;
 import org.xowl.platform.kernel.events.Event;
@@ -28,62 +33,371 @@ import org.xowl.platform.kernel.events.EventConsumer;
 import org.xowl.platform.kernel.events.EventService;
 
 import java.util.*;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The default implementation of the event service for the platform
+ * Each consumer has its own bounded mailbox of events.
+ * The mailboxes are processed by a pool of threads, one at a time for each consumer,
+ * so that a slow consumer does not delay the delivery of events to the others.
  *
  * @author Laurent Wouters
  */
 public class KernelEventService implements EventService, ManagedService {
     /**
-     * The maximum number of queued events
+     * The default maximum number of queued events for a consumer
      */
     private static final int QUEUE_LENGTH = 128;
     /**
-     * The time to wait for events, in ms
+     * The default number of threads for the delivery of events
+     */
+    private static final int POOL_THREADS = 4;
+    /**
+     * The default time to wait for room in a full mailbox, in ms
+     */
+    private static final long BLOCK_TIMEOUT = 1000;
+    /**
+     * The maximum number of events delivered to a consumer before yielding the thread to other consumers
+     */
+    private static final int DELIVERY_BATCH = 32;
+    /**
+     * The time to wait for the delivery threads to stop, in ms
      */
     private static final long WAIT_TIME = 500;
 
     /**
-     * The thread dispatching events
+     * The mailbox of events for a consumer
      */
-    private final Thread dispatchThread;
+    private class Mailbox implements Runnable {
+        /**
+         * The consumer
+         */
+        private final EventConsumer consumer;
+        /**
+         * The ring of the queued events
+         */
+        private final Event[] events;
+        /**
+         * The timestamps of the emission of the queued events, parallel to the ring of events
+         */
+        private final long[] timestamps;
+        /**
+         * The index of the first queued event in the ring
+         */
+        private int head;
+        /**
+         * The number of queued events
+         */
+        private int size;
+        /**
+         * The lock for the ring of events
+         */
+        private final ReentrantLock lock;
+        /**
+         * Condition signalled when room is made in the ring of events
+         */
+        private final Condition notFull;
+        /**
+         * Whether the processing of this mailbox is scheduled
+         */
+        private final AtomicBoolean isScheduled;
+        /**
+         * Whether this mailbox has been closed
+         */
+        private volatile boolean isClosed;
+        /**
+         * The total latency of the delivered events, in nanoseconds
+         */
+        private final AtomicLong latencyTotal;
+        /**
+         * The number of delivered events
+         */
+        private final AtomicLong latencyCount;
+        /**
+         * The number of dropped events
+         */
+        private final AtomicLong dropped;
+        /**
+         * The metric for the average latency of the delivery to this consumer
+         */
+        private final Metric metricLatency;
+        /**
+         * The metric for the number of events waiting for this consumer
+         */
+        private final Metric metricBacklog;
+
+        /**
+         * Initializes this mailbox
+         *
+         * @param consumer The consumer
+         */
+        public Mailbox(EventConsumer consumer) {
+            this.consumer = consumer;
+            this.events = new Event[mailboxBound];
+            this.timestamps = new long[mailboxBound];
+            this.head = 0;
+            this.size = 0;
+            this.lock = new ReentrantLock();
+            this.notFull = lock.newCondition();
+            this.isScheduled = new AtomicBoolean(false);
+            this.isClosed = false;
+            this.latencyTotal = new AtomicLong(0);
+            this.latencyCount = new AtomicLong(0);
+            this.dropped = new AtomicLong(0);
+            this.metricLatency = new MetricBase(EventService.class.getCanonicalName() + ".ConsumerLatency." + consumer.getIdentifier(),
+                    "Event Service - Average delivery latency - " + consumer.getName(),
+                    "ms",
+                    1000000000,
+                    new Couple<>(Metric.HINT_IS_NUMERIC, "true"),
+                    new Couple<>(Metric.HINT_MIN_VALUE, "0"));
+            this.metricBacklog = new MetricBase(EventService.class.getCanonicalName() + ".ConsumerBacklog." + consumer.getIdentifier(),
+                    "Event Service - Queued events - " + consumer.getName(),
+                    "events",
+                    1000000000,
+                    new Couple<>(Metric.HINT_IS_NUMERIC, "true"),
+                    new Couple<>(Metric.HINT_MIN_VALUE, "0"));
+        }
+
+        /**
+         * Posts an event to this mailbox
+         *
+         * @param event     The event
+         * @param timestamp The timestamp of the event's emission
+         */
+        public void post(Event event, long timestamp) {
+            boolean accepted = false;
+            lock.lock();
+            try {
+                if (size == events.length && blockOnFull) {
+                    long nanos = TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+                    while (size == events.length && nanos > 0)
+                        nanos = notFull.awaitNanos(nanos);
+                }
+                if (size < events.length) {
+                    int index = (head + size) % events.length;
+                    events[index] = event;
+                    timestamps[index] = timestamp;
+                    size++;
+                    accepted = true;
+                }
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+            if (!accepted) {
+                dropped.incrementAndGet();
+                Logging.get().warning("Event dropped for " + consumer.getIdentifier() + ", its mailbox is full");
+            }
+            schedule();
+        }
+
+        /**
+         * Schedules the processing of this mailbox, if it is not already
+         */
+        private void schedule() {
+            if (isClosed || getBacklog() == 0 || !isScheduled.compareAndSet(false, true))
+                return;
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException exception) {
+                // the service is stopping
+                isScheduled.set(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i != DELIVERY_BATCH && !isClosed; i++) {
+                Event event;
+                long timestamp;
+                lock.lock();
+                try {
+                    if (size == 0)
+                        break;
+                    event = events[head];
+                    timestamp = timestamps[head];
+                    events[head] = null;
+                    head = (head + 1) % events.length;
+                    size--;
+                    notFull.signal();
+                } finally {
+                    lock.unlock();
+                }
+                try {
+                    consumer.onEvent(event);
+                } catch (Throwable throwable) {
+                    Logging.get().error(throwable);
+                }
+                latencyTotal.addAndGet(System.nanoTime() - timestamp);
+                latencyCount.incrementAndGet();
+                totalProcessed.incrementAndGet();
+            }
+            isScheduled.set(false);
+            // events may have been posted in the meantime
+            schedule();
+        }
+
+        /**
+         * Gets the number of events waiting for this consumer
+         *
+         * @return The number of queued events
+         */
+        public int getBacklog() {
+            lock.lock();
+            try {
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Gets the average latency of the delivery to this consumer
+         *
+         * @return The average latency in milliseconds
+         */
+        public long getAverageLatency() {
+            long count = latencyCount.get();
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(latencyTotal.get() / count);
+        }
+    }
+
     /**
-     * Flag whether the dispatcher thread must stop
+     * An immutable snapshot of the routes for the events
      */
-    private final AtomicBoolean mustStop;
+    private static class RoutingTable {
+        /**
+         * The empty routing table
+         */
+        public static final RoutingTable EMPTY = new RoutingTable(Collections.<String, Mailbox[]>emptyMap(), new Mailbox[0], new Mailbox[0]);
+
+        /**
+         * The mailboxes for each subscribed event type, including the mailboxes subscribed to any event type
+         */
+        public final Map<String, Mailbox[]> byType;
+        /**
+         * The mailboxes subscribed to any event type
+         */
+        public final Mailbox[] wildcard;
+        /**
+         * All the mailboxes
+         */
+        public final Mailbox[] all;
+
+        /**
+         * Initializes this table
+         *
+         * @param byType   The mailboxes for each subscribed event type, including the mailboxes subscribed to any event type
+         * @param wildcard The mailboxes subscribed to any event type
+         * @param all      All the mailboxes
+         */
+        public RoutingTable(Map<String, Mailbox[]> byType, Mailbox[] wildcard, Mailbox[] all) {
+            this.byType = byType;
+            this.wildcard = wildcard;
+            this.all = all;
+        }
+
+        /**
+         * Gets the mailboxes for an event type
+         *
+         * @param eventType The event type
+         * @return The mailboxes
+         */
+        public Mailbox[] get(String eventType) {
+            Mailbox[] result = byType.get(eventType);
+            return result != null ? result : wildcard;
+        }
+    }
+
+    /**
+     * The maximum number of queued events for a consumer
+     */
+    private final int mailboxBound;
+    /**
+     * Whether producers wait for room in a full mailbox, instead of dropping the event
+     */
+    private final boolean blockOnFull;
     /**
-     * The queue of events to be dispatched
+     * The maximum time a producer waits for room in a full mailbox, in ms
      */
-    private final BlockingQueue<Event> queue;
+    private final long blockTimeout;
     /**
-     * The routes for the events
+     * Whether each event is logged, at the debug level
      */
-    private final Map<String, List<EventConsumer>> routes;
+    private final boolean logEvents;
     /**
-     * The total number of processed events
+     * The pool of threads for the delivery of events
      */
-    private int totalProcessed;
+    private final ExecutorService executor;
+    /**
+     * The mailboxes of the consumers
+     * This is the mutable source of the routing table and is guarded by the lock on itself.
+     */
+    private final Map<EventConsumer, Mailbox> mailboxes;
+    /**
+     * The subscribed mailboxes for each event type, or null for any event type
+     * This is the mutable source of the routing table and is guarded by the lock on the mailboxes.
+     */
+    private final Map<String, List<Mailbox>> subscriptions;
+    /**
+     * The current snapshot of the routes for the events
+     */
+    private volatile RoutingTable routes;
+    /**
+     * The total number of events delivered to consumers
+     */
+    private final AtomicInteger totalProcessed;
 
     /**
      * Initializes this service
+     *
+     * @param configurationService The configuration service to use
      */
-    public KernelEventService() {
-        this.dispatchThread = new Thread(new Runnable() {
+    public KernelEventService(ConfigurationService configurationService) {
+        IniDocument configuration = configurationService.getConfigFor(EventService.class.getCanonicalName());
+        int mailboxBound = QUEUE_LENGTH;
+        int poolThreads = POOL_THREADS;
+        long blockTimeout = BLOCK_TIMEOUT;
+        try {
+            String value = configuration.get("mailboxBound");
+            if (value != null)
+                mailboxBound = Integer.parseInt(value);
+            value = configuration.get("poolThreads");
+            if (value != null)
+                poolThreads = Integer.parseInt(value);
+            value = configuration.get("blockTimeout");
+            if (value != null)
+                blockTimeout = Long.parseLong(value);
+        } catch (NumberFormatException exception) {
+            Logging.get().error(exception);
+        }
+        this.mailboxBound = mailboxBound;
+        this.blockOnFull = !"drop".equals(configuration.get("overflowPolicy"));
+        this.blockTimeout = blockTimeout;
+        this.logEvents = "true".equalsIgnoreCase(configuration.get("logEvents"));
+        this.executor = Executors.newFixedThreadPool(poolThreads, new ThreadFactory() {
+            /**
+             * The number of created threads
+             */
+            private final AtomicInteger count = new AtomicInteger(0);
+
             @Override
-            public void run() {
-                KernelEventService.this.dispatchRun();
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, KernelEventService.class.getCanonicalName() + ".EventDispatcher" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
             }
-        }, KernelEventService.class.getCanonicalName() + ".EventDispatcher");
-        this.mustStop = new AtomicBoolean(false);
-        this.queue = new ArrayBlockingQueue<>(QUEUE_LENGTH);
-        this.routes = new HashMap<>();
-        this.totalProcessed = 0;
-        this.dispatchThread.start();
+        });
+        this.mailboxes = new HashMap<>();
+        this.subscriptions = new HashMap<>();
+        this.routes = RoutingTable.EMPTY;
+        this.totalProcessed = new AtomicInteger(0);
     }
 
     @Override
@@ -108,12 +422,9 @@ public class KernelEventService implements EventService, ManagedService {
 
     @Override
     public void onLifecycleStop() {
-        mustStop.set(true);
+        executor.shutdownNow();
         try {
-            if (dispatchThread.isAlive()) {
-                dispatchThread.interrupt();
-                dispatchThread.join();
-            }
+            executor.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS);
         } catch (InterruptedException exception) {
             Logging.get().error(exception);
         }
@@ -121,84 +432,105 @@ public class KernelEventService implements EventService, ManagedService {
 
     @Override
     public Collection<Metric> getMetrics() {
-        return Arrays.asList(METRIC_TOTAL_PROCESSED_EVENTS, METRIC_QUEUED_EVENTS);
+        List<Metric> result = new ArrayList<>();
+        result.add(METRIC_TOTAL_PROCESSED_EVENTS);
+        result.add(METRIC_QUEUED_EVENTS);
+        for (Mailbox mailbox : routes.all) {
+            result.add(mailbox.metricLatency);
+            result.add(mailbox.metricBacklog);
+        }
+        return result;
     }
 
     @Override
     public MetricSnapshot pollMetric(Metric metric) {
         if (metric == METRIC_TOTAL_PROCESSED_EVENTS)
-            return new MetricSnapshotInt(totalProcessed);
-        if (metric == METRIC_QUEUED_EVENTS)
-            return new MetricSnapshotInt(queue.size());
+            return new MetricSnapshotInt(totalProcessed.get());
+        Mailbox[] all = routes.all;
+        if (metric == METRIC_QUEUED_EVENTS) {
+            int result = 0;
+            for (int i = 0; i != all.length; i++)
+                result += all[i].getBacklog();
+            return new MetricSnapshotInt(result);
+        }
+        for (int i = 0; i != all.length; i++) {
+            if (metric == all[i].metricLatency)
+                return new MetricSnapshotLong(all[i].getAverageLatency());
+            if (metric == all[i].metricBacklog)
+                return new MetricSnapshotInt(all[i].getBacklog());
+        }
         return null;
     }
 
     @Override
     public void onEvent(Event event) {
-        Logging.get().info(event);
-        while (true) {
-            try {
-                if (queue.add(event))
-                    return;
-            } catch (IllegalStateException exception) {
-                // queue is full
-            }
-        }
+        if (logEvents)
+            Logging.get().debug(event);
+        long timestamp = System.nanoTime();
+        Mailbox[] targets = routes.get(event.getType());
+        for (int i = 0; i != targets.length; i++)
+            targets[i].post(event, timestamp);
     }
 
     @Override
     public void subscribe(EventConsumer consumer, String eventType) {
-        synchronized (routes) {
-            List<EventConsumer> consumers = routes.get(eventType);
-            if (consumers == null) {
-                consumers = new ArrayList<>();
-                routes.put(eventType, consumers);
+        synchronized (mailboxes) {
+            Mailbox mailbox = mailboxes.get(consumer);
+            if (mailbox == null) {
+                mailbox = new Mailbox(consumer);
+                mailboxes.put(consumer, mailbox);
+            }
+            List<Mailbox> targets = subscriptions.get(eventType);
+            if (targets == null) {
+                targets = new ArrayList<>();
+                subscriptions.put(eventType, targets);
             }
-            consumers.add(consumer);
+            if (!targets.contains(mailbox))
+                targets.add(mailbox);
+            publishRoutes();
         }
     }
 
     @Override
     public void unsubscribe(EventConsumer consumer) {
-        synchronized (routes) {
-            for (Map.Entry<String, List<EventConsumer>> sub : routes.entrySet()) {
-                sub.getValue().remove(consumer);
+        synchronized (mailboxes) {
+            Mailbox mailbox = mailboxes.remove(consumer);
+            if (mailbox == null)
+                return;
+            mailbox.isClosed = true;
+            Iterator<Map.Entry<String, List<Mailbox>>> iterator = subscriptions.entrySet().iterator();
+            while (iterator.hasNext()) {
+                List<Mailbox> targets = iterator.next().getValue();
+                targets.remove(mailbox);
+                if (targets.isEmpty())
+                    iterator.remove();
             }
+            publishRoutes();
         }
     }
 
     /**
-     * Main function for the dispatching thread
+     * Builds and publishes a new snapshot of the routes from the subscriptions
+     * This method must be called while holding the lock on the mailboxes.
      */
-    private void dispatchRun() {
-        List<EventConsumer> dispatchTo = new ArrayList<>(16);
-        while (!mustStop.get()) {
-            // get an event
-            Event event;
-            try {
-                event = queue.poll(WAIT_TIME, TimeUnit.MILLISECONDS);
-            } catch (InterruptedException exception) {
-                return;
-            }
-            if (event != null) {
-                // build the list of consumers
-                dispatchTo.clear();
-                List<EventConsumer> consumers = routes.get(event.getType());
-                if (consumers != null)
-                    dispatchTo.addAll(consumers);
-                consumers = routes.get(null);
-                if (consumers != null)
-                    dispatchTo.addAll(consumers);
-                // dispatch
-                for (EventConsumer consumer : dispatchTo) {
-                    try {
-                        consumer.onEvent(event);
-                    } catch (Throwable throwable) {
-                        Logging.get().error(throwable);
-                    }
-                }
-                totalProcessed++;
+    private void publishRoutes() {
+        List<Mailbox> wildcard = subscriptions.get(null);
+        if (wildcard == null)
+            wildcard = Collections.emptyList();
+        Map<String, Mailbox[]> byType = new HashMap<>();
+        for (Map.Entry<String, List<Mailbox>> entry : subscriptions.entrySet()) {
+            if (entry.getKey() == null)
+                continue;
+            List<Mailbox> merged = new ArrayList<>(entry.getValue());
+            for (Mailbox mailbox : wildcard) {
+                if (!merged.contains(mailbox))
+                    merged.add(mailbox);
             }
+            byType.put(entry.getKey(), merged.toArray(new Mailbox[merged.size()]));
         }
+        routes = new RoutingTable(
+                byType,
+                wildcard.toArray(new Mailbox[wildcard.size()]),
+                mailboxes.values().toArray(new Mailbox[mailboxes.size()]));
     }
 }
@@ -58,12 +58,22 @@ public class KernelHttpApiDiscoveryService implements HttpApiDiscoveryService, H
      * The URI for the API services
      */
     private final String apiUri;
+    /**
+     * The route for the services resource
+     */
+    private final HttpApiRoute routeServices;
+    /**
+     * The route for the resources resource
+     */
+    private final HttpApiRoute routeResources;
 
     /**
      * Initializes this service
      */
     public KernelHttpApiDiscoveryService() {
         this.apiUri = PlatformHttp.getUriPrefixApi() + "/kernel/discovery";
+        this.routeServices = new HttpApiRoute(apiUri + "/services", HttpConstants.METHOD_GET);
+        this.routeResources = new HttpApiRoute(apiUri + "/resources", HttpConstants.METHOD_GET);
     }
 
     @Override
@@ -103,10 +113,11 @@ public class KernelHttpApiDiscoveryService implements HttpApiDiscoveryService, H
     }
 
     @Override
-    public int canHandle(HttpApiRequest request) {
-        return request.getUri().startsWith(apiUri)
-                ? HttpApiService.PRIORITY_NORMAL
-                : HttpApiService.CANNOT_HANDLE;
+    public HttpApiRoute[] getRoutes() {
+        return new HttpApiRoute[]{
+                routeServices,
+                routeResources
+        };
     }
 
     @Override
@@ -116,9 +127,7 @@ public class KernelHttpApiDiscoveryService implements HttpApiDiscoveryService, H
 
     @Override
     public HttpResponse handle(SecurityService securityService, HttpApiRequest request) {
-        if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-        if (request.getUri().equals(apiUri + "/services")) {
+        if (request.getRoute() == routeServices) {
             StringBuilder builder = new StringBuilder("[");
             boolean first = true;
             for (HttpApiService service : getServices()) {
@@ -129,7 +138,7 @@ public class KernelHttpApiDiscoveryService implements HttpApiDiscoveryService, H
             }
             builder.append("]");
             return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
-        } else if (request.getUri().equals(apiUri + "/resources")) {
+        } else if (request.getRoute() == routeResources) {
             StringBuilder builder = new StringBuilder("[");
             boolean first = true;
             for (HttpApiResource resource : getResources()) {
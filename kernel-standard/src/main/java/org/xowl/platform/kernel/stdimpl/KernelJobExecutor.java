@@ -19,12 +19,10 @@ package org.xowl.platform.kernel.stdimpl;
 
 import fr.cenotelie.commons.utils.IOUtils;
 import fr.cenotelie.commons.utils.RichString;
-import fr.cenotelie.commons.utils.SHA1;
 import fr.cenotelie.commons.utils.TextUtils;
 import fr.cenotelie.commons.utils.api.*;
 import fr.cenotelie.commons.utils.http.HttpConstants;
 import fr.cenotelie.commons.utils.http.HttpResponse;
-import fr.cenotelie.commons.utils.http.URIUtils;
 import fr.cenotelie.commons.utils.ini.IniDocument;
 import fr.cenotelie.commons.utils.json.Json;
 import fr.cenotelie.commons.utils.logging.Logging;
@@ -37,21 +35,22 @@ import org.xowl.platform.kernel.*;
 import org.xowl.platform.kernel.jobs.Job;
 import org.xowl.platform.kernel.jobs.JobExecutionService;
 import org.xowl.platform.kernel.jobs.JobFactory;
+import org.xowl.platform.kernel.jobs.JobRemote;
 import org.xowl.platform.kernel.jobs.JobStatus;
+import org.xowl.platform.kernel.remote.PlatformApiDeserializer;
+import org.xowl.platform.kernel.remote.PlatformApiDeserializerForOSGi;
 import org.xowl.platform.kernel.security.SecuredAction;
 import org.xowl.platform.kernel.security.SecurityService;
 import org.xowl.platform.kernel.webapi.HttpApiRequest;
 import org.xowl.platform.kernel.webapi.HttpApiResource;
 import org.xowl.platform.kernel.webapi.HttpApiResourceBase;
+import org.xowl.platform.kernel.webapi.HttpApiRoute;
 import org.xowl.platform.kernel.webapi.HttpApiService;
 
 import java.io.*;
 import java.net.HttpURLConnection;
 import java.util.*;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -61,21 +60,65 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class KernelJobExecutor implements JobExecutionService, ManagedService, HttpApiService {
     /**
-     * The bound of the executor queue
+     * The signal for the termination of an awaited job
+     */
+    private static class JobSignal {
+        /**
+         * The latch released when the job terminates
+         */
+        public final CountDownLatch latch = new CountDownLatch(1);
+        /**
+         * The number of requests waiting on this signal
+         */
+        public int waiters = 0;
+    }
+
+    /**
+     * The default bound of a lane in the executor queue
      */
     private static final int EXECUTOR_QUEUE_BOUND = 128;
     /**
-     * The executor core pool size
+     * The minimum executor pool size
      */
     private static final int EXECUTOR_POOL_MIN = 8;
     /**
-     * The executor max pool size
+     * The maximum executor pool size
      */
     private static final int EXECUTOR_POOL_MAX = 16;
+    /**
+     * The time an idle executor thread beyond the minimum is kept alive, in seconds
+     */
+    private static final long EXECUTOR_KEEP_ALIVE = 60;
+    /**
+     * The task given to the pool of executors to start a new executor thread
+     * The jobs themselves are never given to the pool, so that the new threads only take jobs from the scheduler.
+     */
+    private static final Runnable EXECUTOR_START = new Runnable() {
+        @Override
+        public void run() {
+            // the new executor thread then takes the jobs from the scheduler
+        }
+    };
     /**
      * The bound of the buffer of completed jobs
      */
     private static final int COMPLETED_QUEUED_BOUND = EXECUTOR_QUEUE_BOUND;
+    /**
+     * The default size of a segment of the job journal
+     */
+    private static final long JOURNAL_SEGMENT_SIZE = 4 * 1024 * 1024;
+    /**
+     * The default interval at which the records of the job journal are forced to the storage device, in milliseconds
+     */
+    private static final long JOURNAL_SYNC_INTERVAL = 1000;
+    /**
+     * The default maximum time to wait for the completion of a job in a single request, in milliseconds
+     */
+    private static final long AWAIT_MAX_TIMEOUT = 30000;
+    /**
+     * The default maximum number of requests that can be held at the same time while awaiting the completion of jobs
+     */
+    private static final int AWAIT_MAX_WAITERS = 32;
 
     /**
      * The resource for the API's specification
@@ -90,6 +133,22 @@ public class KernelJobExecutor implements JobExecutionService, ManagedService, H
      * The URI for the API services
      */
     private final String apiUri;
+    /**
+     * The route for the jobs resource
+     */
+    private final HttpApiRoute routeJobs;
+    /**
+     * The route for a specific job
+     */
+    private final HttpApiRoute routeJob;
+    /**
+     * The route for the cancellation of a job
+     */
+    private final HttpApiRoute routeJobCancel;
+    /**
+     * The route for awaiting the completion of a job
+     */
+    private final HttpApiRoute routeJobAwait;
     /**
      * The queue to use before the executor is activated
      */
@@ -98,6 +157,16 @@ public class KernelJobExecutor implements JobExecutionService, ManagedService, H
      * Whether this executor can begin executing jobs
      */
     private final AtomicBoolean canExecute;
+    /**
+     * The scheduler for the waiting jobs
+     */
+    private final KernelJobScheduler scheduler;
+    /**
+     * The jobs that could not be accepted by the scheduler
+     * These jobs are still persisted in the storage and are re-submitted when the scheduler has room for them.
+     * As long as there are jobs in overflow, the new jobs are put behind them so that they cannot take the freed room.
+     */
+    private final ConcurrentLinkedQueue<Job> overflow;
     /**
      * The pool of executor threads
      */
@@ -106,6 +175,10 @@ public class KernelJobExecutor implements JobExecutionService, ManagedService, H
      * The directory for the persistent storage of queued job
      */
     private final File storage;
+    /**
+     * The journal of the jobs' transitions
+     */
+    private final KernelJobJournal journal;
     /**
      * The buffer of completed jobs
      */
@@ -118,6 +191,18 @@ public class KernelJobExecutor implements JobExecutionService, ManagedService, H
      * The buffer of running jobs
      */
     private final Job[] running;
+    /**
+     * The signals for the completion of the jobs being awaited
+     */
+    private final Map<String, JobSignal> awaited;
+    /**
+     * The maximum time to wait for the completion of a job in a single request, in milliseconds
+     */
+    private final long awaitMaxTimeout;
+    /**
+     * The permits for the requests held while awaiting the completion of jobs, each one holds a servlet thread
+     */
+    private final Semaphore awaitPermits;
 
     /**
      * Initializes this service
@@ -129,7 +214,15 @@ public class KernelJobExecutor implements JobExecutionService, ManagedService, H
         int queueBound = EXECUTOR_QUEUE_BOUND;
         int poolMin = EXECUTOR_POOL_MIN;
         int poolMax = EXECUTOR_POOL_MAX;
+        long journalSegmentSize = JOURNAL_SEGMENT_SIZE;
+        long journalSyncInterval = JOURNAL_SYNC_INTERVAL;
+        long awaitTimeout = AWAIT_MAX_TIMEOUT;
+        int awaitWaiters = AWAIT_MAX_WAITERS;
         this.apiUri = PlatformHttp.getUriPrefixApi() + "/kernel/jobs";
+        this.routeJobs = new HttpApiRoute(apiUri, HttpConstants.METHOD_GET);
+        this.routeJob = new HttpApiRoute(apiUri + "/{jobId}", HttpConstants.METHOD_GET);
+        this.routeJobCancel = new HttpApiRoute(apiUri + "/{jobId}/cancel", HttpConstants.METHOD_POST);
+        this.routeJobAwait = new HttpApiRoute(apiUri + "/{jobId}/await", HttpConstants.METHOD_GET);
         this.storage = PlatformUtils.resolve(configuration.get("storage"));
         try {
             String value = configuration.get("queueBound");
@@ -141,29 +234,106 @@ public class KernelJobExecutor implements JobExecutionService, ManagedService, H
             value = configuration.get("poolMaxThreads");
             if (value != null)
                 poolMax = Integer.parseInt(value);
+            value = configuration.get("journalSegmentSize");
+            if (value != null)
+                journalSegmentSize = Long.parseLong(value);
+            value = configuration.get("journalSyncInterval");
+            if (value != null)
+                journalSyncInterval = Long.parseLong(value);
+            value = configuration.get("awaitMaxTimeout");
+            if (value != null)
+                awaitTimeout = Long.parseLong(value);
+            value = configuration.get("awaitMaxWaiters");
+            if (value != null)
+                awaitWaiters = Integer.parseInt(value);
         } catch (NumberFormatException exception) {
             Logging.get().error(exception);
         }
 
         this.initQueue = new ConcurrentLinkedQueue<>();
         this.canExecute = new AtomicBoolean(false);
-        this.executorPool = new ThreadPoolExecutor(poolMin, poolMax, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueBound)) {
+        this.scheduler = new KernelJobScheduler(configuration, queueBound);
+        this.overflow = new ConcurrentLinkedQueue<>();
+        // the pool is only given EXECUTOR_START tasks, it starts new threads for them because the scheduler refuses them
+        // when the pool is at its maximum, the task is discarded and the job waits in the scheduler
+        this.executorPool = new ThreadPoolExecutor(poolMin, poolMax, EXECUTOR_KEEP_ALIVE, TimeUnit.SECONDS, scheduler, new ThreadPoolExecutor.DiscardPolicy()) {
             @Override
             protected void beforeExecute(Thread thread, Runnable runnable) {
-                onJobRun((Job) runnable);
+                if (runnable instanceof Job)
+                    onJobRun((Job) runnable);
             }
 
             @Override
             protected void afterExecute(Runnable runnable, Throwable throwable) {
-                onJobFinished((Job) runnable);
+                if (runnable instanceof Job)
+                    onJobFinished((Job) runnable);
             }
         };
+        this.executorPool.prestartAllCoreThreads();
         this.completed = new Job[COMPLETED_QUEUED_BOUND];
         this.completedStart = -1;
-        this.running = new Job[EXECUTOR_POOL_MAX];
+        this.running = new Job[poolMax];
+        this.awaited = new HashMap<>();
+        this.awaitMaxTimeout = awaitTimeout;
+        this.awaitPermits = new Semaphore(awaitWaiters);
+        this.journal = new KernelJobJournal(storage, journalSegmentSize, COMPLETED_QUEUED_BOUND, "true".equalsIgnoreCase(configuration.get("journalSync")), journalSyncInterval);
         reloadQueue();
     }
 
+    /**
+     * Action when a job could not be accepted by the scheduler
+     *
+     * @param job The rejected job
+     */
+    private void onJobRejected(Job job) {
+        overflow.add(job);
+        Logging.get().warning(new RichString("Job queue is full, job put in overflow: ", job));
+    }
+
+    /**
+     * Submits a job to the scheduler
+     * When there are jobs in overflow, the job is put behind them.
+     *
+     * @param job The job to submit
+     */
+    private void submit(Job job) {
+        synchronized (overflow) {
+            if (overflow.isEmpty() && scheduler.offer(job)) {
+                startExecutor();
+                return;
+            }
+            onJobRejected(job);
+        }
+        drainOverflow();
+    }
+
+    /**
+     * Starts a new executor thread for a job given to the scheduler, when all the current ones are busy
+     * The new thread is only started within the maximum size of the pool, otherwise the job waits in the scheduler.
+     */
+    private void startExecutor() {
+        if (executorPool.getActiveCount() >= executorPool.getPoolSize() && executorPool.getPoolSize() < executorPool.getMaximumPoolSize())
+            executorPool.execute(EXECUTOR_START);
+    }
+
+    /**
+     * Re-submits the jobs in overflow to the scheduler, in order, when it has room for them
+     */
+    private void drainOverflow() {
+        synchronized (overflow) {
+            if (executorPool.isShutdown())
+                return;
+            Iterator<Job> iterator = overflow.iterator();
+            while (iterator.hasNext()) {
+                Job job = iterator.next();
+                if (scheduler.offer(job)) {
+                    iterator.remove();
+                    startExecutor();
+                }
+            }
+        }
+    }
+
     /**
      * Action when a job is going to run
      *
@@ -179,8 +349,11 @@ public class KernelJobExecutor implements JobExecutionService, ManagedService, H
                 }
             }
         }
+        // a job left the scheduler, the jobs in overflow are served first
+        drainOverflow();
         // event before running
         job.onRun();
+        journal.onRunning(job);
         Logging.get().info(new RichString("Begin running job ", job));
     }
 
@@ -190,52 +363,137 @@ public class KernelJobExecutor implements JobExecutionService, ManagedService, H
      * @param job The finished job
      */
     private void onJobFinished(Job job) {
-        // register as completed
-        synchronized (completed) {
-            // remove from the running
-            synchronized (running) {
-                for (int i = 0; i != running.length; i++) {
-                    if (running[i] == job) {
-                        running[i] = null;
-                        break;
-                    }
+        scheduler.onJobFinished(job);
+        // a job in a capped lane may now be eligible, the jobs in overflow are served first
+        drainOverflow();
+        // remove from the running
+        synchronized (running) {
+            for (int i = 0; i != running.length; i++) {
+                if (running[i] == job) {
+                    running[i] = null;
+                    break;
                 }
             }
-            completedStart++;
-            if (completedStart == COMPLETED_QUEUED_BOUND)
-                completedStart = 0;
-            completed[completedStart] = job;
         }
+        // callback on completion
+        job.onTerminated(job.getStatus() == JobStatus.Cancelled);
+        // register as completed
+        journal.onFinished(job);
+        onJobCompleted(job);
+        onJobTerminated(job);
+        Logging.get().info(new RichString("Ended job ", job));
+    }
+
+    /**
+     * Wakes up the requests awaiting the completion of a job
+     *
+     * @param job The terminated job
+     */
+    private void onJobTerminated(Job job) {
+        JobSignal signal;
+        synchronized (awaited) {
+            signal = awaited.remove(job.getIdentifier());
+        }
+        if (signal != null)
+            signal.latch.countDown();
+    }
 
+    /**
+     * Waits for a job to terminate
+     * When too many requests are already waiting, this returns immediately and the job is replied in its current state.
+     *
+     * @param job     The job to wait for
+     * @param timeout The maximum time to wait, in milliseconds
+     */
+    private void awaitJob(Job job, long timeout) {
+        if (!awaitPermits.tryAcquire())
+            return;
+        try {
+            awaitJobSignal(job, timeout);
+        } finally {
+            awaitPermits.release();
+        }
+    }
 
-        // delete the serialized definition
-        File file = new File(storage, getFileName(job));
-        if (file.exists()) {
-            if (!file.delete()) {
-                Logging.get().error("Failed to delete " + file.getAbsolutePath());
+    /**
+     * Waits for the signal of the termination of a job
+     *
+     * @param job     The job to wait for
+     * @param timeout The maximum time to wait, in milliseconds
+     */
+    private void awaitJobSignal(Job job, long timeout) {
+        JobSignal signal;
+        synchronized (awaited) {
+            signal = awaited.get(job.getIdentifier());
+            if (signal == null) {
+                signal = new JobSignal();
+                awaited.put(job.getIdentifier(), signal);
             }
+            signal.waiters++;
+        }
+        try {
+            // check after registering the signal so that a termination in-between is not missed
+            if (job.getStatus() == JobStatus.Completed || job.getStatus() == JobStatus.Cancelled)
+                return;
+            signal.latch.await(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // the last waiter removes the signal, unless the termination already did
+            synchronized (awaited) {
+                signal.waiters--;
+                if (signal.waiters == 0 && awaited.get(job.getIdentifier()) == signal)
+                    awaited.remove(job.getIdentifier());
+            }
+        }
+    }
+
+    /**
+     * Registers a job in the buffer of completed jobs
+     *
+     * @param job The completed job
+     */
+    private void onJobCompleted(Job job) {
+        synchronized (completed) {
+            completedStart++;
+            if (completedStart == COMPLETED_QUEUED_BOUND)
+                completedStart = 0;
+            completed[completedStart] = job;
         }
-        // callback on completion
-        job.onTerminated(job.getStatus() == JobStatus.Cancelled);
-        Logging.get().info(new RichString("Ended job ", job));
     }
 
     /**
-     * Tries to reload the queue
+     * Tries to reload the queue and the completed jobs from the journal
      */
     private void reloadQueue() {
-        if (!storage.exists())
-            return;
+        PlatformApiDeserializer deserializer = new PlatformApiDeserializerForOSGi();
+        for (String content : journal.getHistory()) {
+            ASTNode definition = Json.parse(Logging.get(), content);
+            if (definition != null)
+                onJobCompleted(new JobRemote(definition, deserializer));
+        }
+        for (String content : journal.getPending()) {
+            Job job = reloadJob(content);
+            if (job != null)
+                submit(job);
+        }
+        // migrate the jobs serialized in individual files by previous versions
         File[] files = storage.listFiles();
         if (files != null) {
             for (int i = 0; i != files.length; i++) {
                 if (isJobFile(files[i].getName())) {
                     try (Reader reader = IOUtils.getReader(files[i].getAbsolutePath())) {
-                        String content = IOUtils.read(reader);
-                        reloadJob(files[i], content);
+                        Job job = reloadJob(IOUtils.read(reader));
+                        if (job != null) {
+                            journal.onScheduled(job);
+                            submit(job);
+                        }
                     } catch (IOException exception) {
                         Logging.get().error(exception);
+                        continue;
                     }
+                    if (!files[i].delete())
+                        Logging.get().error("Failed to delete " + files[i].getAbsolutePath());
                 }
             }
         }
@@ -244,14 +502,14 @@ public class KernelJobExecutor implements JobExecutionService, ManagedService, H
     /**
      * Tries to reload a job
      *
-     * @param file    The job's file
-     * @param content The job's content
+     * @param content The job's serialized definition
+     * @return The reloaded job, or null if it cannot be reloaded
      */
-    private void reloadJob(File file, String content) {
+    private Job reloadJob(String content) {
         ASTNode definition = Json.parse(Logging.get(), content);
         if (definition == null) {
-            Logging.get().error("Failed to parse the job " + file.getAbsolutePath());
-            return;
+            Logging.get().error("Failed to parse the job " + content);
+            return null;
         }
         String type = null;
         for (ASTNode member : definition.getChildren()) {
@@ -268,18 +526,17 @@ public class KernelJobExecutor implements JobExecutionService, ManagedService, H
             }
         }
         if (type == null) {
-            Logging.get().error("Unknown job type " + file);
-            return;
+            Logging.get().error("Unknown job type " + content);
+            return null;
         }
         Collection<JobFactory> factories = Register.getComponents(JobFactory.class);
         for (JobFactory factory : factories) {
             Job job = factory.newJob(type, definition);
-            if (job != null) {
-                executorPool.execute(job);
-                return;
-            }
+            if (job != null)
+                return job;
         }
-        Logging.get().error("Could not find a factory for job " + file.getAbsolutePath());
+        Logging.get().error("Could not find a factory for job of type " + type);
+        return null;
     }
 
     @Override
@@ -303,7 +560,7 @@ public class KernelJobExecutor implements JobExecutionService, ManagedService, H
         synchronized (initQueue) {
             canExecute.set(true);
             while (!initQueue.isEmpty()) {
-                executorPool.execute(initQueue.poll());
+                submit((Job) initQueue.poll());
             }
         }
     }
@@ -313,6 +570,7 @@ public class KernelJobExecutor implements JobExecutionService, ManagedService, H
         if (executorPool != null) {
             executorPool.shutdownNow();
         }
+        journal.close();
     }
 
     @Override
@@ -322,7 +580,13 @@ public class KernelJobExecutor implements JobExecutionService, ManagedService, H
 
     @Override
     public Collection<Metric> getMetrics() {
-        return Arrays.asList(METRIC_TOTAL_PROCESSED_JOBS, METRIC_SCHEDULED_JOBS, METRIC_EXECUTING_JOBS);
+        List<Metric> result = new ArrayList<>();
+        result.add(METRIC_TOTAL_PROCESSED_JOBS);
+        result.add(METRIC_SCHEDULED_JOBS);
+        result.add(METRIC_EXECUTING_JOBS);
+        for (KernelJobScheduler.Lane lane : scheduler.getLanes())
+            result.add(lane.getMetric());
+        return result;
     }
 
     @Override
@@ -330,31 +594,23 @@ public class KernelJobExecutor implements JobExecutionService, ManagedService, H
         if (metric == METRIC_TOTAL_PROCESSED_JOBS)
             return new MetricSnapshotLong(executorPool.getCompletedTaskCount());
         if (metric == METRIC_SCHEDULED_JOBS)
-            return new MetricSnapshotInt(executorPool.getQueue().size());
+            return new MetricSnapshotInt(scheduler.size() + overflow.size());
         if (metric == METRIC_EXECUTING_JOBS)
             return new MetricSnapshotInt(executorPool.getActiveCount());
+        for (KernelJobScheduler.Lane lane : scheduler.getLanes()) {
+            if (metric == lane.getMetric())
+                return new MetricSnapshotLong(scheduler.getAverageWaitTime(lane));
+        }
         return null;
     }
 
     @Override
     public Reply schedule(Job job) {
-        boolean exists = storage.exists();
-        if (!exists) {
-            exists = storage.mkdirs();
-        }
-        if (exists) {
-            try (Writer write = IOUtils.getWriter(new File(storage, getFileName(job)).getAbsolutePath())) {
-                write.write(job.serializedJSON());
-            } catch (IOException exception) {
-                Logging.get().error(exception);
-            }
-        } else {
-            Logging.get().error("Cannot serialize the job, storage is inaccessible");
-        }
         job.onScheduled();
+        journal.onScheduled(job);
         synchronized (initQueue) {
             if (canExecute.get()) {
-                executorPool.execute(job);
+                submit(job);
             } else {
                 initQueue.add(job);
             }
@@ -372,16 +628,21 @@ public class KernelJobExecutor implements JobExecutionService, ManagedService, H
         if (!reply.isSuccess())
             return reply;
 
-        boolean success = executorPool.remove(job);
+        boolean success = executorPool.remove(job) || overflow.remove(job);
         if (success) {
-            // the job was queued and prevented from running
+            // the job was queued and prevented from running, its room is given to the jobs in overflow
+            drainOverflow();
             job.onTerminated(true);
+            journal.onFinished(job);
+            onJobTerminated(job);
             return ReplySuccess.instance();
         }
         switch (job.getStatus()) {
             case Unscheduled:
             case Scheduled:
                 job.onTerminated(true);
+                journal.onFinished(job);
+                onJobTerminated(job);
                 return ReplySuccess.instance();
             case Running:
                 return job.cancel();
@@ -401,11 +662,15 @@ public class KernelJobExecutor implements JobExecutionService, ManagedService, H
         if (securityService == null)
             return result;
 
-        for (Runnable runnable : executorPool.getQueue()) {
+        for (Runnable runnable : scheduler) {
             Job job = (Job) runnable;
             if (securityService.checkAction(ACTION_GET_JOBS, job).isSuccess())
                 result.add(job);
         }
+        for (Job job : overflow) {
+            if (securityService.checkAction(ACTION_GET_JOBS, job).isSuccess())
+                result.add(job);
+        }
         return Collections.unmodifiableList(result);
     }
 
@@ -473,10 +738,13 @@ public class KernelJobExecutor implements JobExecutionService, ManagedService, H
     }
 
     @Override
-    public int canHandle(HttpApiRequest request) {
-        return request.getUri().startsWith(apiUri)
-                ? HttpApiService.PRIORITY_NORMAL
-                : HttpApiService.CANNOT_HANDLE;
+    public HttpApiRoute[] getRoutes() {
+        return new HttpApiRoute[]{
+                routeJobs,
+                routeJob,
+                routeJobCancel,
+                routeJobAwait
+        };
     }
 
     @Override
@@ -486,35 +754,30 @@ public class KernelJobExecutor implements JobExecutionService, ManagedService, H
 
     @Override
     public HttpResponse handle(SecurityService securityService, HttpApiRequest request) {
-        if (request.getUri().equals(apiUri)) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
+        HttpApiRoute route = request.getRoute();
+        if (route == routeJobs)
             return onRequestJobs();
-        }
-
-        if (request.getUri().startsWith(apiUri)) {
-            String rest = request.getUri().substring(apiUri.length() + 1);
-            if (rest.isEmpty())
-                return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-            int index = rest.indexOf("/");
-            String jobId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-            if (index < 0) {
-                if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-                Job job = getJob(jobId, JobStatus.Completed);
-                if (job == null)
-                    return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-                return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, job.serializedJSON());
-            } else if (rest.substring(index).equals("/cancel")) {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                Job job = getJob(jobId, JobStatus.Completed);
-                if (job == null)
-                    return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-                return ReplyUtils.toHttpResponse(cancel(job));
+        if (route != routeJob && route != routeJobCancel && route != routeJobAwait)
+            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+        Job job = getJob(request.getPathParameter("jobId"), JobStatus.Completed);
+        if (job == null)
+            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+        if (route == routeJobCancel)
+            return ReplyUtils.toHttpResponse(cancel(job));
+        if (route == routeJobAwait) {
+            long timeout = awaitMaxTimeout;
+            String value = request.getParameter("timeout");
+            if (value != null) {
+                try {
+                    timeout = Math.min(Long.parseLong(value), awaitMaxTimeout);
+                } catch (NumberFormatException exception) {
+                    return new HttpResponse(HttpURLConnection.HTTP_BAD_REQUEST, HttpConstants.MIME_TEXT_PLAIN, "Expected a number of milliseconds for the timeout");
+                }
             }
+            if (timeout > 0)
+                awaitJob(job, timeout);
         }
-        return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, job.serializedJSON());
     }
 
     @Override
@@ -559,11 +822,15 @@ public class KernelJobExecutor implements JobExecutionService, ManagedService, H
      * @return The job, or null if it is not found
      */
     private Job getJobScheduled(String identifier) {
-        for (Runnable runnable : executorPool.getQueue()) {
+        for (Runnable runnable : scheduler) {
             Job job = (Job) runnable;
             if (job.getIdentifier().equals(identifier))
                 return job;
         }
+        for (Job job : overflow) {
+            if (job.getIdentifier().equals(identifier))
+                return job;
+        }
         return null;
     }
 
@@ -638,17 +905,7 @@ public class KernelJobExecutor implements JobExecutionService, ManagedService, H
     }
 
     /**
-     * Gets the file name for a job
-     *
-     * @param job The job
-     * @return The file name
-     */
-    private static String getFileName(Job job) {
-        return "job-" + SHA1.hashSHA1(job.getIdentifier()) + ".json";
-    }
-
-    /**
-     * Gets whether a file name is a serialized job
+     * Gets whether a file name is a job serialized by a previous version
      *
      * @param name The name of a file
      * @return Whether this is a serialized job
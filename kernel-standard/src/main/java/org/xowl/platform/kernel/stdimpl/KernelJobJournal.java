@@ -0,0 +1,520 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.kernel.stdimpl;
+
+import fr.cenotelie.commons.utils.IOUtils;
+import fr.cenotelie.commons.utils.logging.Logging;
+import org.xowl.platform.kernel.jobs.Job;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Implements an append-only journal of the jobs' transitions
+ * The journal is split into segments of bounded size.
+ * When a segment is full, a new one is started and the previous ones are compacted in the background
+ * into a single segment that only contains the pending jobs and the history of the completed jobs.
+ * By default, the records are forced to the storage device in groups, at a fixed interval and outside of the journal's lock.
+ * Forcing each record as it is written is opt-in.
+ *
+ * @author Laurent Wouters
+ */
+class KernelJobJournal {
+    /**
+     * Record for a job that has been scheduled
+     */
+    private static final byte RECORD_SCHEDULED = 1;
+    /**
+     * Record for a job that is running
+     */
+    private static final byte RECORD_RUNNING = 2;
+    /**
+     * Record for a job that is finished
+     */
+    private static final byte RECORD_FINISHED = 3;
+    /**
+     * The prefix for the names of the segment files
+     */
+    private static final String SEGMENT_PREFIX = "journal-";
+    /**
+     * The suffix for the names of the segment files
+     */
+    private static final String SEGMENT_SUFFIX = ".log";
+    /**
+     * The size of the header of a record (length and checksum)
+     */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /**
+     * The directory for the segments
+     */
+    private final File directory;
+    /**
+     * The size of a segment beyond which a new one is started
+     */
+    private final long segmentSize;
+    /**
+     * The maximum number of completed jobs to remember
+     */
+    private final int historySize;
+    /**
+     * Whether to force each record to the storage device when it is written
+     */
+    private final boolean sync;
+    /**
+     * The executor that periodically forces the written records to the storage device, if any
+     */
+    private final ScheduledExecutorService flusher;
+    /**
+     * The serialized definitions of the pending jobs
+     */
+    private final Map<String, String> pending;
+    /**
+     * The serialized definitions of the completed jobs, from the oldest to the most recent
+     */
+    private final LinkedHashMap<String, String> history;
+    /**
+     * Whether a compaction is in progress
+     */
+    private final AtomicBoolean isCompacting;
+    /**
+     * The sequence number of the active segment
+     */
+    private long activeSequence;
+    /**
+     * The channel to the active segment
+     */
+    private FileChannel activeChannel;
+    /**
+     * Whether records have been written to the active segment since it was last forced to the storage device
+     */
+    private boolean dirty;
+
+    /**
+     * Initializes this journal and replays the existing segments
+     *
+     * @param directory    The directory for the segments
+     * @param segmentSize  The size of a segment beyond which a new one is started
+     * @param historySize  The maximum number of completed jobs to remember
+     * @param sync         Whether to force each record to the storage device when it is written
+     * @param syncInterval The interval in milliseconds at which the written records are forced to the storage device, or 0 to leave it to the system
+     */
+    public KernelJobJournal(File directory, long segmentSize, int historySize, boolean sync, long syncInterval) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.historySize = historySize;
+        this.sync = sync;
+        this.dirty = false;
+        this.pending = new LinkedHashMap<>();
+        this.history = new LinkedHashMap<>();
+        this.isCompacting = new AtomicBoolean(false);
+        this.activeSequence = 0;
+        if (!directory.exists() && !directory.mkdirs())
+            Logging.get().error("Cannot create the job journal, storage is inaccessible");
+        List<Long> sequences = getSegments();
+        for (Long sequence : sequences)
+            replay(getSegmentFile(sequence));
+        if (!sequences.isEmpty())
+            activeSequence = sequences.get(sequences.size() - 1);
+        synchronized (this) {
+            openNextSegment();
+        }
+        // compact what was replayed
+        if (!sequences.isEmpty())
+            compactAsync();
+        if (!sync && syncInterval > 0) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, KernelJobJournal.class.getCanonicalName() + ".Flusher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.flusher.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    /**
+     * Gets the serialized definitions of the pending jobs, as replayed from the journal
+     *
+     * @return The serialized definitions of the pending jobs
+     */
+    public synchronized Collection<String> getPending() {
+        return new ArrayList<>(pending.values());
+    }
+
+    /**
+     * Gets the serialized definitions of the completed jobs, as replayed from the journal
+     *
+     * @return The serialized definitions of the completed jobs, from the oldest to the most recent
+     */
+    public synchronized Collection<String> getHistory() {
+        return new ArrayList<>(history.values());
+    }
+
+    /**
+     * Records that a job has been scheduled
+     *
+     * @param job The job
+     */
+    public void onScheduled(Job job) {
+        String definition = job.serializedJSON();
+        FileChannel channel;
+        synchronized (this) {
+            pending.put(job.getIdentifier(), definition);
+            channel = append(RECORD_SCHEDULED, job.getIdentifier(), definition);
+        }
+        if (sync)
+            force(channel);
+    }
+
+    /**
+     * Records that a job is running
+     *
+     * @param job The job
+     */
+    public void onRunning(Job job) {
+        FileChannel channel;
+        synchronized (this) {
+            channel = append(RECORD_RUNNING, job.getIdentifier(), "");
+        }
+        if (sync)
+            force(channel);
+    }
+
+    /**
+     * Records that a job is finished
+     *
+     * @param job The job
+     */
+    public void onFinished(Job job) {
+        String definition = job.serializedJSON();
+        FileChannel channel;
+        synchronized (this) {
+            applyFinished(job.getIdentifier(), definition);
+            channel = append(RECORD_FINISHED, job.getIdentifier(), definition);
+        }
+        if (sync)
+            force(channel);
+    }
+
+    /**
+     * Closes this journal
+     */
+    public void close() {
+        if (flusher != null)
+            flusher.shutdownNow();
+        synchronized (this) {
+            if (activeChannel == null)
+                return;
+            try {
+                activeChannel.force(false);
+                activeChannel.close();
+            } catch (IOException exception) {
+                Logging.get().error(exception);
+            }
+            activeChannel = null;
+        }
+    }
+
+    /**
+     * Forces the records written since the last flush to the storage device
+     * The records of all the writers in the interval are forced together, outside of the journal's lock.
+     */
+    private void flush() {
+        FileChannel channel;
+        synchronized (this) {
+            if (!dirty || activeChannel == null)
+                return;
+            dirty = false;
+            channel = activeChannel;
+        }
+        force(channel);
+    }
+
+    /**
+     * Forces the written records of a segment to the storage device
+     *
+     * @param channel The channel to the segment, if any
+     */
+    private static void force(FileChannel channel) {
+        if (channel == null)
+            return;
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException exception) {
+            // the segment has been forced when it was closed
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+        }
+    }
+
+    /**
+     * Applies a record for a finished job to the state
+     *
+     * @param identifier The job's identifier
+     * @param definition The job's serialized definition
+     */
+    private void applyFinished(String identifier, String definition) {
+        pending.remove(identifier);
+        history.remove(identifier);
+        history.put(identifier, definition);
+        if (history.size() > historySize) {
+            Iterator<String> iterator = history.keySet().iterator();
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Appends a record to the active segment
+     * This method must be called while holding the lock on this journal.
+     *
+     * @param type       The record's type
+     * @param identifier The job's identifier
+     * @param definition The job's serialized definition, if any
+     * @return The channel to the segment the record has been written to, or null if it could not be written
+     */
+    private FileChannel append(byte type, String identifier, String definition) {
+        if (activeChannel == null)
+            return null;
+        FileChannel channel = activeChannel;
+        try {
+            channel.write(encode(type, identifier, definition));
+            dirty = true;
+            if (channel.size() >= segmentSize) {
+                channel.force(false);
+                channel.close();
+                dirty = false;
+                openNextSegment();
+                compactAsync();
+            }
+            return channel;
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+            return null;
+        }
+    }
+
+    /**
+     * Opens the next segment as the active one
+     * This method must be called while holding the lock on this journal.
+     */
+    private void openNextSegment() {
+        activeSequence++;
+        try {
+            activeChannel = FileChannel.open(getSegmentFile(activeSequence).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+            activeChannel = null;
+        }
+    }
+
+    /**
+     * Launches the compaction of the inactive segments in the background, if none is in progress
+     */
+    private void compactAsync() {
+        if (!isCompacting.compareAndSet(false, true))
+            return;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact();
+                } finally {
+                    isCompacting.set(false);
+                }
+            }
+        }, KernelJobJournal.class.getCanonicalName() + ".Compaction");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Compacts the inactive segments into a single one
+     * The state captured here may include records in the active segment.
+     * This is harmless because replaying a record is idempotent.
+     */
+    private void compact() {
+        long target;
+        List<ByteBuffer> records = new ArrayList<>();
+        synchronized (this) {
+            target = activeSequence - 1;
+            for (Map.Entry<String, String> entry : history.entrySet())
+                records.add(encode(RECORD_FINISHED, entry.getKey(), entry.getValue()));
+            for (Map.Entry<String, String> entry : pending.entrySet())
+                records.add(encode(RECORD_SCHEDULED, entry.getKey(), entry.getValue()));
+        }
+        if (target <= 0)
+            return;
+        File temporary = new File(directory, SEGMENT_PREFIX + target + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ByteBuffer record : records)
+                channel.write(record);
+            channel.force(false);
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+            return;
+        }
+        try {
+            Files.move(temporary.toPath(), getSegmentFile(target).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+            return;
+        }
+        for (Long sequence : getSegments()) {
+            if (sequence < target && !getSegmentFile(sequence).delete())
+                Logging.get().error("Failed to delete " + getSegmentFile(sequence).getAbsolutePath());
+        }
+    }
+
+    /**
+     * Replays the records of a segment
+     * The replay stops at the first incomplete or corrupted record.
+     *
+     * @param file The segment's file
+     */
+    private void replay(File file) {
+        try (DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = stream.readInt();
+                } catch (EOFException exception) {
+                    return;
+                }
+                long checksum = stream.readInt() & 0xFFFFFFFFL;
+                byte[] body = new byte[length];
+                stream.readFully(body);
+                crc.reset();
+                crc.update(body, 0, length);
+                if (crc.getValue() != checksum) {
+                    Logging.get().error("Corrupted record in the job journal " + file.getAbsolutePath());
+                    return;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+                byte type = record.readByte();
+                String identifier = record.readUTF();
+                byte[] definition = new byte[record.readInt()];
+                record.readFully(definition);
+                switch (type) {
+                    case RECORD_SCHEDULED:
+                        pending.put(identifier, new String(definition, IOUtils.CHARSET));
+                        break;
+                    case RECORD_FINISHED:
+                        applyFinished(identifier, new String(definition, IOUtils.CHARSET));
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (EOFException exception) {
+            Logging.get().error("Incomplete record in the job journal " + file.getAbsolutePath());
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+        }
+    }
+
+    /**
+     * Encodes a record
+     *
+     * @param type       The record's type
+     * @param identifier The job's identifier
+     * @param definition The job's serialized definition
+     * @return The buffer for the encoded record, ready to be written
+     */
+    private static ByteBuffer encode(byte type, String identifier, String definition) {
+        byte[] bytesDefinition = definition.getBytes(IOUtils.CHARSET);
+        ByteArrayOutputStream body = new ByteArrayOutputStream(bytesDefinition.length + identifier.length() + 16);
+        try (DataOutputStream stream = new DataOutputStream(body)) {
+            stream.writeByte(type);
+            stream.writeUTF(identifier);
+            stream.writeInt(bytesDefinition.length);
+            stream.write(bytesDefinition);
+        } catch (IOException exception) {
+            // cannot happen with an in-memory stream
+            Logging.get().error(exception);
+        }
+        byte[] bytesBody = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytesBody, 0, bytesBody.length);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + bytesBody.length);
+        buffer.putInt(bytesBody.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(bytesBody);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Gets the file for a segment
+     *
+     * @param sequence The segment's sequence number
+     * @return The segment's file
+     */
+    private File getSegmentFile(long sequence) {
+        return new File(directory, SEGMENT_PREFIX + sequence + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Gets the sequence numbers of the existing segments, in ascending order
+     *
+     * @return The sequence numbers of the existing segments
+     */
+    private List<Long> getSegments() {
+        List<Long> result = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files == null)
+            return result;
+        for (int i = 0; i != files.length; i++) {
+            String name = files[i].getName();
+            if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX))
+                continue;
+            try {
+                result.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            } catch (NumberFormatException exception) {
+                Logging.get().error("Unexpected file in the job journal " + files[i].getAbsolutePath());
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+}
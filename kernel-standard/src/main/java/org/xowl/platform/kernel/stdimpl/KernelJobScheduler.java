@@ -0,0 +1,618 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.kernel.stdimpl;
+
+import fr.cenotelie.commons.utils.collections.Couple;
+import fr.cenotelie.commons.utils.ini.IniDocument;
+import fr.cenotelie.commons.utils.ini.IniSection;
+import fr.cenotelie.commons.utils.logging.Logging;
+import fr.cenotelie.commons.utils.metrics.Metric;
+import fr.cenotelie.commons.utils.metrics.MetricBase;
+import org.xowl.platform.kernel.jobs.Job;
+import org.xowl.platform.kernel.jobs.JobExecutionService;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Implements the scheduling of the waiting jobs for the job executor
+ * Jobs are dispatched into lanes according to their type.
+ * The lanes are served in a weighted round-robin fashion and can be limited in their number of running jobs,
+ * so that a burst of heavy jobs in a lane cannot monopolise the pool of executors.
+ * Within a lane, the jobs of different owners are served in a round-robin fashion.
+ *
+ * @author Laurent Wouters
+ */
+class KernelJobScheduler extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+    /**
+     * The name of the default lane
+     */
+    private static final String LANE_DEFAULT = "default";
+    /**
+     * The prefix for the names of the configuration sections that define the lanes
+     */
+    private static final String LANE_SECTION_PREFIX = "lanes.";
+
+    /**
+     * A job waiting in a lane
+     */
+    private static class Entry {
+        /**
+         * The waiting job
+         */
+        public final Job job;
+        /**
+         * The timestamp when the job entered the lane
+         */
+        public final long timestamp;
+
+        /**
+         * Initializes this entry
+         *
+         * @param job The waiting job
+         */
+        public Entry(Job job) {
+            this.job = job;
+            this.timestamp = System.nanoTime();
+        }
+    }
+
+    /**
+     * A scheduling lane
+     */
+    static class Lane {
+        /**
+         * The lane's name
+         */
+        private final String name;
+        /**
+         * The lane's relative weight for the share of executors
+         */
+        private final int weight;
+        /**
+         * The maximum number of waiting jobs in this lane
+         */
+        private final int bound;
+        /**
+         * The maximum number of running jobs from this lane, or 0 for no limit
+         */
+        private final int maxRunning;
+        /**
+         * The metric for the waiting time of jobs in this lane
+         */
+        private final Metric metric;
+        /**
+         * The waiting jobs for each owner
+         */
+        private final Map<String, Deque<Entry>> queues;
+        /**
+         * The owners with waiting jobs, in their round-robin order
+         */
+        private final Deque<String> owners;
+        /**
+         * The number of waiting jobs in this lane
+         */
+        private int size;
+        /**
+         * The number of running jobs from this lane
+         */
+        private int running;
+        /**
+         * The current weight of this lane for the weighted round-robin
+         */
+        private int currentWeight;
+        /**
+         * The total waiting time of the jobs that left this lane, in nanoseconds
+         */
+        private long waitTotal;
+        /**
+         * The number of jobs that left this lane
+         */
+        private long waitCount;
+
+        /**
+         * Initializes this lane
+         *
+         * @param name       The lane's name
+         * @param weight     The lane's relative weight for the share of executors
+         * @param bound      The maximum number of waiting jobs in this lane
+         * @param maxRunning The maximum number of running jobs from this lane, or 0 for no limit
+         */
+        public Lane(String name, int weight, int bound, int maxRunning) {
+            this.name = name;
+            this.weight = weight;
+            this.bound = bound;
+            this.maxRunning = maxRunning;
+            this.metric = new MetricBase(JobExecutionService.class.getCanonicalName() + ".QueueWaitTime." + name,
+                    "Job Execution Service - Average queue wait time - " + name,
+                    "ms",
+                    1000000000,
+                    new Couple<>(Metric.HINT_IS_NUMERIC, "true"),
+                    new Couple<>(Metric.HINT_MIN_VALUE, "0"));
+            this.queues = new HashMap<>();
+            this.owners = new ArrayDeque<>();
+        }
+
+        /**
+         * Gets the lane's name
+         *
+         * @return The lane's name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the metric for the waiting time of jobs in this lane
+         *
+         * @return The metric for the waiting time of jobs in this lane
+         */
+        public Metric getMetric() {
+            return metric;
+        }
+
+        /**
+         * Gets whether a job from this lane can be run
+         *
+         * @return Whether a job from this lane can be run
+         */
+        private boolean isEligible() {
+            return size > 0 && (maxRunning <= 0 || running < maxRunning);
+        }
+
+        /**
+         * Enqueues a job in this lane
+         *
+         * @param job The job
+         */
+        private void enqueue(Job job) {
+            String owner = getOwnerOf(job);
+            Deque<Entry> queue = queues.get(owner);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                queues.put(owner, queue);
+                owners.add(owner);
+            }
+            queue.add(new Entry(job));
+            size++;
+        }
+
+        /**
+         * Dequeues the next job for the next owner in this lane
+         *
+         * @return The dequeued entry
+         */
+        private Entry dequeue() {
+            String owner = owners.poll();
+            Deque<Entry> queue = queues.get(owner);
+            Entry entry = queue.poll();
+            if (queue.isEmpty())
+                queues.remove(owner);
+            else
+                owners.add(owner);
+            size--;
+            return entry;
+        }
+
+        /**
+         * Removes a job from this lane
+         *
+         * @param job The job to remove
+         * @return Whether the job was in this lane
+         */
+        private boolean remove(Job job) {
+            String owner = getOwnerOf(job);
+            Deque<Entry> queue = queues.get(owner);
+            if (queue == null)
+                return false;
+            Iterator<Entry> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().job == job) {
+                    iterator.remove();
+                    size--;
+                    if (queue.isEmpty()) {
+                        queues.remove(owner);
+                        owners.remove(owner);
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Gets the average waiting time of the jobs that left this lane
+         *
+         * @return The average waiting time in milliseconds
+         */
+        private long getAverageWaitTime() {
+            return waitCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitTotal / waitCount);
+        }
+    }
+
+    /**
+     * The lanes
+     */
+    private final List<Lane> lanes;
+    /**
+     * The lanes for the job types
+     */
+    private final Map<String, Lane> lanesByType;
+    /**
+     * The default lane
+     */
+    private final Lane laneDefault;
+    /**
+     * The lock for this scheduler
+     */
+    private final ReentrantLock lock;
+    /**
+     * Condition signalled when a job may be dequeued
+     */
+    private final Condition notEmpty;
+    /**
+     * Condition signalled when a job may be enqueued
+     */
+    private final Condition notFull;
+    /**
+     * The total number of waiting jobs
+     */
+    private int count;
+
+    /**
+     * Initializes this scheduler
+     *
+     * @param configuration The configuration for the job executor
+     * @param defaultBound  The maximum number of waiting jobs in a lane when not specified
+     */
+    public KernelJobScheduler(IniDocument configuration, int defaultBound) {
+        this.lanes = new ArrayList<>();
+        this.lanesByType = new HashMap<>();
+        Lane laneDefault = null;
+        for (IniSection section : configuration.getSections()) {
+            if (section.getName() == null || !section.getName().startsWith(LANE_SECTION_PREFIX))
+                continue;
+            Lane lane = loadLane(section, defaultBound);
+            lanes.add(lane);
+            if (LANE_DEFAULT.equals(lane.name))
+                laneDefault = lane;
+            for (String type : section.getAll("jobType"))
+                lanesByType.put(type, lane);
+        }
+        if (laneDefault == null) {
+            laneDefault = new Lane(LANE_DEFAULT, 1, defaultBound, 0);
+            lanes.add(laneDefault);
+        }
+        this.laneDefault = laneDefault;
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+        this.notFull = lock.newCondition();
+        this.count = 0;
+    }
+
+    /**
+     * Loads the definition of a lane
+     *
+     * @param section      The configuration section for the lane
+     * @param defaultBound The maximum number of waiting jobs in the lane when not specified
+     * @return The lane
+     */
+    private static Lane loadLane(IniSection section, int defaultBound) {
+        String name = section.getName().substring(LANE_SECTION_PREFIX.length());
+        int weight = 1;
+        int bound = defaultBound;
+        int maxRunning = 0;
+        try {
+            String value = section.get("weight");
+            if (value != null)
+                weight = Math.max(1, Integer.parseInt(value));
+            value = section.get("queueBound");
+            if (value != null)
+                bound = Integer.parseInt(value);
+            value = section.get("maxRunning");
+            if (value != null)
+                maxRunning = Integer.parseInt(value);
+        } catch (NumberFormatException exception) {
+            Logging.get().error(exception);
+        }
+        return new Lane(name, weight, bound, maxRunning);
+    }
+
+    /**
+     * Gets the scheduling lanes
+     *
+     * @return The scheduling lanes
+     */
+    public Collection<Lane> getLanes() {
+        return Collections.unmodifiableList(lanes);
+    }
+
+    /**
+     * Gets the average waiting time of the jobs that left a lane
+     *
+     * @param lane The lane
+     * @return The average waiting time in milliseconds
+     */
+    public long getAverageWaitTime(Lane lane) {
+        lock.lock();
+        try {
+            return lane.getAverageWaitTime();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * When a job dequeued from this scheduler has finished running
+     *
+     * @param job The finished job
+     */
+    public void onJobFinished(Job job) {
+        lock.lock();
+        try {
+            Lane lane = getLaneFor(job);
+            if (lane.running > 0)
+                lane.running--;
+            // a job in a capped lane may now be eligible
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the lane for a job
+     *
+     * @param job The job
+     * @return The lane for the job
+     */
+    private Lane getLaneFor(Job job) {
+        Lane lane = lanesByType.get(job.getJobType());
+        return lane != null ? lane : laneDefault;
+    }
+
+    /**
+     * Gets the identifier of the owner of a job
+     *
+     * @param job The job
+     * @return The identifier of the owner
+     */
+    private static String getOwnerOf(Job job) {
+        return job.getOwner() == null ? "" : job.getOwner().getIdentifier();
+    }
+
+    /**
+     * Dequeues the next job to run, if any
+     * This method must be called while holding the lock.
+     *
+     * @return The next job to run, or null if there is none
+     */
+    private Job dequeueNext() {
+        // smooth weighted round-robin over the eligible lanes
+        Lane selected = null;
+        int totalWeight = 0;
+        for (Lane lane : lanes) {
+            if (!lane.isEligible())
+                continue;
+            lane.currentWeight += lane.weight;
+            totalWeight += lane.weight;
+            if (selected == null || lane.currentWeight > selected.currentWeight)
+                selected = lane;
+        }
+        if (selected == null)
+            return null;
+        selected.currentWeight -= totalWeight;
+        Entry entry = selected.dequeue();
+        selected.running++;
+        selected.waitTotal += System.nanoTime() - entry.timestamp;
+        selected.waitCount++;
+        count--;
+        notFull.signal();
+        return entry.job;
+    }
+
+    @Override
+    public boolean offer(Runnable runnable) {
+        // only the jobs are scheduled, the other tasks given to the pool of executors start new threads
+        if (!(runnable instanceof Job))
+            return false;
+        Job job = (Job) runnable;
+        lock.lock();
+        try {
+            Lane lane = getLaneFor(job);
+            if (lane.size >= lane.bound)
+                return false;
+            lane.enqueue(job);
+            count++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable runnable, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (!offer(runnable)) {
+                if (nanos <= 0)
+                    return false;
+                nanos = notFull.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(Runnable runnable) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (!offer(runnable))
+                notFull.await();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return dequeueNext();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            Job job = dequeueNext();
+            while (job == null) {
+                if (nanos <= 0)
+                    return null;
+                nanos = notEmpty.awaitNanos(nanos);
+                job = dequeueNext();
+            }
+            return job;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            Job job = dequeueNext();
+            while (job == null) {
+                notEmpty.await();
+                job = dequeueNext();
+            }
+            return job;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        // gets a waiting job, not necessarily the next one to run
+        lock.lock();
+        try {
+            for (Lane lane : lanes) {
+                if (lane.size > 0)
+                    return lane.queues.get(lane.owners.peek()).peek().job;
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        if (!(object instanceof Job))
+            return false;
+        lock.lock();
+        try {
+            if (!getLaneFor((Job) object).remove((Job) object))
+                return false;
+            count--;
+            notFull.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            int result = 0;
+            for (Lane lane : lanes)
+                result += lane.bound - lane.size;
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Iterator<Runnable> iterator() {
+        // iterates over a snapshot of the waiting jobs
+        List<Runnable> result = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Lane lane : lanes) {
+                for (Deque<Entry> queue : lane.queues.values()) {
+                    for (Entry entry : queue)
+                        result.add(entry.job);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return Collections.unmodifiableList(result).iterator();
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> collection) {
+        return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> collection, int maxElements) {
+        lock.lock();
+        try {
+            int result = 0;
+            for (Lane lane : lanes) {
+                while (lane.size > 0 && result < maxElements) {
+                    collection.add(lane.dequeue().job);
+                    count--;
+                    result++;
+                }
+            }
+            if (result > 0)
+                notFull.signalAll();
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
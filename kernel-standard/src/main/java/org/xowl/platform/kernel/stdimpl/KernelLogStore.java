@@ -0,0 +1,648 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.kernel.stdimpl;
+
+import fr.cenotelie.commons.utils.logging.Logger;
+import org.xowl.platform.kernel.platform.PlatformLogMessage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Implements an append-only store of structured log messages on disk.
+ * Messages are appended to segment files, each with an index summarizing its messages by time, level and source.
+ * Queries skip the segments and blocks of messages that cannot match and read the others from memory-mapped files.
+ *
+ * @author Laurent Wouters
+ */
+class KernelLogStore {
+    /**
+     * The names of the log levels, by increasing severity
+     */
+    public static final String[] LEVELS = new String[]{"DEBUG", "INFO", "WARNING", "ERROR"};
+
+    /**
+     * The default size in bytes of a segment
+     */
+    private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+    /**
+     * The default maximum number of segments to keep
+     */
+    private static final int MAX_SEGMENTS = 64;
+    /**
+     * The prefix for the name of the segment files
+     */
+    private static final String SEGMENT_PREFIX = "segment-";
+    /**
+     * The suffix for the data files of the segments
+     */
+    private static final String SUFFIX_DATA = ".log";
+    /**
+     * The suffix for the index files of the segments
+     */
+    private static final String SUFFIX_INDEX = ".idx";
+    /**
+     * The magic number for the index files
+     */
+    private static final int INDEX_MAGIC = 0x786C6F67;
+    /**
+     * The number of messages in a block of a segment
+     */
+    private static final int BLOCK_MESSAGES = 128;
+    /**
+     * The size of the header of a record, after its length: sequence number, timestamp, level, length of the source
+     */
+    private static final int RECORD_HEADER = 8 + 8 + 1 + 2;
+    /**
+     * The size of the buffer for the records waiting to be appended
+     */
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    /**
+     * The charset for the content of the records
+     */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * A segment of the store
+     */
+    private static class Segment {
+        /**
+         * The data file for this segment
+         */
+        public final File fileData;
+        /**
+         * The index file for this segment
+         */
+        public final File fileIndex;
+        /**
+         * The sequence number of the first message in this segment
+         */
+        public final long firstSequence;
+        /**
+         * The size in bytes of the data that can be read
+         */
+        public volatile int size;
+        /**
+         * The number of messages in this segment
+         */
+        private long count;
+        /**
+         * The minimum timestamp of the messages in this segment
+         */
+        private long minTimestamp;
+        /**
+         * The maximum timestamp of the messages in this segment
+         */
+        private long maxTimestamp;
+        /**
+         * The mask of the levels of the messages in this segment
+         */
+        private int levels;
+        /**
+         * The sources of the messages in this segment
+         */
+        private final Set<String> sources;
+        /**
+         * For each block, the maximum timestamp of the messages up to the end of the block
+         */
+        private long[] blockMaxTimestamps;
+        /**
+         * For each block, the offset of its first message
+         */
+        private int[] blockOffsets;
+        /**
+         * The number of blocks
+         */
+        private int blockCount;
+        /**
+         * The read-only mapping of the data, once this segment is sealed
+         */
+        private MappedByteBuffer mapping;
+        /**
+         * Whether this segment is sealed
+         */
+        private boolean sealed;
+
+        /**
+         * Initializes this segment
+         *
+         * @param directory     The parent directory
+         * @param firstSequence The sequence number of the first message in this segment
+         */
+        public Segment(File directory, long firstSequence) {
+            String name = SEGMENT_PREFIX + String.format("%016x", firstSequence);
+            this.fileData = new File(directory, name + SUFFIX_DATA);
+            this.fileIndex = new File(directory, name + SUFFIX_INDEX);
+            this.firstSequence = firstSequence;
+            this.minTimestamp = Long.MAX_VALUE;
+            this.maxTimestamp = Long.MIN_VALUE;
+            this.sources = new HashSet<>();
+            this.blockMaxTimestamps = new long[16];
+            this.blockOffsets = new int[16];
+        }
+
+        /**
+         * Registers a message in the index of this segment
+         *
+         * @param offset    The offset of the message's record
+         * @param timestamp The message's timestamp
+         * @param level     The message's level
+         * @param source    The message's source
+         */
+        public synchronized void onRecord(int offset, long timestamp, int level, String source) {
+            if (count % BLOCK_MESSAGES == 0) {
+                if (blockCount == blockOffsets.length) {
+                    blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2);
+                    blockMaxTimestamps = Arrays.copyOf(blockMaxTimestamps, blockCount * 2);
+                }
+                blockOffsets[blockCount] = offset;
+                blockCount++;
+            }
+            count++;
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+            blockMaxTimestamps[blockCount - 1] = maxTimestamp;
+            levels |= 1 << level;
+            sources.add(source);
+        }
+
+        /**
+         * Gets the number of messages in this segment
+         *
+         * @return The number of messages in this segment
+         */
+        public synchronized long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the offset where to start reading messages that may match a query, or -1 if no message in this segment can match
+         *
+         * @param from     The minimum timestamp
+         * @param to       The maximum timestamp
+         * @param minLevel The minimum level
+         * @param source   The required source, or null
+         * @param after    The sequence number after which messages are required
+         * @return The offset, or -1
+         */
+        public synchronized int getStartFor(long from, long to, int minLevel, String source, long after) {
+            if (count == 0 || maxTimestamp < from || minTimestamp > to)
+                return -1;
+            if ((levels >>> minLevel) == 0)
+                return -1;
+            if (source != null && !sources.contains(source))
+                return -1;
+            if (firstSequence + count - 1 <= after)
+                return -1;
+            int block = 0;
+            if (after >= firstSequence)
+                block = (int) ((after + 1 - firstSequence) / BLOCK_MESSAGES);
+            // the maximum timestamps of the blocks are increasing
+            int low = block;
+            int high = blockCount - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (blockMaxTimestamps[middle] < from)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            return blockOffsets[low];
+        }
+
+        /**
+         * Gets a read-only view of the data of this segment
+         *
+         * @return The data
+         * @throws IOException When mapping the data failed
+         */
+        public ByteBuffer getData() throws IOException {
+            synchronized (this) {
+                if (mapping != null)
+                    return mapping.duplicate();
+                if (sealed) {
+                    mapping = map(fileData, size);
+                    return mapping.duplicate();
+                }
+            }
+            return map(fileData, size);
+        }
+
+        /**
+         * Seals this segment and writes its index
+         *
+         * @throws IOException When writing the index failed
+         */
+        public synchronized void seal() throws IOException {
+            sealed = true;
+            try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileIndex)))) {
+                stream.writeInt(INDEX_MAGIC);
+                stream.writeInt(size);
+                stream.writeLong(count);
+                stream.writeLong(minTimestamp);
+                stream.writeLong(maxTimestamp);
+                stream.writeInt(levels);
+                stream.writeInt(sources.size());
+                for (String source : sources)
+                    stream.writeUTF(source);
+                stream.writeInt(blockCount);
+                for (int i = 0; i != blockCount; i++) {
+                    stream.writeInt(blockOffsets[i]);
+                    stream.writeLong(blockMaxTimestamps[i]);
+                }
+            }
+        }
+
+        /**
+         * Loads the index of this sealed segment
+         *
+         * @return Whether the operation succeeded
+         */
+        public synchronized boolean load() {
+            if (!fileIndex.exists())
+                return false;
+            try (DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(fileIndex)))) {
+                if (stream.readInt() != INDEX_MAGIC)
+                    return false;
+                size = stream.readInt();
+                count = stream.readLong();
+                minTimestamp = stream.readLong();
+                maxTimestamp = stream.readLong();
+                levels = stream.readInt();
+                int sourceCount = stream.readInt();
+                for (int i = 0; i != sourceCount; i++)
+                    sources.add(stream.readUTF());
+                blockCount = stream.readInt();
+                blockOffsets = new int[Math.max(blockCount, 1)];
+                blockMaxTimestamps = new long[Math.max(blockCount, 1)];
+                for (int i = 0; i != blockCount; i++) {
+                    blockOffsets[i] = stream.readInt();
+                    blockMaxTimestamps[i] = stream.readLong();
+                }
+                sealed = size == fileData.length();
+                return sealed;
+            } catch (IOException exception) {
+                return false;
+            }
+        }
+
+        /**
+         * Rebuilds the index of this segment by reading its data
+         * The data is truncated after the last complete record.
+         *
+         * @throws IOException When reading the data failed
+         */
+        public void rebuild() throws IOException {
+            ByteBuffer data = map(fileData, (int) Math.min(fileData.length(), Integer.MAX_VALUE));
+            int offset = 0;
+            while (data.remaining() >= 4) {
+                int length = data.getInt();
+                if (length < RECORD_HEADER + 4 || length > data.remaining())
+                    break;
+                int next = data.position() + length;
+                data.getLong();
+                long timestamp = data.getLong();
+                int level = data.get();
+                int sourceLength = data.getShort() & 0xFFFF;
+                if (level < 0 || level >= LEVELS.length || sourceLength > next - data.position())
+                    break;
+                String source = readString(data, sourceLength);
+                onRecord(offset, timestamp, level, source);
+                data.position(next);
+                offset = next;
+            }
+            size = offset;
+            if (fileData.length() != offset) {
+                try (RandomAccessFile file = new RandomAccessFile(fileData, "rw")) {
+                    file.setLength(offset);
+                }
+            }
+        }
+
+        /**
+         * Deletes the files of this segment
+         *
+         * @param logger The logger for the failures
+         */
+        public void delete(Logger logger) {
+            if (!fileIndex.delete() && fileIndex.exists())
+                logger.error("Failed to delete " + fileIndex.getAbsolutePath());
+            if (!fileData.delete() && fileData.exists())
+                logger.error("Failed to delete " + fileData.getAbsolutePath());
+        }
+    }
+
+    /**
+     * The directory for the segments
+     */
+    private final File directory;
+    /**
+     * The logger for the failures of this store, which cannot be reported through the logging service itself
+     */
+    private final Logger fallback;
+    /**
+     * The size in bytes beyond which a segment is sealed
+     */
+    private final int segmentSize;
+    /**
+     * The maximum number of segments to keep
+     */
+    private final int maxSegments;
+    /**
+     * The segments, from the oldest to the most recent one
+     */
+    private final List<Segment> segments;
+    /**
+     * The buffer of the records waiting to be appended
+     */
+    private final ByteBuffer buffer;
+    /**
+     * The segment being appended
+     */
+    private Segment active;
+    /**
+     * The channel for appending to the active segment
+     */
+    private FileChannel channel;
+    /**
+     * The offset of the end of the active segment, including the records still in the buffer
+     */
+    private int end;
+    /**
+     * The sequence number of the next message
+     */
+    private long nextSequence;
+
+    /**
+     * Initializes this store
+     *
+     * @param directory   The directory for the segments
+     * @param segmentSize The size in bytes beyond which a segment is sealed
+     * @param maxSegments The maximum number of segments to keep
+     * @param fallback    The logger for the failures of this store
+     */
+    public KernelLogStore(File directory, int segmentSize, int maxSegments, Logger fallback) {
+        this.directory = directory;
+        this.fallback = fallback;
+        this.segmentSize = segmentSize > 0 ? segmentSize : SEGMENT_SIZE;
+        this.maxSegments = maxSegments > 0 ? maxSegments : MAX_SEGMENTS;
+        this.segments = new CopyOnWriteArrayList<>();
+        this.buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        File[] files = directory.listFiles();
+        if (files == null)
+            return;
+        Arrays.sort(files);
+        for (int i = 0; i != files.length; i++) {
+            String name = files[i].getName();
+            if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SUFFIX_DATA))
+                continue;
+            long firstSequence;
+            try {
+                firstSequence = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SUFFIX_DATA.length()), 16);
+            } catch (NumberFormatException exception) {
+                continue;
+            }
+            Segment segment = new Segment(directory, firstSequence);
+            try {
+                if (!segment.load()) {
+                    // the segment was not sealed, probably the active segment of the previous run
+                    segment = new Segment(directory, firstSequence);
+                    segment.rebuild();
+                    segment.seal();
+                }
+            } catch (IOException exception) {
+                fallback.error(exception);
+                continue;
+            }
+            if (segment.getCount() == 0 || segment.firstSequence < nextSequence) {
+                segment.delete(fallback);
+                continue;
+            }
+            segments.add(segment);
+            nextSequence = segment.firstSequence + segment.getCount();
+        }
+        retain();
+    }
+
+    /**
+     * Gets the sequence number of the next message
+     *
+     * @return The sequence number of the next message
+     */
+    public long getNextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * Appends a message to this store
+     *
+     * @param timestamp The message's timestamp
+     * @param level     The message's level
+     * @param source    The message's source
+     * @param content   The message's content
+     * @throws IOException When writing failed
+     */
+    public void append(long timestamp, String level, String source, String content) throws IOException {
+        byte[] bytesSource = source == null ? new byte[0] : source.getBytes(CHARSET);
+        if (bytesSource.length > 0xFFFF)
+            bytesSource = Arrays.copyOf(bytesSource, 0xFFFF);
+        byte[] bytesContent = content.getBytes(CHARSET);
+        int length = RECORD_HEADER + bytesSource.length + 4 + bytesContent.length;
+        if (active != null && end > 0 && (long) end + 4 + length > segmentSize)
+            roll();
+        if (active == null)
+            open();
+        if (buffer.remaining() < 4 + length)
+            flush();
+        ByteBuffer target = buffer.remaining() >= 4 + length ? buffer : ByteBuffer.allocate(4 + length);
+        int levelIndex = levelOf(level);
+        target.putInt(length);
+        target.putLong(nextSequence);
+        target.putLong(timestamp);
+        target.put((byte) levelIndex);
+        target.putShort((short) bytesSource.length);
+        target.put(bytesSource);
+        target.putInt(bytesContent.length);
+        target.put(bytesContent);
+        active.onRecord(end, timestamp, levelIndex, source);
+        end += 4 + length;
+        nextSequence++;
+        if (target != buffer) {
+            target.flip();
+            while (target.hasRemaining())
+                channel.write(target);
+            active.size = end;
+        }
+    }
+
+    /**
+     * Writes the records waiting to be appended
+     *
+     * @throws IOException When writing failed
+     */
+    public void flush() throws IOException {
+        if (channel == null || buffer.position() == 0)
+            return;
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+        active.size = end;
+    }
+
+    /**
+     * Gets the messages matching a query, ordered by sequence number
+     *
+     * @param from     The minimum timestamp
+     * @param to       The maximum timestamp
+     * @param minLevel The minimum level
+     * @param source   The required source, or null
+     * @param text     The text that the messages must contain, case insensitive, or null
+     * @param after    The sequence number after which messages are required, -1 for all
+     * @param limit    The maximum number of messages to return
+     * @return The matching messages
+     * @throws IOException When reading failed
+     */
+    public List<PlatformLogMessage> query(long from, long to, int minLevel, String source, String text, long after, int limit) throws IOException {
+        List<PlatformLogMessage> result = new ArrayList<>();
+        String textLower = text == null ? null : text.toLowerCase(Locale.ROOT);
+        for (Segment segment : segments) {
+            int start = segment.getStartFor(from, to, minLevel, source, after);
+            if (start < 0)
+                continue;
+            ByteBuffer data = segment.getData();
+            if (start >= data.limit())
+                continue;
+            data.position(start);
+            while (data.remaining() >= 4) {
+                int length = data.getInt();
+                int next = data.position() + length;
+                long sequence = data.getLong();
+                long timestamp = data.getLong();
+                int level = data.get();
+                int sourceLength = data.getShort() & 0xFFFF;
+                if (sequence <= after || timestamp < from || timestamp > to || level < minLevel) {
+                    data.position(next);
+                    continue;
+                }
+                String messageSource = readString(data, sourceLength);
+                if (source != null && !source.equals(messageSource)) {
+                    data.position(next);
+                    continue;
+                }
+                String content = readString(data, data.getInt());
+                data.position(next);
+                if (textLower != null && !content.toLowerCase(Locale.ROOT).contains(textLower))
+                    continue;
+                result.add(new PlatformLogMessage(content, LEVELS[level], new Date(timestamp), messageSource, sequence));
+                if (result.size() >= limit)
+                    return result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the index of a log level
+     *
+     * @param level The name of a log level
+     * @return The index of the level, or -1 if it is unknown
+     */
+    public static int levelOf(String level) {
+        for (int i = 0; i != LEVELS.length; i++) {
+            if (LEVELS[i].equalsIgnoreCase(level))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Opens a new active segment
+     *
+     * @throws IOException When opening failed
+     */
+    private void open() throws IOException {
+        if (!directory.exists() && !directory.mkdirs())
+            throw new IOException("Failed to create directory " + directory.getAbsolutePath());
+        active = new Segment(directory, nextSequence);
+        channel = new FileOutputStream(active.fileData).getChannel();
+        end = 0;
+        segments.add(active);
+        retain();
+    }
+
+    /**
+     * Seals the active segment
+     *
+     * @throws IOException When writing failed
+     */
+    private void roll() throws IOException {
+        flush();
+        channel.close();
+        channel = null;
+        active.seal();
+        active = null;
+    }
+
+    /**
+     * Deletes the oldest segments beyond the maximum number of segments
+     */
+    private void retain() {
+        while (segments.size() > maxSegments) {
+            Segment segment = segments.remove(0);
+            segment.delete(fallback);
+        }
+    }
+
+    /**
+     * Maps the data of a file in memory
+     *
+     * @param file The file
+     * @param size The size of the data to map
+     * @return The mapped data
+     * @throws IOException When mapping failed
+     */
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * Reads a UTF-8 string from a buffer
+     *
+     * @param buffer The buffer
+     * @param length The length of the string in bytes
+     * @return The string
+     */
+    private static String readString(ByteBuffer buffer, int length) {
+        if (buffer.hasArray()) {
+            String result = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, CHARSET);
+            buffer.position(buffer.position() + length);
+            return result;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, CHARSET);
+    }
+}
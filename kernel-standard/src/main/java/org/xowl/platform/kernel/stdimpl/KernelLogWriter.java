@@ -0,0 +1,591 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.kernel.stdimpl;
+
+import fr.cenotelie.commons.utils.ini.IniDocument;
+import fr.cenotelie.commons.utils.logging.Logger;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Implements a logger that writes to a file in the background.
+ * Messages are put in a bounded lock-free ring buffer by the logging threads.
+ * A single writer thread drains the buffer, writes the messages by batches and rotates the log file.
+ * The messages are also appended to the structured log store and echoed to the console by the writer thread.
+ *
+ * @author Laurent Wouters
+ */
+class KernelLogWriter implements Logger {
+    /**
+     * The default capacity of the ring buffer
+     */
+    private static final int QUEUE_CAPACITY = 8192;
+    /**
+     * The default maximum number of messages written before the file is flushed
+     */
+    private static final int BATCH_SIZE = 256;
+    /**
+     * The default maximum time in ms before written messages are flushed to the file
+     */
+    private static final long FLUSH_INTERVAL = 1000;
+    /**
+     * The default maximum time in ms a logging thread waits for room in a full buffer
+     */
+    private static final long BLOCK_TIMEOUT = 100;
+    /**
+     * The default size in bytes of the log file beyond which it is rotated
+     */
+    private static final long ROTATION_SIZE = 10 * 1024 * 1024;
+    /**
+     * The default time in seconds after which the log file is rotated
+     */
+    private static final long ROTATION_INTERVAL = 86400;
+    /**
+     * The default number of rotated log files to keep
+     */
+    private static final int ROTATION_COUNT = 10;
+    /**
+     * The time in ns a blocked logging thread waits before retrying
+     */
+    private static final long BLOCK_RETRY = 100000;
+    /**
+     * The maximum time in ms to wait for the writer to terminate
+     */
+    private static final long WAIT_TIME = 5000;
+    /**
+     * The charset for the log file
+     */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * A message waiting to be written
+     */
+    private static class Entry {
+        /**
+         * The timestamp of the message
+         */
+        public final long timestamp;
+        /**
+         * The log level for the message
+         */
+        public final String level;
+        /**
+         * The message's source
+         */
+        public final String source;
+        /**
+         * The message's content
+         */
+        public final Object content;
+
+        /**
+         * Initializes this entry
+         *
+         * @param level   The log level for the message
+         * @param source  The message's source
+         * @param content The message's content
+         */
+        public Entry(String level, String source, Object content) {
+            this.timestamp = System.currentTimeMillis();
+            this.level = level;
+            this.source = source;
+            this.content = content;
+        }
+    }
+
+    /**
+     * The log file
+     */
+    private final File file;
+    /**
+     * The structured log store
+     */
+    private final KernelLogStore store;
+    /**
+     * The console logger, also used for the failures of this writer
+     */
+    private final Logger console;
+    /**
+     * The slots of the ring buffer
+     */
+    private final AtomicReferenceArray<Entry> slots;
+    /**
+     * The mask for the indices in the ring buffer
+     */
+    private final int mask;
+    /**
+     * The sequence number of the next slot to be claimed by a logging thread
+     */
+    private final AtomicLong tail;
+    /**
+     * The sequence number of the next slot to be written, only updated by the writer thread
+     */
+    private volatile long head;
+    /**
+     * The maximum number of messages written before the file is flushed
+     */
+    private final int batchSize;
+    /**
+     * The maximum time in ns before written messages are flushed to the file
+     */
+    private final long flushInterval;
+    /**
+     * Whether the logging threads wait for room when the buffer is full, instead of dropping the message
+     */
+    private final boolean blockOnFull;
+    /**
+     * The maximum time in ns a logging thread waits for room in a full buffer
+     */
+    private final long blockTimeout;
+    /**
+     * The size in bytes of the log file beyond which it is rotated, 0 to disable
+     */
+    private final long rotationSize;
+    /**
+     * The time in ms after which the log file is rotated, 0 to disable
+     */
+    private final long rotationInterval;
+    /**
+     * The number of rotated log files to keep
+     */
+    private final int rotationCount;
+    /**
+     * The number of dropped messages
+     */
+    private final AtomicInteger dropped;
+    /**
+     * The format for the dates in the log
+     */
+    private final DateFormat dateFormat;
+    /**
+     * The writer thread
+     */
+    private final Thread thread;
+    /**
+     * Whether this logger is running
+     */
+    private volatile boolean running;
+    /**
+     * Whether the writer thread is waiting for messages
+     */
+    private volatile boolean sleeping;
+    /**
+     * The current writer to the log file
+     */
+    private Writer writer;
+    /**
+     * The size of the current log file
+     */
+    private long fileSize;
+    /**
+     * The time at which the current log file was opened
+     */
+    private long fileOpening;
+
+    /**
+     * Initializes this logger
+     *
+     * @param file          The log file
+     * @param store         The structured log store
+     * @param console       The console logger, also used for the failures of this writer
+     * @param configuration The configuration for this logger
+     */
+    public KernelLogWriter(File file, KernelLogStore store, Logger console, IniDocument configuration) {
+        int queueCapacity = QUEUE_CAPACITY;
+        int batchSize = BATCH_SIZE;
+        long flushInterval = FLUSH_INTERVAL;
+        long blockTimeout = BLOCK_TIMEOUT;
+        long rotationSize = ROTATION_SIZE;
+        long rotationInterval = ROTATION_INTERVAL;
+        int rotationCount = ROTATION_COUNT;
+        try {
+            String value = configuration.get("queueCapacity");
+            if (value != null)
+                queueCapacity = Integer.parseInt(value);
+            value = configuration.get("batchSize");
+            if (value != null)
+                batchSize = Integer.parseInt(value);
+            value = configuration.get("flushInterval");
+            if (value != null)
+                flushInterval = Long.parseLong(value);
+            value = configuration.get("blockTimeout");
+            if (value != null)
+                blockTimeout = Long.parseLong(value);
+            value = configuration.get("rotationSize");
+            if (value != null)
+                rotationSize = Long.parseLong(value);
+            value = configuration.get("rotationInterval");
+            if (value != null)
+                rotationInterval = Long.parseLong(value);
+            value = configuration.get("rotationCount");
+            if (value != null)
+                rotationCount = Integer.parseInt(value);
+        } catch (NumberFormatException exception) {
+            console.error(exception);
+        }
+        int capacity = Integer.highestOneBit(Math.max(queueCapacity, 2) - 1) << 1;
+        this.file = file;
+        this.store = store;
+        this.console = console;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.tail = new AtomicLong(0);
+        this.head = 0;
+        this.batchSize = Math.max(batchSize, 1);
+        this.flushInterval = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        this.blockOnFull = !"drop".equals(configuration.get("overflowPolicy"));
+        this.blockTimeout = TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+        this.rotationSize = rotationSize;
+        this.rotationInterval = TimeUnit.SECONDS.toMillis(rotationInterval);
+        this.rotationCount = rotationCount;
+        this.dropped = new AtomicInteger(0);
+        this.dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        this.running = true;
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writerLoop();
+            }
+        }, KernelLogWriter.class.getCanonicalName() + ".Writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Gets the number of dropped messages
+     *
+     * @return The number of dropped messages
+     */
+    public int getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Gets the number of messages waiting to be written
+     *
+     * @return The number of messages waiting to be written
+     */
+    public int getQueueDepth() {
+        return (int) Math.max(tail.get() - head, 0);
+    }
+
+    /**
+     * Stops the writer thread after all the waiting messages have been written, then closes the log file
+     * The messages logged afterwards are directly written by the logging threads.
+     */
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(WAIT_TIME);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        // write the messages that the writer thread may have missed or not had the time to write
+        drain();
+    }
+
+    @Override
+    public void debug(Object message) {
+        log("DEBUG", Thread.currentThread().getName(), message);
+    }
+
+    @Override
+    public void info(Object message) {
+        log("INFO", Thread.currentThread().getName(), message);
+    }
+
+    @Override
+    public void warning(Object message) {
+        log("WARNING", Thread.currentThread().getName(), message);
+    }
+
+    @Override
+    public void error(Object message) {
+        log("ERROR", Thread.currentThread().getName(), message);
+    }
+
+    /**
+     * Logs a message
+     *
+     * @param level   The log level for the message
+     * @param source  The message's source
+     * @param content The message's content
+     */
+    public void log(String level, String source, Object content) {
+        Entry entry = new Entry(level, source, content);
+        if (!running) {
+            writeDirect(entry);
+            return;
+        }
+        long deadline = 0;
+        while (!offer(entry)) {
+            if (!blockOnFull || !running) {
+                dropped.incrementAndGet();
+                return;
+            }
+            long now = System.nanoTime();
+            if (deadline == 0)
+                deadline = now + blockTimeout;
+            else if (now - deadline >= 0) {
+                dropped.incrementAndGet();
+                return;
+            }
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(this, BLOCK_RETRY);
+        }
+        if (!running) {
+            // the writer thread may have stopped before it could see this message
+            drain();
+            return;
+        }
+        if (sleeping)
+            LockSupport.unpark(thread);
+    }
+
+    /**
+     * Tries to put a message in the ring buffer
+     *
+     * @param entry The message
+     * @return Whether the operation succeeded, false when the buffer is full
+     */
+    private boolean offer(Entry entry) {
+        while (true) {
+            long sequence = tail.get();
+            if (sequence - head > mask)
+                return false;
+            if (tail.compareAndSet(sequence, sequence + 1)) {
+                slots.set((int) (sequence & mask), entry);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Writes a message when the writer thread is stopped
+     * The log file is closed afterwards.
+     *
+     * @param entry The message
+     */
+    private synchronized void writeDirect(Entry entry) {
+        try {
+            write(entry);
+            closeFile();
+            store.flush();
+        } catch (IOException exception) {
+            console.error(exception);
+        }
+    }
+
+    /**
+     * Writes all the messages in the ring buffer when the writer thread is stopped
+     * The log file is closed afterwards.
+     */
+    private synchronized void drain() {
+        try {
+            while (head != tail.get()) {
+                long sequence = head;
+                int index = (int) (sequence & mask);
+                Entry entry = slots.get(index);
+                if (entry == null) {
+                    // the slot is claimed but the message is not published yet
+                    Thread.yield();
+                    continue;
+                }
+                slots.lazySet(index, null);
+                head = sequence + 1;
+                write(entry);
+            }
+            closeFile();
+            store.flush();
+        } catch (IOException exception) {
+            console.error(exception);
+        }
+    }
+
+    /**
+     * Closes the current log file, if any
+     *
+     * @throws IOException When closing failed
+     */
+    private void closeFile() throws IOException {
+        if (writer == null)
+            return;
+        writer.close();
+        writer = null;
+    }
+
+    /**
+     * The main loop for the writer thread
+     */
+    private void writerLoop() {
+        long lastFlush = System.nanoTime();
+        boolean pending = false;
+        while (true) {
+            int count = 0;
+            try {
+                synchronized (this) {
+                    while (count < batchSize) {
+                        long sequence = head;
+                        if (sequence == tail.get())
+                            break;
+                        int index = (int) (sequence & mask);
+                        Entry entry = slots.get(index);
+                        if (entry == null) {
+                            // the slot is claimed but the message is not published yet
+                            Thread.yield();
+                            continue;
+                        }
+                        slots.lazySet(index, null);
+                        head = sequence + 1;
+                        write(entry);
+                        count++;
+                    }
+                    if (count > 0)
+                        pending = true;
+                    long now = System.nanoTime();
+                    if (pending && (count < batchSize || now - lastFlush >= flushInterval)) {
+                        writer.flush();
+                        store.flush();
+                        pending = false;
+                        lastFlush = now;
+                        if ((rotationSize > 0 && fileSize >= rotationSize)
+                                || (rotationInterval > 0 && System.currentTimeMillis() - fileOpening >= rotationInterval))
+                            rotate();
+                    }
+                }
+            } catch (IOException | RuntimeException exception) {
+                // the failing message is dropped, keep draining the others
+                console.error(exception);
+                if (count > 0)
+                    pending = true;
+            }
+            if (count == 0) {
+                if (!running && head == tail.get())
+                    return;
+                sleeping = true;
+                if (running && head == tail.get())
+                    LockSupport.parkNanos(this, flushInterval);
+                sleeping = false;
+            }
+        }
+    }
+
+    /**
+     * Writes a message to the log file
+     *
+     * @param entry The message
+     * @throws IOException When writing failed
+     */
+    private void write(Entry entry) throws IOException {
+        if (writer == null)
+            open();
+        StringBuilder builder = new StringBuilder();
+        builder.append("[");
+        builder.append(dateFormat.format(new Date(entry.timestamp)));
+        builder.append("] ");
+        builder.append(entry.level);
+        builder.append(" ");
+        String text;
+        if (entry.content instanceof Throwable) {
+            StringWriter trace = new StringWriter();
+            ((Throwable) entry.content).printStackTrace(new PrintWriter(trace));
+            text = trace.toString();
+            builder.append(text);
+        } else {
+            text = String.valueOf(entry.content);
+            builder.append(text);
+            builder.append(System.lineSeparator());
+        }
+        String line = builder.toString();
+        writer.write(line);
+        fileSize += line.getBytes(CHARSET).length;
+        store.append(entry.timestamp, entry.level, entry.source, text);
+        echo(entry);
+    }
+
+    /**
+     * Echoes a message to the console
+     *
+     * @param entry The message
+     */
+    private void echo(Entry entry) {
+        switch (entry.level) {
+            case "DEBUG":
+                console.debug(entry.content);
+                break;
+            case "INFO":
+                console.info(entry.content);
+                break;
+            case "WARNING":
+                console.warning(entry.content);
+                break;
+            default:
+                console.error(entry.content);
+                break;
+        }
+    }
+
+    /**
+     * Opens the log file for appending
+     *
+     * @throws IOException When opening failed
+     */
+    private void open() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs())
+            throw new IOException("Failed to create directory " + parent.getAbsolutePath());
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), CHARSET));
+        fileSize = file.length();
+        fileOpening = System.currentTimeMillis();
+    }
+
+    /**
+     * Rotates the log files
+     * The current file becomes the first rotated file, the oldest one is deleted.
+     *
+     * @throws IOException When the rotation failed
+     */
+    private void rotate() throws IOException {
+        closeFile();
+        if (rotationCount <= 0) {
+            if (!file.delete())
+                throw new IOException("Failed to delete " + file.getAbsolutePath());
+            return;
+        }
+        File oldest = new File(file.getPath() + "." + rotationCount);
+        if (oldest.exists() && !oldest.delete())
+            throw new IOException("Failed to delete " + oldest.getAbsolutePath());
+        for (int i = rotationCount - 1; i >= 1; i--) {
+            File current = new File(file.getPath() + "." + i);
+            if (current.exists() && !current.renameTo(new File(file.getPath() + "." + (i + 1))))
+                throw new IOException("Failed to rotate " + current.getAbsolutePath());
+        }
+        if (!file.renameTo(new File(file.getPath() + ".1")))
+            throw new IOException("Failed to rotate " + file.getAbsolutePath());
+    }
+}
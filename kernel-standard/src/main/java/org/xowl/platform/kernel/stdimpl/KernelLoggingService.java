@@ -19,16 +19,21 @@ package org.xowl.platform.kernel.stdimpl;
 
 import fr.cenotelie.commons.utils.TextUtils;
 import fr.cenotelie.commons.utils.api.Reply;
+import fr.cenotelie.commons.utils.api.ReplyApiError;
+import fr.cenotelie.commons.utils.api.ReplyException;
 import fr.cenotelie.commons.utils.api.ReplyUtils;
 import fr.cenotelie.commons.utils.http.HttpConstants;
 import fr.cenotelie.commons.utils.http.HttpResponse;
+import fr.cenotelie.commons.utils.ini.IniDocument;
 import fr.cenotelie.commons.utils.logging.ConsoleLogger;
 import fr.cenotelie.commons.utils.logging.DispatchLogger;
-import fr.cenotelie.commons.utils.logging.FileLogger;
+import fr.cenotelie.commons.utils.logging.Logger;
 import fr.cenotelie.commons.utils.metrics.Metric;
 import fr.cenotelie.commons.utils.metrics.MetricSnapshot;
 import fr.cenotelie.commons.utils.metrics.MetricSnapshotInt;
+import org.xowl.platform.kernel.ConfigurationService;
 import org.xowl.platform.kernel.LoggingService;
+import org.xowl.platform.kernel.ManagedService;
 import org.xowl.platform.kernel.PlatformHttp;
 import org.xowl.platform.kernel.PlatformUtils;
 import org.xowl.platform.kernel.events.Event;
@@ -39,11 +44,15 @@ import org.xowl.platform.kernel.security.SecurityService;
 import org.xowl.platform.kernel.webapi.HttpApiRequest;
 import org.xowl.platform.kernel.webapi.HttpApiResource;
 import org.xowl.platform.kernel.webapi.HttpApiResourceBase;
+import org.xowl.platform.kernel.webapi.HttpApiRoute;
 import org.xowl.platform.kernel.webapi.HttpApiService;
+import org.xowl.platform.kernel.webapi.HttpResponseStreamedJSON;
 
+import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -51,7 +60,7 @@ import java.util.concurrent.atomic.AtomicInteger;
  *
  * @author Laurent Wouters
  */
-public class KernelLoggingService extends DispatchLogger implements LoggingService, HttpApiService {
+public class KernelLoggingService extends DispatchLogger implements LoggingService, ManagedService, HttpApiService {
     /**
      * The resource for the API's specification
      */
@@ -66,11 +75,35 @@ public class KernelLoggingService extends DispatchLogger implements LoggingServi
      * The size of the buffer for the last messages
      */
     private static final int BUFFER_SIZE = 128;
+    /**
+     * The default location of the log store
+     */
+    private static final String STORE_LOCATION = "data/log";
+    /**
+     * The default number of messages in a page when querying the log store
+     */
+    private static final int PAGE_SIZE = 100;
+    /**
+     * The maximum number of messages in a page when querying the log store
+     */
+    private static final int PAGE_MAX_SIZE = 1000;
+    /**
+     * The response header for the cursor to the next page
+     */
+    private static final String HEADER_NEXT_CURSOR = "X-Next-Cursor";
+    /**
+     * The console logger, also used for the failures of the logging infrastructure itself
+     */
+    private static final Logger FALLBACK = new ConsoleLogger();
 
     /**
      * The URI for the API services
      */
     private final String apiUri;
+    /**
+     * The route for the log resource
+     */
+    private final HttpApiRoute routeLog;
     /**
      * The buffer of the last messages
      */
@@ -83,13 +116,40 @@ public class KernelLoggingService extends DispatchLogger implements LoggingServi
      * The total number of messages
      */
     private final AtomicInteger totalMessages;
+    /**
+     * The background writer to the log file
+     */
+    private final KernelLogWriter fileWriter;
+    /**
+     * The structured store of the log messages
+     */
+    private final KernelLogStore store;
 
     /**
      * Initializes this service
+     *
+     * @param configurationService The configuration service to use
      */
-    public KernelLoggingService() {
-        super(new FileLogger(PlatformUtils.resolve("platform.log")), new ConsoleLogger());
+    public KernelLoggingService(ConfigurationService configurationService) {
+        super();
+        IniDocument configuration = configurationService.getConfigFor(LoggingService.class.getCanonicalName());
+        String location = configuration.get("store", "location");
+        int segmentSize = 0;
+        int maxSegments = 0;
+        try {
+            String value = configuration.get("store", "segmentSize");
+            if (value != null)
+                segmentSize = Integer.parseInt(value);
+            value = configuration.get("store", "maxSegments");
+            if (value != null)
+                maxSegments = Integer.parseInt(value);
+        } catch (NumberFormatException exception) {
+            FALLBACK.error(exception);
+        }
+        this.store = new KernelLogStore(PlatformUtils.resolve(location != null ? location : STORE_LOCATION), segmentSize, maxSegments, FALLBACK);
+        this.fileWriter = new KernelLogWriter(PlatformUtils.resolve("platform.log"), store, FALLBACK, configuration);
         this.apiUri = PlatformHttp.getUriPrefixApi() + "/kernel/log";
+        this.routeLog = new HttpApiRoute(apiUri, HttpConstants.METHOD_GET);
         this.buffer = new PlatformLogBuffer(BUFFER_SIZE);
         this.errorsCount = new AtomicInteger(0);
         this.totalMessages = new AtomicInteger(0);
@@ -105,6 +165,21 @@ public class KernelLoggingService extends DispatchLogger implements LoggingServi
         return PlatformUtils.NAME + " - Logging Service";
     }
 
+    @Override
+    public int getLifecycleTier() {
+        return TIER_INTERNAL;
+    }
+
+    @Override
+    public void onLifecycleStart() {
+        // do nothing
+    }
+
+    @Override
+    public void onLifecycleStop() {
+        fileWriter.close();
+    }
+
     @Override
     public SecuredAction[] getActions() {
         return ACTIONS;
@@ -112,7 +187,7 @@ public class KernelLoggingService extends DispatchLogger implements LoggingServi
 
     @Override
     public Collection<Metric> getMetrics() {
-        return Arrays.asList(METRIC_TOTAL_MESSAGES, METRIC_ERRORS_COUNT);
+        return Arrays.asList(METRIC_TOTAL_MESSAGES, METRIC_ERRORS_COUNT, METRIC_DROPPED_MESSAGES, METRIC_QUEUE_DEPTH);
     }
 
     @Override
@@ -121,14 +196,18 @@ public class KernelLoggingService extends DispatchLogger implements LoggingServi
             return new MetricSnapshotInt(totalMessages.get());
         if (metric == METRIC_ERRORS_COUNT)
             return new MetricSnapshotInt(errorsCount.get());
+        if (metric == METRIC_DROPPED_MESSAGES)
+            return new MetricSnapshotInt(fileWriter.getDroppedCount());
+        if (metric == METRIC_QUEUE_DEPTH)
+            return new MetricSnapshotInt(fileWriter.getQueueDepth());
         return null;
     }
 
     @Override
-    public int canHandle(HttpApiRequest request) {
-        return request.getUri().startsWith(apiUri)
-                ? HttpApiService.PRIORITY_NORMAL
-                : HttpApiService.CANNOT_HANDLE;
+    public HttpApiRoute[] getRoutes() {
+        return new HttpApiRoute[]{
+                routeLog
+        };
     }
 
     @Override
@@ -142,8 +221,15 @@ public class KernelLoggingService extends DispatchLogger implements LoggingServi
         if (!reply.isSuccess())
             return ReplyUtils.toHttpResponse(reply);
 
-        if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
+        String from = request.getParameter("from");
+        String to = request.getParameter("to");
+        String level = request.getParameter("level");
+        String source = request.getParameter("source");
+        String text = request.getParameter("text");
+        String cursor = request.getParameter("cursor");
+        String limit = request.getParameter("limit");
+        if (from != null || to != null || level != null || source != null || text != null || cursor != null || limit != null)
+            return handleQuery(from, to, level, source, text, cursor, limit);
 
         StringBuilder builder = new StringBuilder("[");
         boolean first = true;
@@ -157,6 +243,60 @@ public class KernelLoggingService extends DispatchLogger implements LoggingServi
         return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
     }
 
+    /**
+     * Handles a query on the log store
+     *
+     * @param from   The minimum timestamp in ms, if any
+     * @param to     The maximum timestamp in ms, if any
+     * @param level  The minimum level, if any
+     * @param source The required source, if any
+     * @param text   The text that the messages must contain, if any
+     * @param cursor The sequence number of the last message of the previous page, if any
+     * @param limit  The maximum number of messages, if any
+     * @return The response
+     */
+    private HttpResponse handleQuery(String from, String to, String level, String source, String text, String cursor, String limit) {
+        long valueFrom = Long.MIN_VALUE;
+        long valueTo = Long.MAX_VALUE;
+        long valueCursor = -1;
+        int valueLimit = PAGE_SIZE;
+        int valueLevel = 0;
+        try {
+            if (from != null)
+                valueFrom = Long.parseLong(from);
+            if (to != null)
+                valueTo = Long.parseLong(to);
+            if (cursor != null)
+                valueCursor = Long.parseLong(cursor);
+            if (limit != null)
+                valueLimit = Integer.parseInt(limit);
+        } catch (NumberFormatException exception) {
+            return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_PARAMETER_RANGE, "'from', 'to', 'cursor' and 'limit' must be integers"));
+        }
+        if (valueLimit <= 0 || valueLimit > PAGE_MAX_SIZE)
+            return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_PARAMETER_RANGE, "'limit' must be a strictly positive integer, at most " + Integer.toString(PAGE_MAX_SIZE)));
+        if (level != null) {
+            valueLevel = KernelLogStore.levelOf(level);
+            if (valueLevel < 0)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_PARAMETER_RANGE, "'level' must be one of DEBUG, INFO, WARNING, ERROR"));
+        }
+        List<PlatformLogMessage> page;
+        try {
+            page = store.query(valueFrom, valueTo, valueLevel, source, text, valueCursor, valueLimit + 1);
+        } catch (IOException exception) {
+            return ReplyUtils.toHttpResponse(new ReplyException(exception));
+        }
+        String next = null;
+        if (page.size() > valueLimit) {
+            page = page.subList(0, valueLimit);
+            next = Long.toString(page.get(valueLimit - 1).sequence);
+        }
+        HttpResponse response = new HttpResponseStreamedJSON(HttpURLConnection.HTTP_OK, page);
+        if (next != null)
+            response.addHeader(HEADER_NEXT_CURSOR, next);
+        return response;
+    }
+
     @Override
     public HttpApiResource getApiSpecification() {
         return RESOURCE_SPECIFICATION;
@@ -194,33 +334,54 @@ public class KernelLoggingService extends DispatchLogger implements LoggingServi
 
     @Override
     public void debug(Object message) {
+        String source = getSource(message);
         if (message instanceof Event)
             message = ((Event) message).getDescription();
         buffer.debug(message);
-        super.debug(message);
+        totalMessages.incrementAndGet();
+        fileWriter.log("DEBUG", source, message);
     }
 
     @Override
     public void info(Object message) {
+        String source = getSource(message);
         if (message instanceof Event)
             message = ((Event) message).getDescription();
         buffer.info(message);
-        super.info(message);
+        totalMessages.incrementAndGet();
+        fileWriter.log("INFO", source, message);
     }
 
     @Override
     public void warning(Object message) {
+        String source = getSource(message);
         if (message instanceof Event)
             message = ((Event) message).getDescription();
         buffer.warning(message);
-        super.warning(message);
+        totalMessages.incrementAndGet();
+        fileWriter.log("WARNING", source, message);
     }
 
     @Override
     public void error(Object message) {
+        String source = getSource(message);
         if (message instanceof Event)
             message = ((Event) message).getDescription();
         buffer.error(message);
-        super.error(message);
+        totalMessages.incrementAndGet();
+        errorsCount.incrementAndGet();
+        fileWriter.log("ERROR", source, message);
+    }
+
+    /**
+     * Gets the source of a message
+     *
+     * @param message The message
+     * @return The source of the message
+     */
+    private static String getSource(Object message) {
+        if (message instanceof Event && ((Event) message).getEmitter() != null)
+            return ((Event) message).getEmitter().getIdentifier();
+        return Thread.currentThread().getName();
     }
 }
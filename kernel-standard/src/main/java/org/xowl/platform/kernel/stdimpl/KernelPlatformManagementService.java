@@ -23,7 +23,6 @@ import fr.cenotelie.commons.utils.TextUtils;
 import fr.cenotelie.commons.utils.api.*;
 import fr.cenotelie.commons.utils.http.HttpConstants;
 import fr.cenotelie.commons.utils.http.HttpResponse;
-import fr.cenotelie.commons.utils.http.URIUtils;
 import fr.cenotelie.commons.utils.ini.IniDocument;
 import fr.cenotelie.commons.utils.json.Json;
 import fr.cenotelie.commons.utils.logging.Logging;
@@ -42,6 +41,7 @@ import org.xowl.platform.kernel.security.SecurityService;
 import org.xowl.platform.kernel.webapi.HttpApiRequest;
 import org.xowl.platform.kernel.webapi.HttpApiResource;
 import org.xowl.platform.kernel.webapi.HttpApiResourceBase;
+import org.xowl.platform.kernel.webapi.HttpApiRoute;
 import org.xowl.platform.kernel.webapi.HttpApiService;
 
 import java.io.*;
@@ -77,6 +77,30 @@ public class KernelPlatformManagementService implements PlatformManagementServic
      * The URI for the API services
      */
     private final String apiUri;
+    /**
+     * The route for the product resource
+     */
+    private final HttpApiRoute routeProduct;
+    /**
+     * The route for shutting down the platform
+     */
+    private final HttpApiRoute routeShutdown;
+    /**
+     * The route for restarting the platform
+     */
+    private final HttpApiRoute routeRestart;
+    /**
+     * The route for the bundles resource
+     */
+    private final HttpApiRoute routeBundles;
+    /**
+     * The route for the addons resource
+     */
+    private final HttpApiRoute routeAddons;
+    /**
+     * The route for a specific addon
+     */
+    private final HttpApiRoute routeAddon;
     /**
      * The cache of bundles
      */
@@ -102,6 +126,12 @@ public class KernelPlatformManagementService implements PlatformManagementServic
     public KernelPlatformManagementService(ConfigurationService configurationService) {
         IniDocument configuration = configurationService.getConfigFor(PlatformManagementService.class.getCanonicalName());
         this.apiUri = PlatformHttp.getUriPrefixApi() + "/kernel/platform";
+        this.routeProduct = new HttpApiRoute(apiUri + "/product", HttpConstants.METHOD_GET);
+        this.routeShutdown = new HttpApiRoute(apiUri + "/shutdown", HttpConstants.METHOD_POST);
+        this.routeRestart = new HttpApiRoute(apiUri + "/restart", HttpConstants.METHOD_POST);
+        this.routeBundles = new HttpApiRoute(apiUri + "/bundles", HttpConstants.METHOD_GET);
+        this.routeAddons = new HttpApiRoute(apiUri + "/addons", HttpConstants.METHOD_GET);
+        this.routeAddon = new HttpApiRoute(apiUri + "/addons/{addonId}", HttpConstants.METHOD_GET, HttpConstants.METHOD_PUT, HttpConstants.METHOD_DELETE);
         this.bundles = new ArrayList<>();
         this.product = loadProductDescriptor();
         this.addons = new ArrayList<>();
@@ -186,10 +216,15 @@ public class KernelPlatformManagementService implements PlatformManagementServic
     }
 
     @Override
-    public int canHandle(HttpApiRequest request) {
-        return request.getUri().startsWith(apiUri)
-                ? HttpApiService.PRIORITY_NORMAL
-                : HttpApiService.CANNOT_HANDLE;
+    public HttpApiRoute[] getRoutes() {
+        return new HttpApiRoute[]{
+                routeProduct,
+                routeShutdown,
+                routeRestart,
+                routeBundles,
+                routeAddons,
+                routeAddon
+        };
     }
 
     @Override
@@ -199,24 +234,18 @@ public class KernelPlatformManagementService implements PlatformManagementServic
 
     @Override
     public HttpResponse handle(SecurityService securityService, HttpApiRequest request) {
-        if (request.getUri().equals(apiUri + "/product")) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
+        HttpApiRoute route = request.getRoute();
+        if (route == routeProduct) {
             Product product = getPlatformProduct();
             if (product == null)
                 return ReplyUtils.toHttpResponse(ReplyNotFound.instance());
             return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, product.serializedJSON());
-        } else if (request.getUri().equals(apiUri + "/shutdown")) {
-            if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
+        }
+        if (route == routeShutdown)
             return ReplyUtils.toHttpResponse(shutdown());
-        } else if (request.getUri().equals(apiUri + "/restart")) {
-            if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
+        if (route == routeRestart)
             return ReplyUtils.toHttpResponse(restart());
-        } else if (request.getUri().equals(apiUri + "/bundles")) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
+        if (route == routeBundles) {
             StringBuilder builder = new StringBuilder("[");
             boolean first = true;
             for (Bundle bundle : getPlatformBundles()) {
@@ -227,9 +256,8 @@ public class KernelPlatformManagementService implements PlatformManagementServic
             }
             builder.append("]");
             return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
-        } else if (request.getUri().equals(apiUri + "/addons")) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
+        }
+        if (route == routeAddons) {
             StringBuilder builder = new StringBuilder("[");
             boolean first = true;
             for (Addon addon : getAddons()) {
@@ -240,34 +268,24 @@ public class KernelPlatformManagementService implements PlatformManagementServic
             }
             builder.append("]");
             return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
-        } else if (request.getUri().startsWith(apiUri + "/addons")) {
-            String rest = request.getUri().substring(apiUri.length() + "/addons".length() + 1);
-            if (rest.isEmpty())
-                return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-            int index = rest.indexOf("/");
-            String addonId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-            if (index >= 0)
-                return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+        }
+        if (route == routeAddon) {
+            String addonId = request.getPathParameter("addonId");
             switch (request.getMethod()) {
-                case HttpConstants.METHOD_GET: {
-                    for (Addon addon : getAddons()) {
-                        if (Objects.equals(addonId, addon.getIdentifier()))
-                            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, addon.serializedJSON());
-                    }
-                    return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-                }
-                case HttpConstants.METHOD_DELETE: {
+                case HttpConstants.METHOD_DELETE:
                     return ReplyUtils.toHttpResponse(uninstallAddon(addonId));
-                }
                 case HttpConstants.METHOD_PUT: {
                     byte[] content = request.getContent();
                     if (content == null || content.length == 0)
                         return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
                     return ReplyUtils.toHttpResponse(installAddon(addonId, new ByteArrayInputStream(content)));
                 }
-                default:
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: GET, PUT, DELETE");
             }
+            for (Addon addon : getAddons()) {
+                if (Objects.equals(addonId, addon.getIdentifier()))
+                    return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, addon.serializedJSON());
+            }
+            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
         }
         return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
     }
@@ -26,8 +26,10 @@ import fr.cenotelie.hime.redist.ASTNode;
 import org.xowl.platform.kernel.PlatformUtils;
 import org.xowl.platform.kernel.Register;
 import org.xowl.platform.kernel.ReplyServiceUnavailable;
+import org.xowl.platform.kernel.events.EventService;
 import org.xowl.platform.kernel.platform.PlatformUser;
 import org.xowl.platform.kernel.security.SecuredResource;
+import org.xowl.platform.kernel.security.SecuredResourceChangedEvent;
 import org.xowl.platform.kernel.security.SecuredResourceManager;
 import org.xowl.platform.kernel.security.SecuredResourceSharing;
 import org.xowl.platform.kernel.security.SecurityService;
@@ -156,7 +158,7 @@ public class KernelSecuredResourceManager implements SecuredResourceManager {
         KernelSecuredResourceDescriptor descriptor = getDescriptors().get(resource);
         if (descriptor == null)
             return ReplyNotFound.instance();
-        return descriptor.addOwner(user);
+        return onDescriptorChanged(resource, descriptor.addOwner(user));
     }
 
     @Override
@@ -170,7 +172,7 @@ public class KernelSecuredResourceManager implements SecuredResourceManager {
         KernelSecuredResourceDescriptor descriptor = getDescriptors().get(resource);
         if (descriptor == null)
             return ReplyNotFound.instance();
-        return descriptor.removeOwner(user);
+        return onDescriptorChanged(resource, descriptor.removeOwner(user));
     }
 
     @Override
@@ -184,7 +186,7 @@ public class KernelSecuredResourceManager implements SecuredResourceManager {
         KernelSecuredResourceDescriptor descriptor = getDescriptors().get(resource);
         if (descriptor == null)
             return ReplyNotFound.instance();
-        return descriptor.addSharing(sharing);
+        return onDescriptorChanged(resource, descriptor.addSharing(sharing));
     }
 
     @Override
@@ -198,7 +200,7 @@ public class KernelSecuredResourceManager implements SecuredResourceManager {
         KernelSecuredResourceDescriptor descriptor = getDescriptors().get(resource);
         if (descriptor == null)
             return ReplyNotFound.instance();
-        return descriptor.removeSharing(sharing);
+        return onDescriptorChanged(resource, descriptor.removeSharing(sharing));
     }
 
     @Override
@@ -212,7 +214,26 @@ public class KernelSecuredResourceManager implements SecuredResourceManager {
         KernelSecuredResourceDescriptor descriptor = getDescriptors().remove(resource);
         if (descriptor == null)
             return ReplyNotFound.instance();
-        return descriptor.deleteDescriptor();
+        return onDescriptorChanged(resource, descriptor.deleteDescriptor());
+    }
+
+    /**
+     * When the descriptor of a secured resource may have changed
+     *
+     * @param resource The identifier of the secured resource
+     * @param reply    The reply of the change operation
+     * @return The reply of the change operation
+     */
+    private Reply onDescriptorChanged(String resource, Reply reply) {
+        if (!reply.isSuccess())
+            return reply;
+        SecurityService securityService = Register.getComponent(SecurityService.class);
+        if (securityService != null)
+            securityService.onSecurityChanged();
+        EventService eventService = Register.getComponent(EventService.class);
+        if (eventService != null)
+            eventService.onEvent(new SecuredResourceChangedEvent(resource, securityService));
+        return reply;
     }
 
     @Override
@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.kernel.stdimpl;
+
+import fr.cenotelie.commons.utils.Identifiable;
+import org.xowl.platform.kernel.PlatformUtils;
+import org.xowl.platform.kernel.events.Event;
+import org.xowl.platform.kernel.events.EventConsumer;
+import org.xowl.platform.kernel.events.EventService;
+import org.xowl.platform.kernel.platform.*;
+import org.xowl.platform.kernel.security.SecuredAction;
+import org.xowl.platform.kernel.security.SecuredResourceChangedEvent;
+import org.xowl.platform.kernel.security.SecurityPolicyChangedEvent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of the authorization decisions of the security policy
+ * The decisions are kept for each user, keyed on the secured action and the resource, if any.
+ * They expire after a time to live and are synchronously invalidated by the components that change
+ * the users, groups and roles, the policy and the secured resources, before these changes are acknowledged.
+ * The events for these changes also invalidate the cache, as a fallback for the components that only emit them.
+ *
+ * @author Laurent Wouters
+ */
+class KernelSecurityDecisionCache implements EventConsumer {
+    /**
+     * The types of the events that invalidate the cached decisions
+     */
+    private static final String[] INVALIDATING_EVENTS = new String[]{
+            PlatformUserDeletedEvent.TYPE,
+            PlatformGroupDeletedEvent.TYPE,
+            PlatformRoleDeletedEvent.TYPE,
+            PlatformGroupMembershipChangedEvent.TYPE,
+            PlatformRoleAssignmentChangedEvent.TYPE,
+            SecurityPolicyChangedEvent.TYPE,
+            SecuredResourceChangedEvent.TYPE
+    };
+
+    /**
+     * A cached decision
+     */
+    private static class Decision {
+        /**
+         * Whether the action is authorized
+         */
+        public final boolean isAuthorized;
+        /**
+         * The timestamp when this decision expires
+         */
+        public final long expiration;
+
+        /**
+         * Initializes this decision
+         *
+         * @param isAuthorized Whether the action is authorized
+         * @param expiration   The timestamp when this decision expires
+         */
+        public Decision(boolean isAuthorized, long expiration) {
+            this.isAuthorized = isAuthorized;
+            this.expiration = expiration;
+        }
+    }
+
+    /**
+     * The time to live of a decision in nanoseconds
+     */
+    private final long timeToLive;
+    /**
+     * The maximum number of cached decisions for a user
+     */
+    private final int capacity;
+    /**
+     * The cached decisions for each user
+     */
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Decision>> decisions;
+    /**
+     * The current generation of the cache, incremented at each invalidation
+     */
+    private final AtomicLong generation;
+    /**
+     * The number of cache hits
+     */
+    private final AtomicLong hits;
+    /**
+     * The number of cache misses
+     */
+    private final AtomicLong misses;
+
+    /**
+     * Initializes this cache
+     *
+     * @param timeToLive The time to live of a decision in nanoseconds
+     * @param capacity   The maximum number of cached decisions for a user
+     */
+    public KernelSecurityDecisionCache(long timeToLive, int capacity) {
+        this.timeToLive = timeToLive;
+        this.capacity = capacity;
+        this.decisions = new ConcurrentHashMap<>();
+        this.generation = new AtomicLong(0);
+        this.hits = new AtomicLong(0);
+        this.misses = new AtomicLong(0);
+    }
+
+    /**
+     * Subscribes this cache to the invalidating events
+     *
+     * @param eventService The event service
+     */
+    public void subscribe(EventService eventService) {
+        for (int i = 0; i != INVALIDATING_EVENTS.length; i++)
+            eventService.subscribe(this, INVALIDATING_EVENTS[i]);
+    }
+
+    /**
+     * Gets the number of cache hits
+     *
+     * @return The number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of cache misses
+     *
+     * @return The number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the current generation of this cache
+     * The generation must be obtained before evaluating a decision that is then stored.
+     *
+     * @return The current generation
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Gets the key for a decision
+     *
+     * @param action The secured action
+     * @param data   The resource the action is applied to, if any
+     * @return The key, or null if the decision cannot be cached
+     */
+    public static String getKey(SecuredAction action, Object data) {
+        if (data == null)
+            return action.getIdentifier();
+        if (data instanceof String)
+            return action.getIdentifier() + "|" + data;
+        if (data instanceof Identifiable)
+            return action.getIdentifier() + "|" + data.getClass().getCanonicalName() + "|" + ((Identifiable) data).getIdentifier();
+        return null;
+    }
+
+    /**
+     * Looks up a cached decision
+     *
+     * @param user The identifier of the user
+     * @param key  The key for the decision
+     * @return The cached decision, or null if there is none
+     */
+    public Boolean get(String user, String key) {
+        Map<String, Decision> forUser = decisions.get(user);
+        Decision decision = forUser != null ? forUser.get(key) : null;
+        if (decision == null || decision.expiration - System.nanoTime() < 0) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return decision.isAuthorized;
+    }
+
+    /**
+     * Stores a decision
+     * The decision is not stored if the cache has been invalidated since the given generation.
+     *
+     * @param user         The identifier of the user
+     * @param key          The key for the decision
+     * @param isAuthorized Whether the action is authorized
+     * @param generation   The generation of the cache when the evaluation of the decision began
+     */
+    public void put(String user, String key, boolean isAuthorized, long generation) {
+        ConcurrentHashMap<String, Decision> forUser = decisions.get(user);
+        if (forUser == null) {
+            forUser = new ConcurrentHashMap<>();
+            ConcurrentHashMap<String, Decision> previous = decisions.putIfAbsent(user, forUser);
+            if (previous != null)
+                forUser = previous;
+        }
+        if (forUser.size() >= capacity)
+            forUser.clear();
+        forUser.put(key, new Decision(isAuthorized, System.nanoTime() + timeToLive));
+        if (this.generation.get() != generation)
+            // invalidated in the meantime, the decision may be stale
+            forUser.remove(key);
+    }
+
+    /**
+     * Invalidates all the cached decisions
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        decisions.clear();
+    }
+
+    @Override
+    public String getIdentifier() {
+        return KernelSecurityDecisionCache.class.getCanonicalName();
+    }
+
+    @Override
+    public String getName() {
+        return PlatformUtils.NAME + " - Authorization Decisions Cache";
+    }
+
+    @Override
+    public void onEvent(Event event) {
+        invalidate();
+    }
+}
@@ -25,6 +25,7 @@ import fr.cenotelie.hime.redist.ASTNode;
 import org.xowl.platform.kernel.PlatformUtils;
 import org.xowl.platform.kernel.Register;
 import org.xowl.platform.kernel.ReplyServiceUnavailable;
+import org.xowl.platform.kernel.events.EventService;
 import org.xowl.platform.kernel.platform.PlatformRoleAdmin;
 import org.xowl.platform.kernel.platform.PlatformUser;
 import org.xowl.platform.kernel.security.*;
@@ -138,7 +139,14 @@ public class KernelSecurityPolicyCustom implements SecurityPolicy {
         for (SecuredService securedService : Register.getComponents(SecuredService.class)) {
             for (SecuredAction securedAction : securedService.getActions()) {
                 if (securedAction.getIdentifier().equals(actionId)) {
-                    return resolveConfig().put(securedAction, policy);
+                    reply = resolveConfig().put(securedAction, policy);
+                    if (!reply.isSuccess())
+                        return reply;
+                    securityService.onSecurityChanged();
+                    EventService eventService = Register.getComponent(EventService.class);
+                    if (eventService != null)
+                        eventService.onEvent(new SecurityPolicyChangedEvent(securedAction, securityService));
+                    return reply;
                 }
             }
         }
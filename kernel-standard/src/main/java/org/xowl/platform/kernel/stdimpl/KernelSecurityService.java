@@ -22,39 +22,42 @@ import fr.cenotelie.commons.utils.TextUtils;
 import fr.cenotelie.commons.utils.api.*;
 import fr.cenotelie.commons.utils.http.HttpConstants;
 import fr.cenotelie.commons.utils.http.HttpResponse;
-import fr.cenotelie.commons.utils.http.URIUtils;
 import fr.cenotelie.commons.utils.ini.IniDocument;
 import fr.cenotelie.commons.utils.ini.IniSection;
 import fr.cenotelie.commons.utils.json.Json;
 import fr.cenotelie.commons.utils.logging.BufferedLogger;
 import fr.cenotelie.commons.utils.logging.Logging;
+import fr.cenotelie.commons.utils.metrics.Metric;
+import fr.cenotelie.commons.utils.metrics.MetricSnapshot;
+import fr.cenotelie.commons.utils.metrics.MetricSnapshotLong;
 import fr.cenotelie.hime.redist.ASTNode;
 import org.xowl.platform.kernel.ConfigurationService;
 import org.xowl.platform.kernel.PlatformHttp;
 import org.xowl.platform.kernel.PlatformUtils;
 import org.xowl.platform.kernel.Register;
+import org.xowl.platform.kernel.events.EventService;
 import org.xowl.platform.kernel.platform.PlatformGroup;
 import org.xowl.platform.kernel.platform.PlatformRole;
 import org.xowl.platform.kernel.platform.PlatformUser;
 import org.xowl.platform.kernel.security.*;
+import org.xowl.platform.kernel.statistics.MeasurableService;
 import org.xowl.platform.kernel.webapi.HttpApiRequest;
 import org.xowl.platform.kernel.webapi.HttpApiResource;
 import org.xowl.platform.kernel.webapi.HttpApiResourceBase;
+import org.xowl.platform.kernel.webapi.HttpApiRoute;
 import org.xowl.platform.kernel.webapi.HttpApiService;
 
 import java.net.HttpURLConnection;
 import java.net.InetAddress;
-import java.util.Calendar;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Manages the security on the platform
  *
  * @author Laurent Wouters
  */
-public class KernelSecurityService implements SecurityService, HttpApiService {
+public class KernelSecurityService implements SecurityService, HttpApiService, MeasurableService {
     /**
      * The resource for the API's specification
      */
@@ -79,6 +82,15 @@ public class KernelSecurityService implements SecurityService, HttpApiService {
         public long banTimeStamp = -1;
     }
 
+    /**
+     * The default time to live of a cached authorization decision, in seconds
+     */
+    private static final long DECISIONS_TTL = 60;
+    /**
+     * The default maximum number of cached authorization decisions for a user
+     */
+    private static final int DECISIONS_CAPACITY = 1024;
+
     /**
      * The context of a thread
      */
@@ -87,6 +99,130 @@ public class KernelSecurityService implements SecurityService, HttpApiService {
      * The URI for the API services
      */
     private final String apiUri;
+    /**
+     * The route for the login resource
+     */
+    private final HttpApiRoute routeLogin;
+    /**
+     * The route for the logout resource
+     */
+    private final HttpApiRoute routeLogout;
+    /**
+     * The route for the me resource
+     */
+    private final HttpApiRoute routeMe;
+    /**
+     * The route for the policy resource
+     */
+    private final HttpApiRoute routePolicy;
+    /**
+     * The route for the policy of a specific action
+     */
+    private final HttpApiRoute routePolicyAction;
+    /**
+     * The route for the users resource
+     */
+    private final HttpApiRoute routeUsers;
+    /**
+     * The route for a specific user
+     */
+    private final HttpApiRoute routeUser;
+    /**
+     * The route for renaming a user
+     */
+    private final HttpApiRoute routeUserRename;
+    /**
+     * The route for updating the key of a user
+     */
+    private final HttpApiRoute routeUserUpdateKey;
+    /**
+     * The route for resetting the key of a user
+     */
+    private final HttpApiRoute routeUserResetKey;
+    /**
+     * The route for assigning a role to a user
+     */
+    private final HttpApiRoute routeUserAssign;
+    /**
+     * The route for unassigning a role from a user
+     */
+    private final HttpApiRoute routeUserUnassign;
+    /**
+     * The route for the groups resource
+     */
+    private final HttpApiRoute routeGroups;
+    /**
+     * The route for a specific group
+     */
+    private final HttpApiRoute routeGroup;
+    /**
+     * The route for renaming a group
+     */
+    private final HttpApiRoute routeGroupRename;
+    /**
+     * The route for adding a member to a group
+     */
+    private final HttpApiRoute routeGroupAddMember;
+    /**
+     * The route for removing a member from a group
+     */
+    private final HttpApiRoute routeGroupRemoveMember;
+    /**
+     * The route for adding an administrator to a group
+     */
+    private final HttpApiRoute routeGroupAddAdmin;
+    /**
+     * The route for removing an administrator from a group
+     */
+    private final HttpApiRoute routeGroupRemoveAdmin;
+    /**
+     * The route for assigning a role to a group
+     */
+    private final HttpApiRoute routeGroupAssign;
+    /**
+     * The route for unassigning a role from a group
+     */
+    private final HttpApiRoute routeGroupUnassign;
+    /**
+     * The route for the roles resource
+     */
+    private final HttpApiRoute routeRoles;
+    /**
+     * The route for a specific role
+     */
+    private final HttpApiRoute routeRole;
+    /**
+     * The route for renaming a role
+     */
+    private final HttpApiRoute routeRoleRename;
+    /**
+     * The route for adding an implication to a role
+     */
+    private final HttpApiRoute routeRoleImply;
+    /**
+     * The route for removing an implication from a role
+     */
+    private final HttpApiRoute routeRoleUnimply;
+    /**
+     * The route for a specific secured resource
+     */
+    private final HttpApiRoute routeResource;
+    /**
+     * The route for adding an owner to a secured resource
+     */
+    private final HttpApiRoute routeResourceAddOwner;
+    /**
+     * The route for removing an owner from a secured resource
+     */
+    private final HttpApiRoute routeResourceRemoveOwner;
+    /**
+     * The route for adding a sharing to a secured resource
+     */
+    private final HttpApiRoute routeResourceAddSharing;
+    /**
+     * The route for removing a sharing from a secured resource
+     */
+    private final HttpApiRoute routeResourceRemoveSharing;
     /**
      * The maximum number of login failure before ban
      */
@@ -119,6 +255,14 @@ public class KernelSecurityService implements SecurityService, HttpApiService {
      * The map of clients with failed login attempts
      */
     private final Map<String, ClientLogin> clients;
+    /**
+     * The cache of authorization decisions, or null if disabled
+     */
+    private final KernelSecurityDecisionCache decisions;
+    /**
+     * Whether the cache of authorization decisions is subscribed to the invalidating events
+     */
+    private volatile boolean decisionsSubscribed;
     /**
      * The security realm
      */
@@ -144,6 +288,37 @@ public class KernelSecurityService implements SecurityService, HttpApiService {
     public KernelSecurityService(ConfigurationService configurationService) {
         IniDocument configuration = configurationService.getConfigFor(SecurityService.class.getCanonicalName());
         this.apiUri = PlatformHttp.getUriPrefixApi() + "/kernel/security";
+        this.routeLogin = new HttpApiRoute(apiUri + "/login", HttpConstants.METHOD_POST);
+        this.routeLogout = new HttpApiRoute(apiUri + "/logout", HttpConstants.METHOD_POST);
+        this.routeMe = new HttpApiRoute(apiUri + "/me", HttpConstants.METHOD_GET);
+        this.routePolicy = new HttpApiRoute(apiUri + "/policy", HttpConstants.METHOD_GET);
+        this.routePolicyAction = new HttpApiRoute(apiUri + "/policy/actions/{actionId}", HttpConstants.METHOD_PUT);
+        this.routeUsers = new HttpApiRoute(apiUri + "/users", HttpConstants.METHOD_GET);
+        this.routeUser = new HttpApiRoute(apiUri + "/users/{userId}", HttpConstants.METHOD_GET, HttpConstants.METHOD_PUT, HttpConstants.METHOD_DELETE);
+        this.routeUserRename = new HttpApiRoute(apiUri + "/users/{userId}/rename", HttpConstants.METHOD_POST);
+        this.routeUserUpdateKey = new HttpApiRoute(apiUri + "/users/{userId}/updateKey", HttpConstants.METHOD_POST);
+        this.routeUserResetKey = new HttpApiRoute(apiUri + "/users/{userId}/resetKey", HttpConstants.METHOD_POST);
+        this.routeUserAssign = new HttpApiRoute(apiUri + "/users/{userId}/assign", HttpConstants.METHOD_POST);
+        this.routeUserUnassign = new HttpApiRoute(apiUri + "/users/{userId}/unassign", HttpConstants.METHOD_POST);
+        this.routeGroups = new HttpApiRoute(apiUri + "/groups", HttpConstants.METHOD_GET);
+        this.routeGroup = new HttpApiRoute(apiUri + "/groups/{groupId}", HttpConstants.METHOD_GET, HttpConstants.METHOD_PUT, HttpConstants.METHOD_DELETE);
+        this.routeGroupRename = new HttpApiRoute(apiUri + "/groups/{groupId}/rename", HttpConstants.METHOD_POST);
+        this.routeGroupAddMember = new HttpApiRoute(apiUri + "/groups/{groupId}/addMember", HttpConstants.METHOD_POST);
+        this.routeGroupRemoveMember = new HttpApiRoute(apiUri + "/groups/{groupId}/removeMember", HttpConstants.METHOD_POST);
+        this.routeGroupAddAdmin = new HttpApiRoute(apiUri + "/groups/{groupId}/addAdmin", HttpConstants.METHOD_POST);
+        this.routeGroupRemoveAdmin = new HttpApiRoute(apiUri + "/groups/{groupId}/removeAdmin", HttpConstants.METHOD_POST);
+        this.routeGroupAssign = new HttpApiRoute(apiUri + "/groups/{groupId}/assign", HttpConstants.METHOD_POST);
+        this.routeGroupUnassign = new HttpApiRoute(apiUri + "/groups/{groupId}/unassign", HttpConstants.METHOD_POST);
+        this.routeRoles = new HttpApiRoute(apiUri + "/roles", HttpConstants.METHOD_GET);
+        this.routeRole = new HttpApiRoute(apiUri + "/roles/{roleId}", HttpConstants.METHOD_GET, HttpConstants.METHOD_PUT, HttpConstants.METHOD_DELETE);
+        this.routeRoleRename = new HttpApiRoute(apiUri + "/roles/{roleId}/rename", HttpConstants.METHOD_POST);
+        this.routeRoleImply = new HttpApiRoute(apiUri + "/roles/{roleId}/imply", HttpConstants.METHOD_POST);
+        this.routeRoleUnimply = new HttpApiRoute(apiUri + "/roles/{roleId}/unimply", HttpConstants.METHOD_POST);
+        this.routeResource = new HttpApiRoute(apiUri + "/resources/{resourceId}", HttpConstants.METHOD_GET);
+        this.routeResourceAddOwner = new HttpApiRoute(apiUri + "/resources/{resourceId}/addOwner", HttpConstants.METHOD_POST);
+        this.routeResourceRemoveOwner = new HttpApiRoute(apiUri + "/resources/{resourceId}/removeOwner", HttpConstants.METHOD_POST);
+        this.routeResourceAddSharing = new HttpApiRoute(apiUri + "/resources/{resourceId}/addSharing", HttpConstants.METHOD_POST);
+        this.routeResourceRemoveSharing = new HttpApiRoute(apiUri + "/resources/{resourceId}/removeSharing", HttpConstants.METHOD_POST);
         this.maxLoginFailure = Integer.parseInt(configuration.get("maxLoginFailure"));
         this.banLength = Integer.parseInt(configuration.get("banLength"));
         this.realmConfiguration = configuration.getSection("realm");
@@ -152,6 +327,22 @@ public class KernelSecurityService implements SecurityService, HttpApiService {
         this.descriptorsConfiguration = configuration.getSection("descriptors");
         this.securityTokenTTL = Integer.parseInt(tokenServiceConfiguration.get("tokenTTL"));
         this.clients = new HashMap<>();
+        long decisionsTTL = DECISIONS_TTL;
+        int decisionsCapacity = DECISIONS_CAPACITY;
+        try {
+            String value = configuration.get("authorizations", "cacheTTL");
+            if (value != null)
+                decisionsTTL = Long.parseLong(value);
+            value = configuration.get("authorizations", "cacheCapacity");
+            if (value != null)
+                decisionsCapacity = Integer.parseInt(value);
+        } catch (NumberFormatException exception) {
+            Logging.get().error(exception);
+        }
+        this.decisions = decisionsTTL > 0 && decisionsCapacity > 0
+                ? new KernelSecurityDecisionCache(TimeUnit.SECONDS.toNanos(decisionsTTL), decisionsCapacity)
+                : null;
+        this.decisionsSubscribed = false;
     }
 
     @Override
@@ -170,35 +361,181 @@ public class KernelSecurityService implements SecurityService, HttpApiService {
     }
 
     @Override
-    public int canHandle(HttpApiRequest request) {
-        return request.getUri().startsWith(apiUri)
-                ? HttpApiService.PRIORITY_NORMAL
-                : HttpApiService.CANNOT_HANDLE;
+    public HttpApiRoute[] getRoutes() {
+        return new HttpApiRoute[]{
+                routeLogin,
+                routeLogout,
+                routeMe,
+                routePolicy,
+                routePolicyAction,
+                routeUsers,
+                routeUser,
+                routeUserRename,
+                routeUserUpdateKey,
+                routeUserResetKey,
+                routeUserAssign,
+                routeUserUnassign,
+                routeGroups,
+                routeGroup,
+                routeGroupRename,
+                routeGroupAddMember,
+                routeGroupRemoveMember,
+                routeGroupAddAdmin,
+                routeGroupRemoveAdmin,
+                routeGroupAssign,
+                routeGroupUnassign,
+                routeRoles,
+                routeRole,
+                routeRoleRename,
+                routeRoleImply,
+                routeRoleUnimply,
+                routeResource,
+                routeResourceAddOwner,
+                routeResourceRemoveOwner,
+                routeResourceAddSharing,
+                routeResourceRemoveSharing
+        };
     }
 
     @Override
     public boolean requireAuth(HttpApiRequest request) {
-        return !(request.getUri().equals(apiUri + "/login"));
+        return request.getRoute() != routeLogin;
     }
 
     @Override
     public HttpResponse handle(SecurityService securityService, HttpApiRequest request) {
-        if (request.getUri().equals(apiUri + "/login"))
+        HttpApiRoute route = request.getRoute();
+        if (route == routeLogin)
             return handleRequestLogin(request);
-        if (request.getUri().equals(apiUri + "/logout"))
+        if (route == routeLogout)
             return handleRequestLogout(request);
-        if (request.getUri().equals(apiUri + "/me"))
+        if (route == routeMe)
             return handleRequestMe(request);
-        if (request.getUri().startsWith(apiUri + "/policy"))
-            return handleRequestPolicy(request);
-        if (request.getUri().startsWith(apiUri + "/users"))
-            return handleRequestUsers(request);
-        if (request.getUri().startsWith(apiUri + "/groups"))
-            return handleRequestGroups(request);
-        if (request.getUri().startsWith(apiUri + "/roles"))
-            return handleRequestRoles(request);
-        if (request.getUri().startsWith(apiUri + "/resources"))
-            return handleRequestResources(request);
+        if (route == routePolicy)
+            return ReplyUtils.toHttpResponse(getPolicy().getConfiguration());
+        if (route == routePolicyAction) {
+            String definition = new String(request.getContent(), IOUtils.CHARSET);
+            return ReplyUtils.toHttpResponse(getPolicy().setPolicy(request.getPathParameter("actionId"), definition));
+        }
+        if (route == routeUsers)
+            return handleRequestUsers();
+        if (route == routeUser)
+            return handleRequestUser(request, request.getPathParameter("userId"));
+        if (route == routeUserRename) {
+            String displayName = request.getParameter("name");
+            if (displayName == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'name'"));
+            return ReplyUtils.toHttpResponse(getRealm().renameUser(request.getPathParameter("userId"), displayName));
+        }
+        if (route == routeUserUpdateKey) {
+            String oldKey = request.getParameter("oldKey");
+            if (oldKey == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'oldKey'"));
+            String password = new String(request.getContent(), IOUtils.CHARSET);
+            return ReplyUtils.toHttpResponse(getRealm().changeUserKey(request.getPathParameter("userId"), oldKey, password));
+        }
+        if (route == routeUserResetKey) {
+            String password = new String(request.getContent(), IOUtils.CHARSET);
+            return ReplyUtils.toHttpResponse(getRealm().resetUserKey(request.getPathParameter("userId"), password));
+        }
+        if (route == routeUserAssign) {
+            String role = request.getParameter("role");
+            if (role == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'role'"));
+            return ReplyUtils.toHttpResponse(getRealm().assignRoleToUser(request.getPathParameter("userId"), role));
+        }
+        if (route == routeUserUnassign) {
+            String role = request.getParameter("role");
+            if (role == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'role'"));
+            return ReplyUtils.toHttpResponse(getRealm().unassignRoleToUser(request.getPathParameter("userId"), role));
+        }
+        if (route == routeGroups)
+            return handleRequestGroups();
+        if (route == routeGroup)
+            return handleRequestGroup(request, request.getPathParameter("groupId"));
+        if (route == routeGroupRename) {
+            String displayName = request.getParameter("name");
+            if (displayName == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'name'"));
+            return ReplyUtils.toHttpResponse(getRealm().renameGroup(request.getPathParameter("groupId"), displayName));
+        }
+        if (route == routeGroupAddMember) {
+            String user = request.getParameter("user");
+            if (user == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'user'"));
+            return ReplyUtils.toHttpResponse(getRealm().addUserToGroup(user, request.getPathParameter("groupId")));
+        }
+        if (route == routeGroupRemoveMember) {
+            String user = request.getParameter("user");
+            if (user == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'user'"));
+            return ReplyUtils.toHttpResponse(getRealm().removeUserFromGroup(user, request.getPathParameter("groupId")));
+        }
+        if (route == routeGroupAddAdmin) {
+            String user = request.getParameter("user");
+            if (user == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'user'"));
+            return ReplyUtils.toHttpResponse(getRealm().addAdminToGroup(user, request.getPathParameter("groupId")));
+        }
+        if (route == routeGroupRemoveAdmin) {
+            String user = request.getParameter("user");
+            if (user == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'user'"));
+            return ReplyUtils.toHttpResponse(getRealm().removeAdminFromGroup(user, request.getPathParameter("groupId")));
+        }
+        if (route == routeGroupAssign) {
+            String role = request.getParameter("role");
+            if (role == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'role'"));
+            return ReplyUtils.toHttpResponse(getRealm().assignRoleToGroup(request.getPathParameter("groupId"), role));
+        }
+        if (route == routeGroupUnassign) {
+            String role = request.getParameter("role");
+            if (role == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'role'"));
+            return ReplyUtils.toHttpResponse(getRealm().unassignRoleToGroup(request.getPathParameter("groupId"), role));
+        }
+        if (route == routeRoles)
+            return handleRequestRoles();
+        if (route == routeRole)
+            return handleRequestRole(request, request.getPathParameter("roleId"));
+        if (route == routeRoleRename) {
+            String displayName = request.getParameter("name");
+            if (displayName == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'name'"));
+            return ReplyUtils.toHttpResponse(getRealm().renameRole(request.getPathParameter("roleId"), displayName));
+        }
+        if (route == routeRoleImply) {
+            String target = request.getParameter("target");
+            if (target == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'target'"));
+            return ReplyUtils.toHttpResponse(getRealm().addRoleImplication(request.getPathParameter("roleId"), target));
+        }
+        if (route == routeRoleUnimply) {
+            String target = request.getParameter("target");
+            if (target == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'target'"));
+            return ReplyUtils.toHttpResponse(getRealm().removeRoleImplication(request.getPathParameter("roleId"), target));
+        }
+        if (route == routeResource)
+            return ReplyUtils.toHttpResponse(getSecuredResources().getDescriptorFor(request.getPathParameter("resourceId")));
+        if (route == routeResourceAddOwner) {
+            String user = request.getParameter("user");
+            if (user == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'user'"));
+            return ReplyUtils.toHttpResponse(getSecuredResources().addOwner(request.getPathParameter("resourceId"), user));
+        }
+        if (route == routeResourceRemoveOwner) {
+            String user = request.getParameter("user");
+            if (user == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'user'"));
+            return ReplyUtils.toHttpResponse(getSecuredResources().removeOwner(request.getPathParameter("resourceId"), user));
+        }
+        if (route == routeResourceAddSharing)
+            return handleRequestSharing(request, request.getPathParameter("resourceId"), true);
+        if (route == routeResourceRemoveSharing)
+            return handleRequestSharing(request, request.getPathParameter("resourceId"), false);
         return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
     }
 
@@ -356,12 +693,81 @@ public class KernelSecurityService implements SecurityService, HttpApiService {
 
     @Override
     public Reply checkAction(SecuredAction action) {
-        return getPolicy().checkAction(this, action);
+        return checkAction(action, null, false);
     }
 
     @Override
     public Reply checkAction(SecuredAction action, Object data) {
-        return getPolicy().checkAction(this, action, data);
+        return checkAction(action, data, true);
+    }
+
+    /**
+     * Checks the authorization for an action, using the cache of decisions when possible
+     *
+     * @param action  The secured action
+     * @param data    The resource the action is applied to, if any
+     * @param hasData Whether the action is checked against a resource
+     * @return The authorization decision
+     */
+    private Reply checkAction(SecuredAction action, Object data, boolean hasData) {
+        PlatformUser user = CONTEXT.get();
+        String key = (user != null && canCacheDecisions()) ? KernelSecurityDecisionCache.getKey(action, data) : null;
+        if (key == null)
+            return hasData ? getPolicy().checkAction(this, action, data) : getPolicy().checkAction(this, action);
+        Boolean decision = decisions.get(user.getIdentifier(), key);
+        if (decision != null)
+            return decision ? ReplySuccess.instance() : ReplyUnauthorized.instance();
+        long generation = decisions.getGeneration();
+        Reply reply = hasData ? getPolicy().checkAction(this, action, data) : getPolicy().checkAction(this, action);
+        if (reply.isSuccess())
+            decisions.put(user.getIdentifier(), key, true, generation);
+        else if (reply instanceof ReplyUnauthorized)
+            decisions.put(user.getIdentifier(), key, false, generation);
+        return reply;
+    }
+
+    /**
+     * Gets whether the authorization decisions can be cached
+     * The cache is synchronously invalidated by the changing components through onSecurityChanged.
+     * It is also subscribed to the invalidating events when possible, as a fallback for the components that only emit events.
+     *
+     * @return Whether the authorization decisions can be cached
+     */
+    private boolean canCacheDecisions() {
+        if (decisions == null)
+            return false;
+        if (decisionsSubscribed)
+            return true;
+        EventService eventService = Register.getComponent(EventService.class);
+        if (eventService == null)
+            return true;
+        synchronized (decisions) {
+            if (!decisionsSubscribed) {
+                decisions.subscribe(eventService);
+                decisionsSubscribed = true;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void onSecurityChanged() {
+        if (decisions != null)
+            decisions.invalidate();
+    }
+
+    @Override
+    public Collection<Metric> getMetrics() {
+        return Arrays.asList(METRIC_AUTHORIZATION_CACHE_HITS, METRIC_AUTHORIZATION_CACHE_MISSES);
+    }
+
+    @Override
+    public MetricSnapshot pollMetric(Metric metric) {
+        if (metric == METRIC_AUTHORIZATION_CACHE_HITS)
+            return new MetricSnapshotLong(decisions == null ? 0 : decisions.getHits());
+        if (metric == METRIC_AUTHORIZATION_CACHE_MISSES)
+            return new MetricSnapshotLong(decisions == null ? 0 : decisions.getMisses());
+        return null;
     }
 
     /**
@@ -423,8 +829,6 @@ public class KernelSecurityService implements SecurityService, HttpApiService {
      * @return The HTTP response
      */
     private HttpResponse handleRequestLogin(HttpApiRequest request) {
-        if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
 
         String login = request.getParameter("login");
         if (login == null)
@@ -450,8 +854,6 @@ public class KernelSecurityService implements SecurityService, HttpApiService {
      * @return The HTTP response
      */
     private HttpResponse handleRequestLogout(HttpApiRequest request) {
-        if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
         Reply reply = logout();
         if (!reply.isSuccess())
             return ReplyUtils.toHttpResponse(reply);
@@ -471,394 +873,163 @@ public class KernelSecurityService implements SecurityService, HttpApiService {
      * @return The HTTP response
      */
     private HttpResponse handleRequestMe(HttpApiRequest request) {
-        if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
         return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, getCurrentUser().serializedJSON());
     }
 
     /**
-     * Responds to a request for the policy resource
+     * Responds to a request for the users resource
      *
-     * @param request The web API request to handle
      * @return The HTTP response
      */
-    private HttpResponse handleRequestPolicy(HttpApiRequest request) {
-        if (request.getUri().equals(apiUri + "/policy")) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-            return ReplyUtils.toHttpResponse(getPolicy().getConfiguration());
+    private HttpResponse handleRequestUsers() {
+        Collection<PlatformUser> users = getRealm().getUsers();
+        boolean first = true;
+        StringBuilder builder = new StringBuilder("[");
+        for (PlatformUser user : users) {
+            if (!first)
+                builder.append(", ");
+            first = false;
+            builder.append(user.serializedJSON());
         }
-        if (request.getUri().startsWith(apiUri + "/policy/actions/")) {
-            String rest = request.getUri().substring(apiUri.length() + "/policy/actions/".length());
-            String actionId = URIUtils.decodeComponent(rest);
-            if (actionId.isEmpty())
-                return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-            if (!HttpConstants.METHOD_PUT.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected PUT method");
-            String definition = new String(request.getContent(), IOUtils.CHARSET);
-            return ReplyUtils.toHttpResponse(getPolicy().setPolicy(actionId, definition));
-        }
-        return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+        builder.append("]");
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
     }
 
     /**
-     * Responds to a request for the users resource
+     * Responds to a request for a specific user
      *
      * @param request The web API request to handle
+     * @param userId  The identifier of the user
      * @return The HTTP response
      */
-    private HttpResponse handleRequestUsers(HttpApiRequest request) {
-        if (request.getUri().equals(apiUri + "/users")) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-            Collection<PlatformUser> users = getRealm().getUsers();
-            boolean first = true;
-            StringBuilder builder = new StringBuilder("[");
-            for (PlatformUser user : users) {
-                if (!first)
-                    builder.append(", ");
-                first = false;
-                builder.append(user.serializedJSON());
-            }
-            builder.append("]");
-            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
-        }
-
-        String rest = request.getUri().substring(apiUri.length() + "/users".length() + 1);
-        if (rest.isEmpty())
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-        int index = rest.indexOf("/");
-        String userId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-
-        if (index < 0) {
-            switch (request.getMethod()) {
-                case HttpConstants.METHOD_GET: {
-                    PlatformUser user = getRealm().getUser(userId);
-                    if (user == null)
-                        return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-                    return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, user.serializedJSON());
-                }
-                case HttpConstants.METHOD_PUT: {
-                    String displayName = request.getParameter("name");
-                    if (displayName == null)
-                        return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'name'"));
-                    String password = new String(request.getContent(), IOUtils.CHARSET);
-                    return ReplyUtils.toHttpResponse(getRealm().createUser(userId, displayName, password));
-                }
-                case HttpConstants.METHOD_DELETE: {
-                    return ReplyUtils.toHttpResponse(getRealm().deleteUser(userId));
-                }
-            }
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: GET, PUT, DELETE");
-        }
-
-        switch (rest.substring(index)) {
-            case "/rename": {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
+    private HttpResponse handleRequestUser(HttpApiRequest request, String userId) {
+        switch (request.getMethod()) {
+            case HttpConstants.METHOD_PUT: {
                 String displayName = request.getParameter("name");
                 if (displayName == null)
                     return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'name'"));
-                return ReplyUtils.toHttpResponse(getRealm().renameUser(userId, displayName));
-            }
-            case "/updateKey": {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                String oldKey = request.getParameter("oldKey");
-                if (oldKey == null)
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'oldKey'"));
                 String password = new String(request.getContent(), IOUtils.CHARSET);
-                return ReplyUtils.toHttpResponse(getRealm().changeUserKey(userId, oldKey, password));
-            }
-            case "/resetKey": {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                String password = new String(request.getContent(), IOUtils.CHARSET);
-                return ReplyUtils.toHttpResponse(getRealm().resetUserKey(userId, password));
-            }
-            case "/assign": {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                String role = request.getParameter("role");
-                if (role == null)
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'role'"));
-                return ReplyUtils.toHttpResponse(getRealm().assignRoleToUser(userId, role));
-            }
-            case "/unassign": {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                String role = request.getParameter("role");
-                if (role == null)
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'role'"));
-                return ReplyUtils.toHttpResponse(getRealm().unassignRoleToUser(userId, role));
+                return ReplyUtils.toHttpResponse(getRealm().createUser(userId, displayName, password));
             }
+            case HttpConstants.METHOD_DELETE:
+                return ReplyUtils.toHttpResponse(getRealm().deleteUser(userId));
         }
-        return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+        PlatformUser user = getRealm().getUser(userId);
+        if (user == null)
+            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, user.serializedJSON());
     }
 
     /**
      * Responds to a request for the groups resource
      *
-     * @param request The web API request to handle
      * @return The HTTP response
      */
-    private HttpResponse handleRequestGroups(HttpApiRequest request) {
-        if (request.getUri().equals(apiUri + "/groups")) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-            Collection<PlatformGroup> groups = getRealm().getGroups();
-            boolean first = true;
-            StringBuilder builder = new StringBuilder("[");
-            for (PlatformGroup group : groups) {
-                if (!first)
-                    builder.append(", ");
-                first = false;
-                builder.append(group.serializedJSON());
-            }
-            builder.append("]");
-            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
-        }
-
-        String rest = request.getUri().substring(apiUri.length() + "/groups".length() + 1);
-        if (rest.isEmpty())
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-        int index = rest.indexOf("/");
-        String groupId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-
-        if (index < 0) {
-            switch (request.getMethod()) {
-                case HttpConstants.METHOD_GET: {
-                    PlatformGroup group = getRealm().getGroup(groupId);
-                    if (group == null)
-                        return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-                    return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, group.serializedJSON());
-                }
-                case HttpConstants.METHOD_PUT: {
-                    String displayName = request.getParameter("name");
-                    if (displayName == null)
-                        return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'name'"));
-                    String admin = request.getParameter("admin");
-                    if (admin == null)
-                        return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'admin'"));
-                    return ReplyUtils.toHttpResponse(getRealm().createGroup(groupId, displayName, admin));
-                }
-                case HttpConstants.METHOD_DELETE: {
-                    return ReplyUtils.toHttpResponse(getRealm().deleteGroup(groupId));
-                }
-            }
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: GET, PUT, DELETE");
+    private HttpResponse handleRequestGroups() {
+        Collection<PlatformGroup> groups = getRealm().getGroups();
+        boolean first = true;
+        StringBuilder builder = new StringBuilder("[");
+        for (PlatformGroup group : groups) {
+            if (!first)
+                builder.append(", ");
+            first = false;
+            builder.append(group.serializedJSON());
         }
+        builder.append("]");
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
+    }
 
-        switch (rest.substring(index)) {
-            case "/rename": {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
+    /**
+     * Responds to a request for a specific group
+     *
+     * @param request The web API request to handle
+     * @param groupId The identifier of the group
+     * @return The HTTP response
+     */
+    private HttpResponse handleRequestGroup(HttpApiRequest request, String groupId) {
+        switch (request.getMethod()) {
+            case HttpConstants.METHOD_PUT: {
                 String displayName = request.getParameter("name");
                 if (displayName == null)
                     return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'name'"));
-                return ReplyUtils.toHttpResponse(getRealm().renameGroup(groupId, displayName));
-            }
-            case "/addMember": {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                String user = request.getParameter("user");
-                if (user == null)
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'user'"));
-                return ReplyUtils.toHttpResponse(getRealm().addUserToGroup(user, groupId));
-            }
-            case "/removeMember": {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                String user = request.getParameter("user");
-                if (user == null)
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'user'"));
-                return ReplyUtils.toHttpResponse(getRealm().removeUserFromGroup(user, groupId));
-            }
-            case "/addAdmin": {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                String user = request.getParameter("user");
-                if (user == null)
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'user'"));
-                return ReplyUtils.toHttpResponse(getRealm().addAdminToGroup(user, groupId));
-            }
-            case "/removeAdmin": {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                String user = request.getParameter("user");
-                if (user == null)
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'user'"));
-                return ReplyUtils.toHttpResponse(getRealm().removeAdminFromGroup(user, groupId));
-            }
-            case "/assign": {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                String role = request.getParameter("role");
-                if (role == null)
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'role'"));
-                return ReplyUtils.toHttpResponse(getRealm().assignRoleToGroup(groupId, role));
-            }
-            case "/unassign": {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                String role = request.getParameter("role");
-                if (role == null)
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'role'"));
-                return ReplyUtils.toHttpResponse(getRealm().unassignRoleToGroup(groupId, role));
+                String admin = request.getParameter("admin");
+                if (admin == null)
+                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'admin'"));
+                return ReplyUtils.toHttpResponse(getRealm().createGroup(groupId, displayName, admin));
             }
+            case HttpConstants.METHOD_DELETE:
+                return ReplyUtils.toHttpResponse(getRealm().deleteGroup(groupId));
         }
-        return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+        PlatformGroup group = getRealm().getGroup(groupId);
+        if (group == null)
+            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, group.serializedJSON());
     }
 
     /**
      * Responds to a request for the roles resource
      *
-     * @param request The web API request to handle
      * @return The HTTP response
      */
-    private HttpResponse handleRequestRoles(HttpApiRequest request) {
-        if (request.getUri().equals(apiUri + "/roles")) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-            Collection<PlatformRole> roles = getRealm().getRoles();
-            boolean first = true;
-            StringBuilder builder = new StringBuilder("[");
-            for (PlatformRole role : roles) {
-                if (!first)
-                    builder.append(", ");
-                first = false;
-                builder.append(role.serializedJSON());
-            }
-            builder.append("]");
-            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
-        }
-
-        String rest = request.getUri().substring(apiUri.length() + "/roles".length() + 1);
-        if (rest.isEmpty())
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-        int index = rest.indexOf("/");
-        String roleId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-
-        if (index < 0) {
-            switch (request.getMethod()) {
-                case HttpConstants.METHOD_GET: {
-                    PlatformRole role = getRealm().getRole(roleId);
-                    if (role == null)
-                        return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-                    return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, role.serializedJSON());
-                }
-                case HttpConstants.METHOD_PUT: {
-                    String displayName = request.getParameter("name");
-                    if (displayName == null)
-                        return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'name'"));
-                    return ReplyUtils.toHttpResponse(getRealm().createRole(roleId, displayName));
-                }
-                case HttpConstants.METHOD_DELETE: {
-                    return ReplyUtils.toHttpResponse(getRealm().deleteRole(roleId));
-                }
-            }
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: GET, PUT, DELETE");
+    private HttpResponse handleRequestRoles() {
+        Collection<PlatformRole> roles = getRealm().getRoles();
+        boolean first = true;
+        StringBuilder builder = new StringBuilder("[");
+        for (PlatformRole role : roles) {
+            if (!first)
+                builder.append(", ");
+            first = false;
+            builder.append(role.serializedJSON());
         }
+        builder.append("]");
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
+    }
 
-        switch (rest.substring(index)) {
-            case "/rename": {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
+    /**
+     * Responds to a request for a specific role
+     *
+     * @param request The web API request to handle
+     * @param roleId  The identifier of the role
+     * @return The HTTP response
+     */
+    private HttpResponse handleRequestRole(HttpApiRequest request, String roleId) {
+        switch (request.getMethod()) {
+            case HttpConstants.METHOD_PUT: {
                 String displayName = request.getParameter("name");
                 if (displayName == null)
                     return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'name'"));
-                return ReplyUtils.toHttpResponse(getRealm().renameRole(roleId, displayName));
-            }
-            case "/imply": {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                String target = request.getParameter("target");
-                if (target == null)
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'target'"));
-                return ReplyUtils.toHttpResponse(getRealm().addRoleImplication(roleId, target));
-            }
-            case "/unimply": {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                String target = request.getParameter("target");
-                if (target == null)
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'target'"));
-                return ReplyUtils.toHttpResponse(getRealm().removeRoleImplication(roleId, target));
+                return ReplyUtils.toHttpResponse(getRealm().createRole(roleId, displayName));
             }
+            case HttpConstants.METHOD_DELETE:
+                return ReplyUtils.toHttpResponse(getRealm().deleteRole(roleId));
         }
-        return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+        PlatformRole role = getRealm().getRole(roleId);
+        if (role == null)
+            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, role.serializedJSON());
     }
 
     /**
-     * Responds to a request for the resources resource
+     * Responds to a request for adding or removing a sharing of a secured resource
      *
-     * @param request The web API request to handle
+     * @param request    The web API request to handle
+     * @param resourceId The identifier of the secured resource
+     * @param add        Whether the sharing is added, otherwise it is removed
      * @return The HTTP response
      */
-    private HttpResponse handleRequestResources(HttpApiRequest request) {
-        if (request.getUri().equals(apiUri + "/resources"))
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-
-        String rest = request.getUri().substring(apiUri.length() + "/resources".length() + 1);
-        if (rest.isEmpty())
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-        int index = rest.indexOf("/");
-        String resourceId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-
-        if (index < 0) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-            return ReplyUtils.toHttpResponse(getSecuredResources().getDescriptorFor(resourceId));
-        }
-
-        switch (rest.substring(index)) {
-            case "/addOwner": {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                String user = request.getParameter("user");
-                if (user == null)
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'user'"));
-                return ReplyUtils.toHttpResponse(getSecuredResources().addOwner(resourceId, user));
-            }
-            case "/removeOwner": {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                String user = request.getParameter("user");
-                if (user == null)
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'user'"));
-                return ReplyUtils.toHttpResponse(getSecuredResources().removeOwner(resourceId, user));
-            }
-            case "/addSharing": {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                String content = new String(request.getContent(), IOUtils.CHARSET);
-                if (content.isEmpty())
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
-                BufferedLogger logger = new BufferedLogger();
-                ASTNode root = Json.parse(logger, content);
-                if (root == null)
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED, logger.getErrorsAsString()));
-                SecuredResourceSharing sharing = SecuredResourceDescriptorBase.loadSharing(root);
-                if (sharing == null)
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED, "JSON object is not a sharing definition"));
-                return ReplyUtils.toHttpResponse(getSecuredResources().addSharing(resourceId, sharing));
-            }
-            case "/removeSharing": {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                String content = new String(request.getContent(), IOUtils.CHARSET);
-                if (content.isEmpty())
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
-                BufferedLogger logger = new BufferedLogger();
-                ASTNode root = Json.parse(logger, content);
-                if (root == null)
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED, logger.getErrorsAsString()));
-                SecuredResourceSharing sharing = SecuredResourceDescriptorBase.loadSharing(root);
-                if (sharing == null)
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED, "JSON object is not a sharing definition"));
-                return ReplyUtils.toHttpResponse(getSecuredResources().removeSharing(resourceId, sharing));
-            }
-        }
-        return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+    private HttpResponse handleRequestSharing(HttpApiRequest request, String resourceId, boolean add) {
+        String content = new String(request.getContent(), IOUtils.CHARSET);
+        if (content.isEmpty())
+            return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
+        BufferedLogger logger = new BufferedLogger();
+        ASTNode root = Json.parse(logger, content);
+        if (root == null)
+            return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED, logger.getErrorsAsString()));
+        SecuredResourceSharing sharing = SecuredResourceDescriptorBase.loadSharing(root);
+        if (sharing == null)
+            return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED, "JSON object is not a sharing definition"));
+        if (add)
+            return ReplyUtils.toHttpResponse(getSecuredResources().addSharing(resourceId, sharing));
+        return ReplyUtils.toHttpResponse(getSecuredResources().removeSharing(resourceId, sharing));
     }
 }
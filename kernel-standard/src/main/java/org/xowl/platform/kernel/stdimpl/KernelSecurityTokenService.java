@@ -26,10 +26,13 @@ import org.xowl.platform.kernel.security.SecurityTokenService;
 
 import javax.crypto.KeyGenerator;
 import javax.crypto.Mac;
-import java.security.InvalidKeyException;
+import javax.crypto.ShortBufferException;
+import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Implementation of the security token service for the platform
@@ -37,6 +40,10 @@ import java.util.Arrays;
  * @author Laurent Wouters
  */
 public class KernelSecurityTokenService implements SecurityTokenService {
+    /**
+     * The MAC algorithm to use
+     */
+    private static final String ALGORITHM = "HmacSHA256";
     /**
      * The size of the key to use
      */
@@ -49,15 +56,44 @@ public class KernelSecurityTokenService implements SecurityTokenService {
      * The length of the timestamp in bytes
      */
     private static final int TIMESTAMP_LENGTH = 8;
+    /**
+     * The default maximum number of verified tokens to remember
+     */
+    private static final int CACHE_CAPACITY = 1024;
+
+    /**
+     * A token that has already been verified
+     */
+    private static class VerifiedToken {
+        /**
+         * The login of the user the token has been emitted for
+         */
+        public final String login;
+        /**
+         * The timestamp until which the token is valid
+         */
+        public final long validUntil;
+
+        /**
+         * Initializes this token
+         *
+         * @param login      The login of the user the token has been emitted for
+         * @param validUntil The timestamp until which the token is valid
+         */
+        public VerifiedToken(String login, long validUntil) {
+            this.login = login;
+            this.validUntil = validUntil;
+        }
+    }
 
     /**
-     * The Message Authentication Code algorithm to use for securing user tokens
+     * The Message Authentication Code for securing user tokens, initialized once for each thread
      */
-    private final Mac securityMAC;
+    private final ThreadLocal<Mac> securityMAC;
     /**
-     * The private security key for the Message Authentication Code
+     * The buffer for the hash computed by the current thread
      */
-    private final Key securityKey;
+    private final ThreadLocal<byte[]> securityHash;
     /**
      * The name to use for security tokens
      */
@@ -66,6 +102,14 @@ public class KernelSecurityTokenService implements SecurityTokenService {
      * The time to live in seconds of an authentication token
      */
     private final long securityTokenTTL;
+    /**
+     * The tokens that have already been verified
+     */
+    private final Map<String, VerifiedToken> verifiedTokens;
+    /**
+     * The maximum number of verified tokens to remember
+     */
+    private final int verifiedTokensCapacity;
 
     /**
      * Initializes this service
@@ -73,21 +117,47 @@ public class KernelSecurityTokenService implements SecurityTokenService {
      * @param configuration The configuration to use
      */
     public KernelSecurityTokenService(IniSection configuration) {
-        Mac mac = null;
         Key key = null;
         try {
-            mac = Mac.getInstance("HmacSHA256");
-            KeyGenerator keyGenerator = KeyGenerator.getInstance("HmacSHA256");
+            KeyGenerator keyGenerator = KeyGenerator.getInstance(ALGORITHM);
             keyGenerator.init(KEY_SIZE);
             key = keyGenerator.generateKey();
         } catch (NoSuchAlgorithmException exception) {
             // should not happen
             Logging.get().error(exception);
         }
-        this.securityMAC = mac;
-        this.securityKey = key;
+        final Key securityKey = key;
+        this.securityMAC = new ThreadLocal<Mac>() {
+            @Override
+            protected Mac initialValue() {
+                try {
+                    Mac mac = Mac.getInstance(ALGORITHM);
+                    mac.init(securityKey);
+                    return mac;
+                } catch (GeneralSecurityException exception) {
+                    Logging.get().error(exception);
+                    return null;
+                }
+            }
+        };
+        this.securityHash = new ThreadLocal<byte[]>() {
+            @Override
+            protected byte[] initialValue() {
+                return new byte[HASH_LENGTH];
+            }
+        };
         this.securityTokenName = configuration.get("tokenName");
         this.securityTokenTTL = Integer.parseInt(configuration.get("tokenTTL"));
+        int capacity = CACHE_CAPACITY;
+        try {
+            String value = configuration.get("cacheCapacity");
+            if (value != null)
+                capacity = Integer.parseInt(value);
+        } catch (NumberFormatException exception) {
+            Logging.get().error(exception);
+        }
+        this.verifiedTokens = new ConcurrentHashMap<>();
+        this.verifiedTokensCapacity = capacity;
     }
 
     @Override
@@ -107,75 +177,105 @@ public class KernelSecurityTokenService implements SecurityTokenService {
 
     @Override
     public String newTokenFor(String login) {
+        Mac mac = securityMAC.get();
+        if (mac == null)
+            return null;
         long timestamp = System.currentTimeMillis();
         long validUntil = timestamp + securityTokenTTL * 1000;
         byte[] text = login.getBytes(IOUtils.CHARSET);
-        byte[] tokenData = Arrays.copyOf(text, text.length + TIMESTAMP_LENGTH);
-        tokenData[text.length] = (byte) ((validUntil & 0xFF00000000000000L) >>> 56);
-        tokenData[text.length + 1] = (byte) ((validUntil & 0x00FF000000000000L) >>> 48);
-        tokenData[text.length + 2] = (byte) ((validUntil & 0x0000FF0000000000L) >>> 40);
-        tokenData[text.length + 3] = (byte) ((validUntil & 0x000000FF00000000L) >>> 32);
-        tokenData[text.length + 4] = (byte) ((validUntil & 0x00000000FF000000L) >>> 24);
-        tokenData[text.length + 5] = (byte) ((validUntil & 0x0000000000FF0000L) >>> 16);
-        tokenData[text.length + 6] = (byte) ((validUntil & 0x000000000000FF00L) >>> 8);
-        tokenData[text.length + 7] = (byte) ((validUntil & 0x00000000000000FFL));
-
-        synchronized (securityMAC) {
-            try {
-                securityMAC.init(securityKey);
-                byte[] tokenHash = securityMAC.doFinal(tokenData);
-                byte[] token = Arrays.copyOf(tokenData, tokenData.length + tokenHash.length);
-                System.arraycopy(tokenHash, 0, token, tokenData.length, tokenHash.length);
-                return fr.cenotelie.commons.utils.Base64.encodeBase64(token);
-            } catch (InvalidKeyException exception) {
-                Logging.get().error(exception);
-                return null;
-            }
+        int dataLength = text.length + TIMESTAMP_LENGTH;
+        byte[] token = new byte[dataLength + HASH_LENGTH];
+        System.arraycopy(text, 0, token, 0, text.length);
+        token[text.length] = (byte) ((validUntil & 0xFF00000000000000L) >>> 56);
+        token[text.length + 1] = (byte) ((validUntil & 0x00FF000000000000L) >>> 48);
+        token[text.length + 2] = (byte) ((validUntil & 0x0000FF0000000000L) >>> 40);
+        token[text.length + 3] = (byte) ((validUntil & 0x000000FF00000000L) >>> 32);
+        token[text.length + 4] = (byte) ((validUntil & 0x00000000FF000000L) >>> 24);
+        token[text.length + 5] = (byte) ((validUntil & 0x0000000000FF0000L) >>> 16);
+        token[text.length + 6] = (byte) ((validUntil & 0x000000000000FF00L) >>> 8);
+        token[text.length + 7] = (byte) ((validUntil & 0x00000000000000FFL));
+        try {
+            mac.update(token, 0, dataLength);
+            mac.doFinal(token, dataLength);
+        } catch (ShortBufferException exception) {
+            // should not happen
+            Logging.get().error(exception);
+            mac.reset();
+            return null;
         }
+        return fr.cenotelie.commons.utils.Base64.encodeBase64(token);
     }
 
     @Override
     public Reply checkToken(String token) {
+        VerifiedToken verified = verifiedTokens.get(token);
+        if (verified != null) {
+            if (System.currentTimeMillis() > verified.validUntil) {
+                // the token expired
+                verifiedTokens.remove(token);
+                return ReplyExpiredSession.instance();
+            }
+            return new ReplyResult<>(verified.login);
+        }
+
+        Mac mac = securityMAC.get();
+        if (mac == null)
+            return ReplyUnauthenticated.instance();
         byte[] tokenBytes = fr.cenotelie.commons.utils.Base64.decodeBase64(token);
         if (tokenBytes.length <= HASH_LENGTH + TIMESTAMP_LENGTH)
             return ReplyUnauthenticated.instance();
-        byte[] tokenData = Arrays.copyOf(tokenBytes, tokenBytes.length - HASH_LENGTH);
-        byte[] hashProvided = new byte[HASH_LENGTH];
-        System.arraycopy(tokenBytes, tokenBytes.length - HASH_LENGTH, hashProvided, 0, HASH_LENGTH);
+        int dataLength = tokenBytes.length - HASH_LENGTH;
 
         // checks the hash
-        synchronized (securityMAC) {
-            try {
-                securityMAC.init(securityKey);
-                byte[] computedHash = securityMAC.doFinal(tokenData);
-                if (!Arrays.equals(hashProvided, computedHash))
-                    // the token does not checks out ...
-                    return ReplyUnauthenticated.instance();
-            } catch (InvalidKeyException exception) {
-                Logging.get().error(exception);
-                return new ReplyException(exception);
-            }
+        byte[] computedHash = securityHash.get();
+        try {
+            mac.update(tokenBytes, 0, dataLength);
+            mac.doFinal(computedHash, 0);
+        } catch (ShortBufferException exception) {
+            Logging.get().error(exception);
+            mac.reset();
+            return new ReplyException(exception);
         }
+        int difference = 0;
+        for (int i = 0; i != HASH_LENGTH; i++)
+            difference |= computedHash[i] ^ tokenBytes[dataLength + i];
+        if (difference != 0)
+            // the token does not checks out ...
+            return ReplyUnauthenticated.instance();
 
-        byte b0 = tokenBytes[tokenBytes.length - HASH_LENGTH - 8];
-        byte b1 = tokenBytes[tokenBytes.length - HASH_LENGTH - 7];
-        byte b2 = tokenBytes[tokenBytes.length - HASH_LENGTH - 6];
-        byte b3 = tokenBytes[tokenBytes.length - HASH_LENGTH - 5];
-        byte b4 = tokenBytes[tokenBytes.length - HASH_LENGTH - 4];
-        byte b5 = tokenBytes[tokenBytes.length - HASH_LENGTH - 3];
-        byte b6 = tokenBytes[tokenBytes.length - HASH_LENGTH - 2];
-        byte b7 = tokenBytes[tokenBytes.length - HASH_LENGTH - 1];
-        long validUntil = ((long) b0 & 0xFFL) << 56
-                | ((long) b1 & 0xFFL) << 48
-                | ((long) b2 & 0xFFL) << 40
-                | ((long) b3 & 0xFFL) << 32
-                | ((long) b4 & 0xFFL) << 24
-                | ((long) b5 & 0xFFL) << 16
-                | ((long) b6 & 0xFFL) << 8
-                | ((long) b7 & 0xFFL);
+        int offset = dataLength - TIMESTAMP_LENGTH;
+        long validUntil = ((long) tokenBytes[offset] & 0xFFL) << 56
+                | ((long) tokenBytes[offset + 1] & 0xFFL) << 48
+                | ((long) tokenBytes[offset + 2] & 0xFFL) << 40
+                | ((long) tokenBytes[offset + 3] & 0xFFL) << 32
+                | ((long) tokenBytes[offset + 4] & 0xFFL) << 24
+                | ((long) tokenBytes[offset + 5] & 0xFFL) << 16
+                | ((long) tokenBytes[offset + 6] & 0xFFL) << 8
+                | ((long) tokenBytes[offset + 7] & 0xFFL);
         if (System.currentTimeMillis() > validUntil)
             // the token expired
             return ReplyExpiredSession.instance();
-        return new ReplyResult<>(new String(tokenBytes, 0, tokenBytes.length - HASH_LENGTH - TIMESTAMP_LENGTH, IOUtils.CHARSET));
+        String login = new String(tokenBytes, 0, offset, IOUtils.CHARSET);
+        if (verifiedTokensCapacity > 0) {
+            if (verifiedTokens.size() >= verifiedTokensCapacity)
+                purgeVerifiedTokens();
+            verifiedTokens.put(token, new VerifiedToken(login, validUntil));
+        }
+        return new ReplyResult<>(login);
+    }
+
+    /**
+     * Purges the expired tokens from the verified ones
+     * When no token expired, all the verified tokens are forgotten.
+     */
+    private void purgeVerifiedTokens() {
+        long now = System.currentTimeMillis();
+        Iterator<VerifiedToken> iterator = verifiedTokens.values().iterator();
+        while (iterator.hasNext()) {
+            if (now > iterator.next().validUntil)
+                iterator.remove();
+        }
+        if (verifiedTokens.size() >= verifiedTokensCapacity)
+            verifiedTokens.clear();
     }
 }
@@ -22,7 +22,6 @@ import fr.cenotelie.commons.utils.api.Reply;
 import fr.cenotelie.commons.utils.api.ReplyUtils;
 import fr.cenotelie.commons.utils.http.HttpConstants;
 import fr.cenotelie.commons.utils.http.HttpResponse;
-import fr.cenotelie.commons.utils.http.URIUtils;
 import fr.cenotelie.commons.utils.metrics.Metric;
 import fr.cenotelie.commons.utils.metrics.MetricProvider;
 import fr.cenotelie.commons.utils.metrics.MetricSnapshot;
@@ -36,6 +35,7 @@ import org.xowl.platform.kernel.statistics.StatisticsService;
 import org.xowl.platform.kernel.webapi.HttpApiRequest;
 import org.xowl.platform.kernel.webapi.HttpApiResource;
 import org.xowl.platform.kernel.webapi.HttpApiResourceBase;
+import org.xowl.platform.kernel.webapi.HttpApiRoute;
 import org.xowl.platform.kernel.webapi.HttpApiService;
 
 import java.net.HttpURLConnection;
@@ -62,12 +62,27 @@ public class KernelStatisticsService implements StatisticsService, HttpApiServic
      * The URI for the API services
      */
     private final String apiUri;
+    /**
+     * The route for the metrics resource
+     */
+    private final HttpApiRoute routeMetrics;
+    /**
+     * The route for a specific metric
+     */
+    private final HttpApiRoute routeMetric;
+    /**
+     * The route for the snapshot of a metric
+     */
+    private final HttpApiRoute routeMetricSnapshot;
 
     /**
      * Initializes this provider
      */
     public KernelStatisticsService() {
         this.apiUri = PlatformHttp.getUriPrefixApi() + "/kernel/statistics";
+        this.routeMetrics = new HttpApiRoute(apiUri + "/metrics", HttpConstants.METHOD_GET);
+        this.routeMetric = new HttpApiRoute(apiUri + "/metrics/{metricId}", HttpConstants.METHOD_GET);
+        this.routeMetricSnapshot = new HttpApiRoute(apiUri + "/metrics/{metricId}/snapshot", HttpConstants.METHOD_GET);
     }
 
     @Override
@@ -86,10 +101,12 @@ public class KernelStatisticsService implements StatisticsService, HttpApiServic
     }
 
     @Override
-    public int canHandle(HttpApiRequest request) {
-        return request.getUri().startsWith(apiUri)
-                ? HttpApiService.PRIORITY_NORMAL
-                : HttpApiService.CANNOT_HANDLE;
+    public HttpApiRoute[] getRoutes() {
+        return new HttpApiRoute[]{
+                routeMetrics,
+                routeMetric,
+                routeMetricSnapshot
+        };
     }
 
     @Override
@@ -99,23 +116,13 @@ public class KernelStatisticsService implements StatisticsService, HttpApiServic
 
     @Override
     public HttpResponse handle(SecurityService securityService, HttpApiRequest request) {
-        if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-
-        if (request.getUri().equals(apiUri + "/metrics"))
+        HttpApiRoute route = request.getRoute();
+        if (route == routeMetrics)
             return onMessageGetMetricList(securityService);
-
-        if (request.getUri().startsWith(apiUri + "/metrics")) {
-            String rest = request.getUri().substring(apiUri.length() + "/metrics".length() + 1);
-            if (rest.isEmpty())
-                return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-            int index = rest.indexOf("/");
-            String metricId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-            if (index < 0)
-                return onMessageGetMetric(securityService, metricId);
-            else if (rest.substring(index).equals("/snapshot"))
-                return onMessageGetMetricValue(securityService, metricId);
-        }
+        if (route == routeMetric)
+            return onMessageGetMetric(securityService, request.getPathParameter("metricId"));
+        if (route == routeMetricSnapshot)
+            return onMessageGetMetricValue(securityService, request.getPathParameter("metricId"));
         return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
     }
 
@@ -49,6 +49,24 @@ public interface LoggingService extends SecuredService, MeasurableService, Logge
             1000000000,
             new Couple<>(Metric.HINT_IS_NUMERIC, "true"),
             new Couple<>(Metric.HINT_MIN_VALUE, "0"));
+    /**
+     * The metric for the number of messages dropped because the logging queue was full
+     */
+    Metric METRIC_DROPPED_MESSAGES = new MetricBase(LoggingService.class.getCanonicalName() + ".DroppedMessages",
+            "Logging Service - Dropped messages",
+            "messages",
+            1000000000,
+            new Couple<>(Metric.HINT_IS_NUMERIC, "true"),
+            new Couple<>(Metric.HINT_MIN_VALUE, "0"));
+    /**
+     * The metric for the number of messages waiting to be written
+     */
+    Metric METRIC_QUEUE_DEPTH = new MetricBase(LoggingService.class.getCanonicalName() + ".QueueDepth",
+            "Logging Service - Queue depth",
+            "messages",
+            1000000000,
+            new Couple<>(Metric.HINT_IS_NUMERIC, "true"),
+            new Couple<>(Metric.HINT_MIN_VALUE, "0"));
 
     /**
      * Service action to get the current log events
@@ -25,6 +25,8 @@ import org.osgi.framework.ServiceReference;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Represents the access to the register of components
@@ -32,6 +34,50 @@ import java.util.Collection;
  * @author Laurent Wouters
  */
 public class Register {
+    /**
+     * The trackers for the types of components that have been looked up
+     */
+    private static final ConcurrentMap<Class<?>, RegisterTracker<?>> TRACKERS = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the tracker for the specified type of components
+     *
+     * @param componentType A type of components as the Java class that must be implemented
+     * @param <T>           The type of component
+     * @return The tracker, or null if the components cannot be tracked
+     */
+    private static <T> RegisterTracker<T> getTracker(Class<T> componentType) {
+        RegisterTracker<T> tracker = (RegisterTracker<T>) TRACKERS.get(componentType);
+        if (tracker != null && tracker.isValid())
+            return tracker;
+        synchronized (TRACKERS) {
+            tracker = (RegisterTracker<T>) TRACKERS.get(componentType);
+            if (tracker != null && tracker.isValid())
+                return tracker;
+            BundleContext context = FrameworkUtil.getBundle(componentType).getBundleContext();
+            if (context == null)
+                return null;
+            try {
+                tracker = new RegisterTracker<>(context, componentType);
+            } catch (InvalidSyntaxException | IllegalStateException exception) {
+                Logging.get().error(exception);
+                return null;
+            }
+            TRACKERS.put(componentType, tracker);
+            return tracker;
+        }
+    }
+
+    /**
+     * When a tracker is no longer valid
+     *
+     * @param componentType The type of components for the tracker
+     * @param tracker       The tracker
+     */
+    static void onTrackerInvalid(Class<?> componentType, RegisterTracker<?> tracker) {
+        TRACKERS.remove(componentType, tracker);
+    }
+
     /**
      * Gets the first component for the specified type of components
      *
@@ -40,15 +86,10 @@ public class Register {
      * @return The component, or null if there is none
      */
     public static <T> T getComponent(Class<T> componentType) {
-        BundleContext context = FrameworkUtil.getBundle(componentType).getBundleContext();
-        if (context == null)
+        RegisterTracker<T> tracker = getTracker(componentType);
+        if (tracker == null)
             return null;
-        ServiceReference reference = context.getServiceReference(componentType);
-        if (reference == null)
-            return null;
-        T result = (T) context.getService(reference);
-        context.ungetService(reference);
-        return result;
+        return tracker.getFirst();
     }
 
     /**
@@ -59,24 +100,10 @@ public class Register {
      * @return The components
      */
     public static <T> Collection<T> getComponents(Class<T> componentType) {
-        Collection<T> result = new ArrayList<>();
-        BundleContext context = FrameworkUtil.getBundle(componentType).getBundleContext();
-        if (context == null)
-            return result;
-        try {
-            Collection references = context.getServiceReferences(componentType, null);
-            for (Object obj : references) {
-                ServiceReference reference = (ServiceReference) obj;
-                if (reference == null)
-                    continue;
-                result.add((T) context.getService(reference));
-                context.ungetService(reference);
-            }
-            return result;
-        } catch (InvalidSyntaxException exception) {
-            // cannot happen
-            return result;
-        }
+        RegisterTracker<T> tracker = getTracker(componentType);
+        if (tracker == null)
+            return new ArrayList<>();
+        return new ArrayList<>(tracker.getAll());
     }
 
     /**
@@ -89,24 +116,10 @@ public class Register {
      * @return The component, or null if there is none
      */
     public static <T> T getComponent(Class<T> componentType, String paramName, String paramValue) {
-        T result = null;
-        BundleContext context = FrameworkUtil.getBundle(componentType).getBundleContext();
-        if (context == null)
+        RegisterTracker<T> tracker = getTracker(componentType);
+        if (tracker == null || paramValue == null)
             return null;
-        try {
-            Collection references = context.getServiceReferences(componentType, "(" + paramName + "=" + paramValue + ")");
-            for (Object obj : references) {
-                ServiceReference reference = (ServiceReference) obj;
-                if (reference == null)
-                    continue;
-                if (result == null)
-                    result = (T) context.getService(reference);
-                context.ungetService(reference);
-            }
-        } catch (InvalidSyntaxException exception) {
-            Logging.get().error(exception);
-        }
-        return result;
+        return tracker.getFirst(paramName, paramValue);
     }
 
     /**
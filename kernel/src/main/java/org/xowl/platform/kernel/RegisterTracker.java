@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.kernel;
+
+import org.osgi.framework.*;
+
+import java.lang.reflect.Array;
+import java.util.*;
+
+/**
+ * Tracks the registered components of a type and keeps a snapshot of them
+ * The snapshot is rebuilt on the OSGi service events for the tracked type
+ * so that looking up the components does not require calls to the framework.
+ *
+ * @param <T> The type of component
+ * @author Laurent Wouters
+ */
+class RegisterTracker<T> implements ServiceListener, SynchronousBundleListener {
+    /**
+     * A snapshot of the registered components
+     *
+     * @param <T> The type of component
+     */
+    private static class Snapshot<T> {
+        /**
+         * The references to the components, by decreasing ranking
+         */
+        public final ServiceReference[] references;
+        /**
+         * The components, in the same order as the references
+         */
+        public final List<T> components;
+
+        /**
+         * Initializes this snapshot
+         *
+         * @param references The references to the components, by decreasing ranking
+         * @param components The components, in the same order as the references
+         */
+        public Snapshot(ServiceReference[] references, List<T> components) {
+            this.references = references;
+            this.components = components;
+        }
+    }
+
+    /**
+     * The bundle context used to track the components
+     */
+    private final BundleContext context;
+    /**
+     * The tracked type of components
+     */
+    private final Class<T> type;
+    /**
+     * The components currently obtained from the framework
+     */
+    private final Map<ServiceReference, T> obtained;
+    /**
+     * The current snapshot
+     */
+    private volatile Snapshot<T> snapshot;
+    /**
+     * Whether this tracker is still valid
+     */
+    private volatile boolean isValid;
+
+    /**
+     * Initializes this tracker
+     *
+     * @param context The bundle context used to track the components
+     * @param type    The tracked type of components
+     * @throws InvalidSyntaxException When the filter for the type cannot be built (should not happen)
+     */
+    public RegisterTracker(BundleContext context, Class<T> type) throws InvalidSyntaxException {
+        this.context = context;
+        this.type = type;
+        this.obtained = new HashMap<>();
+        this.snapshot = new Snapshot<>(new ServiceReference[0], Collections.<T>emptyList());
+        this.isValid = true;
+        context.addBundleListener(this);
+        context.addServiceListener(this, "(" + Constants.OBJECTCLASS + "=" + type.getName() + ")");
+        rebuild(null);
+    }
+
+    /**
+     * Gets whether this tracker is still valid
+     *
+     * @return Whether this tracker is still valid
+     */
+    public boolean isValid() {
+        return isValid;
+    }
+
+    /**
+     * Gets the first component, i.e. the one with the highest ranking
+     *
+     * @return The first component, or null if there is none
+     */
+    public T getFirst() {
+        List<T> components = snapshot.components;
+        return components.isEmpty() ? null : components.get(0);
+    }
+
+    /**
+     * Gets all the components
+     *
+     * @return The components, by decreasing ranking
+     */
+    public List<T> getAll() {
+        return snapshot.components;
+    }
+
+    /**
+     * Gets the first component that has a property with the specified value
+     *
+     * @param name  The name of the property
+     * @param value The expected value
+     * @return The component, or null if there is none
+     */
+    public T getFirst(String name, String value) {
+        Snapshot<T> current = snapshot;
+        for (int i = 0; i != current.references.length; i++) {
+            if (matches(current.references[i].getProperty(name), value))
+                return current.components.get(i);
+        }
+        return null;
+    }
+
+    /**
+     * Gets whether the value of a property matches an expected value
+     *
+     * @param property The value of the property
+     * @param value    The expected value
+     * @return Whether the value matches
+     */
+    private static boolean matches(Object property, String value) {
+        if (property == null)
+            return false;
+        if (property instanceof Collection) {
+            for (Object element : (Collection) property) {
+                if (element != null && value.equals(element.toString()))
+                    return true;
+            }
+            return false;
+        }
+        if (property.getClass().isArray()) {
+            for (int i = 0; i != Array.getLength(property); i++) {
+                Object element = Array.get(property, i);
+                if (element != null && value.equals(element.toString()))
+                    return true;
+            }
+            return false;
+        }
+        return value.equals(property.toString());
+    }
+
+    /**
+     * Rebuilds the snapshot of the components
+     *
+     * @param removed A reference that is being removed, if any
+     */
+    private synchronized void rebuild(ServiceReference removed) {
+        if (!isValid)
+            return;
+        ServiceReference[] references;
+        try {
+            references = context.getServiceReferences(type.getName(), null);
+        } catch (InvalidSyntaxException | IllegalStateException exception) {
+            // cannot happen for the null filter, or the context is no longer valid
+            references = null;
+        }
+        List<ServiceReference> retained = new ArrayList<>();
+        if (references != null) {
+            for (int i = 0; i != references.length; i++) {
+                if (references[i] != null && !references[i].equals(removed))
+                    retained.add(references[i]);
+            }
+        }
+        Collections.sort(retained, Collections.reverseOrder());
+
+        List<ServiceReference> newReferences = new ArrayList<>(retained.size());
+        List<T> newComponents = new ArrayList<>(retained.size());
+        for (ServiceReference reference : retained) {
+            T component = obtained.get(reference);
+            if (component == null) {
+                component = (T) context.getService(reference);
+                if (component == null)
+                    continue;
+                obtained.put(reference, component);
+            }
+            newReferences.add(reference);
+            newComponents.add(component);
+        }
+        Iterator<Map.Entry<ServiceReference, T>> iterator = obtained.entrySet().iterator();
+        while (iterator.hasNext()) {
+            ServiceReference reference = iterator.next().getKey();
+            if (!newReferences.contains(reference)) {
+                iterator.remove();
+                ungetService(reference);
+            }
+        }
+        snapshot = new Snapshot<>(
+                newReferences.toArray(new ServiceReference[newReferences.size()]),
+                Collections.unmodifiableList(newComponents));
+    }
+
+    /**
+     * Releases a component obtained from the framework
+     *
+     * @param reference The reference to the component
+     */
+    private void ungetService(ServiceReference reference) {
+        try {
+            context.ungetService(reference);
+        } catch (IllegalStateException exception) {
+            // the context is no longer valid
+        }
+    }
+
+    @Override
+    public void serviceChanged(ServiceEvent serviceEvent) {
+        rebuild(serviceEvent.getType() == ServiceEvent.UNREGISTERING ? serviceEvent.getServiceReference() : null);
+    }
+
+    @Override
+    public void bundleChanged(BundleEvent bundleEvent) {
+        if (bundleEvent.getBundle() == context.getBundle() && bundleEvent.getType() == BundleEvent.STOPPING) {
+            // the context of the bundle will no longer be valid
+            synchronized (this) {
+                isValid = false;
+                for (ServiceReference reference : obtained.keySet())
+                    ungetService(reference);
+                obtained.clear();
+                snapshot = new Snapshot<>(new ServiceReference[0], Collections.<T>emptyList());
+            }
+            Register.onTrackerInvalid(type, this);
+        }
+    }
+}
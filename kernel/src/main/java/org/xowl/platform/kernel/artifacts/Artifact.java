@@ -22,6 +22,7 @@ import fr.cenotelie.commons.utils.Serializable;
 import org.xowl.infra.store.rdf.Quad;
 
 import java.util.Collection;
+import java.util.Iterator;
 
 /**
  * An artifact represents a package of data in the form of quads that can be managed by the collaboration platform
@@ -98,4 +99,13 @@ public interface Artifact extends Identifiable, Serializable {
      * @return The payload content quads
      */
     Collection<Quad> getContent();
+
+    /**
+     * Gets an iterator over the payload content quads
+     * The content may be fetched incrementally during the iteration so that it is never entirely loaded in memory.
+     * When the content cannot be fetched during the iteration, the iterator throws an IllegalStateException.
+     *
+     * @return The iterator over the payload content quads, or null if the content cannot be fetched
+     */
+    Iterator<Quad> getContentIterator();
 }
@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.kernel.artifacts;
+
+import fr.cenotelie.commons.utils.IOUtils;
+import fr.cenotelie.commons.utils.api.Reply;
+import fr.cenotelie.commons.utils.api.ReplyApiError;
+import fr.cenotelie.commons.utils.api.ReplyException;
+import fr.cenotelie.commons.utils.api.ReplyResult;
+import fr.cenotelie.commons.utils.logging.BufferedLogger;
+import fr.cenotelie.commons.utils.logging.Logging;
+import org.xowl.infra.store.rdf.Quad;
+import org.xowl.infra.store.writers.NQuadsSerializer;
+import org.xowl.infra.store.writers.RDFSerializer;
+
+import java.io.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Utility APIs for the archives used to transfer artifacts between platforms
+ * An archive is the gzip-compressed N-Quads serialization of the artifact's metadata, followed by its content.
+ * An archive is identified by the SHA-256 checksum of its compressed bytes so that a transfer can be verified.
+ *
+ * @author Laurent Wouters
+ */
+public class ArtifactArchive {
+    /**
+     * The MIME type for an archive
+     */
+    public static final String MIME_TYPE = "application/gzip";
+    /**
+     * The default size in bytes of the chunks for transferring an archive
+     */
+    public static final int CHUNK_SIZE = 4 * 1024 * 1024;
+    /**
+     * The algorithm for the checksum of an archive
+     */
+    private static final String CHECKSUM_ALGORITHM = "SHA-256";
+    /**
+     * The size of the buffers for reading an archive
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Writes the archive for an artifact
+     *
+     * @param artifact The artifact
+     * @param file     The file to write to
+     * @return The checksum of the archive
+     * @throws IOException When writing failed
+     */
+    public static String write(Artifact artifact, File file) throws IOException {
+        Iterator<Quad> content = artifact.getContentIterator();
+        if (content == null)
+            throw new IOException("Failed to retrieve the content of artifact " + artifact.getIdentifier());
+        MessageDigest digest = newDigest();
+        try (OutputStream fileStream = new FileOutputStream(file)) {
+            GZIPOutputStream stream = new GZIPOutputStream(new DigestOutputStream(new BufferedOutputStream(fileStream), digest));
+            Writer writer = new BufferedWriter(new OutputStreamWriter(stream, IOUtils.CHARSET));
+            BufferedLogger logger = new BufferedLogger();
+            RDFSerializer serializer = new NQuadsSerializer(writer);
+            try {
+                serializer.serialize(logger, artifact.getMetadata().iterator());
+                serializer.serialize(logger, content);
+            } catch (IllegalStateException exception) {
+                // the content could not be fetched
+                throw new IOException(exception);
+            }
+            if (!logger.getErrorMessages().isEmpty())
+                throw new IOException(logger.getErrorsAsString());
+            writer.flush();
+            stream.finish();
+            stream.flush();
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Computes the checksum of an archive
+     *
+     * @param file The archive
+     * @return The checksum
+     * @throws IOException When reading failed
+     */
+    public static String checksum(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream stream = new FileInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read = stream.read(buffer);
+            while (read >= 0) {
+                digest.update(buffer, 0, read);
+                read = stream.read(buffer);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Reads the artifact in an archive
+     * The checksum is verified first, then only the metadata is read.
+     * The content is read from the archive when it is iterated, so that the archive must be kept until then.
+     *
+     * @param file     The archive
+     * @param checksum The expected checksum for the archive, or null if it should not be verified
+     * @return The protocol reply, with the artifact when successful
+     */
+    public static Reply read(File file, String checksum) {
+        Collection<Quad> metadata = new ArrayList<>();
+        try {
+            if (checksum != null && !checksum.equalsIgnoreCase(checksum(file)))
+                return new ReplyApiError(ArtifactStorageService.ERROR_INVALID_ARTIFACT, "The archive does not match its checksum");
+            try (ArtifactArchiveReader reader = new ArtifactArchiveReader(file, false)) {
+                while (reader.hasNext()) {
+                    Quad quad = reader.next();
+                    if (!ArtifactArchiveReader.isMetadata(quad))
+                        break;
+                    metadata.add(quad);
+                }
+            }
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+            return new ReplyException(exception);
+        } catch (IllegalStateException exception) {
+            return new ReplyApiError(ArtifactStorageService.ERROR_INVALID_ARTIFACT, exception.getMessage());
+        }
+        if (metadata.isEmpty())
+            return new ReplyApiError(ArtifactStorageService.ERROR_INVALID_ARTIFACT, "The archive does not contain the artifact's metadata");
+        return new ReplyResult<Artifact>(new ArtifactArchived(metadata, file));
+    }
+
+    /**
+     * Creates a new message digest for the checksum of archives
+     *
+     * @return The message digest
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+        } catch (NoSuchAlgorithmException exception) {
+            // should not happen, this algorithm is required for all Java platforms
+            throw new Error(exception);
+        }
+    }
+
+    /**
+     * Gets the hexadecimal representation of a checksum
+     *
+     * @param bytes The bytes of the checksum
+     * @return The hexadecimal representation
+     */
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i != bytes.length; i++) {
+            chars[i * 2] = Character.forDigit((bytes[i] >>> 4) & 0xF, 16);
+            chars[i * 2 + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.kernel.artifacts;
+
+import fr.cenotelie.commons.utils.IOUtils;
+import fr.cenotelie.commons.utils.logging.BufferedLogger;
+import fr.cenotelie.commons.utils.logging.Logging;
+import org.xowl.infra.store.loaders.NQuadsLoader;
+import org.xowl.infra.store.loaders.RDFLoaderResult;
+import org.xowl.infra.store.rdf.*;
+import org.xowl.infra.store.storage.NodeManager;
+import org.xowl.infra.store.storage.cache.CachedNodes;
+import org.xowl.platform.kernel.KernelSchema;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the quads of an archive incrementally, so that the archive is never entirely loaded in memory
+ * The archive is parsed by chunks of lines.
+ * The blank node labels are rewritten before the parsing so that a blank node remains the same across chunks.
+ * When the archive cannot be read, the iteration throws an IllegalStateException.
+ *
+ * @author Laurent Wouters
+ */
+class ArtifactArchiveReader implements Iterator<Quad>, Closeable {
+    /**
+     * The number of lines in a chunk
+     */
+    private static final int CHUNK_SIZE = 10000;
+    /**
+     * The prefix of the IRIs that temporarily stand for the blank nodes
+     */
+    private static final String BLANK_PREFIX = "urn:xowl:archive:blank:";
+
+    /**
+     * The reader for the archive
+     */
+    private final BufferedReader reader;
+    /**
+     * The IRI of the archive as a resource
+     */
+    private final String resource;
+    /**
+     * Whether the metadata of the artifact shall be skipped
+     */
+    private final boolean skipMetadata;
+    /**
+     * The node manager for the blank nodes
+     */
+    private final NodeManager nodes;
+    /**
+     * The blank nodes that have been encountered, by label
+     */
+    private final Map<String, BlankNode> blanks;
+    /**
+     * The quads of the current chunk
+     */
+    private Iterator<Quad> current;
+    /**
+     * Whether the reader is closed
+     */
+    private boolean closed;
+
+    /**
+     * Initializes this reader
+     *
+     * @param file         The archive
+     * @param skipMetadata Whether the metadata of the artifact shall be skipped
+     * @throws IOException When the archive cannot be opened
+     */
+    public ArtifactArchiveReader(File file, boolean skipMetadata) throws IOException {
+        InputStream stream = new FileInputStream(file);
+        try {
+            this.reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new BufferedInputStream(stream)), IOUtils.CHARSET));
+        } catch (IOException exception) {
+            stream.close();
+            throw exception;
+        }
+        this.resource = file.toURI().toString();
+        this.skipMetadata = skipMetadata;
+        this.nodes = new CachedNodes();
+        this.blanks = new HashMap<>();
+        this.current = Collections.emptyIterator();
+        this.closed = false;
+    }
+
+    /**
+     * Reads the next chunk of quads
+     *
+     * @return Whether quads could be read
+     */
+    private boolean readChunk() {
+        if (closed)
+            return false;
+        StringBuilder builder = new StringBuilder();
+        int count = 0;
+        try {
+            String line = reader.readLine();
+            while (line != null) {
+                rewriteBlanks(line, builder);
+                builder.append('\n');
+                count++;
+                if (count >= CHUNK_SIZE)
+                    break;
+                line = reader.readLine();
+            }
+        } catch (IOException exception) {
+            close();
+            throw new IllegalStateException(exception);
+        }
+        if (count == 0) {
+            close();
+            return false;
+        }
+        BufferedLogger logger = new BufferedLogger();
+        NQuadsLoader loader = new NQuadsLoader(new CachedNodes());
+        RDFLoaderResult result = loader.loadRDF(logger, new StringReader(builder.toString()), resource, resource);
+        if (!logger.getErrorMessages().isEmpty() || result == null) {
+            close();
+            throw new IllegalStateException(logger.getErrorMessages().isEmpty() ? "Failed to read the archive" : logger.getErrorsAsString());
+        }
+        Collection<Quad> quads = new ArrayList<>(result.getQuads().size());
+        for (Quad quad : result.getQuads()) {
+            if (skipMetadata && isMetadata(quad))
+                continue;
+            quads.add(resolveBlanks(quad));
+        }
+        current = quads.iterator();
+        return true;
+    }
+
+    /**
+     * Rewrites the blank node labels in a line into IRIs that can be resolved after the parsing
+     *
+     * @param line    The line
+     * @param builder The buffer to write to
+     */
+    private static void rewriteBlanks(String line, StringBuilder builder) {
+        boolean inIRI = false;
+        boolean inLiteral = false;
+        int i = 0;
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            if (inLiteral) {
+                builder.append(c);
+                if (c == '\\' && i + 1 < line.length()) {
+                    builder.append(line.charAt(i + 1));
+                    i++;
+                } else if (c == '"') {
+                    inLiteral = false;
+                }
+                i++;
+            } else if (inIRI) {
+                builder.append(c);
+                inIRI = (c != '>');
+                i++;
+            } else if (c == '_' && i + 1 < line.length() && line.charAt(i + 1) == ':') {
+                int end = i + 2;
+                while (end < line.length() && isLabelChar(line.charAt(end)))
+                    end++;
+                while (end > i + 2 && line.charAt(end - 1) == '.')
+                    end--;
+                builder.append('<');
+                builder.append(BLANK_PREFIX);
+                builder.append(line, i + 2, end);
+                builder.append('>');
+                i = end;
+            } else {
+                builder.append(c);
+                inIRI = (c == '<');
+                inLiteral = (c == '"');
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Gets whether a character can be part of a blank node label
+     *
+     * @param c The character
+     * @return Whether the character can be part of a blank node label
+     */
+    private static boolean isLabelChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+    }
+
+    /**
+     * Gets whether a quad is part of the metadata of the artifact
+     *
+     * @param quad The quad
+     * @return Whether the quad is part of the metadata
+     */
+    static boolean isMetadata(Quad quad) {
+        return quad.getGraph() instanceof IRINode && KernelSchema.GRAPH_ARTIFACTS.equals(((IRINode) quad.getGraph()).getIRIValue());
+    }
+
+    /**
+     * Resolves the blank nodes in a quad
+     *
+     * @param quad The quad
+     * @return The resolved quad
+     */
+    private Quad resolveBlanks(Quad quad) {
+        Node graph = resolveBlank(quad.getGraph());
+        Node subject = resolveBlank(quad.getSubject());
+        Node object = resolveBlank(quad.getObject());
+        if (graph == quad.getGraph() && subject == quad.getSubject() && object == quad.getObject())
+            return quad;
+        return new Quad((GraphNode) graph, (SubjectNode) subject, quad.getProperty(), object);
+    }
+
+    /**
+     * Resolves a node that may stand for a blank node
+     *
+     * @param node The node
+     * @return The resolved node
+     */
+    private Node resolveBlank(Node node) {
+        if (!(node instanceof IRINode))
+            return node;
+        String iri = ((IRINode) node).getIRIValue();
+        if (!iri.startsWith(BLANK_PREFIX))
+            return node;
+        String label = iri.substring(BLANK_PREFIX.length());
+        BlankNode blank = blanks.get(label);
+        if (blank == null) {
+            blank = nodes.getBlankNode();
+            blanks.put(label, blank);
+        }
+        return blank;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (!readChunk())
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Quad next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        return current.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            reader.close();
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.kernel.artifacts;
+
+import fr.cenotelie.commons.utils.logging.Logging;
+import org.xowl.infra.store.rdf.Quad;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Represents an artifact whose content is read from an archive on demand
+ * The archive must be kept until the content has been consumed.
+ *
+ * @author Laurent Wouters
+ */
+class ArtifactArchived extends ArtifactDeferred {
+    /**
+     * The archive
+     */
+    private final File archive;
+
+    /**
+     * Initializes this artifact
+     *
+     * @param metadata The metadata quads
+     * @param archive  The archive
+     */
+    public ArtifactArchived(Collection<Quad> metadata, File archive) {
+        super(metadata);
+        this.archive = archive;
+    }
+
+    @Override
+    protected Collection<Quad> load() {
+        Iterator<Quad> iterator = loadIterator();
+        if (iterator == null)
+            return null;
+        Collection<Quad> result = new ArrayList<>();
+        try {
+            while (iterator.hasNext())
+                result.add(iterator.next());
+        } catch (IllegalStateException exception) {
+            Logging.get().error(exception);
+            return null;
+        }
+        return result;
+    }
+
+    @Override
+    protected Iterator<Quad> loadIterator() {
+        try {
+            return new ArtifactArchiveReader(archive, true);
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+            return null;
+        }
+    }
+}
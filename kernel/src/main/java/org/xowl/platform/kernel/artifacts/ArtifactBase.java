@@ -312,4 +312,12 @@ public abstract class ArtifactBase implements Artifact {
         }
         return metadata;
     }
+
+    @Override
+    public Iterator<Quad> getContentIterator() {
+        Collection<Quad> content = getContent();
+        if (content == null)
+            return null;
+        return content.iterator();
+    }
 }
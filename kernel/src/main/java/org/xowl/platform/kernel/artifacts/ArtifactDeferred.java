@@ -20,6 +20,7 @@ package org.xowl.platform.kernel.artifacts;
 import org.xowl.infra.store.rdf.Quad;
 
 import java.util.Collection;
+import java.util.Iterator;
 
 /**
  * Represents an artifact with content that is not yet loaded
@@ -49,10 +50,31 @@ public abstract class ArtifactDeferred extends ArtifactBase {
         return content;
     }
 
+    @Override
+    public Iterator<Quad> getContentIterator() {
+        if (content != null)
+            return content.iterator();
+        return loadIterator();
+    }
+
     /**
      * Loads the content of this artifact
      *
      * @return The loaded content
      */
     protected abstract Collection<Quad> load();
+
+    /**
+     * Gets an iterator that loads the content of this artifact incrementally
+     * The loaded content is not kept by this artifact.
+     * By default, the content is entirely loaded at once.
+     *
+     * @return The iterator, or null if the content cannot be loaded
+     */
+    protected Iterator<Quad> loadIterator() {
+        Collection<Quad> quads = load();
+        if (quads == null)
+            return null;
+        return quads.iterator();
+    }
 }
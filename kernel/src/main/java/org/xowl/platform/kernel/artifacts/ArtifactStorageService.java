@@ -23,6 +23,8 @@ import org.xowl.platform.kernel.PlatformHttp;
 import org.xowl.platform.kernel.security.SecuredAction;
 import org.xowl.platform.kernel.security.SecuredService;
 
+import java.util.Collection;
+
 /**
  * Represents a service that stores artifacts
  * Artifacts are expected to be primarily stored in a long-term storage facility.
@@ -91,6 +93,16 @@ public interface ArtifactStorageService extends SecuredService {
      */
     Reply store(Artifact artifact);
 
+    /**
+     * Stores multiple artifacts in a long-term storage facility
+     * The metadata and content of the artifacts are sent to the storage facility in batches.
+     * The artifacts are either all stored, or none of them is.
+     *
+     * @param artifacts The artifacts to store
+     * @return The operation's result
+     */
+    Reply storeAll(Collection<Artifact> artifacts);
+
     /**
      * Retrieves the artifact identified by the specified identifier
      *
@@ -35,6 +35,13 @@ public interface Job extends Identifiable, Serializable, Runnable {
      */
     PlatformUser getOwner();
 
+    /**
+     * Gets the type of this job
+     *
+     * @return The type of this job
+     */
+    String getJobType();
+
     /**
      * Gets the job's current status
      *
@@ -211,6 +211,11 @@ public abstract class JobBase implements Job {
         return owner;
     }
 
+    @Override
+    public String getJobType() {
+        return type;
+    }
+
     @Override
     public JobStatus getStatus() {
         return status;
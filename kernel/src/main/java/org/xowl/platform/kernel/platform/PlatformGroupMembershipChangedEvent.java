@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.kernel.platform;
+
+import fr.cenotelie.commons.utils.RichString;
+import org.xowl.platform.kernel.Service;
+import org.xowl.platform.kernel.events.EventBase;
+
+/**
+ * Event when the members or administrators of a group changed
+ *
+ * @author Laurent Wouters
+ */
+public class PlatformGroupMembershipChangedEvent extends EventBase {
+    /**
+     * The type for this event
+     */
+    public static final String TYPE = PlatformGroupMembershipChangedEvent.class.getCanonicalName();
+
+    /**
+     * The modified group
+     */
+    private final PlatformGroup group;
+    /**
+     * The user that joined or left the group
+     */
+    private final PlatformUser user;
+
+    /**
+     * Gets the modified group
+     *
+     * @return The modified group
+     */
+    public PlatformGroup getGroup() {
+        return group;
+    }
+
+    /**
+     * Gets the user that joined or left the group
+     *
+     * @return The user that joined or left the group
+     */
+    public PlatformUser getUser() {
+        return user;
+    }
+
+    /**
+     * Initializes this event
+     *
+     * @param group   The modified group
+     * @param user    The user that joined or left the group
+     * @param emitter The service that emitted this event
+     */
+    public PlatformGroupMembershipChangedEvent(PlatformGroup group, PlatformUser user, Service emitter) {
+        super(TYPE, emitter, new RichString("Changed the membership of ", user, " in group ", group));
+        this.group = group;
+        this.user = user;
+    }
+}
@@ -41,6 +41,14 @@ public class PlatformLogMessage implements Serializable {
      * The date for the message
      */
     public final Date date;
+    /**
+     * The source of the message, if any
+     */
+    public final String source;
+    /**
+     * The sequence number of the message in the log store, or -1
+     */
+    public final long sequence;
 
     /**
      * Initializes this message
@@ -49,9 +57,24 @@ public class PlatformLogMessage implements Serializable {
      * @param level   The log level for the message
      */
     public PlatformLogMessage(Object content, String level) {
+        this(content, level, new Date(), null, -1);
+    }
+
+    /**
+     * Initializes this message
+     *
+     * @param content  The content of the message
+     * @param level    The log level for the message
+     * @param date     The date for the message
+     * @param source   The source of the message, if any
+     * @param sequence The sequence number of the message in the log store, or -1
+     */
+    public PlatformLogMessage(Object content, String level, Date date, String source, long sequence) {
         this.content = content;
         this.level = level;
-        this.date = new Date();
+        this.date = date;
+        this.source = source;
+        this.sequence = sequence;
     }
 
     @Override
@@ -68,7 +91,9 @@ public class PlatformLogMessage implements Serializable {
                     TextUtils.escapeStringJSON(level) +
                     "\", \"date\": \"" +
                     TextUtils.escapeStringJSON(DateFormat.getDateTimeInstance().format(date)) +
-                    "\", \"content\": \"" +
+                    "\"" +
+                    serializedOrigin() +
+                    ", \"content\": \"" +
                     TextUtils.escapeStringJSON(((Throwable) content).getClass().getCanonicalName()) +
                     "\"}";
         } else if (content instanceof Serializable) {
@@ -78,7 +103,9 @@ public class PlatformLogMessage implements Serializable {
                     TextUtils.escapeStringJSON(level) +
                     "\", \"date\": \"" +
                     TextUtils.escapeStringJSON(DateFormat.getDateTimeInstance().format(date)) +
-                    "\", \"content\": " +
+                    "\"" +
+                    serializedOrigin() +
+                    ", \"content\": " +
                     ((Serializable) content).serializedJSON() +
                     "}";
         }
@@ -88,8 +115,29 @@ public class PlatformLogMessage implements Serializable {
                 TextUtils.escapeStringJSON(level) +
                 "\", \"date\": \"" +
                 TextUtils.escapeStringJSON(DateFormat.getDateTimeInstance().format(date)) +
-                "\", \"content\": \"" +
+                "\"" +
+                serializedOrigin() +
+                ", \"content\": \"" +
                 TextUtils.escapeStringJSON(content.toString()) +
                 "\"}";
     }
+
+    /**
+     * Serializes the source and sequence number of this message, when present
+     *
+     * @return The serialized JSON members, starting with a comma
+     */
+    private String serializedOrigin() {
+        StringBuilder builder = new StringBuilder();
+        if (source != null) {
+            builder.append(", \"source\": \"");
+            builder.append(TextUtils.escapeStringJSON(source));
+            builder.append("\"");
+        }
+        if (sequence >= 0) {
+            builder.append(", \"sequence\": ");
+            builder.append(Long.toString(sequence));
+        }
+        return builder.toString();
+    }
 }
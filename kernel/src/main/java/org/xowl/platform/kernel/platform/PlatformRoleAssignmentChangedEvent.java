@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.kernel.platform;
+
+import fr.cenotelie.commons.utils.Identifiable;
+import fr.cenotelie.commons.utils.RichString;
+import org.xowl.platform.kernel.Service;
+import org.xowl.platform.kernel.events.EventBase;
+
+/**
+ * Event when a role is assigned to, or un-assigned from, a user or a group
+ *
+ * @author Laurent Wouters
+ */
+public class PlatformRoleAssignmentChangedEvent extends EventBase {
+    /**
+     * The type for this event
+     */
+    public static final String TYPE = PlatformRoleAssignmentChangedEvent.class.getCanonicalName();
+
+    /**
+     * The assigned or un-assigned role
+     */
+    private final PlatformRole role;
+    /**
+     * The user or group the role is assigned to, or un-assigned from
+     */
+    private final Identifiable entity;
+
+    /**
+     * Gets the assigned or un-assigned role
+     *
+     * @return The assigned or un-assigned role
+     */
+    public PlatformRole getRole() {
+        return role;
+    }
+
+    /**
+     * Gets the user or group the role is assigned to, or un-assigned from
+     *
+     * @return The user or group
+     */
+    public Identifiable getEntity() {
+        return entity;
+    }
+
+    /**
+     * Initializes this event
+     *
+     * @param role    The assigned or un-assigned role
+     * @param entity  The user or group the role is assigned to, or un-assigned from
+     * @param emitter The service that emitted this event
+     */
+    public PlatformRoleAssignmentChangedEvent(PlatformRole role, Identifiable entity, Service emitter) {
+        super(TYPE, emitter, new RichString("Changed the assignment of role ", role, " to ", entity));
+        this.role = role;
+        this.entity = entity;
+    }
+}
@@ -19,35 +19,72 @@ package org.xowl.platform.kernel.remote;
 
 import fr.cenotelie.commons.utils.IOUtils;
 import fr.cenotelie.commons.utils.Identifiable;
+import fr.cenotelie.commons.utils.SHA1;
 import fr.cenotelie.commons.utils.Serializable;
-import fr.cenotelie.commons.utils.api.Reply;
-import fr.cenotelie.commons.utils.api.ReplyException;
-import fr.cenotelie.commons.utils.api.ReplyResult;
-import fr.cenotelie.commons.utils.api.ReplyUtils;
+import fr.cenotelie.commons.utils.TextUtils;
+import fr.cenotelie.commons.utils.api.*;
 import fr.cenotelie.commons.utils.http.HttpConnection;
 import fr.cenotelie.commons.utils.http.HttpConstants;
 import fr.cenotelie.commons.utils.http.HttpResponse;
 import fr.cenotelie.commons.utils.http.URIUtils;
+import fr.cenotelie.commons.utils.json.Json;
 import fr.cenotelie.commons.utils.logging.Logging;
+import fr.cenotelie.hime.redist.ASTNode;
 import org.xowl.infra.store.Repository;
 import org.xowl.infra.store.sparql.Command;
 import org.xowl.platform.kernel.artifacts.Artifact;
+import org.xowl.platform.kernel.artifacts.ArtifactArchive;
+import org.xowl.platform.kernel.artifacts.ArtifactStorageService;
 import org.xowl.platform.kernel.jobs.Job;
 import org.xowl.platform.kernel.jobs.JobStatus;
 import org.xowl.platform.kernel.platform.PlatformRole;
 import org.xowl.platform.kernel.security.SecuredActionPolicy;
 import org.xowl.platform.kernel.security.SecuredResourceSharing;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+
 /**
  * The base API for accessing a remote platform
  *
  * @author Laurent Wouters
  */
 public class RemotePlatformAccess extends HttpConnection {
+    /**
+     * The maximum time to wait for the completion of a job in a single request, in milliseconds
+     */
+    private static final long AWAIT_TIMEOUT = 30000;
+    /**
+     * The time under which a reply to a request awaiting a job means the platform did not hold it, in milliseconds
+     */
+    private static final long AWAIT_MIN_HOLD = 1000;
+    /**
+     * The delay before awaiting a job again when the platform did not hold the previous request, in milliseconds
+     */
+    private static final long AWAIT_RETRY_DELAY = 2000;
+    /**
+     * The maximum number of attempts for transferring a chunk of an artifact's archive
+     */
+    private static final int TRANSFER_ATTEMPTS = 3;
+
     /**
      * The factory to use
      */
     protected final PlatformApiDeserializer deserializer;
+    /**
+     * The lock serializing the requests on the shared connection and session
+     * The long-polls waiting for jobs are not serialized, they do not modify the session.
+     */
+    private final Object lock;
+    /**
+     * The asynchronous API for this platform connection, if created
+     */
+    private RemotePlatformAccessAsync async;
 
     /**
      * Initializes this platform connection
@@ -58,6 +95,19 @@ public class RemotePlatformAccess extends HttpConnection {
     public RemotePlatformAccess(String endpoint, PlatformApiDeserializer deserializer) {
         super(endpoint);
         this.deserializer = deserializer;
+        this.lock = new Object();
+    }
+
+    /**
+     * Gets the asynchronous API for this platform connection
+     * The asynchronous calls share the session of this connection, their requests are serialized with the synchronous ones.
+     *
+     * @return The asynchronous API
+     */
+    public synchronized RemotePlatformAccessAsync getAsync() {
+        if (async == null)
+            async = new RemotePlatformAccessAsync(this);
+        return async;
     }
 
     /**
@@ -664,6 +714,26 @@ public class RemotePlatformAccess extends HttpConnection {
                 HttpConstants.METHOD_POST);
     }
 
+    /**
+     * Waits for the completion of a job, within a timeout
+     * The remote platform holds the request until the job is completed or cancelled, or the timeout expires.
+     *
+     * @param jobId   The identifier of the job
+     * @param timeout The maximum time to wait in milliseconds
+     * @return The protocol reply, with the job in its current state
+     */
+    public Reply awaitJob(String jobId, long timeout) {
+        // the long-poll only reads the session, it is not serialized with the other requests so that it does not stall them
+        HttpResponse response = request(
+                "/kernel/jobs/" + URIUtils.encodeComponent(jobId) + "/await?timeout=" + Long.toString(timeout),
+                HttpConstants.METHOD_GET,
+                null,
+                HttpConstants.MIME_TEXT_PLAIN,
+                false,
+                HttpConstants.MIME_JSON);
+        return ReplyUtils.fromHttpResponse(response, deserializer);
+    }
+
     /**
      * Gets all the metrics for the platform
      *
@@ -1441,6 +1511,225 @@ public class RemotePlatformAccess extends HttpConnection {
                 Repository.SYNTAX_NQUADS);
     }
 
+    /**
+     * Downloads an artifact with its content from the remote platform and stores it in a local storage
+     * The artifact is transferred as a compressed archive, in resumable chunks, and verified with its checksum.
+     * The content is then streamed from the archive into the storage, so that it is never entirely loaded in memory.
+     *
+     * @param artifactId The identifier of the artifact
+     * @param storage    The local storage for the artifact
+     * @return The protocol reply, with the stored artifact when successful
+     */
+    public Reply downloadArtifact(String artifactId, ArtifactStorageService storage) {
+        File archive;
+        try {
+            archive = File.createTempFile("artifact", ".gz");
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+            return new ReplyException(exception);
+        }
+        try {
+            Reply reply = downloadArtifactArchive(artifactId, archive);
+            if (!reply.isSuccess())
+                return reply;
+            // the checksum has been verified by the download
+            reply = ArtifactArchive.read(archive, null);
+            if (!reply.isSuccess())
+                return reply;
+            reply = storage.store(((ReplyResult<Artifact>) reply).getData());
+            if (!reply.isSuccess())
+                return reply;
+            return storage.retrieve(artifactId);
+        } finally {
+            if (!archive.delete())
+                Logging.get().error("Failed to delete " + archive.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Downloads the archive of an artifact from the remote platform
+     * When the target file already contains the beginning of the archive, the download is resumed.
+     *
+     * @param artifactId The identifier of the artifact
+     * @param target     The file to download to
+     * @return The protocol reply, with the checksum of the archive when successful
+     */
+    public Reply downloadArtifactArchive(String artifactId, File target) {
+        String uri = "/services/storage/artifacts/" + URIUtils.encodeComponent(artifactId) + "/archive";
+        HttpResponse response = send(uri, HttpConstants.METHOD_GET, null, null, false, HttpConstants.MIME_JSON);
+        if (response == null || response.getCode() != HttpURLConnection.HTTP_OK)
+            return ReplyUtils.fromHttpResponse(response, deserializer);
+        String[] descriptor = readTransferDescriptor(response.getBodyAsString());
+        if (descriptor == null)
+            return new ReplyApiError(ArtifactStorageService.ERROR_INVALID_ARTIFACT, "Failed to read the descriptor of the archive");
+        long length = Long.parseLong(descriptor[0]);
+        String checksum = descriptor[1];
+
+        long position = target.exists() ? target.length() : 0;
+        try (OutputStream stream = new FileOutputStream(target, position <= length)) {
+            if (position > length)
+                position = 0;
+            int failures = 0;
+            while (position < length) {
+                response = send(uri + "?offset=" + Long.toString(position) + "&length=" + Integer.toString(ArtifactArchive.CHUNK_SIZE),
+                        HttpConstants.METHOD_GET, null, null, false, ArtifactArchive.MIME_TYPE);
+                byte[] chunk = response != null && response.getCode() == HttpURLConnection.HTTP_OK ? response.getBodyAsBytes() : null;
+                if (chunk == null || chunk.length == 0) {
+                    failures++;
+                    if (failures >= TRANSFER_ATTEMPTS)
+                        return response == null || response.getCode() == HttpURLConnection.HTTP_OK
+                                ? new ReplyApiError(ArtifactStorageService.ERROR_STORAGE_FAILED, "Failed to download the archive")
+                                : ReplyUtils.fromHttpResponse(response, deserializer);
+                    continue;
+                }
+                failures = 0;
+                stream.write(chunk);
+                position += chunk.length;
+            }
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+            return new ReplyException(exception);
+        }
+
+        try {
+            if (!checksum.equalsIgnoreCase(ArtifactArchive.checksum(target))) {
+                if (!target.delete())
+                    Logging.get().error("Failed to delete " + target.getAbsolutePath());
+                return new ReplyApiError(ArtifactStorageService.ERROR_INVALID_ARTIFACT, "The archive does not match its checksum");
+            }
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+            return new ReplyException(exception);
+        }
+        return new ReplyResult<>(checksum);
+    }
+
+    /**
+     * Uploads an artifact with its content to the remote platform, where it is stored
+     * The artifact is transferred as a compressed archive, in resumable chunks, and verified with its checksum.
+     * The transfer is identified by the artifact and the checksum of its archive so that an interrupted upload of the same archive is resumed.
+     *
+     * @param artifact The artifact to upload
+     * @return The protocol reply, with the stored artifact when successful
+     */
+    public Reply uploadArtifact(Artifact artifact) {
+        File archive;
+        try {
+            archive = File.createTempFile("artifact", ".gz");
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+            return new ReplyException(exception);
+        }
+        try {
+            String checksum = ArtifactArchive.write(artifact, archive);
+            return uploadArtifactArchive(archive, SHA1.hashSHA1(artifact.getIdentifier() + "/" + checksum));
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+            return new ReplyException(exception);
+        } finally {
+            if (!archive.delete())
+                Logging.get().error("Failed to delete " + archive.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Uploads the archive of an artifact to the remote platform, where the artifact is stored
+     * When the remote platform already received the beginning of the archive for the same transfer, the upload is resumed.
+     *
+     * @param archive    The archive to upload
+     * @param transferId The identifier of the transfer, letters, digits, '_' and '-' only
+     * @return The protocol reply, with the stored artifact when successful
+     */
+    public Reply uploadArtifactArchive(File archive, String transferId) {
+        String uri = "/services/storage/transfers/" + URIUtils.encodeComponent(transferId);
+        String checksum;
+        try {
+            checksum = ArtifactArchive.checksum(archive);
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+            return new ReplyException(exception);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(archive, "r")) {
+            long length = file.length();
+            long position = -1;
+            int failures = 0;
+            byte[] buffer = new byte[(int) Math.min(ArtifactArchive.CHUNK_SIZE, length)];
+            while (position < length) {
+                if (position < 0) {
+                    // get the current position of the transfer on the remote platform
+                    HttpResponse response = send(uri, HttpConstants.METHOD_GET, null, null, false, HttpConstants.MIME_JSON);
+                    if (response == null || response.getCode() != HttpURLConnection.HTTP_OK)
+                        return ReplyUtils.fromHttpResponse(response, deserializer);
+                    String[] descriptor = readTransferDescriptor(response.getBodyAsString());
+                    if (descriptor == null)
+                        return new ReplyApiError(ArtifactStorageService.ERROR_STORAGE_FAILED, "Failed to read the descriptor of the transfer");
+                    position = Long.parseLong(descriptor[0]);
+                    if (position > length)
+                        return new ReplyApiError(ArtifactStorageService.ERROR_STORAGE_FAILED, "The remote transfer is longer than the archive");
+                    if (position == length)
+                        break;
+                }
+                int count = (int) Math.min(buffer.length, length - position);
+                file.seek(position);
+                file.readFully(buffer, 0, count);
+                HttpResponse response = send(uri + "?offset=" + Long.toString(position),
+                        HttpConstants.METHOD_PUT,
+                        count == buffer.length ? buffer : Arrays.copyOf(buffer, count),
+                        ArtifactArchive.MIME_TYPE,
+                        false,
+                        HttpConstants.MIME_JSON);
+                if (response == null || response.getCode() != HttpURLConnection.HTTP_OK) {
+                    failures++;
+                    if (failures >= TRANSFER_ATTEMPTS)
+                        return ReplyUtils.fromHttpResponse(response, deserializer);
+                    // resume from the position known by the remote platform
+                    position = -1;
+                    continue;
+                }
+                failures = 0;
+                position += count;
+            }
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+            return new ReplyException(exception);
+        }
+        return doRequest(uri + "/commit?checksum=" + URIUtils.encodeComponent(checksum), HttpConstants.METHOD_POST);
+    }
+
+    /**
+     * Reads the descriptor of a transfer
+     *
+     * @param content The serialized descriptor
+     * @return The length and the checksum in the descriptor, or null if it cannot be read
+     */
+    private static String[] readTransferDescriptor(String content) {
+        if (content == null)
+            return null;
+        ASTNode definition = Json.parse(Logging.get(), content);
+        if (definition == null)
+            return null;
+        String length = null;
+        String checksum = "";
+        for (ASTNode member : definition.getChildren()) {
+            String head = TextUtils.unescape(member.getChildren().get(0).getValue());
+            head = head.substring(1, head.length() - 1);
+            if ("length".equals(head)) {
+                length = TextUtils.unescape(member.getChildren().get(1).getValue());
+            } else if ("checksum".equals(head)) {
+                String value = TextUtils.unescape(member.getChildren().get(1).getValue());
+                checksum = value.substring(1, value.length() - 1);
+            }
+        }
+        if (length == null)
+            return null;
+        try {
+            Long.parseLong(length);
+        } catch (NumberFormatException exception) {
+            return null;
+        }
+        return new String[]{length, checksum};
+    }
+
     /**
      * Deletes an artifact
      *
@@ -2012,7 +2301,7 @@ public class RemotePlatformAccess extends HttpConnection {
      * @return The response, or null if the request failed before reaching the server
      */
     public Reply doRequest(String uriComplement, String method, byte[] body, String contentType, boolean compressed, String accept) {
-        HttpResponse response = request(uriComplement,
+        HttpResponse response = send(uriComplement,
                 method,
                 body,
                 contentType,
@@ -2022,6 +2311,24 @@ public class RemotePlatformAccess extends HttpConnection {
         return ReplyUtils.fromHttpResponse(response, deserializer);
     }
 
+    /**
+     * Sends an HTTP request on the shared connection
+     * The requests are serialized so that the synchronous and asynchronous calls do not race on the connection and the session.
+     *
+     * @param uriComplement The URI complement to append to the original endpoint URI, if any
+     * @param method        The HTTP method to use, if any
+     * @param body          The request body, if any
+     * @param contentType   The request body content type, if any
+     * @param compressed    Whether the body is compressed with gzip
+     * @param accept        The MIME type to accept for the response, if any
+     * @return The response, or null if the request failed before reaching the server
+     */
+    private HttpResponse send(String uriComplement, String method, byte[] body, String contentType, boolean compressed, String accept) {
+        synchronized (lock) {
+            return request(uriComplement, method, body, contentType, compressed, accept);
+        }
+    }
+
     /**
      * Waits for a job to finish
      *
@@ -2030,7 +2337,8 @@ public class RemotePlatformAccess extends HttpConnection {
      */
     public Reply waitForJob(String jobId) {
         while (true) {
-            Reply reply = getJob(jobId);
+            long start = System.currentTimeMillis();
+            Reply reply = awaitJob(jobId, AWAIT_TIMEOUT);
             if (!reply.isSuccess())
                 return reply;
             Job job = ((ReplyResult<Job>) reply).getData();
@@ -2038,11 +2346,15 @@ public class RemotePlatformAccess extends HttpConnection {
                 return job.getResult();
             if (job.getStatus() == JobStatus.Cancelled)
                 return job.getResult();
-            try {
-                Thread.sleep(1500);
-            } catch (InterruptedException exception) {
-                Logging.get().error(exception);
-                return new ReplyException(exception);
+            if (Thread.currentThread().isInterrupted())
+                return new ReplyException(new InterruptedException());
+            if (System.currentTimeMillis() - start < AWAIT_MIN_HOLD) {
+                // the platform did not hold the request, do not flood it
+                try {
+                    Thread.sleep(AWAIT_RETRY_DELAY);
+                } catch (InterruptedException exception) {
+                    return new ReplyException(exception);
+                }
             }
         }
     }
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.kernel.remote;
+
+import fr.cenotelie.commons.utils.api.Reply;
+import fr.cenotelie.commons.utils.api.ReplyException;
+import fr.cenotelie.commons.utils.logging.Logging;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous API for accessing a remote platform
+ * The calls are queued and sent in order on the underlying access by a thread dedicated to this access.
+ * The thread only lives while there are calls to send, so that idle accesses do not hold any thread.
+ * The calls are still blocking HTTP requests, they are not pipelined on the connection.
+ * They are serialized with the calls of the synchronous API on the same access, which share the same session.
+ * This enables fanning out calls to many remote platforms in parallel, one slow platform never delaying the calls to the others.
+ *
+ * @author Laurent Wouters
+ */
+public class RemotePlatformAccessAsync {
+    /**
+     * The time to keep an idle sender thread alive, in seconds
+     */
+    private static final long KEEP_ALIVE = 60;
+    /**
+     * The counter for the names of the sender threads
+     */
+    private static final AtomicInteger COUNTER = new AtomicInteger(0);
+
+    /**
+     * The underlying access to the remote platform
+     */
+    private final RemotePlatformAccess access;
+    /**
+     * The executor for sending the calls, in order
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Initializes this access
+     *
+     * @param access The underlying access to the remote platform
+     */
+    public RemotePlatformAccessAsync(RemotePlatformAccess access) {
+        this.access = access;
+        this.executor = new ThreadPoolExecutor(
+                1,
+                1,
+                KEEP_ALIVE,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, RemotePlatformAccessAsync.class.getCanonicalName() + ".Thread" + COUNTER.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Gets the underlying access to the remote platform
+     *
+     * @return The underlying access to the remote platform
+     */
+    public RemotePlatformAccess getAccess() {
+        return access;
+    }
+
+    /**
+     * Submits a call to the remote platform
+     *
+     * @param call The call to execute
+     * @return The future reply
+     */
+    public Future<Reply> submit(RemotePlatformCall call) {
+        return submit(call, null);
+    }
+
+    /**
+     * Submits a call to the remote platform
+     *
+     * @param call     The call to execute
+     * @param callback The callback for the completion of the call, if any
+     * @return The future reply
+     */
+    public Future<Reply> submit(final RemotePlatformCall call, final RemotePlatformCallback callback) {
+        FutureTask<Reply> task = new FutureTask<>(new Callable<Reply>() {
+            @Override
+            public Reply call() {
+                Reply reply;
+                try {
+                    reply = call.execute(access);
+                } catch (RuntimeException exception) {
+                    Logging.get().error(exception);
+                    reply = new ReplyException(exception);
+                }
+                if (callback != null) {
+                    try {
+                        callback.onCompleted(reply);
+                    } catch (RuntimeException exception) {
+                        Logging.get().error(exception);
+                    }
+                }
+                return reply;
+            }
+        });
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Sends an HTTP request to the endpoint, completed with an URI complement
+     *
+     * @param uriComplement The URI complement to append to the original endpoint URI, if any
+     * @param method        The HTTP method to use, if any
+     * @param callback      The callback for the completion of the call, if any
+     * @return The future reply
+     */
+    public Future<Reply> doRequest(final String uriComplement, final String method, RemotePlatformCallback callback) {
+        return submit(new RemotePlatformCall() {
+            @Override
+            public Reply execute(RemotePlatformAccess access) {
+                return access.doRequest(uriComplement, method);
+            }
+        }, callback);
+    }
+
+    /**
+     * Sends an HTTP request to the endpoint, completed with an URI complement
+     *
+     * @param uriComplement The URI complement to append to the original endpoint URI, if any
+     * @param method        The HTTP method to use, if any
+     * @param body          The request body object, if any
+     * @param callback      The callback for the completion of the call, if any
+     * @return The future reply
+     */
+    public Future<Reply> doRequest(final String uriComplement, final String method, final Object body, RemotePlatformCallback callback) {
+        return submit(new RemotePlatformCall() {
+            @Override
+            public Reply execute(RemotePlatformAccess access) {
+                return access.doRequest(uriComplement, method, body);
+            }
+        }, callback);
+    }
+}
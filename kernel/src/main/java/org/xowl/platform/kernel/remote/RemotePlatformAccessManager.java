@@ -19,8 +19,8 @@ package org.xowl.platform.kernel.remote;
 
 import org.xowl.platform.kernel.PlatformUtils;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Manages the accesses of users to a remote platform
@@ -39,7 +39,7 @@ public class RemotePlatformAccessManager implements RemotePlatformAccessProvider
     /**
      * The managed connections
      */
-    private final Map<String, RemotePlatformAccess> connections;
+    private final ConcurrentMap<String, RemotePlatformAccess> connections;
 
     /**
      * Initializes this manager
@@ -50,7 +50,7 @@ public class RemotePlatformAccessManager implements RemotePlatformAccessProvider
     public RemotePlatformAccessManager(String endpoint, PlatformApiDeserializer deserializer) {
         this.endpoint = endpoint;
         this.deserializer = deserializer;
-        this.connections = new HashMap<>();
+        this.connections = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -69,13 +69,15 @@ public class RemotePlatformAccessManager implements RemotePlatformAccessProvider
     }
 
     @Override
-    public synchronized RemotePlatformAccess getAccess(String userId) {
+    public RemotePlatformAccess getAccess(String userId) {
         if (userId == null || userId.isEmpty())
             return null;
         RemotePlatformAccess connection = connections.get(userId);
         if (connection == null) {
             connection = new RemotePlatformAccess(endpoint, deserializer);
-            connections.put(userId, connection);
+            RemotePlatformAccess previous = connections.putIfAbsent(userId, connection);
+            if (previous != null)
+                connection = previous;
         }
         return connection;
     }
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.kernel.remote;
+
+import fr.cenotelie.commons.utils.api.Reply;
+
+/**
+ * Represents a call to the API of a remote platform that can be executed asynchronously
+ *
+ * @author Laurent Wouters
+ */
+public interface RemotePlatformCall {
+    /**
+     * Executes this call
+     *
+     * @param access The access to the remote platform
+     * @return The protocol reply
+     */
+    Reply execute(RemotePlatformAccess access);
+}
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.kernel.security;
+
+import fr.cenotelie.commons.utils.RichString;
+import org.xowl.platform.kernel.Service;
+import org.xowl.platform.kernel.events.EventBase;
+
+/**
+ * Event when the owners or the sharing of a secured resource changed
+ *
+ * @author Laurent Wouters
+ */
+public class SecuredResourceChangedEvent extends EventBase {
+    /**
+     * The type for this event
+     */
+    public static final String TYPE = SecuredResourceChangedEvent.class.getCanonicalName();
+
+    /**
+     * The identifier of the secured resource
+     */
+    private final String resource;
+
+    /**
+     * Gets the identifier of the secured resource
+     *
+     * @return The identifier of the secured resource
+     */
+    public String getResource() {
+        return resource;
+    }
+
+    /**
+     * Initializes this event
+     *
+     * @param resource The identifier of the secured resource
+     * @param emitter  The service that emitted this event
+     */
+    public SecuredResourceChangedEvent(String resource, Service emitter) {
+        super(TYPE, emitter, new RichString("Changed the security descriptor of resource ", resource));
+        this.resource = resource;
+    }
+}
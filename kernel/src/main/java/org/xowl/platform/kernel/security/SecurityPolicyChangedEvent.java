@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.kernel.security;
+
+import fr.cenotelie.commons.utils.RichString;
+import org.xowl.platform.kernel.Service;
+import org.xowl.platform.kernel.events.EventBase;
+
+/**
+ * Event when the policy for a secured action changed
+ *
+ * @author Laurent Wouters
+ */
+public class SecurityPolicyChangedEvent extends EventBase {
+    /**
+     * The type for this event
+     */
+    public static final String TYPE = SecurityPolicyChangedEvent.class.getCanonicalName();
+
+    /**
+     * The secured action
+     */
+    private final SecuredAction action;
+
+    /**
+     * Gets the secured action
+     *
+     * @return The secured action
+     */
+    public SecuredAction getAction() {
+        return action;
+    }
+
+    /**
+     * Initializes this event
+     *
+     * @param action  The secured action
+     * @param emitter The service that emitted this event
+     */
+    public SecurityPolicyChangedEvent(SecuredAction action, Service emitter) {
+        super(TYPE, emitter, new RichString("Changed the policy for action ", action));
+        this.action = action;
+    }
+}
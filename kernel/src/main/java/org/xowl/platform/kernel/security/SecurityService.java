@@ -18,6 +18,9 @@
 package org.xowl.platform.kernel.security;
 
 import fr.cenotelie.commons.utils.api.Reply;
+import fr.cenotelie.commons.utils.collections.Couple;
+import fr.cenotelie.commons.utils.metrics.Metric;
+import fr.cenotelie.commons.utils.metrics.MetricBase;
 import org.xowl.platform.kernel.platform.PlatformUser;
 
 /**
@@ -26,6 +29,25 @@ import org.xowl.platform.kernel.platform.PlatformUser;
  * @author Laurent Wouters
  */
 public interface SecurityService extends SecuredService {
+    /**
+     * The metric for the number of authorization checks answered by the cache of decisions
+     */
+    Metric METRIC_AUTHORIZATION_CACHE_HITS = new MetricBase(SecurityService.class.getCanonicalName() + ".AuthorizationCacheHits",
+            "Security Service - Authorization cache hits",
+            "checks",
+            1000000000,
+            new Couple<>(Metric.HINT_IS_NUMERIC, "true"),
+            new Couple<>(Metric.HINT_MIN_VALUE, "0"));
+    /**
+     * The metric for the number of authorization checks evaluated by the security policy
+     */
+    Metric METRIC_AUTHORIZATION_CACHE_MISSES = new MetricBase(SecurityService.class.getCanonicalName() + ".AuthorizationCacheMisses",
+            "Security Service - Authorization cache misses",
+            "checks",
+            1000000000,
+            new Couple<>(Metric.HINT_IS_NUMERIC, "true"),
+            new Couple<>(Metric.HINT_MIN_VALUE, "0"));
+
     /**
      * Service action to get the configuration of the security policy
      */
@@ -252,4 +274,10 @@ public interface SecurityService extends SecuredService {
      * @return The protocol reply
      */
     Reply checkAction(SecuredAction action, Object data);
+
+    /**
+     * When the users, groups, roles, the policy or the secured resources changed in a way that may change authorization decisions
+     * This must be called synchronously by the changing component before it returns, so that no stale decision is used afterwards.
+     */
+    void onSecurityChanged();
 }
@@ -17,6 +17,7 @@
 
 package org.xowl.platform.kernel.webapi;
 
+import java.io.InputStream;
 import java.util.Collection;
 
 /**
@@ -97,4 +98,45 @@ public interface HttpApiRequest {
      * @return The request's body
      */
     byte[] getContent();
+
+    /**
+     * Gets the length of the request's body, as declared by the client
+     *
+     * @return The length in bytes, or -1 if it is not known
+     */
+    long getContentLength();
+
+    /**
+     * Gets a stream on the request's body
+     * Unless the body has already been read with getContent(), it is not buffered in memory.
+     * Therefore, the body can only be read once through this stream.
+     *
+     * @return The stream, or null if the body cannot be accessed
+     */
+    InputStream getContentStream();
+
+    /**
+     * Gets the route that matched this request
+     *
+     * @return The matching route
+     */
+    HttpApiRoute getRoute();
+
+    /**
+     * Gets the value of a path parameter extracted by the matching route
+     *
+     * @param name The name of a path parameter
+     * @return The associated value, or null if there is none
+     */
+    String getPathParameter(String name);
+
+    /**
+     * Gets whether the client already holds the current version of the requested entity
+     * This is the case for a conditional GET request with an If-None-Match header matching the entity tag.
+     * A service can then answer with 304 (Not Modified) before building the response.
+     *
+     * @param etag The entity tag for the current version of the entity
+     * @return Whether the client already holds this version
+     */
+    boolean isNotModified(String etag);
 }
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.kernel.webapi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents a route declared by an HTTP API service for the requests it handles
+ * The path of a route is a sequence of segments separated by '/'.
+ * A segment of the form {name} matches any single segment and its value is exposed as a path parameter with this name.
+ * A last segment equal to * matches any remaining segments, including none.
+ *
+ * @author Laurent Wouters
+ */
+public class HttpApiRoute {
+    /**
+     * The segment that matches any remaining segments
+     */
+    public static final String SEGMENT_REMAINDER = "*";
+
+    /**
+     * The path for this route
+     */
+    private final String path;
+    /**
+     * The accepted HTTP methods, or an empty array for all methods
+     */
+    private final String[] methods;
+    /**
+     * The priority of this route when several routes of different services match the same path
+     */
+    private final int priority;
+
+    /**
+     * Initializes this route
+     *
+     * @param path    The path for this route
+     * @param methods The accepted HTTP methods, none for all methods
+     */
+    public HttpApiRoute(String path, String... methods) {
+        this(path, HttpApiService.PRIORITY_NORMAL, methods);
+    }
+
+    /**
+     * Initializes this route
+     *
+     * @param path     The path for this route
+     * @param priority The priority of this route when several routes of different services match the same path
+     * @param methods  The accepted HTTP methods, none for all methods
+     */
+    public HttpApiRoute(String path, int priority, String... methods) {
+        this.path = path;
+        this.methods = methods;
+        this.priority = priority;
+    }
+
+    /**
+     * Gets the path for this route
+     *
+     * @return The path for this route
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Gets the accepted HTTP methods
+     *
+     * @return The accepted HTTP methods, or an empty array for all methods
+     */
+    public String[] getMethods() {
+        return methods;
+    }
+
+    /**
+     * Gets the priority of this route when several routes of different services match the same path
+     *
+     * @return The priority of this route
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Gets whether this route accepts the specified HTTP method
+     *
+     * @param method An HTTP method
+     * @return Whether the method is accepted
+     */
+    public boolean accepts(String method) {
+        if (methods.length == 0)
+            return true;
+        for (int i = 0; i != methods.length; i++) {
+            if (methods[i].equals(method))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the segments of a path, ignoring the empty ones
+     *
+     * @param path A path
+     * @return The segments
+     */
+    public static String[] getSegments(String path) {
+        List<String> result = new ArrayList<>();
+        int start = 0;
+        while (start < path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0)
+                end = path.length();
+            if (end > start)
+                result.add(path.substring(start, end));
+            start = end + 1;
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * Gets the name of the path parameter for a segment of a route
+     *
+     * @param segment A segment of a route
+     * @return The name of the parameter, or null if the segment is not a parameter
+     */
+    public static String getParameterName(String segment) {
+        if (segment.length() > 2 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}')
+            return segment.substring(1, segment.length() - 1);
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        if (methods.length == 0)
+            return path;
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i != methods.length; i++) {
+            if (i != 0)
+                builder.append(",");
+            builder.append(methods[i]);
+        }
+        builder.append(" ");
+        builder.append(path);
+        return builder.toString();
+    }
+}
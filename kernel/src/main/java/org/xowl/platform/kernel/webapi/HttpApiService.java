@@ -30,11 +30,6 @@ import org.xowl.platform.kernel.security.SecurityService;
  * @author Laurent Wouters
  */
 public interface HttpApiService extends Service, Serializable {
-    /**
-     * The response when this service cannot handle a request
-     */
-    int CANNOT_HANDLE = -1;
-
     /**
      * The lowest priority for HTTP services
      */
@@ -86,14 +81,20 @@ public interface HttpApiService extends Service, Serializable {
     ApiError ERROR_EXPECTED_HEADER_CONTENT_TYPE = new ApiError(0x00000045,
             "Expected a Content-Type header.",
             PlatformHttp.ERROR_HELP_PREFIX + "0x00000045.html");
+    /**
+     * API error - The content of the request exceeds the maximum size
+     */
+    ApiError ERROR_CONTENT_TOO_LARGE = new ApiError(0x00000046,
+            "The content of the request exceeds the maximum size.",
+            PlatformHttp.ERROR_HELP_PREFIX + "0x00000046.html");
 
     /**
-     * Gets whether this server can handle the specified request, and if so with which priority
+     * Gets the routes for the requests handled by this service
+     * The routes are compiled into the routing table of the HTTP server when this service is registered.
      *
-     * @param request The request to handle
-     * @return A negative number if this service cannot handle the request; otherwise a positive number indicating the priority of this service (greater number indicate greater priority)
+     * @return The routes for the requests handled by this service
      */
-    int canHandle(HttpApiRequest request);
+    HttpApiRoute[] getRoutes();
 
     /**
      * Checks whether the request to be handled requires the user to be authenticated
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.kernel.webapi;
+
+import fr.cenotelie.commons.utils.http.HttpResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Represents an HTTP response for the web API whose body is not buffered in memory, but directly written to the client
+ * This is used for large responses so that the client can start receiving the data as soon as it is produced.
+ *
+ * @author Laurent Wouters
+ */
+public abstract class HttpResponseStreamed extends HttpResponse {
+    /**
+     * The MIME type for the body of this response
+     */
+    private final String contentType;
+
+    /**
+     * Initializes this response
+     *
+     * @param code        The response code
+     * @param contentType The MIME type for the body of this response
+     */
+    public HttpResponseStreamed(int code, String contentType) {
+        super(code);
+        this.contentType = contentType;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Writes the body of this response to the specified stream
+     * When an error occurs, the exception must be propagated so that the response can be aborted instead of completed.
+     *
+     * @param stream The stream to write to
+     * @throws IOException When an error occurred while writing
+     */
+    public abstract void writeBody(OutputStream stream) throws IOException;
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.kernel.webapi;
+
+import fr.cenotelie.commons.utils.IOUtils;
+import fr.cenotelie.commons.utils.Serializable;
+import fr.cenotelie.commons.utils.http.HttpConstants;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Represents an HTTP response for the web API with a JSON array as body
+ * The elements are serialized one by one as they are written to the client.
+ *
+ * @author Laurent Wouters
+ */
+public class HttpResponseStreamedJSON extends HttpResponseStreamed {
+    /**
+     * The elements to serialize
+     */
+    private final Iterable<? extends Serializable> elements;
+
+    /**
+     * Initializes this response
+     *
+     * @param code     The response code
+     * @param elements The elements to serialize
+     */
+    public HttpResponseStreamedJSON(int code, Iterable<? extends Serializable> elements) {
+        super(code, HttpConstants.MIME_JSON);
+        this.elements = elements;
+    }
+
+    @Override
+    public void writeBody(OutputStream stream) throws IOException {
+        Writer writer = new OutputStreamWriter(stream, IOUtils.CHARSET);
+        writer.write("[");
+        boolean first = true;
+        for (Serializable element : elements) {
+            if (!first)
+                writer.write(", ");
+            first = false;
+            writer.write(element.serializedJSON());
+        }
+        writer.write("]");
+        writer.flush();
+    }
+}
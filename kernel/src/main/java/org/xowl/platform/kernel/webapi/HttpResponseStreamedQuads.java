@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.kernel.webapi;
+
+import fr.cenotelie.commons.utils.IOUtils;
+import fr.cenotelie.commons.utils.logging.BufferedLogger;
+import fr.cenotelie.commons.utils.logging.Logging;
+import org.xowl.infra.store.RDFUtils;
+import org.xowl.infra.store.rdf.Quad;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+
+/**
+ * Represents an HTTP response for the web API with serialized RDF quads as body
+ * The quads are pulled from the iterator as they are written to the client.
+ *
+ * @author Laurent Wouters
+ */
+public class HttpResponseStreamedQuads extends HttpResponseStreamed {
+    /**
+     * The quads to serialize
+     */
+    private final Iterator<Quad> quads;
+
+    /**
+     * Initializes this response
+     *
+     * @param code        The response code
+     * @param contentType The RDF syntax to use for the serialization
+     * @param quads       The quads to serialize
+     */
+    public HttpResponseStreamedQuads(int code, String contentType, Iterator<Quad> quads) {
+        super(code, contentType);
+        this.quads = quads;
+    }
+
+    @Override
+    public void writeBody(OutputStream stream) throws IOException {
+        Writer writer = new OutputStreamWriter(stream, IOUtils.CHARSET);
+        BufferedLogger logger = new BufferedLogger();
+        try {
+            RDFUtils.serialize(writer, logger, quads, getContentType());
+        } catch (IllegalStateException exception) {
+            // the quads could not be fetched, the response is truncated
+            Logging.get().error(exception);
+            throw new IOException(exception);
+        }
+        writer.flush();
+        if (!logger.getErrorMessages().isEmpty()) {
+            Logging.get().error(logger.getErrorsAsString());
+            throw new IOException(logger.getErrorsAsString());
+        }
+    }
+}
@@ -49,6 +49,10 @@ public interface CollaborationNetworkService extends SecuredService, ManagedServ
      * Service action to get the output artifacts for a neighbour collaboration
      */
     SecuredAction ACTION_GET_NEIGHBOUR_OUTPUTS = new SecuredAction(CollaborationNetworkService.class.getCanonicalName() + ".GetNeighbourOutputs", "Collaboration Network Service - Get Neighbour Outputs");
+    /**
+     * Service action to retrieve locally an output artifact of a neighbour collaboration
+     */
+    SecuredAction ACTION_RETRIEVE_NEIGHBOUR_OUTPUT = new SecuredAction(CollaborationNetworkService.class.getCanonicalName() + ".RetrieveNeighbourOutput", "Collaboration Network Service - Retrieve Neighbour Output");
     /**
      * Service action to spawn a new collaboration in the network of collaborations
      */
@@ -74,6 +78,7 @@ public interface CollaborationNetworkService extends SecuredService, ManagedServ
             ACTION_GET_NEIGHBOUR_MANIFEST,
             ACTION_GET_NEIGHBOUR_INPUTS,
             ACTION_GET_NEIGHBOUR_OUTPUTS,
+            ACTION_RETRIEVE_NEIGHBOUR_OUTPUT,
             ACTION_NETWORK_SPAWN,
             ACTION_NETWORK_ARCHIVE,
             ACTION_NETWORK_RESTART,
@@ -136,6 +141,17 @@ public interface CollaborationNetworkService extends SecuredService, ManagedServ
      */
     Reply getNeighbourOutputsFor(String collaborationId, String specificationId);
 
+    /**
+     * Retrieves locally an output artifact of a neighbour collaboration
+     * The artifact is transferred as a verified archive and streamed into the local storage.
+     *
+     * @param collaborationId The identifier of the collaboration
+     * @param specificationId The identifier of the output specification
+     * @param artifactId      The identifier of the artifact to retrieve
+     * @return The protocol reply, with the stored artifact when successful
+     */
+    Reply retrieveNeighbourOutput(String collaborationId, String specificationId, String artifactId);
+
     /**
      * Gets the known specifications for collaboration inputs and outputs across the network of collaborations
      *
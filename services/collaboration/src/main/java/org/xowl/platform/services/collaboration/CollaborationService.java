@@ -58,6 +58,7 @@ public interface CollaborationService extends SecuredService, CollaborationLocal
             ACTION_GET_NEIGHBOUR_MANIFEST,
             ACTION_GET_NEIGHBOUR_INPUTS,
             ACTION_GET_NEIGHBOUR_OUTPUTS,
+            ACTION_RETRIEVE_NEIGHBOUR_OUTPUT,
             ACTION_NETWORK_SPAWN,
             ACTION_NETWORK_ARCHIVE,
             ACTION_NETWORK_RESTART,
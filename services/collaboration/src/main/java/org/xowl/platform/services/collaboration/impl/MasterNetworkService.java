@@ -25,23 +25,26 @@ import fr.cenotelie.commons.utils.json.Json;
 import fr.cenotelie.commons.utils.logging.Logging;
 import fr.cenotelie.commons.utils.product.Product;
 import fr.cenotelie.hime.redist.ASTNode;
-import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
-import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.xowl.platform.kernel.PlatformHttp;
 import org.xowl.platform.kernel.PlatformUtils;
 import org.xowl.platform.kernel.Register;
 import org.xowl.platform.kernel.ReplyServiceUnavailable;
 import org.xowl.platform.kernel.artifacts.ArtifactSpecification;
 import org.xowl.platform.kernel.platform.ProductBase;
+import org.xowl.platform.kernel.remote.RemotePlatformAccess;
+import org.xowl.platform.kernel.remote.RemotePlatformCall;
 import org.xowl.platform.kernel.security.SecuredAction;
 import org.xowl.platform.kernel.security.SecurityService;
 import org.xowl.platform.services.collaboration.*;
 
-import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.*;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Implements a collaboration network service that manages its own network of collaborations
@@ -50,9 +53,9 @@ import java.util.zip.GZIPInputStream;
  */
 public class MasterNetworkService implements CollaborationNetworkService {
     /**
-     * File mode for executable files in a tar package
+     * The default number of idle instances to keep ready for each distribution
      */
-    private static final int EXECUTABLE_MODE = 0100755;
+    private static final int DEFAULT_POOL_SIZE = 1;
     /**
      * The login for the master manager
      */
@@ -74,6 +77,14 @@ public class MasterNetworkService implements CollaborationNetworkService {
      * The managed collaboration instances
      */
     private final Map<String, RemoteCollaborationManaged> collaborations;
+    /**
+     * The ports used by the managed collaboration instances, relative to the min in the port range
+     */
+    private final BitSet ports;
+    /**
+     * The cache of templates for the platform distributions
+     */
+    private final PlatformTemplateCache templates;
     /**
      * The min in the available port range
      */
@@ -93,9 +104,22 @@ public class MasterNetworkService implements CollaborationNetworkService {
         this.storageDistributions = new File(storage, "platforms");
         this.storageInstances = new File(storage, "instances");
         this.platforms = new ArrayList<>();
-        this.collaborations = new HashMap<>();
+        this.collaborations = new ConcurrentHashMap<>();
+        this.ports = new BitSet();
         this.portMin = Integer.parseInt(configuration.get("portMin"));
         this.portMax = Integer.parseInt(configuration.get("portMax"));
+        int poolSize = DEFAULT_POOL_SIZE;
+        try {
+            String value = configuration.get("poolSize");
+            if (value != null)
+                poolSize = Integer.parseInt(value);
+        } catch (NumberFormatException exception) {
+            Logging.get().error(exception);
+        }
+        List<String> copiedPaths = configuration.getAll("templateCopy");
+        if (copiedPaths.isEmpty())
+            copiedPaths = Arrays.asList("config", "data", "felix/conf");
+        this.templates = new PlatformTemplateCache(storageDistributions, storage, copiedPaths, poolSize);
         File[] files = storageDistributions.listFiles();
         if (files != null) {
             for (int i = 0; i != files.length; i++) {
@@ -119,6 +143,8 @@ public class MasterNetworkService implements CollaborationNetworkService {
                             ASTNode definition = Json.parse(Logging.get(), reader);
                             RemoteCollaborationManagedDescriptor descriptor = new RemoteCollaborationManagedDescriptor(definition);
                             collaborations.put(descriptor.getIdentifier(), new RemoteCollaborationManaged(this, descriptor));
+                            if (descriptor.getPort() >= portMin && descriptor.getPort() <= portMax)
+                                ports.set(descriptor.getPort() - portMin);
                         } catch (IOException exception) {
                             Logging.get().error(exception);
                         }
@@ -145,15 +171,31 @@ public class MasterNetworkService implements CollaborationNetworkService {
 
     @Override
     public void onLifecycleStart() {
-        // do nothing
+        // prepare the idle instances in the background
+        for (Product product : platforms)
+            templates.warm(product.getIdentifier());
     }
 
     @Override
     public void onLifecycleStop() {
-        // try to shutdown the managed platforms
+        templates.close();
+        // try to shutdown the managed platforms, in parallel
+        List<Future<Reply>> replies = new ArrayList<>();
         for (RemoteCollaborationManaged remote : collaborations.values()) {
             if (remote.getStatus() == CollaborationStatus.Running) {
-                remote.getAccess().platformShutdown();
+                replies.add(remote.getAccess().getAsync().submit(new RemotePlatformCall() {
+                    @Override
+                    public Reply execute(RemotePlatformAccess access) {
+                        return access.platformShutdown();
+                    }
+                }));
+            }
+        }
+        for (Future<Reply> reply : replies) {
+            try {
+                reply.get();
+            } catch (InterruptedException | ExecutionException exception) {
+                Logging.get().error(exception);
             }
         }
     }
@@ -241,6 +283,20 @@ public class MasterNetworkService implements CollaborationNetworkService {
         return neighbour.getArtifactsForOutput(specificationId);
     }
 
+    @Override
+    public Reply retrieveNeighbourOutput(String collaborationId, String specificationId, String artifactId) {
+        SecurityService securityService = Register.getComponent(SecurityService.class);
+        if (securityService == null)
+            return ReplyServiceUnavailable.instance();
+        Reply reply = securityService.checkAction(ACTION_RETRIEVE_NEIGHBOUR_OUTPUT);
+        if (!reply.isSuccess())
+            return reply;
+        RemoteCollaborationManaged neighbour = collaborations.get(collaborationId);
+        if (neighbour == null)
+            return ReplyNotFound.instance();
+        return neighbour.retrieveOutput(specificationId, artifactId);
+    }
+
     @Override
     public Collection<ArtifactSpecification> getKnownIOSpecifications() {
         return Collections.emptyList();
@@ -312,18 +368,20 @@ public class MasterNetworkService implements CollaborationNetworkService {
         Product product = ((ReplyResult<Product>) reply).getData();
         // provision the instance objects
         RemoteCollaborationManaged collaboration = provisionCreateInstance(specification);
-        // extract the distribution
-        reply = provisionExtractDistribution(product.getIdentifier(), collaboration.getIdentifier());
+        if (collaboration == null)
+            return new ReplyFailure("No available port for a new collaboration");
+        // prepare the distribution
+        reply = provisionPrepareDistribution(product.getIdentifier(), collaboration.getIdentifier());
         if (!reply.isSuccess())
-            return reply;
+            return provisionAbort(collaboration, reply);
         // deploy the configuration
         reply = provisionDeployConfiguration(collaboration, specification);
         if (!reply.isSuccess())
-            return reply;
+            return provisionAbort(collaboration, reply);
         // launch the platform
         reply = provisionLaunchPlatform(collaboration);
         if (!reply.isSuccess())
-            return reply;
+            return provisionAbort(collaboration, reply);
         // write the instance descriptor file
         collaboration.getDescriptor().setStatus(CollaborationStatus.Running);
         reply = provisionWriteDescriptor(collaboration);
@@ -332,6 +390,24 @@ public class MasterNetworkService implements CollaborationNetworkService {
         return new ReplyResult<>(collaboration);
     }
 
+    /**
+     * Aborts the provisioning of a platform instance that could not be launched
+     *
+     * @param instance The instance being provisioned
+     * @param reply    The reply for the failed step
+     * @return The protocol reply
+     */
+    private Reply provisionAbort(RemoteCollaborationManaged instance, Reply reply) {
+        collaborations.remove(instance.getIdentifier());
+        File instanceDirectory = new File(storageInstances, instance.getIdentifier());
+        if (instanceDirectory.exists())
+            IOUtils.deleteFolder(instanceDirectory);
+        synchronized (ports) {
+            ports.clear(instance.getDescriptor().getPort() - portMin);
+        }
+        return reply;
+    }
+
     /**
      * Chooses the platform that will implementation the collaboration
      *
@@ -348,49 +424,39 @@ public class MasterNetworkService implements CollaborationNetworkService {
      * Creates the platform instance object
      *
      * @param specification The specification for the collaboration
-     * @return The instance
+     * @return The instance, or null if no port is available
      */
     private RemoteCollaborationManaged provisionCreateInstance(CollaborationSpecification specification) {
         String masterPassword = "admin";
-        synchronized (collaborations) {
-            int port = provisionReservePort();
-            String identifier = UUID.randomUUID().toString();
-            RemoteCollaborationManagedDescriptor descriptor = new RemoteCollaborationManagedDescriptor(
-                    identifier,
-                    specification.getName(),
-                    "https://localhost:" + Integer.toString(port) + "/" + identifier + "/api",
-                    port,
-                    MASTER_LOGIN,
-                    masterPassword);
-            RemoteCollaborationManaged collaboration = new RemoteCollaborationManaged(this, descriptor);
-            collaborations.put(descriptor.getIdentifier(), collaboration);
-            return collaboration;
-        }
+        int port = provisionReservePort();
+        if (port < 0)
+            return null;
+        String identifier = UUID.randomUUID().toString();
+        RemoteCollaborationManagedDescriptor descriptor = new RemoteCollaborationManagedDescriptor(
+                identifier,
+                specification.getName(),
+                "https://localhost:" + Integer.toString(port) + "/" + identifier + "/api",
+                port,
+                MASTER_LOGIN,
+                masterPassword);
+        RemoteCollaborationManaged collaboration = new RemoteCollaborationManaged(this, descriptor);
+        collaborations.put(descriptor.getIdentifier(), collaboration);
+        return collaboration;
     }
 
     /**
      * Reserves a port for a new platform instance
      *
-     * @return The port
+     * @return The port, or -1 if all the ports in the range are used
      */
     private int provisionReservePort() {
-        List<RemoteCollaborationManaged> instances = new ArrayList<>(collaborations.values());
-        if (instances.isEmpty())
-            return portMin;
-        int max = instances.get(instances.size() - 1).getDescriptor().getPort();
-        if (max != portMax)
-            return max + 1;
-        int min = instances.get(0).getDescriptor().getPort();
-        if (min != portMin)
-            return portMin;
-        int current = portMin;
-        for (int i = 1; i != instances.size() - 1; i++) {
-            int x = instances.get(i).getDescriptor().getPort();
-            if (x > current + 1)
-                return current + 1;
-            current = x;
+        synchronized (ports) {
+            int index = ports.nextClearBit(0);
+            if (index > portMax - portMin)
+                return -1;
+            ports.set(index);
+            return portMin + index;
         }
-        return portMin;
     }
 
     /**
@@ -412,86 +478,22 @@ public class MasterNetworkService implements CollaborationNetworkService {
     }
 
     /**
-     * Extract a platform distribution
+     * Prepares the files of a platform distribution for a new instance
      *
      * @param productId  The identifier of the product distribution
      * @param instanceId The identifier of the instance being provisioned
      * @return The protocol reply
      */
-    private Reply provisionExtractDistribution(String productId, String instanceId) {
-        File distributionFile = new File(storageDistributions, productId + ".tar.gz");
-        if (!distributionFile.exists())
-            return new ReplyFailure("Failed to find the distribution " + productId);
-        File extractionDirectory = new File(storageInstances, instanceId + "_provision");
-        if (extractionDirectory.exists())
-            IOUtils.deleteFolder(extractionDirectory);
-        if (!extractionDirectory.mkdirs()) {
-            Logging.get().error("Failed to create directory " + extractionDirectory.getAbsolutePath());
-            return ReplyNotFound.instance();
-        }
+    private Reply provisionPrepareDistribution(String productId, String instanceId) {
         try {
-            provisionExtractTarGz(distributionFile, extractionDirectory);
+            templates.prepare(productId, new File(storageInstances, instanceId));
         } catch (IOException exception) {
             Logging.get().error(exception);
             return new ReplyException(exception);
         }
-        File[] children = extractionDirectory.listFiles();
-        if (children == null || children.length != 1) {
-            Logging.get().error("Unexpected distribution content for " + productId);
-            return ReplyNotFound.instance();
-        }
-        File target = new File(storageInstances, instanceId);
-        if (target.exists())
-            IOUtils.deleteFolder(extractionDirectory);
-        try {
-            Files.move(children[0].toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
-        } catch (IOException exception) {
-            Logging.get().error(exception);
-            return new ReplyException(exception);
-        }
-        IOUtils.deleteFolder(extractionDirectory);
         return ReplySuccess.instance();
     }
 
-    /**
-     * Extracts a tar.gz file
-     *
-     * @param input  The input tar.gz file
-     * @param output The output directory
-     */
-    private void provisionExtractTarGz(File input, File output) throws IOException {
-        byte[] buffer = new byte[8192];
-        try (TarArchiveInputStream inputStream = new TarArchiveInputStream(new GZIPInputStream(new FileInputStream(input)))) {
-            while (true) {
-                TarArchiveEntry entry = inputStream.getNextTarEntry();
-                if (entry == null)
-                    break;
-                if (entry.isDirectory()) {
-                    File directory = new File(output, entry.getName());
-                    if (!directory.mkdirs())
-                        throw new IOException("Failed to extract " + input.getAbsolutePath());
-                } else {
-                    File target = new File(output, entry.getName());
-                    File directory = target.getParentFile();
-                    if (!directory.exists() && !directory.mkdirs())
-                        throw new IOException("Failed to extract " + input.getAbsolutePath());
-                    try (FileOutputStream fileOutputStream = new FileOutputStream(target)) {
-                        int read = 0;
-                        while (read >= 0) {
-                            read = inputStream.read(buffer, 0, buffer.length);
-                            if (read > 0)
-                                fileOutputStream.write(buffer, 0, read);
-                        }
-                    }
-                    if (entry.getMode() == EXECUTABLE_MODE) {
-                        if (!target.setExecutable(true, false))
-                            throw new IOException("Failed to set executable bit on " + target.getAbsolutePath());
-                    }
-                }
-            }
-        }
-    }
-
     /**
      * Deploys the configuration for a new platform instance
      *
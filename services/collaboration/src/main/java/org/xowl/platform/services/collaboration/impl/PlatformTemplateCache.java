@@ -0,0 +1,421 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.services.collaboration.impl;
+
+import fr.cenotelie.commons.utils.IOUtils;
+import fr.cenotelie.commons.utils.logging.Logging;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.xowl.platform.kernel.artifacts.ArtifactArchive;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Manages the extracted templates of the platform distributions used to provision new platform instances.
+ * A distribution is extracted once into a template that is verified against the checksum of the distribution's archive.
+ * New instances are then cloned from the template, sharing the read-only files (the jars of the bundles) through hard links.
+ * All the other files, which may be rewritten by an instance, are copied.
+ * A pool of idle instances, already cloned but not yet configured, is kept ready for each distribution.
+ *
+ * @author Laurent Wouters
+ */
+class PlatformTemplateCache {
+    /**
+     * File mode for executable files in a tar package
+     */
+    private static final int EXECUTABLE_MODE = 0100755;
+    /**
+     * The suffix for the files of the distributions
+     */
+    private static final String SUFFIX_DISTRIBUTION = ".tar.gz";
+    /**
+     * The suffix for the files containing a checksum
+     */
+    private static final String SUFFIX_CHECKSUM = ".sha256";
+    /**
+     * The suffix for the read-only files that are shared with the template
+     */
+    private static final String SUFFIX_LINKED = ".jar";
+
+    /**
+     * The storage area for the platform distributions
+     */
+    private final File storageDistributions;
+    /**
+     * The storage area for the extracted templates
+     */
+    private final File storageTemplates;
+    /**
+     * The storage area for the pool of idle instances
+     */
+    private final File storagePool;
+    /**
+     * The paths, relative to the root of a distribution, that are always copied when cloning a template, even for read-only files
+     */
+    private final Collection<String> copiedPaths;
+    /**
+     * The number of idle instances to keep ready for each distribution
+     */
+    private final int poolSize;
+    /**
+     * The verified templates, by product identifier
+     */
+    private final Map<String, File> templates;
+    /**
+     * The idle instances, by product identifier
+     */
+    private final ConcurrentMap<String, Queue<File>> pools;
+    /**
+     * The executor for the replenishment of the pools
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Initializes this cache
+     *
+     * @param storageDistributions The storage area for the platform distributions
+     * @param storage              The storage area for this cache
+     * @param copiedPaths          The paths, relative to the root of a distribution, that are always copied when cloning a template
+     * @param poolSize             The number of idle instances to keep ready for each distribution
+     */
+    public PlatformTemplateCache(File storageDistributions, File storage, Collection<String> copiedPaths, int poolSize) {
+        this.storageDistributions = storageDistributions;
+        this.storageTemplates = new File(storage, "templates");
+        this.storagePool = new File(storage, "pool");
+        this.copiedPaths = copiedPaths;
+        this.poolSize = poolSize;
+        this.templates = new ConcurrentHashMap<>();
+        this.pools = new ConcurrentHashMap<>();
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            /**
+             * The number of created threads
+             */
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, PlatformTemplateCache.class.getCanonicalName() + ".PoolFiller" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // the idle instances of a previous run may come from outdated templates
+        if (storagePool.exists())
+            IOUtils.deleteFolder(storagePool);
+    }
+
+    /**
+     * Fills the pool of idle instances for a distribution in the background
+     *
+     * @param productId The identifier of the product distribution
+     */
+    public void warm(final String productId) {
+        if (poolSize <= 0)
+            return;
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    doWarm(productId);
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            // the cache is closed
+        }
+    }
+
+    /**
+     * Stops the background filling of the pools
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Prepares the files for a new platform instance
+     *
+     * @param productId The identifier of the product distribution
+     * @param target    The target directory for the new instance
+     * @throws IOException When the preparation failed
+     */
+    public void prepare(String productId, File target) throws IOException {
+        if (target.exists())
+            IOUtils.deleteFolder(target);
+        File parent = target.getParentFile();
+        if (!parent.exists() && !parent.mkdirs())
+            throw new IOException("Failed to create directory " + parent.getAbsolutePath());
+        File idle = getPool(productId).poll();
+        if (idle != null) {
+            try {
+                Files.move(idle.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                warm(productId);
+                return;
+            } catch (IOException exception) {
+                // the pool is on another file system, fallback to cloning
+                Logging.get().error(exception);
+                IOUtils.deleteFolder(idle);
+            }
+        }
+        cloneTemplate(getTemplate(productId), target);
+        warm(productId);
+    }
+
+    /**
+     * Fills the pool of idle instances for a distribution
+     *
+     * @param productId The identifier of the product distribution
+     */
+    private void doWarm(String productId) {
+        Queue<File> pool = getPool(productId);
+        try {
+            File template = getTemplate(productId);
+            File directory = new File(storagePool, productId);
+            while (pool.size() < poolSize && !Thread.currentThread().isInterrupted()) {
+                File instance = new File(directory, UUID.randomUUID().toString());
+                cloneTemplate(template, instance);
+                pool.add(instance);
+            }
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+        }
+    }
+
+    /**
+     * Gets the pool of idle instances for a distribution
+     *
+     * @param productId The identifier of the product distribution
+     * @return The pool
+     */
+    private Queue<File> getPool(String productId) {
+        Queue<File> pool = pools.get(productId);
+        if (pool != null)
+            return pool;
+        pool = new ConcurrentLinkedQueue<>();
+        Queue<File> previous = pools.putIfAbsent(productId, pool);
+        return previous != null ? previous : pool;
+    }
+
+    /**
+     * Gets the verified template for a distribution, extracting it if necessary
+     *
+     * @param productId The identifier of the product distribution
+     * @return The root directory of the template
+     * @throws IOException When the distribution cannot be extracted
+     */
+    private File getTemplate(String productId) throws IOException {
+        File template = templates.get(productId);
+        if (template != null)
+            return template;
+        synchronized (templates) {
+            template = templates.get(productId);
+            if (template != null)
+                return template;
+            template = buildTemplate(productId);
+            templates.put(productId, template);
+            return template;
+        }
+    }
+
+    /**
+     * Verifies the template for a distribution and (re-)extracts it when it does not match the distribution
+     *
+     * @param productId The identifier of the product distribution
+     * @return The root directory of the template
+     * @throws IOException When the distribution cannot be extracted
+     */
+    private File buildTemplate(String productId) throws IOException {
+        File distributionFile = new File(storageDistributions, productId + SUFFIX_DISTRIBUTION);
+        if (!distributionFile.exists())
+            throw new FileNotFoundException("Failed to find the distribution " + productId);
+        String checksum = ArtifactArchive.checksum(distributionFile);
+        String expected = readChecksum(new File(storageDistributions, productId + SUFFIX_DISTRIBUTION + SUFFIX_CHECKSUM));
+        if (expected != null && !expected.equalsIgnoreCase(checksum))
+            throw new IOException("Checksum mismatch for the distribution " + productId);
+
+        File directory = new File(storageTemplates, productId);
+        File checksumFile = new File(storageTemplates, productId + SUFFIX_CHECKSUM);
+        String current = readChecksum(checksumFile);
+        if (checksum.equalsIgnoreCase(current) && directory.exists()) {
+            File root = getTemplateRoot(directory);
+            if (root != null)
+                return root;
+        }
+
+        // extract the distribution into a fresh template
+        if (!checksumFile.delete() && checksumFile.exists())
+            throw new IOException("Failed to delete " + checksumFile.getAbsolutePath());
+        File extraction = new File(storageTemplates, productId + "_extract");
+        if (extraction.exists())
+            IOUtils.deleteFolder(extraction);
+        if (!extraction.mkdirs())
+            throw new IOException("Failed to create directory " + extraction.getAbsolutePath());
+        extractTarGz(distributionFile, extraction);
+        if (getTemplateRoot(extraction) == null) {
+            IOUtils.deleteFolder(extraction);
+            throw new IOException("Unexpected distribution content for " + productId);
+        }
+        if (directory.exists())
+            IOUtils.deleteFolder(directory);
+        Files.move(extraction.toPath(), directory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        try (Writer writer = IOUtils.getWriter(checksumFile)) {
+            writer.write(checksum);
+            writer.flush();
+        }
+        return getTemplateRoot(directory);
+    }
+
+    /**
+     * Gets the root of a distribution within the directory of its template
+     *
+     * @param directory The directory of the template
+     * @return The root of the distribution, or null if the template is malformed
+     */
+    private static File getTemplateRoot(File directory) {
+        File[] children = directory.listFiles();
+        if (children == null || children.length != 1 || !children[0].isDirectory())
+            return null;
+        return children[0];
+    }
+
+    /**
+     * Reads a checksum file
+     *
+     * @param file The file
+     * @return The checksum, or null if there is none
+     */
+    private static String readChecksum(File file) {
+        if (!file.exists())
+            return null;
+        try (Reader reader = IOUtils.getReader(file)) {
+            String content = IOUtils.read(reader).trim();
+            int index = content.indexOf(' ');
+            return index > 0 ? content.substring(0, index) : content;
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+            return null;
+        }
+    }
+
+    /**
+     * Clones a template into a new directory
+     * Only the read-only files are hard-linked to the template, except for the ones under the copied paths.
+     * The files are copied when links are not supported.
+     *
+     * @param template The root directory of the template
+     * @param target   The target directory
+     * @throws IOException When the cloning failed
+     */
+    private void cloneTemplate(final File template, final File target) throws IOException {
+        final Path source = template.toPath();
+        final Path destination = target.toPath();
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            /**
+             * Whether hard links can be used
+             */
+            private boolean canLink = true;
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                Files.createDirectories(destination.resolve(source.relativize(directory)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Path relative = source.relativize(file);
+                Path copy = destination.resolve(relative);
+                if (canLink && isLinked(relative)) {
+                    try {
+                        Files.createLink(copy, file);
+                        return FileVisitResult.CONTINUE;
+                    } catch (UnsupportedOperationException | IOException exception) {
+                        canLink = false;
+                    }
+                }
+                Files.copy(file, copy, StandardCopyOption.COPY_ATTRIBUTES);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Gets whether a file in a template can be linked instead of being copied
+     * Only the read-only files outside the copied paths can be linked, so that an instance never rewrites the template.
+     *
+     * @param relative The path of the file relative to the root of the template
+     * @return Whether the file can be linked
+     */
+    private boolean isLinked(Path relative) {
+        if (!relative.getFileName().toString().endsWith(SUFFIX_LINKED))
+            return false;
+        for (String path : copiedPaths) {
+            if (relative.startsWith(path))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Extracts a tar.gz file
+     *
+     * @param input  The input tar.gz file
+     * @param output The output directory
+     * @throws IOException When the extraction failed
+     */
+    private static void extractTarGz(File input, File output) throws IOException {
+        byte[] buffer = new byte[8192];
+        try (TarArchiveInputStream inputStream = new TarArchiveInputStream(new GZIPInputStream(new FileInputStream(input)))) {
+            while (true) {
+                TarArchiveEntry entry = inputStream.getNextTarEntry();
+                if (entry == null)
+                    break;
+                if (entry.isDirectory()) {
+                    File directory = new File(output, entry.getName());
+                    if (!directory.mkdirs())
+                        throw new IOException("Failed to extract " + input.getAbsolutePath());
+                } else {
+                    File target = new File(output, entry.getName());
+                    File directory = target.getParentFile();
+                    if (!directory.exists() && !directory.mkdirs())
+                        throw new IOException("Failed to extract " + input.getAbsolutePath());
+                    try (FileOutputStream fileOutputStream = new FileOutputStream(target)) {
+                        int read = 0;
+                        while (read >= 0) {
+                            read = inputStream.read(buffer, 0, buffer.length);
+                            if (read > 0)
+                                fileOutputStream.write(buffer, 0, read);
+                        }
+                    }
+                    if (entry.getMode() == EXECUTABLE_MODE) {
+                        if (!target.setExecutable(true, false))
+                            throw new IOException("Failed to set executable bit on " + target.getAbsolutePath());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -17,8 +17,11 @@
 
 package org.xowl.platform.services.collaboration.impl;
 
-import fr.cenotelie.commons.utils.api.Reply;
-import fr.cenotelie.commons.utils.api.ReplyUnsupported;
+import fr.cenotelie.commons.utils.api.*;
+import org.xowl.platform.kernel.Register;
+import org.xowl.platform.kernel.ReplyServiceUnavailable;
+import org.xowl.platform.kernel.artifacts.Artifact;
+import org.xowl.platform.kernel.artifacts.ArtifactStorageService;
 import org.xowl.platform.kernel.remote.RemotePlatformAccess;
 import org.xowl.platform.services.collaboration.CollaborationNetworkService;
 import org.xowl.platform.services.collaboration.CollaborationStatus;
@@ -112,6 +115,21 @@ public class RemoteCollaborationManaged extends RemoteCollaborationBase {
 
     @Override
     public Reply retrieveOutput(String specificationId, String artifactId) {
-        return ReplyUnsupported.instance();
+        ArtifactStorageService storageService = Register.getComponent(ArtifactStorageService.class);
+        if (storageService == null)
+            return ReplyServiceUnavailable.instance();
+        Reply reply = getAccess().getArtifactsForCollaborationOutput(specificationId);
+        if (!reply.isSuccess())
+            return reply;
+        boolean found = false;
+        for (Artifact artifact : ((ReplyResultCollection<Artifact>) reply).getData()) {
+            if (artifact.getIdentifier().equals(artifactId)) {
+                found = true;
+                break;
+            }
+        }
+        if (!found)
+            return ReplyNotFound.instance();
+        return getAccess().downloadArtifact(artifactId, storageService);
     }
 }
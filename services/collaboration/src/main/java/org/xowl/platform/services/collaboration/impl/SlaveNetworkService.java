@@ -21,6 +21,7 @@ import fr.cenotelie.commons.utils.api.Reply;
 import fr.cenotelie.commons.utils.api.ReplyNetworkError;
 import fr.cenotelie.commons.utils.api.ReplyResult;
 import fr.cenotelie.commons.utils.api.ReplyResultCollection;
+import fr.cenotelie.commons.utils.api.ReplyUnsupported;
 import fr.cenotelie.commons.utils.ini.IniSection;
 import org.xowl.platform.kernel.PlatformUtils;
 import org.xowl.platform.kernel.Register;
@@ -179,6 +180,18 @@ public class SlaveNetworkService implements CollaborationNetworkService {
         return remotePlatform.getCollaborationNeighbourOutputs(collaborationId, specificationId);
     }
 
+    @Override
+    public Reply retrieveNeighbourOutput(String collaborationId, String specificationId, String artifactId) {
+        SecurityService securityService = Register.getComponent(SecurityService.class);
+        if (securityService == null)
+            return ReplyServiceUnavailable.instance();
+        Reply reply = securityService.checkAction(ACTION_RETRIEVE_NEIGHBOUR_OUTPUT);
+        if (!reply.isSuccess())
+            return reply;
+        // only the master platform has an access to the neighbour platforms
+        return ReplyUnsupported.instance();
+    }
+
     @Override
     public Collection<ArtifactSpecification> getKnownIOSpecifications() {
         return Collections.emptyList();
@@ -137,6 +137,17 @@ public class StandaloneNetworkService implements CollaborationNetworkService {
         return ReplyNotFound.instance();
     }
 
+    @Override
+    public Reply retrieveNeighbourOutput(String collaborationId, String specificationId, String artifactId) {
+        SecurityService securityService = Register.getComponent(SecurityService.class);
+        if (securityService == null)
+            return ReplyServiceUnavailable.instance();
+        Reply reply = securityService.checkAction(ACTION_RETRIEVE_NEIGHBOUR_OUTPUT);
+        if (!reply.isSuccess())
+            return reply;
+        return ReplyNotFound.instance();
+    }
+
     @Override
     public Collection<ArtifactSpecification> getKnownIOSpecifications() {
         return Collections.emptyList();
@@ -24,7 +24,6 @@ import fr.cenotelie.commons.utils.api.ReplyApiError;
 import fr.cenotelie.commons.utils.api.ReplyUtils;
 import fr.cenotelie.commons.utils.http.HttpConstants;
 import fr.cenotelie.commons.utils.http.HttpResponse;
-import fr.cenotelie.commons.utils.http.URIUtils;
 import fr.cenotelie.commons.utils.ini.IniDocument;
 import fr.cenotelie.commons.utils.ini.IniSection;
 import fr.cenotelie.commons.utils.json.Json;
@@ -41,6 +40,7 @@ import org.xowl.platform.kernel.security.SecurityService;
 import org.xowl.platform.kernel.webapi.HttpApiRequest;
 import org.xowl.platform.kernel.webapi.HttpApiResource;
 import org.xowl.platform.kernel.webapi.HttpApiResourceBase;
+import org.xowl.platform.kernel.webapi.HttpApiRoute;
 import org.xowl.platform.kernel.webapi.HttpApiService;
 import org.xowl.platform.services.collaboration.*;
 import org.xowl.platform.services.collaboration.jobs.CollaborationSpawnJob;
@@ -70,6 +70,106 @@ public class XOWLCollaborationService extends XOWLCollaborationLocalService impl
      * The URI for the API services
      */
     private final String apiUri;
+    /**
+     * The route for archiving the collaboration
+     */
+    private final HttpApiRoute routeArchive;
+    /**
+     * The route for deleting the collaboration
+     */
+    private final HttpApiRoute routeDelete;
+    /**
+     * The route for the manifest resource
+     */
+    private final HttpApiRoute routeManifest;
+    /**
+     * The route for the collaboration pattern in the manifest
+     */
+    private final HttpApiRoute routeManifestPattern;
+    /**
+     * The route for the input specifications
+     */
+    private final HttpApiRoute routeManifestInputs;
+    /**
+     * The route for a specific input specification
+     */
+    private final HttpApiRoute routeManifestInput;
+    /**
+     * The route for the artifacts for an input specification
+     */
+    private final HttpApiRoute routeManifestInputArtifacts;
+    /**
+     * The route for a specific artifact for an input specification
+     */
+    private final HttpApiRoute routeManifestInputArtifact;
+    /**
+     * The route for the output specifications
+     */
+    private final HttpApiRoute routeManifestOutputs;
+    /**
+     * The route for a specific output specification
+     */
+    private final HttpApiRoute routeManifestOutput;
+    /**
+     * The route for the artifacts for an output specification
+     */
+    private final HttpApiRoute routeManifestOutputArtifacts;
+    /**
+     * The route for a specific artifact for an output specification
+     */
+    private final HttpApiRoute routeManifestOutputArtifact;
+    /**
+     * The route for the roles in the manifest
+     */
+    private final HttpApiRoute routeManifestRoles;
+    /**
+     * The route for a specific role in the manifest
+     */
+    private final HttpApiRoute routeManifestRole;
+    /**
+     * The route for the neighbours resource
+     */
+    private final HttpApiRoute routeNeighbours;
+    /**
+     * The route for a specific neighbour
+     */
+    private final HttpApiRoute routeNeighbour;
+    /**
+     * The route for the manifest of a neighbour
+     */
+    private final HttpApiRoute routeNeighbourManifest;
+    /**
+     * The route for the status of a neighbour
+     */
+    private final HttpApiRoute routeNeighbourStatus;
+    /**
+     * The route for archiving a neighbour
+     */
+    private final HttpApiRoute routeNeighbourArchive;
+    /**
+     * The route for restarting a neighbour
+     */
+    private final HttpApiRoute routeNeighbourRestart;
+    /**
+     * The route for the artifacts for an input specification of a neighbour
+     */
+    private final HttpApiRoute routeNeighbourInputArtifacts;
+    /**
+     * The route for the artifacts for an output specification of a neighbour
+     */
+    private final HttpApiRoute routeNeighbourOutputArtifacts;
+    /**
+     * The route for retrieving an output artifact from a neighbour
+     */
+    private final HttpApiRoute routeNeighbourOutputArtifact;
+    /**
+     * The route for the known input and output specifications
+     */
+    private final HttpApiRoute routeSpecifications;
+    /**
+     * The route for the known collaboration patterns
+     */
+    private final HttpApiRoute routePatterns;
     /**
      * The collaboration network service
      */
@@ -81,6 +181,31 @@ public class XOWLCollaborationService extends XOWLCollaborationLocalService impl
     public XOWLCollaborationService() {
         super();
         this.apiUri = PlatformHttp.getUriPrefixApi() + "/services/collaboration";
+        this.routeArchive = new HttpApiRoute(apiUri + "/archive", HttpConstants.METHOD_POST);
+        this.routeDelete = new HttpApiRoute(apiUri + "/delete", HttpConstants.METHOD_POST);
+        this.routeManifest = new HttpApiRoute(apiUri + "/manifest", HttpConstants.METHOD_GET);
+        this.routeManifestPattern = new HttpApiRoute(apiUri + "/manifest/pattern", HttpConstants.METHOD_GET);
+        this.routeManifestInputs = new HttpApiRoute(apiUri + "/manifest/inputs", HttpConstants.METHOD_GET, HttpConstants.METHOD_PUT);
+        this.routeManifestInput = new HttpApiRoute(apiUri + "/manifest/inputs/{specId}", HttpConstants.METHOD_DELETE);
+        this.routeManifestInputArtifacts = new HttpApiRoute(apiUri + "/manifest/inputs/{specId}/artifacts", HttpConstants.METHOD_GET);
+        this.routeManifestInputArtifact = new HttpApiRoute(apiUri + "/manifest/inputs/{specId}/artifacts/{artifactId}", HttpConstants.METHOD_PUT, HttpConstants.METHOD_DELETE);
+        this.routeManifestOutputs = new HttpApiRoute(apiUri + "/manifest/outputs", HttpConstants.METHOD_GET, HttpConstants.METHOD_PUT);
+        this.routeManifestOutput = new HttpApiRoute(apiUri + "/manifest/outputs/{specId}", HttpConstants.METHOD_DELETE);
+        this.routeManifestOutputArtifacts = new HttpApiRoute(apiUri + "/manifest/outputs/{specId}/artifacts", HttpConstants.METHOD_GET);
+        this.routeManifestOutputArtifact = new HttpApiRoute(apiUri + "/manifest/outputs/{specId}/artifacts/{artifactId}", HttpConstants.METHOD_PUT, HttpConstants.METHOD_DELETE);
+        this.routeManifestRoles = new HttpApiRoute(apiUri + "/manifest/roles", HttpConstants.METHOD_GET, HttpConstants.METHOD_PUT);
+        this.routeManifestRole = new HttpApiRoute(apiUri + "/manifest/roles/{roleId}", HttpConstants.METHOD_PUT, HttpConstants.METHOD_DELETE);
+        this.routeNeighbours = new HttpApiRoute(apiUri + "/neighbours", HttpConstants.METHOD_GET, HttpConstants.METHOD_PUT);
+        this.routeNeighbour = new HttpApiRoute(apiUri + "/neighbours/{neighbourId}", HttpConstants.METHOD_GET, HttpConstants.METHOD_DELETE);
+        this.routeNeighbourManifest = new HttpApiRoute(apiUri + "/neighbours/{neighbourId}/manifest", HttpConstants.METHOD_GET);
+        this.routeNeighbourStatus = new HttpApiRoute(apiUri + "/neighbours/{neighbourId}/status", HttpConstants.METHOD_GET);
+        this.routeNeighbourArchive = new HttpApiRoute(apiUri + "/neighbours/{neighbourId}/archive", HttpConstants.METHOD_POST);
+        this.routeNeighbourRestart = new HttpApiRoute(apiUri + "/neighbours/{neighbourId}/restart", HttpConstants.METHOD_POST);
+        this.routeNeighbourInputArtifacts = new HttpApiRoute(apiUri + "/neighbours/{neighbourId}/manifest/inputs/{specId}/artifacts", HttpConstants.METHOD_GET);
+        this.routeNeighbourOutputArtifacts = new HttpApiRoute(apiUri + "/neighbours/{neighbourId}/manifest/outputs/{specId}/artifacts", HttpConstants.METHOD_GET);
+        this.routeNeighbourOutputArtifact = new HttpApiRoute(apiUri + "/neighbours/{neighbourId}/manifest/outputs/{specId}/artifacts/{artifactId}", HttpConstants.METHOD_POST);
+        this.routeSpecifications = new HttpApiRoute(apiUri + "/specifications", HttpConstants.METHOD_GET);
+        this.routePatterns = new HttpApiRoute(apiUri + "/patterns", HttpConstants.METHOD_GET);
     }
 
     /**
@@ -169,6 +294,12 @@ public class XOWLCollaborationService extends XOWLCollaborationLocalService impl
         return getNetworkService().getNeighbourOutputsFor(collaborationId, specificationId);
     }
 
+    @Override
+    public Reply retrieveNeighbourOutput(String collaborationId, String specificationId, String artifactId) {
+        // authorization is delegated to the network service
+        return getNetworkService().retrieveNeighbourOutput(collaborationId, specificationId, artifactId);
+    }
+
     @Override
     public Collection<ArtifactSpecification> getKnownIOSpecifications() {
         Map<String, ArtifactSpecification> result = new HashMap<>();
@@ -230,10 +361,34 @@ public class XOWLCollaborationService extends XOWLCollaborationLocalService impl
     }
 
     @Override
-    public int canHandle(HttpApiRequest request) {
-        return request.getUri().startsWith(apiUri)
-                ? HttpApiService.PRIORITY_NORMAL
-                : HttpApiService.CANNOT_HANDLE;
+    public HttpApiRoute[] getRoutes() {
+        return new HttpApiRoute[]{
+                routeArchive,
+                routeDelete,
+                routeManifest,
+                routeManifestPattern,
+                routeManifestInputs,
+                routeManifestInput,
+                routeManifestInputArtifacts,
+                routeManifestInputArtifact,
+                routeManifestOutputs,
+                routeManifestOutput,
+                routeManifestOutputArtifacts,
+                routeManifestOutputArtifact,
+                routeManifestRoles,
+                routeManifestRole,
+                routeNeighbours,
+                routeNeighbour,
+                routeNeighbourManifest,
+                routeNeighbourStatus,
+                routeNeighbourArchive,
+                routeNeighbourRestart,
+                routeNeighbourInputArtifacts,
+                routeNeighbourOutputArtifacts,
+                routeNeighbourOutputArtifact,
+                routeSpecifications,
+                routePatterns
+        };
     }
 
     @Override
@@ -243,21 +398,71 @@ public class XOWLCollaborationService extends XOWLCollaborationLocalService impl
 
     @Override
     public HttpResponse handle(SecurityService securityService, HttpApiRequest request) {
-        if (request.getUri().equals(apiUri + "/archive")) {
-            if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
+        HttpApiRoute route = request.getRoute();
+        if (route == routeArchive)
             return ReplyUtils.toHttpResponse(archive());
-        } else if (request.getUri().equals(apiUri + "/delete")) {
-            if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
+        if (route == routeDelete)
             return ReplyUtils.toHttpResponse(delete());
-        } else if (request.getUri().startsWith(apiUri + "/manifest")) {
-            return handleManifest(request);
-        } else if (request.getUri().startsWith(apiUri + "/neighbours")) {
+        if (route == routeManifest)
+            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, manifest.serializedJSON());
+        if (route == routeManifestPattern)
+            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, getCollaborationPattern().serializedJSON());
+        if (route == routeManifestInputs)
+            return handleManifestInputs(request);
+        if (route == routeManifestInput)
+            return ReplyUtils.toHttpResponse(removeInputSpecification(request.getPathParameter("specId")));
+        if (route == routeManifestInputArtifacts)
+            return serializeArtifacts(getInputsFor(request.getPathParameter("specId")));
+        if (route == routeManifestInputArtifact) {
+            String specId = request.getPathParameter("specId");
+            String artifactId = request.getPathParameter("artifactId");
+            if (HttpConstants.METHOD_DELETE.equals(request.getMethod()))
+                return ReplyUtils.toHttpResponse(unregisterInput(specId, artifactId));
+            return ReplyUtils.toHttpResponse(registerInput(specId, artifactId));
+        }
+        if (route == routeManifestOutputs)
+            return handleManifestOutputs(request);
+        if (route == routeManifestOutput)
+            return ReplyUtils.toHttpResponse(removeOutputSpecification(request.getPathParameter("specId")));
+        if (route == routeManifestOutputArtifacts)
+            return serializeArtifacts(getOutputsFor(request.getPathParameter("specId")));
+        if (route == routeManifestOutputArtifact) {
+            String specId = request.getPathParameter("specId");
+            String artifactId = request.getPathParameter("artifactId");
+            if (HttpConstants.METHOD_DELETE.equals(request.getMethod()))
+                return ReplyUtils.toHttpResponse(unregisterOutput(specId, artifactId));
+            return ReplyUtils.toHttpResponse(registerOutput(specId, artifactId));
+        }
+        if (route == routeManifestRoles)
+            return handleManifestRoles(request);
+        if (route == routeManifestRole) {
+            String roleId = request.getPathParameter("roleId");
+            if (HttpConstants.METHOD_DELETE.equals(request.getMethod()))
+                return ReplyUtils.toHttpResponse(removeRole(roleId));
+            return ReplyUtils.toHttpResponse(addRole(roleId));
+        }
+        if (route == routeNeighbours)
             return handleNeighbours(request);
-        } else if (request.getUri().equals(apiUri + "/specifications")) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
+        if (route == routeNeighbour)
+            return handleNeighbour(request, request.getPathParameter("neighbourId"));
+        if (route == routeNeighbourManifest)
+            return ReplyUtils.toHttpResponse(getNeighbourManifest(request.getPathParameter("neighbourId")));
+        if (route == routeNeighbourStatus)
+            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, getNeighbourStatus(request.getPathParameter("neighbourId")).toString());
+        if (route == routeNeighbourArchive)
+            return ReplyUtils.toHttpResponse(archive(request.getPathParameter("neighbourId")));
+        if (route == routeNeighbourRestart)
+            return ReplyUtils.toHttpResponse(restart(request.getPathParameter("neighbourId")));
+        if (route == routeNeighbourInputArtifacts)
+            return ReplyUtils.toHttpResponse(getNeighbourInputsFor(request.getPathParameter("neighbourId"), request.getPathParameter("specId")));
+        if (route == routeNeighbourOutputArtifacts)
+            return ReplyUtils.toHttpResponse(getNeighbourOutputsFor(request.getPathParameter("neighbourId"), request.getPathParameter("specId")));
+        if (route == routeNeighbourOutputArtifact)
+            return ReplyUtils.toHttpResponse(retrieveNeighbourOutput(
+                    request.getPathParameter("neighbourId"),
+                    request.getPathParameter("specId"),
+                    request.getPathParameter("artifactId")));
+        if (route == routeSpecifications) {
             boolean first = true;
             StringBuilder builder = new StringBuilder("[");
             for (ArtifactSpecification specification : getKnownIOSpecifications()) {
@@ -268,9 +473,8 @@ public class XOWLCollaborationService extends XOWLCollaborationLocalService impl
             }
             builder.append("]");
             return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
-        } else if (request.getUri().equals(apiUri + "/patterns")) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
+        }
+        if (route == routePatterns) {
             boolean first = true;
             StringBuilder builder = new StringBuilder("[");
             for (CollaborationPatternDescriptor descriptor : getKnownPatterns()) {
@@ -286,30 +490,22 @@ public class XOWLCollaborationService extends XOWLCollaborationLocalService impl
     }
 
     /**
-     * Handles a request for the manifest resource
+     * Serializes a collection of artifacts
      *
-     * @param request The request
+     * @param artifacts The artifacts
      * @return The response
      */
-    private HttpResponse handleManifest(HttpApiRequest request) {
-        if (request.getUri().equals(apiUri + "/manifest")) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, manifest.serializedJSON());
-        }
-        String rest = request.getUri().substring(apiUri.length() + "/manifest".length());
-        if (rest.startsWith("/inputs"))
-            return handleManifestInputs(request);
-        else if (rest.startsWith("/outputs"))
-            return handleManifestOutputs(request);
-        else if (rest.startsWith("/roles"))
-            return handleManifestRoles(request);
-        else if (rest.equals("/pattern")) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, getCollaborationPattern().serializedJSON());
+    private static HttpResponse serializeArtifacts(Collection<Artifact> artifacts) {
+        boolean first = true;
+        StringBuilder builder = new StringBuilder("[");
+        for (Artifact artifact : artifacts) {
+            if (!first)
+                builder.append(", ");
+            first = false;
+            builder.append(artifact.serializedJSON());
         }
-        return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+        builder.append("]");
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
     }
 
     /**
@@ -319,87 +515,27 @@ public class XOWLCollaborationService extends XOWLCollaborationLocalService impl
      * @return The response
      */
     private HttpResponse handleManifestInputs(HttpApiRequest request) {
-        if (request.getUri().equals(apiUri + "/manifest/inputs")) {
-            switch (request.getMethod()) {
-                case HttpConstants.METHOD_GET: {
-                    boolean first = true;
-                    StringBuilder builder = new StringBuilder("[");
-                    for (ArtifactSpecification specification : getInputSpecifications()) {
-                        if (!first)
-                            builder.append(", ");
-                        first = false;
-                        builder.append(specification.serializedJSON());
-                    }
-                    builder.append("]");
-                    return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
-                }
-                case HttpConstants.METHOD_PUT: {
-                    String content = new String(request.getContent(), IOUtils.CHARSET);
-                    if (content.isEmpty())
-                        return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
-                    BufferedLogger logger = new BufferedLogger();
-                    ASTNode root = Json.parse(logger, content);
-                    if (root == null)
-                        return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED, logger.getErrorsAsString()));
-                    ArtifactSpecification specification = new ArtifactSpecification(root);
-                    return ReplyUtils.toHttpResponse(addInputSpecification(specification));
-                }
-            }
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: GET, PUT");
+        if (HttpConstants.METHOD_PUT.equals(request.getMethod())) {
+            String content = new String(request.getContent(), IOUtils.CHARSET);
+            if (content.isEmpty())
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
+            BufferedLogger logger = new BufferedLogger();
+            ASTNode root = Json.parse(logger, content);
+            if (root == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED, logger.getErrorsAsString()));
+            ArtifactSpecification specification = new ArtifactSpecification(root);
+            return ReplyUtils.toHttpResponse(addInputSpecification(specification));
         }
-        String rest = request.getUri().substring(apiUri.length() + "/manifest/inputs".length() + 1);
-        int index = rest.indexOf("/");
-        String specId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-        if (specId.isEmpty())
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-        if (index < 0) {
-            if (!HttpConstants.METHOD_DELETE.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected DELETE method");
-            return ReplyUtils.toHttpResponse(removeInputSpecification(specId));
-        }
-        rest = rest.substring(index + 1);
-        if (!rest.startsWith("artifacts"))
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-        return handleManifestInputArtifacts(request, specId, rest);
-    }
-
-    /**
-     * Handles a request to the manifest/inputs/{inputId}/artifacts resource
-     *
-     * @param request The request
-     * @param specId  The identifier of the input specification
-     * @param rest    The rest of the URI
-     * @return The response
-     */
-    private HttpResponse handleManifestInputArtifacts(HttpApiRequest request, String specId, String rest) {
-        if (rest.equals("artifacts")) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-            boolean first = true;
-            StringBuilder builder = new StringBuilder("[");
-            for (Artifact artifact : getInputsFor(specId)) {
-                if (!first)
-                    builder.append(", ");
-                first = false;
-                builder.append(artifact.serializedJSON());
-            }
-            builder.append("]");
-            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
-        }
-        rest = rest.substring("artifacts".length());
-        if (!rest.startsWith("/"))
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-        String artifactId = URIUtils.decodeComponent(rest.substring(1));
-        if (artifactId.isEmpty())
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-
-        switch (request.getMethod()) {
-            case HttpConstants.METHOD_PUT:
-                return ReplyUtils.toHttpResponse(registerInput(specId, artifactId));
-            case HttpConstants.METHOD_DELETE:
-                return ReplyUtils.toHttpResponse(unregisterInput(specId, artifactId));
+        boolean first = true;
+        StringBuilder builder = new StringBuilder("[");
+        for (ArtifactSpecification specification : getInputSpecifications()) {
+            if (!first)
+                builder.append(", ");
+            first = false;
+            builder.append(specification.serializedJSON());
         }
-        return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: PUT, DELETE");
+        builder.append("]");
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
     }
 
     /**
@@ -409,87 +545,27 @@ public class XOWLCollaborationService extends XOWLCollaborationLocalService impl
      * @return The response
      */
     private HttpResponse handleManifestOutputs(HttpApiRequest request) {
-        if (request.getUri().equals(apiUri + "/manifest/outputs")) {
-            switch (request.getMethod()) {
-                case HttpConstants.METHOD_GET: {
-                    boolean first = true;
-                    StringBuilder builder = new StringBuilder("[");
-                    for (ArtifactSpecification specification : getOutputSpecifications()) {
-                        if (!first)
-                            builder.append(", ");
-                        first = false;
-                        builder.append(specification.serializedJSON());
-                    }
-                    builder.append("]");
-                    return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
-                }
-                case HttpConstants.METHOD_PUT: {
-                    String content = new String(request.getContent(), IOUtils.CHARSET);
-                    if (content.isEmpty())
-                        return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
-                    BufferedLogger logger = new BufferedLogger();
-                    ASTNode root = Json.parse(logger, content);
-                    if (root == null)
-                        return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED, logger.getErrorsAsString()));
-                    ArtifactSpecification specification = new ArtifactSpecification(root);
-                    return ReplyUtils.toHttpResponse(addOutputSpecification(specification));
-                }
-            }
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: GET, PUT");
-        }
-        String rest = request.getUri().substring(apiUri.length() + "/manifest/outputs".length() + 1);
-        int index = rest.indexOf("/");
-        String specId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-        if (specId.isEmpty())
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-        if (index < 0) {
-            if (!HttpConstants.METHOD_DELETE.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected DELETE method");
-            return ReplyUtils.toHttpResponse(removeOutputSpecification(specId));
-        }
-        rest = rest.substring(index + 1);
-        if (!rest.startsWith("artifacts"))
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-        return handleManifestOutputArtifacts(request, specId, rest);
-    }
-
-    /**
-     * Handles a request to the manifest/outputs/{inputId}/artifacts resource
-     *
-     * @param request The request
-     * @param specId  The identifier of the output specification
-     * @param rest    The rest of the URI
-     * @return The response
-     */
-    private HttpResponse handleManifestOutputArtifacts(HttpApiRequest request, String specId, String rest) {
-        if (rest.equals("artifacts")) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-            boolean first = true;
-            StringBuilder builder = new StringBuilder("[");
-            for (Artifact artifact : getOutputsFor(specId)) {
-                if (!first)
-                    builder.append(", ");
-                first = false;
-                builder.append(artifact.serializedJSON());
-            }
-            builder.append("]");
-            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
+        if (HttpConstants.METHOD_PUT.equals(request.getMethod())) {
+            String content = new String(request.getContent(), IOUtils.CHARSET);
+            if (content.isEmpty())
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
+            BufferedLogger logger = new BufferedLogger();
+            ASTNode root = Json.parse(logger, content);
+            if (root == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED, logger.getErrorsAsString()));
+            ArtifactSpecification specification = new ArtifactSpecification(root);
+            return ReplyUtils.toHttpResponse(addOutputSpecification(specification));
         }
-        rest = rest.substring("artifacts".length());
-        if (!rest.startsWith("/"))
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-        String artifactId = URIUtils.decodeComponent(rest.substring(1));
-        if (artifactId.isEmpty())
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-
-        switch (request.getMethod()) {
-            case HttpConstants.METHOD_PUT:
-                return ReplyUtils.toHttpResponse(registerOutput(specId, artifactId));
-            case HttpConstants.METHOD_DELETE:
-                return ReplyUtils.toHttpResponse(unregisterOutput(specId, artifactId));
+        boolean first = true;
+        StringBuilder builder = new StringBuilder("[");
+        for (ArtifactSpecification specification : getOutputSpecifications()) {
+            if (!first)
+                builder.append(", ");
+            first = false;
+            builder.append(specification.serializedJSON());
         }
-        return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: PUT, DELETE");
+        builder.append("]");
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
     }
 
     /**
@@ -499,45 +575,27 @@ public class XOWLCollaborationService extends XOWLCollaborationLocalService impl
      * @return The response
      */
     private HttpResponse handleManifestRoles(HttpApiRequest request) {
-        String rest = request.getUri().substring(apiUri.length() + "/manifest/roles".length());
-        if (rest.isEmpty()) {
-            switch (request.getMethod()) {
-                case HttpConstants.METHOD_GET: {
-                    boolean first = true;
-                    StringBuilder builder = new StringBuilder("[");
-                    for (PlatformRole role : getRoles()) {
-                        if (!first)
-                            builder.append(", ");
-                        first = false;
-                        builder.append(role.serializedJSON());
-                    }
-                    builder.append("]");
-                    return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
-                }
-                case HttpConstants.METHOD_PUT: {
-                    String content = new String(request.getContent(), IOUtils.CHARSET);
-                    if (content.isEmpty())
-                        return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
-                    BufferedLogger logger = new BufferedLogger();
-                    ASTNode root = Json.parse(logger, content);
-                    if (root == null)
-                        return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED, logger.getErrorsAsString()));
-                    PlatformRoleBase role = new PlatformRoleBase(root);
-                    return ReplyUtils.toHttpResponse(createRole(role.getIdentifier(), role.getName()));
-                }
-            }
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: GET, PUT");
+        if (HttpConstants.METHOD_PUT.equals(request.getMethod())) {
+            String content = new String(request.getContent(), IOUtils.CHARSET);
+            if (content.isEmpty())
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
+            BufferedLogger logger = new BufferedLogger();
+            ASTNode root = Json.parse(logger, content);
+            if (root == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED, logger.getErrorsAsString()));
+            PlatformRoleBase role = new PlatformRoleBase(root);
+            return ReplyUtils.toHttpResponse(createRole(role.getIdentifier(), role.getName()));
         }
-        if (!rest.startsWith("/"))
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-        String roleId = URIUtils.decodeComponent(rest.substring(1));
-        switch (request.getMethod()) {
-            case HttpConstants.METHOD_DELETE:
-                return ReplyUtils.toHttpResponse(removeRole(roleId));
-            case HttpConstants.METHOD_PUT:
-                return ReplyUtils.toHttpResponse(addRole(roleId));
+        boolean first = true;
+        StringBuilder builder = new StringBuilder("[");
+        for (PlatformRole role : getRoles()) {
+            if (!first)
+                builder.append(", ");
+            first = false;
+            builder.append(role.serializedJSON());
         }
-        return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: PUT, DELETE");
+        builder.append("]");
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
     }
 
     /**
@@ -547,42 +605,30 @@ public class XOWLCollaborationService extends XOWLCollaborationLocalService impl
      * @return The response
      */
     private HttpResponse handleNeighbours(HttpApiRequest request) {
-        String rest = request.getUri().substring(apiUri.length() + "/neighbours".length());
-        if (rest.isEmpty()) {
-            switch (request.getMethod()) {
-                case HttpConstants.METHOD_GET: {
-                    boolean first = true;
-                    StringBuilder builder = new StringBuilder("[");
-                    for (RemoteCollaboration collaboration : getNeighbours()) {
-                        if (!first)
-                            builder.append(", ");
-                        first = false;
-                        builder.append(collaboration.serializedJSON());
-                    }
-                    builder.append("]");
-                    return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
-                }
-                case HttpConstants.METHOD_PUT: {
-                    String content = new String(request.getContent(), IOUtils.CHARSET);
-                    if (content.isEmpty())
-                        return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
-                    BufferedLogger logger = new BufferedLogger();
-                    ASTNode root = Json.parse(logger, content);
-                    if (root == null)
-                        return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED, logger.getErrorsAsString()));
-                    CollaborationSpecification specification = new CollaborationSpecification(root);
-                    JobExecutionService executionService = Register.getComponent(JobExecutionService.class);
-                    if (executionService == null)
-                        return ReplyUtils.toHttpResponse(ReplyServiceUnavailable.instance());
-                    return ReplyUtils.toHttpResponse(executionService.schedule(new CollaborationSpawnJob(specification)));
-                }
-            }
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: GET, PUT");
+        if (HttpConstants.METHOD_PUT.equals(request.getMethod())) {
+            String content = new String(request.getContent(), IOUtils.CHARSET);
+            if (content.isEmpty())
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
+            BufferedLogger logger = new BufferedLogger();
+            ASTNode root = Json.parse(logger, content);
+            if (root == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED, logger.getErrorsAsString()));
+            CollaborationSpecification specification = new CollaborationSpecification(root);
+            JobExecutionService executionService = Register.getComponent(JobExecutionService.class);
+            if (executionService == null)
+                return ReplyUtils.toHttpResponse(ReplyServiceUnavailable.instance());
+            return ReplyUtils.toHttpResponse(executionService.schedule(new CollaborationSpawnJob(specification)));
         }
-        rest = rest.substring(1);
-        int index = rest.indexOf("/");
-        String neighbourId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-        return handleNeighbour(request, neighbourId, index > 0 ? rest.substring(index + 1) : "");
+        boolean first = true;
+        StringBuilder builder = new StringBuilder("[");
+        for (RemoteCollaboration collaboration : getNeighbours()) {
+            if (!first)
+                builder.append(", ");
+            first = false;
+            builder.append(collaboration.serializedJSON());
+        }
+        builder.append("]");
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
     }
 
     /**
@@ -590,57 +636,15 @@ public class XOWLCollaborationService extends XOWLCollaborationLocalService impl
      *
      * @param request     The request
      * @param neighbourId The identifier of the neighbour
-     * @param rest        The rest of the URI
      * @return The response
      */
-    private HttpResponse handleNeighbour(HttpApiRequest request, String neighbourId, String rest) {
-        if (rest.isEmpty()) {
-            switch (request.getMethod()) {
-                case HttpConstants.METHOD_GET: {
-                    RemoteCollaboration remoteCollaboration = getNeighbour(neighbourId);
-                    if (remoteCollaboration == null)
-                        return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-                    return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, remoteCollaboration.serializedJSON());
-                }
-                case HttpConstants.METHOD_DELETE: {
-                    return ReplyUtils.toHttpResponse(delete(neighbourId));
-                }
-            }
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: GET, DELETE");
-        }
-        switch (rest) {
-            case "manifest": {
-                if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-                return ReplyUtils.toHttpResponse(getNeighbourManifest(neighbourId));
-            }
-            case "status": {
-                if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-                return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, getNeighbourStatus(neighbourId).toString());
-            }
-            case "archive": {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                return ReplyUtils.toHttpResponse(archive(neighbourId));
-            }
-            case "restart": {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                return ReplyUtils.toHttpResponse(restart(neighbourId));
-            }
-        }
-        if (rest.startsWith("manifest/inputs/") && rest.endsWith("/artifacts")) {
-            rest = rest.substring("manifest/inputs/".length(), rest.length() - "/artifacts".length());
-            String specId = URIUtils.decodeComponent(rest);
-            return ReplyUtils.toHttpResponse(getNeighbourInputsFor(neighbourId, specId));
-        }
-        if (rest.startsWith("manifest/outputs/") && rest.endsWith("/artifacts")) {
-            rest = rest.substring("manifest/outputs/".length(), rest.length() - "/artifacts".length());
-            String specId = URIUtils.decodeComponent(rest);
-            return ReplyUtils.toHttpResponse(getNeighbourOutputsFor(neighbourId, specId));
-        }
-        return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+    private HttpResponse handleNeighbour(HttpApiRequest request, String neighbourId) {
+        if (HttpConstants.METHOD_DELETE.equals(request.getMethod()))
+            return ReplyUtils.toHttpResponse(delete(neighbourId));
+        RemoteCollaboration remoteCollaboration = getNeighbour(neighbourId);
+        if (remoteCollaboration == null)
+            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, remoteCollaboration.serializedJSON());
     }
 
     @Override
@@ -23,7 +23,6 @@ import fr.cenotelie.commons.utils.api.ReplyNotFound;
 import fr.cenotelie.commons.utils.api.ReplyUtils;
 import fr.cenotelie.commons.utils.http.HttpConstants;
 import fr.cenotelie.commons.utils.http.HttpResponse;
-import fr.cenotelie.commons.utils.http.URIUtils;
 import fr.cenotelie.commons.utils.ini.IniDocument;
 import fr.cenotelie.commons.utils.ini.IniSection;
 import org.xowl.platform.kernel.*;
@@ -32,6 +31,7 @@ import org.xowl.platform.kernel.security.SecurityService;
 import org.xowl.platform.kernel.webapi.HttpApiRequest;
 import org.xowl.platform.kernel.webapi.HttpApiResource;
 import org.xowl.platform.kernel.webapi.HttpApiResourceBase;
+import org.xowl.platform.kernel.webapi.HttpApiRoute;
 import org.xowl.platform.kernel.webapi.HttpApiService;
 import org.xowl.platform.services.community.bots.Bot;
 import org.xowl.platform.services.community.bots.BotFactory;
@@ -63,6 +63,26 @@ public class XOWLBotManagementService implements BotManagementService, HttpApiSe
      * The URI for the API services
      */
     private final String apiUri;
+    /**
+     * The route for the bots resource
+     */
+    private final HttpApiRoute routeBots;
+    /**
+     * The route for a specific bot
+     */
+    private final HttpApiRoute routeBot;
+    /**
+     * The route for the messages of a bot
+     */
+    private final HttpApiRoute routeBotMessages;
+    /**
+     * The route for waking up a bot
+     */
+    private final HttpApiRoute routeBotWakeup;
+    /**
+     * The route for putting a bot to sleep
+     */
+    private final HttpApiRoute routeBotPutToSleep;
     /**
      * The loaded bots
      */
@@ -73,6 +93,11 @@ public class XOWLBotManagementService implements BotManagementService, HttpApiSe
      */
     public XOWLBotManagementService() {
         this.apiUri = PlatformHttp.getUriPrefixApi() + "/services/community/bots";
+        this.routeBots = new HttpApiRoute(apiUri, HttpConstants.METHOD_GET);
+        this.routeBot = new HttpApiRoute(apiUri + "/{botId}", HttpConstants.METHOD_GET);
+        this.routeBotMessages = new HttpApiRoute(apiUri + "/{botId}/messages", HttpConstants.METHOD_GET);
+        this.routeBotWakeup = new HttpApiRoute(apiUri + "/{botId}/wakeup", HttpConstants.METHOD_POST);
+        this.routeBotPutToSleep = new HttpApiRoute(apiUri + "/{botId}/putToSleep", HttpConstants.METHOD_POST);
         this.bots = new HashMap<>();
     }
 
@@ -186,10 +211,14 @@ public class XOWLBotManagementService implements BotManagementService, HttpApiSe
     }
 
     @Override
-    public int canHandle(HttpApiRequest request) {
-        return request.getUri().startsWith(apiUri)
-                ? HttpApiService.PRIORITY_NORMAL
-                : HttpApiService.CANNOT_HANDLE;
+    public HttpApiRoute[] getRoutes() {
+        return new HttpApiRoute[]{
+                routeBots,
+                routeBot,
+                routeBotMessages,
+                routeBotWakeup,
+                routeBotPutToSleep
+        };
     }
 
     @Override
@@ -199,9 +228,8 @@ public class XOWLBotManagementService implements BotManagementService, HttpApiSe
 
     @Override
     public HttpResponse handle(SecurityService securityService, HttpApiRequest request) {
-        if (request.getUri().equals(apiUri)) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
+        HttpApiRoute route = request.getRoute();
+        if (route == routeBots) {
             boolean first = true;
             StringBuilder builder = new StringBuilder("[");
             for (Bot bot : getBots()) {
@@ -213,34 +241,18 @@ public class XOWLBotManagementService implements BotManagementService, HttpApiSe
             builder.append("]");
             return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
         }
-
-        if (request.getUri().startsWith(apiUri)) {
-            String rest = request.getUri().substring(apiUri.length() + 1);
-            if (rest.isEmpty())
+        if (route == routeBot) {
+            Bot bot = getBot(request.getPathParameter("botId"));
+            if (bot == null)
                 return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-            int index = rest.indexOf("/");
-            String botId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-            if (index < 0) {
-                if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-                Bot bot = getBot(botId);
-                if (bot == null)
-                    return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-                return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, bot.serializedJSON());
-            } else if (rest.substring(index).equals("/messages")) {
-                if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-                return ReplyUtils.toHttpResponse(getBotMessages(botId));
-            } else if (rest.substring(index).equals("/wakeup")) {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                return ReplyUtils.toHttpResponse(wakeup(botId));
-            } else if (rest.substring(index).equals("/putToSleep")) {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                return ReplyUtils.toHttpResponse(putToSleep(botId));
-            }
+            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, bot.serializedJSON());
         }
+        if (route == routeBotMessages)
+            return ReplyUtils.toHttpResponse(getBotMessages(request.getPathParameter("botId")));
+        if (route == routeBotWakeup)
+            return ReplyUtils.toHttpResponse(wakeup(request.getPathParameter("botId")));
+        if (route == routeBotPutToSleep)
+            return ReplyUtils.toHttpResponse(putToSleep(request.getPathParameter("botId")));
         return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
     }
 
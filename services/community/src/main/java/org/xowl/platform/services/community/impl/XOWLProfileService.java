@@ -24,7 +24,6 @@ import fr.cenotelie.commons.utils.api.ReplyApiError;
 import fr.cenotelie.commons.utils.api.ReplyUtils;
 import fr.cenotelie.commons.utils.http.HttpConstants;
 import fr.cenotelie.commons.utils.http.HttpResponse;
-import fr.cenotelie.commons.utils.http.URIUtils;
 import fr.cenotelie.commons.utils.ini.IniDocument;
 import fr.cenotelie.commons.utils.ini.IniSection;
 import fr.cenotelie.commons.utils.json.Json;
@@ -36,6 +35,7 @@ import org.xowl.platform.kernel.security.SecurityService;
 import org.xowl.platform.kernel.webapi.HttpApiRequest;
 import org.xowl.platform.kernel.webapi.HttpApiResource;
 import org.xowl.platform.kernel.webapi.HttpApiResourceBase;
+import org.xowl.platform.kernel.webapi.HttpApiRoute;
 import org.xowl.platform.kernel.webapi.HttpApiService;
 import org.xowl.platform.services.community.profiles.Badge;
 import org.xowl.platform.services.community.profiles.ProfileService;
@@ -69,6 +69,22 @@ public class XOWLProfileService implements ProfileService, HttpApiService {
      * The URI for the API services for the badges
      */
     private final String apiUriBadges;
+    /**
+     * The route for the public profile of a user
+     */
+    private final HttpApiRoute routeProfilePublic;
+    /**
+     * The route for a badge awarded to a user
+     */
+    private final HttpApiRoute routeProfileBadge;
+    /**
+     * The route for the badges resource
+     */
+    private final HttpApiRoute routeBadges;
+    /**
+     * The route for a specific badge
+     */
+    private final HttpApiRoute routeBadge;
     /**
      * The configured implementation for this service
      */
@@ -80,6 +96,10 @@ public class XOWLProfileService implements ProfileService, HttpApiService {
     public XOWLProfileService() {
         this.apiUriProfiles = PlatformHttp.getUriPrefixApi() + "/services/community/profiles";
         this.apiUriBadges = PlatformHttp.getUriPrefixApi() + "/services/community/badges";
+        this.routeProfilePublic = new HttpApiRoute(apiUriProfiles + "/{profileId}/public", HttpConstants.METHOD_GET, HttpConstants.METHOD_PUT);
+        this.routeProfileBadge = new HttpApiRoute(apiUriProfiles + "/{profileId}/public/badges/{badgeId}", HttpConstants.METHOD_PUT, HttpConstants.METHOD_DELETE);
+        this.routeBadges = new HttpApiRoute(apiUriBadges, HttpConstants.METHOD_GET);
+        this.routeBadge = new HttpApiRoute(apiUriBadges + "/{badgeId}", HttpConstants.METHOD_GET);
     }
 
     /**
@@ -166,10 +186,13 @@ public class XOWLProfileService implements ProfileService, HttpApiService {
     }
 
     @Override
-    public int canHandle(HttpApiRequest request) {
-        return (request.getUri().startsWith(apiUriProfiles) || request.getUri().startsWith(apiUriBadges))
-                ? HttpApiService.PRIORITY_NORMAL
-                : HttpApiService.CANNOT_HANDLE;
+    public HttpApiRoute[] getRoutes() {
+        return new HttpApiRoute[]{
+                routeBadges,
+                routeBadge,
+                routeProfilePublic,
+                routeProfileBadge
+        };
     }
 
     @Override
@@ -179,23 +202,8 @@ public class XOWLProfileService implements ProfileService, HttpApiService {
 
     @Override
     public HttpResponse handle(SecurityService securityService, HttpApiRequest request) {
-        if (request.getUri().startsWith(apiUriBadges))
-            return handleBadges(request);
-        if (request.getUri().startsWith(apiUriProfiles))
-            return handleProfiles(request);
-        return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-    }
-
-    /**
-     * Handles requests for badges
-     *
-     * @param request The request
-     * @return The response
-     */
-    private HttpResponse handleBadges(HttpApiRequest request) {
-        if (request.getUri().equals(apiUriBadges)) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
+        HttpApiRoute route = request.getRoute();
+        if (route == routeBadges) {
             boolean first = true;
             StringBuilder builder = new StringBuilder("[");
             for (Badge badge : getBadges()) {
@@ -207,72 +215,49 @@ public class XOWLProfileService implements ProfileService, HttpApiService {
             builder.append("]");
             return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
         }
-
-        String rest = request.getUri().substring(apiUriBadges.length() + 1);
-        if (rest.isEmpty())
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-        int index = rest.indexOf("/");
-        String badgeId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-        if (index >= 0)
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-        if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-        Badge badge = getBadge(badgeId);
-        if (badge == null)
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, badge.serializedJSON());
+        if (route == routeBadge) {
+            Badge badge = getBadge(request.getPathParameter("badgeId"));
+            if (badge == null)
+                return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, badge.serializedJSON());
+        }
+        if (route == routeProfilePublic)
+            return handlePublicProfile(request.getPathParameter("profileId"), request);
+        if (route == routeProfileBadge) {
+            String profileId = request.getPathParameter("profileId");
+            String badgeId = request.getPathParameter("badgeId");
+            if (HttpConstants.METHOD_DELETE.equals(request.getMethod()))
+                return ReplyUtils.toHttpResponse(rescindBadge(profileId, badgeId));
+            return ReplyUtils.toHttpResponse(awardBadge(profileId, badgeId));
+        }
+        return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
     }
 
     /**
-     * Handles requests for profiles
+     * Handles requests for the public profile of a user
      *
-     * @param request The request
+     * @param profileId The identifier of the profile
+     * @param request   The request
      * @return The response
      */
-    private HttpResponse handleProfiles(HttpApiRequest request) {
-        if (request.getUri().equals(apiUriProfiles))
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-        String rest = request.getUri().substring(apiUriProfiles.length() + 1);
-        if (rest.isEmpty())
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-        int index = rest.indexOf("/");
-        String profileId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-        if (index < 0)
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-        rest = rest.substring(index);
-        if (rest.equals("/public")) {
-            if (HttpConstants.METHOD_GET.equals(request.getMethod())) {
-                PublicProfile profile = getPublicProfile(profileId);
-                if (profile == null)
-                    return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-                return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, profile.serializedJSON());
-            } else if (HttpConstants.METHOD_PUT.equals(request.getMethod())) {
-                String content = new String(request.getContent(), IOUtils.CHARSET);
-                if (content.isEmpty())
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
-                BufferedLogger logger = new BufferedLogger();
-                ASTNode root = Json.parse(logger, content);
-                if (root == null)
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED, logger.getErrorsAsString()));
-                PublicProfile profile = new PublicProfile(root, this);
-                if (!Objects.equals(profile.getIdentifier(), profileId))
-                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED, "Profile identifier in content does not match URI"));
-                return ReplyUtils.toHttpResponse(updatePublicProfile(profile));
-            }
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: GET, PUT");
-        }
-        if (rest.startsWith("/public/badges/")) {
-            rest = rest.substring("/public/badges/".length());
-            if (rest.isEmpty())
-                return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-            String badgeId = URIUtils.decodeComponent(rest);
-            if (HttpConstants.METHOD_PUT.equals(request.getMethod()))
-                return ReplyUtils.toHttpResponse(awardBadge(profileId, badgeId));
-            if (HttpConstants.METHOD_DELETE.equals(request.getMethod()))
-                return ReplyUtils.toHttpResponse(rescindBadge(profileId, badgeId));
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: PUT, DELETE");
+    private HttpResponse handlePublicProfile(String profileId, HttpApiRequest request) {
+        if (HttpConstants.METHOD_PUT.equals(request.getMethod())) {
+            String content = new String(request.getContent(), IOUtils.CHARSET);
+            if (content.isEmpty())
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
+            BufferedLogger logger = new BufferedLogger();
+            ASTNode root = Json.parse(logger, content);
+            if (root == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED, logger.getErrorsAsString()));
+            PublicProfile profile = new PublicProfile(root, this);
+            if (!Objects.equals(profile.getIdentifier(), profileId))
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED, "Profile identifier in content does not match URI"));
+            return ReplyUtils.toHttpResponse(updatePublicProfile(profile));
         }
-        return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+        PublicProfile profile = getPublicProfile(profileId);
+        if (profile == null)
+            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, profile.serializedJSON());
     }
 
     @Override
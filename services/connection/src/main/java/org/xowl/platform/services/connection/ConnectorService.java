@@ -72,6 +72,22 @@ public interface ConnectorService extends SecuredService, Serializable {
      */
     Reply pullArtifact();
 
+    /**
+     * Gets all the queued artifacts for pulling, without removing them from the queue
+     * The artifacts are expected to be removed with acknowledgeArtifact once they have been stored.
+     *
+     * @return The operation's result which can be casted to ReplyResultCollection in case of success
+     */
+    Reply peekArtifacts();
+
+    /**
+     * Removes from the queue an artifact previously obtained through peekArtifacts
+     *
+     * @param artifact The artifact to remove
+     * @return Whether the artifact was still queued
+     */
+    boolean acknowledgeArtifact(Artifact artifact);
+
     /**
      * Pushes an artifact to the associated client
      *
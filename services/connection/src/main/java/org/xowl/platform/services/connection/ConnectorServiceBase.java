@@ -28,6 +28,7 @@ import org.xowl.platform.kernel.security.SecuredAction;
 import org.xowl.platform.kernel.security.SecurityService;
 import org.xowl.platform.kernel.webapi.HttpApiRequest;
 import org.xowl.platform.kernel.webapi.HttpApiResource;
+import org.xowl.platform.kernel.webapi.HttpApiRoute;
 import org.xowl.platform.kernel.webapi.HttpApiService;
 
 import java.util.ArrayList;
@@ -172,6 +173,22 @@ public abstract class ConnectorServiceBase implements ConnectorService, HttpApiS
         return new ReplyResult<>(artifact);
     }
 
+    @Override
+    public Reply peekArtifacts() {
+        SecurityService securityService = Register.getComponent(SecurityService.class);
+        if (securityService == null)
+            return ReplyServiceUnavailable.instance();
+        Reply reply = securityService.checkAction(actionPull);
+        if (!reply.isSuccess())
+            return reply;
+        return new ReplyResultCollection<>(getQueuedInputs());
+    }
+
+    @Override
+    public boolean acknowledgeArtifact(Artifact artifact) {
+        return input.remove(artifact);
+    }
+
     @Override
     public Reply pushArtifact(Artifact artifact) {
         SecurityService securityService = Register.getComponent(SecurityService.class);
@@ -194,12 +211,11 @@ public abstract class ConnectorServiceBase implements ConnectorService, HttpApiS
     }
 
     @Override
-    public int canHandle(HttpApiRequest request) {
-        for (int i = 0; i != uris.length; i++) {
-            if (uris[i].equals(request.getUri()))
-                return PRIORITY_NORMAL;
-        }
-        return CANNOT_HANDLE;
+    public HttpApiRoute[] getRoutes() {
+        HttpApiRoute[] routes = new HttpApiRoute[uris.length];
+        for (int i = 0; i != uris.length; i++)
+            routes[i] = new HttpApiRoute(uris[i]);
+        return routes;
     }
 
     @Override
@@ -20,6 +20,7 @@ package org.xowl.platform.services.connection;
 import fr.cenotelie.commons.utils.api.Reply;
 import fr.cenotelie.commons.utils.api.ReplyNotFound;
 import fr.cenotelie.commons.utils.api.ReplyResult;
+import fr.cenotelie.commons.utils.api.ReplyResultCollection;
 import org.xowl.platform.kernel.Register;
 import org.xowl.platform.kernel.ReplyServiceUnavailable;
 import org.xowl.platform.kernel.artifacts.Artifact;
@@ -28,6 +29,10 @@ import org.xowl.platform.kernel.events.EventService;
 import org.xowl.platform.services.connection.events.ArtifactPulledFromConnectorEvent;
 import org.xowl.platform.services.connection.events.ArtifactPushedToConnectorEvent;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Utility APIs for the management of domains and related artifacts
  *
@@ -71,6 +76,54 @@ public class ConnectorUtils {
         return new ReplyResult<>(artifact.getIdentifier());
     }
 
+    /**
+     * Pulls all the queued artifacts from a connector into the long-term store
+     *
+     * @param connectorId The identifier of a connector
+     * @return The result of the operation
+     */
+    public static Reply pullArtifactsFrom(String connectorId) {
+        ConnectorService connector = Register.getComponent(ConnectorService.class, "id", connectorId);
+        if (connector == null)
+            return ReplyNotFound.instance();
+        return pullArtifactsFrom(connector);
+    }
+
+    /**
+     * Pulls all the queued artifacts from the connector into the standard storage (usually the long-term store)
+     * The artifacts are stored together, so that either all of them are stored, or none is.
+     *
+     * @param connector The connector to pull from
+     * @return The result of the operation
+     */
+    public static Reply pullArtifactsFrom(ConnectorService connector) {
+        ArtifactStorageService storageService = Register.getComponent(ArtifactStorageService.class);
+        if (storageService == null)
+            return ReplyServiceUnavailable.instance();
+        // peek at the queued artifacts so that they remain queued if the storage fails
+        Reply reply = connector.peekArtifacts();
+        if (!reply.isSuccess())
+            return reply;
+        Collection<Artifact> artifacts = ((ReplyResultCollection<Artifact>) reply).getData();
+        if (artifacts.isEmpty())
+            return new ReplyResultCollection<>(new ArrayList<String>());
+        reply = storageService.storeAll(artifacts);
+        if (!reply.isSuccess())
+            return reply;
+        EventService eventService = Register.getComponent(EventService.class);
+        List<String> identifiers = new ArrayList<>(artifacts.size());
+        for (Artifact artifact : artifacts) {
+            // an artifact that is no longer queued has been pulled concurrently
+            if (!connector.acknowledgeArtifact(artifact))
+                continue;
+            if (eventService != null)
+                eventService.onEvent(new ArtifactPulledFromConnectorEvent(connector, artifact));
+            identifiers.add(artifact.getIdentifier());
+        }
+        // reply with the artifacts
+        return new ReplyResultCollection<>(identifiers);
+    }
+
     /**
      * Pushes an artifact to a connector's client
      *
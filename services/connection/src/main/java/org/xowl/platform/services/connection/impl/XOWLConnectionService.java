@@ -22,7 +22,6 @@ import fr.cenotelie.commons.utils.TextUtils;
 import fr.cenotelie.commons.utils.api.*;
 import fr.cenotelie.commons.utils.http.HttpConstants;
 import fr.cenotelie.commons.utils.http.HttpResponse;
-import fr.cenotelie.commons.utils.http.URIUtils;
 import fr.cenotelie.commons.utils.ini.IniDocument;
 import fr.cenotelie.commons.utils.ini.IniSection;
 import fr.cenotelie.commons.utils.json.Json;
@@ -41,11 +40,13 @@ import org.xowl.platform.kernel.security.SecurityService;
 import org.xowl.platform.kernel.webapi.HttpApiRequest;
 import org.xowl.platform.kernel.webapi.HttpApiResource;
 import org.xowl.platform.kernel.webapi.HttpApiResourceBase;
+import org.xowl.platform.kernel.webapi.HttpApiRoute;
 import org.xowl.platform.kernel.webapi.HttpApiService;
 import org.xowl.platform.services.connection.*;
 import org.xowl.platform.services.connection.events.ConnectorDeletedEvent;
 import org.xowl.platform.services.connection.events.ConnectorSpawnedEvent;
 import org.xowl.platform.services.connection.jobs.PullArtifactJob;
+import org.xowl.platform.services.connection.jobs.PullArtifactsJob;
 import org.xowl.platform.services.connection.jobs.PushArtifactJob;
 
 import java.net.HttpURLConnection;
@@ -88,6 +89,26 @@ public class XOWLConnectionService implements ConnectionService, HttpApiService,
      * The URI for the API services
      */
     private final String apiUri;
+    /**
+     * The route for the descriptors resource
+     */
+    private final HttpApiRoute routeDescriptors;
+    /**
+     * The route for the connectors resource
+     */
+    private final HttpApiRoute routeConnectors;
+    /**
+     * The route for a specific connector
+     */
+    private final HttpApiRoute routeConnector;
+    /**
+     * The route for pulling from a connector
+     */
+    private final HttpApiRoute routeConnectorPull;
+    /**
+     * The route for pushing to a connector
+     */
+    private final HttpApiRoute routeConnectorPush;
     /**
      * The spawned connectors by identifier
      */
@@ -98,6 +119,11 @@ public class XOWLConnectionService implements ConnectionService, HttpApiService,
      */
     public XOWLConnectionService() {
         this.apiUri = PlatformHttp.getUriPrefixApi() + "/services/connection";
+        this.routeDescriptors = new HttpApiRoute(apiUri + "/descriptors", HttpConstants.METHOD_GET);
+        this.routeConnectors = new HttpApiRoute(apiUri + "/connectors", HttpConstants.METHOD_GET);
+        this.routeConnector = new HttpApiRoute(apiUri + "/connectors/{connectorId}", HttpConstants.METHOD_GET, HttpConstants.METHOD_PUT, HttpConstants.METHOD_DELETE);
+        this.routeConnectorPull = new HttpApiRoute(apiUri + "/connectors/{connectorId}/pull", HttpConstants.METHOD_POST);
+        this.routeConnectorPush = new HttpApiRoute(apiUri + "/connectors/{connectorId}/push", HttpConstants.METHOD_POST);
         this.connectorsById = new HashMap<>();
     }
 
@@ -151,10 +177,14 @@ public class XOWLConnectionService implements ConnectionService, HttpApiService,
     }
 
     @Override
-    public int canHandle(HttpApiRequest request) {
-        return request.getUri().startsWith(apiUri)
-                ? HttpApiService.PRIORITY_NORMAL
-                : HttpApiService.CANNOT_HANDLE;
+    public HttpApiRoute[] getRoutes() {
+        return new HttpApiRoute[]{
+                routeDescriptors,
+                routeConnectors,
+                routeConnector,
+                routeConnectorPull,
+                routeConnectorPush
+        };
     }
 
     @Override
@@ -164,45 +194,25 @@ public class XOWLConnectionService implements ConnectionService, HttpApiService,
 
     @Override
     public HttpResponse handle(SecurityService securityService, HttpApiRequest request) {
-        if (request.getUri().equals(apiUri + "/descriptors")) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
+        HttpApiRoute route = request.getRoute();
+        if (route == routeDescriptors)
             return onMessageListDescriptors();
-        } else if (request.getUri().equals(apiUri + "/connectors")) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
+        if (route == routeConnectors)
             return onMessageListConnectors();
-        } else if (request.getUri().startsWith(apiUri + "/connectors")) {
-            String rest = request.getUri().substring(apiUri.length() + "/connectors".length() + 1);
-            if (rest.isEmpty())
-                return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-            int index = rest.indexOf("/");
-            String connectorId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-            if (index < 0) {
-                switch (request.getMethod()) {
-                    case HttpConstants.METHOD_GET:
-                        return onMessageGetConnector(connectorId);
-                    case HttpConstants.METHOD_PUT:
-                        return onMessageCreateConnector(connectorId, request);
-                    case HttpConstants.METHOD_DELETE:
-                        return onMessageDeleteConnector(connectorId);
-                }
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: GET, PUT, DELETE");
-            }
-            rest = rest.substring(index);
-            switch (rest) {
-                case "/pull": {
-                    if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                        return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                    return onMessagePullFromConnector(connectorId);
-                }
-                case "/push": {
-                    if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                        return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                    return onMessagePushToConnector(connectorId, request);
-                }
+        if (route == routeConnector) {
+            String connectorId = request.getPathParameter("connectorId");
+            switch (request.getMethod()) {
+                case HttpConstants.METHOD_PUT:
+                    return onMessageCreateConnector(connectorId, request);
+                case HttpConstants.METHOD_DELETE:
+                    return onMessageDeleteConnector(connectorId);
             }
+            return onMessageGetConnector(connectorId);
         }
+        if (route == routeConnectorPull)
+            return onMessagePullFromConnector(request.getPathParameter("connectorId"), request);
+        if (route == routeConnectorPush)
+            return onMessagePushToConnector(request.getPathParameter("connectorId"), request);
         return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
     }
 
@@ -481,13 +491,14 @@ public class XOWLConnectionService implements ConnectionService, HttpApiService,
      * When successful, this action creates the appropriate job and returns it.
      *
      * @param connectorId The identifier of the connector to delete
+     * @param request     The request to handle
      * @return The response
      */
-    private HttpResponse onMessagePullFromConnector(String connectorId) {
+    private HttpResponse onMessagePullFromConnector(String connectorId, HttpApiRequest request) {
         JobExecutionService executor = Register.getComponent(JobExecutionService.class);
         if (executor == null)
             return ReplyUtils.toHttpResponse(ReplyServiceUnavailable.instance());
-        Job job = new PullArtifactJob(connectorId);
+        Job job = "true".equals(request.getParameter("all")) ? new PullArtifactsJob(connectorId) : new PullArtifactJob(connectorId);
         executor.schedule(job);
         return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, job.serializedJSON());
     }
@@ -42,6 +42,8 @@ public class ConnectorJobFactory implements JobFactory {
     public Job newJob(String type, ASTNode definition) {
         if (type.equals(PullArtifactJob.class.getCanonicalName()))
             return new PullArtifactJob(definition);
+        if (type.equals(PullArtifactsJob.class.getCanonicalName()))
+            return new PullArtifactsJob(definition);
         if (type.equals(PushArtifactJob.class.getCanonicalName()))
             return new PushArtifactJob(definition);
         return null;
@@ -23,7 +23,6 @@ import fr.cenotelie.commons.utils.TextUtils;
 import fr.cenotelie.commons.utils.api.*;
 import fr.cenotelie.commons.utils.http.HttpConstants;
 import fr.cenotelie.commons.utils.http.HttpResponse;
-import fr.cenotelie.commons.utils.http.URIUtils;
 import fr.cenotelie.commons.utils.json.Json;
 import fr.cenotelie.commons.utils.logging.BufferedLogger;
 import fr.cenotelie.commons.utils.logging.Logging;
@@ -33,6 +32,7 @@ import fr.cenotelie.commons.utils.metrics.MetricSnapshotInt;
 import fr.cenotelie.hime.redist.ASTNode;
 import org.xowl.infra.server.api.XOWLRule;
 import org.xowl.infra.store.IRIs;
+import org.xowl.infra.store.RDFUtils;
 import org.xowl.infra.store.Vocabulary;
 import org.xowl.infra.store.loaders.RDFLoaderResult;
 import org.xowl.infra.store.loaders.xRDFLoader;
@@ -49,12 +49,16 @@ import org.xowl.platform.kernel.security.SecurityService;
 import org.xowl.platform.kernel.webapi.HttpApiRequest;
 import org.xowl.platform.kernel.webapi.HttpApiResource;
 import org.xowl.platform.kernel.webapi.HttpApiResourceBase;
+import org.xowl.platform.kernel.webapi.HttpApiRoute;
 import org.xowl.platform.kernel.webapi.HttpApiService;
+import org.xowl.platform.kernel.webapi.HttpResponseStreamedJSON;
 import org.xowl.platform.services.consistency.*;
 import org.xowl.platform.services.storage.StorageService;
 import org.xowl.platform.services.storage.TripleStore;
 
+import java.io.IOException;
 import java.io.StringReader;
+import java.io.StringWriter;
 import java.net.HttpURLConnection;
 import java.util.*;
 
@@ -118,18 +122,94 @@ public class XOWLConsistencyService implements ConsistencyService, HttpApiServic
      * The base URI for an inconsistency
      */
     private static final String IRI_PREFIX_INCONSISTENCY = IRI_SCHEMA + "/inconsistency";
+    /**
+     * The default number of inconsistencies in a page
+     */
+    private static final int PAGE_SIZE = 100;
+    /**
+     * The maximum number of inconsistencies in a page
+     */
+    private static final int PAGE_MAX_SIZE = 1000;
+    /**
+     * The response header for the cursor to the next page
+     */
+    private static final String HEADER_NEXT_CURSOR = "X-Next-Cursor";
+    /**
+     * The response header that contains the entity tag of a page of inconsistencies
+     */
+    private static final String HEADER_ETAG = "ETag";
 
 
     /**
      * The URI for the API services
      */
     private final String apiUri;
+    /**
+     * The route for the inconsistencies resource
+     */
+    private final HttpApiRoute routeInconsistencies;
+    /**
+     * The route for the counters of inconsistencies
+     */
+    private final HttpApiRoute routeInconsistenciesCounters;
+    /**
+     * The route for the delta of inconsistencies
+     */
+    private final HttpApiRoute routeInconsistenciesDelta;
+    /**
+     * The route for the rules resource
+     */
+    private final HttpApiRoute routeRules;
+    /**
+     * The route for a specific rule
+     */
+    private final HttpApiRoute routeRule;
+    /**
+     * The route for the activation of a rule
+     */
+    private final HttpApiRoute routeRuleActivate;
+    /**
+     * The route for the deactivation of a rule
+     */
+    private final HttpApiRoute routeRuleDeactivate;
+    /**
+     * The route for the constraints resource
+     */
+    private final HttpApiRoute routeConstraints;
+    /**
+     * The route for a specific constraint
+     */
+    private final HttpApiRoute routeConstraint;
+    /**
+     * The route for the activation of a constraint
+     */
+    private final HttpApiRoute routeConstraintActivate;
+    /**
+     * The route for the deactivation of a constraint
+     */
+    private final HttpApiRoute routeConstraintDeactivate;
+    /**
+     * The index of the current inconsistencies
+     */
+    private final XOWLInconsistencyIndex index;
 
     /**
      * Initializes this service
      */
     public XOWLConsistencyService() {
         this.apiUri = PlatformHttp.getUriPrefixApi() + "/services/consistency";
+        this.routeInconsistencies = new HttpApiRoute(apiUri + "/inconsistencies", HttpConstants.METHOD_GET);
+        this.routeInconsistenciesCounters = new HttpApiRoute(apiUri + "/inconsistencies/counters", HttpConstants.METHOD_GET);
+        this.routeInconsistenciesDelta = new HttpApiRoute(apiUri + "/inconsistencies/delta", HttpConstants.METHOD_GET);
+        this.routeRules = new HttpApiRoute(apiUri + "/rules", HttpConstants.METHOD_GET, HttpConstants.METHOD_PUT);
+        this.routeRule = new HttpApiRoute(apiUri + "/rules/{ruleId}", HttpConstants.METHOD_GET, HttpConstants.METHOD_PUT, HttpConstants.METHOD_DELETE);
+        this.routeRuleActivate = new HttpApiRoute(apiUri + "/rules/{ruleId}/activate", HttpConstants.METHOD_POST);
+        this.routeRuleDeactivate = new HttpApiRoute(apiUri + "/rules/{ruleId}/deactivate", HttpConstants.METHOD_POST);
+        this.routeConstraints = new HttpApiRoute(apiUri + "/constraints", HttpConstants.METHOD_GET, HttpConstants.METHOD_PUT);
+        this.routeConstraint = new HttpApiRoute(apiUri + "/constraints/{constraintId}", HttpConstants.METHOD_GET, HttpConstants.METHOD_PUT, HttpConstants.METHOD_DELETE);
+        this.routeConstraintActivate = new HttpApiRoute(apiUri + "/constraints/{constraintId}/activate", HttpConstants.METHOD_POST);
+        this.routeConstraintDeactivate = new HttpApiRoute(apiUri + "/constraints/{constraintId}/deactivate", HttpConstants.METHOD_POST);
+        this.index = new XOWLInconsistencyIndex(this);
     }
 
     @Override
@@ -148,10 +228,20 @@ public class XOWLConsistencyService implements ConsistencyService, HttpApiServic
     }
 
     @Override
-    public int canHandle(HttpApiRequest request) {
-        return request.getUri().startsWith(apiUri)
-                ? HttpApiService.PRIORITY_NORMAL
-                : HttpApiService.CANNOT_HANDLE;
+    public HttpApiRoute[] getRoutes() {
+        return new HttpApiRoute[]{
+                routeInconsistencies,
+                routeInconsistenciesCounters,
+                routeInconsistenciesDelta,
+                routeRules,
+                routeRule,
+                routeRuleActivate,
+                routeRuleDeactivate,
+                routeConstraints,
+                routeConstraint,
+                routeConstraintActivate,
+                routeConstraintDeactivate
+        };
     }
 
     @Override
@@ -161,12 +251,29 @@ public class XOWLConsistencyService implements ConsistencyService, HttpApiServic
 
     @Override
     public HttpResponse handle(SecurityService securityService, HttpApiRequest request) {
-        if (request.getUri().equals(apiUri + "/inconsistencies"))
+        HttpApiRoute route = request.getRoute();
+        if (route == routeInconsistencies)
             return handleInconsistencies(request);
-        if (request.getUri().startsWith(apiUri + "/rules"))
+        if (route == routeInconsistenciesCounters)
+            return handleInconsistenciesCounters();
+        if (route == routeInconsistenciesDelta)
+            return handleInconsistenciesDelta(request);
+        if (route == routeRules)
             return handleRules(request);
-        if (request.getUri().startsWith(apiUri + "/constraints"))
+        if (route == routeRule)
+            return handleRule(request.getPathParameter("ruleId"), request);
+        if (route == routeRuleActivate)
+            return ReplyUtils.toHttpResponse(activateReasoningRule(request.getPathParameter("ruleId")));
+        if (route == routeRuleDeactivate)
+            return ReplyUtils.toHttpResponse(deactivateReasoningRule(request.getPathParameter("ruleId")));
+        if (route == routeConstraints)
             return handleConstraints(request);
+        if (route == routeConstraint)
+            return handleConstraint(request.getPathParameter("constraintId"), request);
+        if (route == routeConstraintActivate)
+            return ReplyUtils.toHttpResponse(activateConsistencyConstraint(request.getPathParameter("constraintId")));
+        if (route == routeConstraintDeactivate)
+            return ReplyUtils.toHttpResponse(deactivateConsistencyConstraint(request.getPathParameter("constraintId")));
         return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
     }
 
@@ -177,113 +284,149 @@ public class XOWLConsistencyService implements ConsistencyService, HttpApiServic
      * @return The response
      */
     private HttpResponse handleInconsistencies(HttpApiRequest request) {
-        if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-        Reply reply = getInconsistencies();
+        String constraint = request.getParameter("constraint");
+        String cursor = request.getParameter("cursor");
+        String limit = request.getParameter("limit");
+        if (constraint == null && cursor == null && limit == null) {
+            Reply reply = getInconsistencies();
+            if (!reply.isSuccess())
+                return ReplyUtils.toHttpResponse(reply);
+            StringBuilder builder = new StringBuilder("[");
+            boolean first = true;
+            for (Inconsistency inconsistency : ((ReplyResultCollection<Inconsistency>) reply).getData()) {
+                if (!first)
+                    builder.append(", ");
+                first = false;
+                builder.append(inconsistency.serializedJSON());
+            }
+            builder.append("]");
+            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
+        }
+
+        int valueLimit = PAGE_SIZE;
+        try {
+            if (limit != null)
+                valueLimit = Integer.parseInt(limit);
+        } catch (NumberFormatException exception) {
+            return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_PARAMETER_RANGE, "'limit' must be an integer"));
+        }
+        if (valueLimit <= 0 || valueLimit > PAGE_MAX_SIZE)
+            return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_PARAMETER_RANGE, "'limit' must be a strictly positive integer, at most " + Integer.toString(PAGE_MAX_SIZE)));
+        // the tag is obtained before the inconsistencies so that it is never newer than the content
+        String etag = index.getVersionTag();
+        Reply reply = getInconsistencies(constraint, cursor, valueLimit + 1);
+        if (!reply.isSuccess())
+            return ReplyUtils.toHttpResponse(reply);
+        List<Inconsistency> page = new ArrayList<>(((ReplyResultCollection<Inconsistency>) reply).getData());
+        String next = null;
+        if (page.size() > valueLimit) {
+            page = page.subList(0, valueLimit);
+            next = page.get(valueLimit - 1).getIdentifier();
+        }
+        HttpResponse response = new HttpResponseStreamedJSON(HttpURLConnection.HTTP_OK, page);
+        if (etag != null)
+            response.addHeader(HEADER_ETAG, etag);
+        if (next != null)
+            response.addHeader(HEADER_NEXT_CURSOR, next);
+        return response;
+    }
+
+    /**
+     * Handles the requests for the counters of inconsistencies
+     *
+     * @return The response
+     */
+    private HttpResponse handleInconsistenciesCounters() {
+        Reply reply = getInconsistenciesCounters();
+        if (!reply.isSuccess())
+            return ReplyUtils.toHttpResponse(reply);
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, ((ReplyResult<XOWLInconsistencyIndex.Counters>) reply).getData().serializedJSON());
+    }
+
+    /**
+     * Handles the requests for the delta of inconsistencies
+     *
+     * @param request The request
+     * @return The response
+     */
+    private HttpResponse handleInconsistenciesDelta(HttpApiRequest request) {
+        String since = request.getParameter("since");
+        if (since == null)
+            return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'since'"));
+        long valueSince;
+        try {
+            valueSince = Long.parseLong(since);
+        } catch (NumberFormatException exception) {
+            return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_PARAMETER_RANGE, "'since' must be an integer"));
+        }
+        Reply reply = getInconsistenciesDelta(valueSince);
+        if (!reply.isSuccess())
+            return ReplyUtils.toHttpResponse(reply);
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, ((ReplyResult<XOWLInconsistencyIndex.Delta>) reply).getData().serializedJSON());
+    }
+
+    /**
+     * Handles the requests for the rules resource
+     *
+     * @param request The request
+     * @return The response
+     */
+    private HttpResponse handleRules(HttpApiRequest request) {
+        if (HttpConstants.METHOD_PUT.equals(request.getMethod())) {
+            String name = request.getParameter("name");
+            if (name == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'name'"));
+            String definition = new String(request.getContent(), IOUtils.CHARSET);
+            if (definition.isEmpty())
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
+            Reply reply = createReasoningRule(name, definition);
+            if (!reply.isSuccess())
+                return ReplyUtils.toHttpResponse(reply);
+            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, ((ReplyResult<ReasoningRule>) reply).getData().serializedJSON());
+        }
+        Reply reply = getReasoningRules();
         if (!reply.isSuccess())
             return ReplyUtils.toHttpResponse(reply);
         StringBuilder builder = new StringBuilder("[");
         boolean first = true;
-        for (Inconsistency inconsistency : ((ReplyResultCollection<Inconsistency>) reply).getData()) {
+        for (ReasoningRule rule : ((ReplyResultCollection<ReasoningRule>) reply).getData()) {
             if (!first)
                 builder.append(", ");
             first = false;
-            builder.append(inconsistency.serializedJSON());
+            builder.append(rule.serializedJSON());
         }
         builder.append("]");
         return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
     }
 
     /**
-     * Handles the requests for the rules resource
+     * Handles the requests for a specific rule
      *
+     * @param ruleId  The identifier of the rule
      * @param request The request
      * @return The response
      */
-    private HttpResponse handleRules(HttpApiRequest request) {
-        if (request.getUri().equals(apiUri + "/rules")) {
-            switch (request.getMethod()) {
-                case HttpConstants.METHOD_GET: {
-                    Reply reply = getReasoningRules();
-                    if (!reply.isSuccess())
-                        return ReplyUtils.toHttpResponse(reply);
-                    StringBuilder builder = new StringBuilder("[");
-                    boolean first = true;
-                    for (ReasoningRule rule : ((ReplyResultCollection<ReasoningRule>) reply).getData()) {
-                        if (!first)
-                            builder.append(", ");
-                        first = false;
-                        builder.append(rule.serializedJSON());
-                    }
-                    builder.append("]");
-                    return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
-                }
-                case HttpConstants.METHOD_PUT: {
-                    String name = request.getParameter("name");
-                    if (name == null)
-                        return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'name'"));
-                    String definition = new String(request.getContent(), IOUtils.CHARSET);
-                    if (definition.isEmpty())
-                        return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
-                    Reply reply = createReasoningRule(name, definition);
-                    if (!reply.isSuccess())
-                        return ReplyUtils.toHttpResponse(reply);
-                    return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, ((ReplyResult<ReasoningRule>) reply).getData().serializedJSON());
-                }
-            }
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: GET, PUT");
-        }
-        if (request.getUri().startsWith(apiUri + "/rules")) {
-            String rest = request.getUri().substring(apiUri.length() + "/rules".length() + 1);
-            if (rest.isEmpty())
-                return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-            int index = rest.indexOf("/");
-            String ruleId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-            if (index < 0) {
-                switch (request.getMethod()) {
-                    case HttpConstants.METHOD_GET: {
-                        Reply reply = getReasoningRule(ruleId);
-                        if (!reply.isSuccess())
-                            return ReplyUtils.toHttpResponse(reply);
-                        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, ((ReplyResult<ReasoningRule>) reply).getData().serializedJSON());
-                    }
-                    case HttpConstants.METHOD_PUT: {
-                        String content = new String(request.getContent(), IOUtils.CHARSET);
-                        if (content.isEmpty())
-                            return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
-                        ASTNode definition = Json.parse(Logging.get(), content);
-                        if (definition == null)
-                            return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED));
-                        ReasoningRule rule = new XOWLReasoningRule(definition);
-                        if (!ruleId.equals(rule.getIdentifier()))
-                            return ReplyUtils.toHttpResponse(ReplyNotFound.instance());
-                        return ReplyUtils.toHttpResponse(addReasoningRule(rule));
-                    }
-                    case HttpConstants.METHOD_DELETE: {
-                        Reply reply = deleteReasoningRule(ruleId);
-                        return ReplyUtils.toHttpResponse(reply);
-                    }
-                }
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: GET, PUT, DELETE");
-            } else {
-                switch (rest.substring(index)) {
-                    case "/activate": {
-                        if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                        Reply reply = activateReasoningRule(ruleId);
-                        return ReplyUtils.toHttpResponse(reply);
-                    }
-                    case "/deactivate": {
-                        if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                        Reply reply = deactivateReasoningRule(ruleId);
-                        return ReplyUtils.toHttpResponse(reply);
-                    }
-                }
+    private HttpResponse handleRule(String ruleId, HttpApiRequest request) {
+        switch (request.getMethod()) {
+            case HttpConstants.METHOD_PUT: {
+                String content = new String(request.getContent(), IOUtils.CHARSET);
+                if (content.isEmpty())
+                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
+                ASTNode definition = Json.parse(Logging.get(), content);
+                if (definition == null)
+                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED));
+                ReasoningRule rule = new XOWLReasoningRule(definition);
+                if (!ruleId.equals(rule.getIdentifier()))
+                    return ReplyUtils.toHttpResponse(ReplyNotFound.instance());
+                return ReplyUtils.toHttpResponse(addReasoningRule(rule));
             }
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+            case HttpConstants.METHOD_DELETE:
+                return ReplyUtils.toHttpResponse(deleteReasoningRule(ruleId));
         }
-        return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+        Reply reply = getReasoningRule(ruleId);
+        if (!reply.isSuccess())
+            return ReplyUtils.toHttpResponse(reply);
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, ((ReplyResult<ReasoningRule>) reply).getData().serializedJSON());
     }
 
     /**
@@ -293,96 +436,68 @@ public class XOWLConsistencyService implements ConsistencyService, HttpApiServic
      * @return The response
      */
     private HttpResponse handleConstraints(HttpApiRequest request) {
-        if (request.getUri().equals(apiUri + "/constraints")) {
-            switch (request.getMethod()) {
-                case HttpConstants.METHOD_GET: {
-                    Reply reply = getConsistencyConstraints();
-                    if (!reply.isSuccess())
-                        return ReplyUtils.toHttpResponse(reply);
-                    StringBuilder builder = new StringBuilder("[");
-                    boolean first = true;
-                    for (ConsistencyConstraint constraint : ((ReplyResultCollection<ConsistencyConstraint>) reply).getData()) {
-                        if (!first)
-                            builder.append(", ");
-                        first = false;
-                        builder.append(constraint.serializedJSON());
-                    }
-                    builder.append("]");
-                    return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
-                }
-                case HttpConstants.METHOD_PUT: {
-                    String name = request.getParameter("name");
-                    if (name == null)
-                        return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'name'"));
-                    String message = request.getParameter("message");
-                    if (message == null)
-                        return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'message'"));
-                    String prefixes = request.getParameter("prefixes");
-                    if (prefixes == null)
-                        return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'prefixes'"));
-                    String antecedents = request.getParameter("antecedents");
-                    if (antecedents == null)
-                        return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'antecedents'"));
-                    String guard = request.getParameter("guard");
-                    Reply reply = createConsistencyConstraint(name, message, prefixes, antecedents, guard);
-                    if (!reply.isSuccess())
-                        return ReplyUtils.toHttpResponse(reply);
-                    return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, ((ReplyResult<ConsistencyConstraint>) reply).getData().serializedJSON());
-                }
-            }
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: GET, PUT");
+        if (HttpConstants.METHOD_PUT.equals(request.getMethod())) {
+            String name = request.getParameter("name");
+            if (name == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'name'"));
+            String message = request.getParameter("message");
+            if (message == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'message'"));
+            String prefixes = request.getParameter("prefixes");
+            if (prefixes == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'prefixes'"));
+            String antecedents = request.getParameter("antecedents");
+            if (antecedents == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'antecedents'"));
+            String guard = request.getParameter("guard");
+            Reply reply = createConsistencyConstraint(name, message, prefixes, antecedents, guard);
+            if (!reply.isSuccess())
+                return ReplyUtils.toHttpResponse(reply);
+            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, ((ReplyResult<ConsistencyConstraint>) reply).getData().serializedJSON());
         }
-        if (request.getUri().startsWith(apiUri + "/constraints")) {
-            String rest = request.getUri().substring(apiUri.length() + "/constraints".length() + 1);
-            if (rest.isEmpty())
-                return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-            int index = rest.indexOf("/");
-            String constraintId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-            if (index < 0) {
-                switch (request.getMethod()) {
-                    case HttpConstants.METHOD_GET: {
-                        Reply reply = getConsistencyConstraint(constraintId);
-                        if (!reply.isSuccess())
-                            return ReplyUtils.toHttpResponse(reply);
-                        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, ((ReplyResult<ConsistencyConstraint>) reply).getData().serializedJSON());
-                    }
-                    case HttpConstants.METHOD_PUT: {
-                        String content = new String(request.getContent(), IOUtils.CHARSET);
-                        if (content.isEmpty())
-                            return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
-                        ASTNode definition = Json.parse(Logging.get(), content);
-                        if (definition == null)
-                            return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED));
-                        ConsistencyConstraint constraint = new XOWLConsistencyConstraint(definition);
-                        if (!constraintId.equals(constraint.getIdentifier()))
-                            return ReplyUtils.toHttpResponse(ReplyNotFound.instance());
-                        return ReplyUtils.toHttpResponse(addConsistencyConstraint(constraint));
-                    }
-                    case HttpConstants.METHOD_DELETE: {
-                        Reply reply = deleteConsistencyConstraint(constraintId);
-                        return ReplyUtils.toHttpResponse(reply);
-                    }
-                }
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: GET, PUT, DELETE");
-            } else {
-                switch (rest.substring(index)) {
-                    case "/activate": {
-                        if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                        Reply reply = activateConsistencyConstraint(constraintId);
-                        return ReplyUtils.toHttpResponse(reply);
-                    }
-                    case "/deactivate": {
-                        if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                        Reply reply = deactivateConsistencyConstraint(constraintId);
-                        return ReplyUtils.toHttpResponse(reply);
-                    }
-                }
+        Reply reply = getConsistencyConstraints();
+        if (!reply.isSuccess())
+            return ReplyUtils.toHttpResponse(reply);
+        StringBuilder builder = new StringBuilder("[");
+        boolean first = true;
+        for (ConsistencyConstraint constraint : ((ReplyResultCollection<ConsistencyConstraint>) reply).getData()) {
+            if (!first)
+                builder.append(", ");
+            first = false;
+            builder.append(constraint.serializedJSON());
+        }
+        builder.append("]");
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
+    }
+
+    /**
+     * Handles the requests for a specific constraint
+     *
+     * @param constraintId The identifier of the constraint
+     * @param request      The request
+     * @return The response
+     */
+    private HttpResponse handleConstraint(String constraintId, HttpApiRequest request) {
+        switch (request.getMethod()) {
+            case HttpConstants.METHOD_PUT: {
+                String content = new String(request.getContent(), IOUtils.CHARSET);
+                if (content.isEmpty())
+                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
+                ASTNode definition = Json.parse(Logging.get(), content);
+                if (definition == null)
+                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_PARSING_FAILED));
+                ConsistencyConstraint constraint = new XOWLConsistencyConstraint(definition);
+                if (!constraintId.equals(constraint.getIdentifier()))
+                    return ReplyUtils.toHttpResponse(ReplyNotFound.instance());
+                return ReplyUtils.toHttpResponse(addConsistencyConstraint(constraint));
             }
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+            case HttpConstants.METHOD_DELETE:
+                return ReplyUtils.toHttpResponse(deleteConsistencyConstraint(constraintId));
         }
-        return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+        Reply reply = getConsistencyConstraint(constraintId);
+        if (!reply.isSuccess())
+            return ReplyUtils.toHttpResponse(reply);
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, ((ReplyResult<ConsistencyConstraint>) reply).getData().serializedJSON());
     }
 
     @Override
@@ -422,18 +537,82 @@ public class XOWLConsistencyService implements ConsistencyService, HttpApiServic
 
     @Override
     public Reply getInconsistencies() {
-        // get all the consistency constraints
-        Reply reply = getConsistencyConstraints();
+        Reply reply = checkQueryInconsistencies();
+        if (!reply.isSuccess())
+            return reply;
+        return index.getAll();
+    }
+
+    /**
+     * Gets a page of the current inconsistencies, in the order of their identifiers
+     *
+     * @param constraintId The identifier of the consistency constraint that must have produced the inconsistencies, if any
+     * @param cursor       The identifier of the last inconsistency of the previous page, if any
+     * @param count        The maximum number of inconsistencies to get
+     * @return The operation's result
+     */
+    public Reply getInconsistencies(String constraintId, String cursor, int count) {
+        Reply reply = checkQueryInconsistencies();
+        if (!reply.isSuccess())
+            return reply;
+        return index.getPage(constraintId, cursor, count);
+    }
+
+    /**
+     * Gets the number of current inconsistencies for each consistency constraint
+     *
+     * @return The operation's result
+     */
+    public Reply getInconsistenciesCounters() {
+        Reply reply = checkQueryInconsistencies();
         if (!reply.isSuccess())
             return reply;
-        Collection<XOWLConsistencyConstraint> constraints = ((ReplyResultCollection<XOWLConsistencyConstraint>) reply).getData();
+        return index.getCounters();
+    }
+
+    /**
+     * Gets the inconsistencies that appeared or were resolved since a version of the index of inconsistencies
+     *
+     * @param since The version of the index known by the client
+     * @return The operation's result
+     */
+    public Reply getInconsistenciesDelta(long since) {
+        Reply reply = checkQueryInconsistencies();
+        if (!reply.isSuccess())
+            return reply;
+        return index.getDelta(since);
+    }
+
+    /**
+     * Checks that the current user is allowed to query the inconsistencies in the live store
+     *
+     * @return The operation's result
+     */
+    private Reply checkQueryInconsistencies() {
+        SecurityService securityService = Register.getComponent(SecurityService.class);
+        if (securityService == null)
+            return ReplyServiceUnavailable.instance();
+        return securityService.checkAction(StorageService.ACTION_QUERY);
+    }
+
+    /**
+     * Queries the live store for the inconsistencies produced by the specified consistency constraints
+     * The identifier of an inconsistency is derived from its constraint and its antecedents so that it is stable across queries.
+     *
+     * @param constraints The consistency constraints
+     * @return The operation's result
+     */
+    Reply queryInconsistencies(Collection<XOWLConsistencyConstraint> constraints) {
+        Map<String, XOWLConsistencyConstraint> constraintsById = new HashMap<>();
+        for (XOWLConsistencyConstraint constraint : constraints)
+            constraintsById.put(constraint.getIdentifier(), constraint);
 
         // query for inconsistencies
         StorageService storageService = Register.getComponent(StorageService.class);
         if (storageService == null)
             return ReplyServiceUnavailable.instance();
         TripleStore live = storageService.getLiveStore();
-        reply = live.sparql("DESCRIBE ?i WHERE { GRAPH <" +
+        Reply reply = live.sparql("DESCRIBE ?i WHERE { GRAPH <" +
                 TextUtils.escapeAbsoluteURIW3C(IRIs.GRAPH_INFERENCE) +
                 "> { ?i a <" +
                 TextUtils.escapeAbsoluteURIW3C(IRI_CONCEPT_INCONSISTENCY) +
@@ -462,19 +641,36 @@ public class XOWLConsistencyService implements ConsistencyService, HttpApiServic
                     antecedents.put(name, quad.getObject());
                 }
             }
-            XOWLConsistencyConstraint constraint = null;
-            for (XOWLConsistencyConstraint potential : constraints) {
-                if (potential.getIdentifier().equals(constraintId)) {
-                    constraint = potential;
-                    break;
-                }
-            }
+            XOWLConsistencyConstraint constraint = constraintId == null ? null : constraintsById.get(constraintId);
             if (constraint != null)
-                inconsistencies.add(new XOWLInconsistency(IRI_PREFIX_INCONSISTENCY + UUID.randomUUID().toString(), message, constraint, antecedents));
+                inconsistencies.add(new XOWLInconsistency(getInconsistencyIRI(constraintId, antecedents), message, constraint, antecedents));
         }
         return new ReplyResultCollection<>(inconsistencies);
     }
 
+    /**
+     * Gets the stable IRI of an inconsistency
+     *
+     * @param constraintId The identifier of the consistency constraint that produced the inconsistency
+     * @param antecedents  The antecedents that matched the constraint
+     * @return The IRI of the inconsistency
+     */
+    private static String getInconsistencyIRI(String constraintId, Map<String, Node> antecedents) {
+        StringWriter writer = new StringWriter();
+        writer.write(constraintId);
+        for (Map.Entry<String, Node> antecedent : new TreeMap<>(antecedents).entrySet()) {
+            writer.write("\n");
+            writer.write(antecedent.getKey());
+            writer.write("=");
+            try {
+                RDFUtils.serializeJSON(writer, antecedent.getValue());
+            } catch (IOException exception) {
+                // cannot happen
+            }
+        }
+        return IRI_PREFIX_INCONSISTENCY + "#" + SHA1.hashSHA1(writer.toString());
+    }
+
     @Override
     public Reply getReasoningRules() {
         StorageService storageService = Register.getComponent(StorageService.class);
@@ -600,7 +796,14 @@ public class XOWLConsistencyService implements ConsistencyService, HttpApiServic
         if (storageService == null)
             return ReplyServiceUnavailable.instance();
         TripleStore live = storageService.getLiveStore();
-        return live.activateRule(identifier);
+        reply = live.activateRule(identifier);
+        if (!reply.isSuccess())
+            return reply;
+        EventService eventService = Register.getComponent(EventService.class);
+        Reply replyRule = getReasoningRule(identifier);
+        if (eventService != null && replyRule.isSuccess())
+            eventService.onEvent(new ReasoningRuleActivatedEvent(((ReplyResult<ReasoningRule>) replyRule).getData(), this));
+        return reply;
     }
 
     @Override
@@ -621,7 +824,14 @@ public class XOWLConsistencyService implements ConsistencyService, HttpApiServic
         if (storageService == null)
             return ReplyServiceUnavailable.instance();
         TripleStore live = storageService.getLiveStore();
-        return live.deactivateRule(identifier);
+        reply = live.deactivateRule(identifier);
+        if (!reply.isSuccess())
+            return reply;
+        EventService eventService = Register.getComponent(EventService.class);
+        Reply replyRule = getReasoningRule(identifier);
+        if (eventService != null && replyRule.isSuccess())
+            eventService.onEvent(new ReasoningRuleDeactivatedEvent(((ReplyResult<ReasoningRule>) replyRule).getData(), this));
+        return reply;
     }
 
     @Override
@@ -642,6 +852,7 @@ public class XOWLConsistencyService implements ConsistencyService, HttpApiServic
         if (storageService == null)
             return ReplyServiceUnavailable.instance();
         TripleStore live = storageService.getLiveStore();
+        Reply replyRule = getReasoningRule(identifier);
 
         reply = live.sparql("DELETE WHERE { GRAPH <" +
                 TextUtils.escapeAbsoluteURIW3C(IRI_GRAPH_METADATA) +
@@ -651,7 +862,13 @@ public class XOWLConsistencyService implements ConsistencyService, HttpApiServic
         if (!reply.isSuccess())
             return reply;
 
-        return live.removeRule(identifier);
+        reply = live.removeRule(identifier);
+        if (!reply.isSuccess())
+            return reply;
+        EventService eventService = Register.getComponent(EventService.class);
+        if (eventService != null && replyRule.isSuccess())
+            eventService.onEvent(new ReasoningRuleDeletedEvent(((ReplyResult<ReasoningRule>) replyRule).getData(), this));
+        return reply;
     }
 
     @Override
@@ -856,7 +1073,14 @@ public class XOWLConsistencyService implements ConsistencyService, HttpApiServic
         if (storageService == null)
             return ReplyServiceUnavailable.instance();
         TripleStore live = storageService.getLiveStore();
-        return live.activateRule(identifier);
+        reply = live.activateRule(identifier);
+        if (!reply.isSuccess())
+            return reply;
+        EventService eventService = Register.getComponent(EventService.class);
+        Reply replyConstraint = getConsistencyConstraint(identifier);
+        if (eventService != null && replyConstraint.isSuccess())
+            eventService.onEvent(new ConsistencyConstraintActivatedEvent(((ReplyResult<ConsistencyConstraint>) replyConstraint).getData(), this));
+        return reply;
     }
 
     @Override
@@ -877,7 +1101,14 @@ public class XOWLConsistencyService implements ConsistencyService, HttpApiServic
         if (storageService == null)
             return ReplyServiceUnavailable.instance();
         TripleStore live = storageService.getLiveStore();
-        return live.deactivateRule(identifier);
+        reply = live.deactivateRule(identifier);
+        if (!reply.isSuccess())
+            return reply;
+        EventService eventService = Register.getComponent(EventService.class);
+        Reply replyConstraint = getConsistencyConstraint(identifier);
+        if (eventService != null && replyConstraint.isSuccess())
+            eventService.onEvent(new ConsistencyConstraintDeactivatedEvent(((ReplyResult<ConsistencyConstraint>) replyConstraint).getData(), this));
+        return reply;
     }
 
     @Override
@@ -898,6 +1129,7 @@ public class XOWLConsistencyService implements ConsistencyService, HttpApiServic
         if (storageService == null)
             return ReplyServiceUnavailable.instance();
         TripleStore live = storageService.getLiveStore();
+        Reply replyConstraint = getConsistencyConstraint(identifier);
 
         reply = live.sparql("DELETE WHERE { GRAPH <" +
                 TextUtils.escapeAbsoluteURIW3C(IRI_GRAPH_METADATA) +
@@ -907,7 +1139,13 @@ public class XOWLConsistencyService implements ConsistencyService, HttpApiServic
         if (!reply.isSuccess())
             return reply;
 
-        return live.removeRule(identifier);
+        reply = live.removeRule(identifier);
+        if (!reply.isSuccess())
+            return reply;
+        EventService eventService = Register.getComponent(EventService.class);
+        if (eventService != null && replyConstraint.isSuccess())
+            eventService.onEvent(new ConsistencyConstraintDeletedEvent(((ReplyResult<ConsistencyConstraint>) replyConstraint).getData(), this));
+        return reply;
     }
 
     @Override
@@ -915,30 +1153,6 @@ public class XOWLConsistencyService implements ConsistencyService, HttpApiServic
         return deleteConsistencyConstraint(constraint.getIdentifier());
     }
 
-    /**
-     * Gets the number of inconsistencies
-     *
-     * @return The number of inconsistencies
-     */
-    private int getInconsistenciesCount() {
-        StorageService storageService = Register.getComponent(StorageService.class);
-        if (storageService == null)
-            return -1;
-        TripleStore live = storageService.getLiveStore();
-        Reply reply = live.sparql("SELECT (COUNT(?i) AS ?c) WHERE { GRAPH <" +
-                TextUtils.escapeAbsoluteURIW3C(IRIs.GRAPH_INFERENCE) +
-                "> { ?i a <" +
-                TextUtils.escapeAbsoluteURIW3C(IRI_CONCEPT_INCONSISTENCY) +
-                "> } }", null, null);
-        if (!reply.isSuccess())
-            return -1;
-        Result sparqlResult = ((ReplyResult<Result>) reply).getData();
-        if (sparqlResult.isFailure())
-            return -1;
-        RDFPatternSolution solution = ((ResultSolutions) sparqlResult).getSolutions().iterator().next();
-        return Integer.parseInt(((LiteralNode) solution.get("c")).getLexicalValue());
-    }
-
     @Override
     public Collection<Metric> getMetrics() {
         return Collections.singletonList(METRIC_INCONSISTENCY_COUNT);
@@ -948,7 +1162,7 @@ public class XOWLConsistencyService implements ConsistencyService, HttpApiServic
     public MetricSnapshot pollMetric(Metric metric) {
         if (metric != METRIC_INCONSISTENCY_COUNT)
             return null;
-        int count = getInconsistenciesCount();
+        int count = index.getCount();
         return new MetricSnapshotInt(count);
     }
 }
@@ -0,0 +1,514 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.services.consistency.impl;
+
+import fr.cenotelie.commons.utils.Serializable;
+import fr.cenotelie.commons.utils.TextUtils;
+import fr.cenotelie.commons.utils.api.Reply;
+import fr.cenotelie.commons.utils.api.ReplyResult;
+import fr.cenotelie.commons.utils.api.ReplyResultCollection;
+import org.xowl.platform.kernel.PlatformUtils;
+import org.xowl.platform.kernel.Register;
+import org.xowl.platform.kernel.events.Event;
+import org.xowl.platform.kernel.events.EventConsumer;
+import org.xowl.platform.kernel.events.EventService;
+import org.xowl.platform.services.consistency.*;
+import org.xowl.platform.services.storage.StorageService;
+import org.xowl.platform.services.storage.TripleStoreChangedEvent;
+
+import java.util.*;
+
+/**
+ * An index of the inconsistencies currently materialized in the live store
+ * The index is marked as outdated by the events that may change the inconsistencies:
+ * changes to the content of the live store and to the reasoning rules and consistency constraints.
+ * It is then refreshed on the next access, or when it is older than a maximum age.
+ * Each refresh that changes the inconsistencies produces a new version of the index,
+ * and the changes of the last versions are kept so that clients can fetch only the differences.
+ *
+ * @author Laurent Wouters
+ */
+class XOWLInconsistencyIndex implements EventConsumer {
+    /**
+     * The types of the events that may change the inconsistencies
+     */
+    private static final String[] INVALIDATING_EVENTS = new String[]{
+            TripleStoreChangedEvent.TYPE,
+            ReasoningRuleCreatedEvent.TYPE,
+            ReasoningRuleActivatedEvent.TYPE,
+            ReasoningRuleDeactivatedEvent.TYPE,
+            ReasoningRuleDeletedEvent.TYPE,
+            ConsistencyConstraintCreatedEvent.TYPE,
+            ConsistencyConstraintActivatedEvent.TYPE,
+            ConsistencyConstraintDeactivatedEvent.TYPE,
+            ConsistencyConstraintDeletedEvent.TYPE
+    };
+    /**
+     * The maximum age in milliseconds of the index before it is refreshed even without a change notification
+     */
+    private static final long REFRESH_MAX_AGE = 60000;
+    /**
+     * The maximum number of changes kept in the history
+     */
+    private static final int HISTORY_CAPACITY = 4096;
+
+    /**
+     * A change in the inconsistencies
+     */
+    private static class Change {
+        /**
+         * The version of the index that introduced this change
+         */
+        public final long version;
+        /**
+         * The inconsistency that appeared or was resolved
+         */
+        public final XOWLInconsistency inconsistency;
+        /**
+         * Whether the inconsistency appeared, otherwise it was resolved
+         */
+        public final boolean appeared;
+
+        /**
+         * Initializes this change
+         *
+         * @param version       The version of the index that introduced this change
+         * @param inconsistency The inconsistency that appeared or was resolved
+         * @param appeared      Whether the inconsistency appeared, otherwise it was resolved
+         */
+        public Change(long version, XOWLInconsistency inconsistency, boolean appeared) {
+            this.version = version;
+            this.inconsistency = inconsistency;
+            this.appeared = appeared;
+        }
+    }
+
+    /**
+     * The number of inconsistencies for each consistency constraint at a version of the index
+     */
+    public static class Counters implements Serializable {
+        /**
+         * The version of the index
+         */
+        private final long version;
+        /**
+         * The known consistency constraints
+         */
+        private final Collection<XOWLConsistencyConstraint> constraints;
+        /**
+         * The number of inconsistencies for each consistency constraint, by identifier
+         */
+        private final Map<String, Integer> counts;
+
+        /**
+         * Initializes these counters
+         *
+         * @param version     The version of the index
+         * @param constraints The known consistency constraints
+         * @param counts      The number of inconsistencies for each consistency constraint, by identifier
+         */
+        private Counters(long version, Collection<XOWLConsistencyConstraint> constraints, Map<String, Integer> counts) {
+            this.version = version;
+            this.constraints = constraints;
+            this.counts = counts;
+        }
+
+        @Override
+        public String serializedString() {
+            return Long.toString(version);
+        }
+
+        @Override
+        public String serializedJSON() {
+            StringBuilder builder = new StringBuilder("{\"version\": ");
+            builder.append(Long.toString(version));
+            builder.append(", \"constraints\": [");
+            int total = 0;
+            boolean first = true;
+            for (XOWLConsistencyConstraint constraint : constraints) {
+                Integer count = counts.get(constraint.getIdentifier());
+                int value = count == null ? 0 : count;
+                total += value;
+                if (!first)
+                    builder.append(", ");
+                first = false;
+                builder.append("{\"constraintId\": \"");
+                builder.append(TextUtils.escapeStringJSON(constraint.getIdentifier()));
+                builder.append("\", \"constraintName\": \"");
+                builder.append(TextUtils.escapeStringJSON(constraint.getName()));
+                builder.append("\", \"count\": ");
+                builder.append(Integer.toString(value));
+                builder.append("}");
+            }
+            builder.append("], \"total\": ");
+            builder.append(Integer.toString(total));
+            builder.append("}");
+            return builder.toString();
+        }
+    }
+
+    /**
+     * The differences of the inconsistencies between two versions of the index
+     */
+    public static class Delta implements Serializable {
+        /**
+         * The version the differences are relative to
+         */
+        private final long since;
+        /**
+         * The current version of the index
+         */
+        private final long version;
+        /**
+         * Whether the differences are complete, otherwise the appeared inconsistencies are all the current ones
+         */
+        private final boolean complete;
+        /**
+         * The inconsistencies that appeared
+         */
+        private final Collection<XOWLInconsistency> appeared;
+        /**
+         * The inconsistencies that were resolved
+         */
+        private final Collection<XOWLInconsistency> resolved;
+
+        /**
+         * Initializes these differences
+         *
+         * @param since    The version the differences are relative to
+         * @param version  The current version of the index
+         * @param complete Whether the differences are complete, otherwise the appeared inconsistencies are all the current ones
+         * @param appeared The inconsistencies that appeared
+         * @param resolved The inconsistencies that were resolved
+         */
+        private Delta(long since, long version, boolean complete, Collection<XOWLInconsistency> appeared, Collection<XOWLInconsistency> resolved) {
+            this.since = since;
+            this.version = version;
+            this.complete = complete;
+            this.appeared = appeared;
+            this.resolved = resolved;
+        }
+
+        @Override
+        public String serializedString() {
+            return Long.toString(since) + ".." + Long.toString(version);
+        }
+
+        @Override
+        public String serializedJSON() {
+            StringBuilder builder = new StringBuilder("{\"since\": ");
+            builder.append(Long.toString(since));
+            builder.append(", \"version\": ");
+            builder.append(Long.toString(version));
+            builder.append(", \"complete\": ");
+            builder.append(complete);
+            builder.append(", \"appeared\": [");
+            boolean first = true;
+            for (XOWLInconsistency inconsistency : appeared) {
+                if (!first)
+                    builder.append(", ");
+                first = false;
+                builder.append(inconsistency.serializedJSON());
+            }
+            builder.append("], \"resolved\": [");
+            first = true;
+            for (XOWLInconsistency inconsistency : resolved) {
+                if (!first)
+                    builder.append(", ");
+                first = false;
+                builder.append("\"");
+                builder.append(TextUtils.escapeStringJSON(inconsistency.getIdentifier()));
+                builder.append("\"");
+            }
+            builder.append("]}");
+            return builder.toString();
+        }
+    }
+
+    /**
+     * The parent consistency service
+     */
+    private final XOWLConsistencyService service;
+    /**
+     * The current inconsistencies, by identifier
+     */
+    private final TreeMap<String, XOWLInconsistency> inconsistencies;
+    /**
+     * The number of current inconsistencies for each consistency constraint, by identifier
+     */
+    private final Map<String, Integer> counts;
+    /**
+     * The history of the last changes, in the order of the versions
+     */
+    private final Deque<Change> history;
+    /**
+     * The known consistency constraints
+     */
+    private Collection<XOWLConsistencyConstraint> constraints;
+    /**
+     * The timestamp of the initialization of this index, used to distinguish the versions across restarts
+     */
+    private final long epoch;
+    /**
+     * The current version of the index
+     */
+    private long version;
+    /**
+     * The last version that is not completely covered by the history anymore
+     */
+    private long historyFloor;
+    /**
+     * The timestamp of the last refresh
+     */
+    private long lastRefresh;
+    /**
+     * Whether this index is outdated
+     */
+    private volatile boolean outdated;
+    /**
+     * Whether this index is subscribed to the invalidating events
+     */
+    private volatile boolean subscribed;
+
+    /**
+     * Initializes this index
+     *
+     * @param service The parent consistency service
+     */
+    public XOWLInconsistencyIndex(XOWLConsistencyService service) {
+        this.service = service;
+        this.inconsistencies = new TreeMap<>();
+        this.counts = new HashMap<>();
+        this.history = new ArrayDeque<>();
+        this.constraints = Collections.emptyList();
+        this.epoch = System.currentTimeMillis();
+        this.version = 0;
+        this.historyFloor = 0;
+        this.lastRefresh = 0;
+        this.outdated = true;
+        this.subscribed = false;
+    }
+
+    /**
+     * Gets all the current inconsistencies
+     *
+     * @return The operation's result
+     */
+    public synchronized Reply getAll() {
+        Reply reply = ensureUpToDate();
+        if (!reply.isSuccess())
+            return reply;
+        return new ReplyResultCollection<>(new ArrayList<>(inconsistencies.values()));
+    }
+
+    /**
+     * Gets a page of the current inconsistencies, in the order of their identifiers
+     *
+     * @param constraintId The identifier of the consistency constraint that must have produced the inconsistencies, if any
+     * @param cursor       The identifier of the last inconsistency of the previous page, if any
+     * @param count        The maximum number of inconsistencies to get
+     * @return The operation's result
+     */
+    public synchronized Reply getPage(String constraintId, String cursor, int count) {
+        Reply reply = ensureUpToDate();
+        if (!reply.isSuccess())
+            return reply;
+        Collection<XOWLInconsistency> candidates = cursor == null ? inconsistencies.values() : inconsistencies.tailMap(cursor, false).values();
+        List<XOWLInconsistency> result = new ArrayList<>();
+        for (XOWLInconsistency inconsistency : candidates) {
+            if (result.size() >= count)
+                break;
+            if (constraintId == null || constraintId.equals(inconsistency.getConstraint().getIdentifier()))
+                result.add(inconsistency);
+        }
+        return new ReplyResultCollection<>(result);
+    }
+
+    /**
+     * Gets an entity tag for the current version of this index
+     *
+     * @return The entity tag, or null if the index could not be refreshed
+     */
+    public synchronized String getVersionTag() {
+        Reply reply = ensureUpToDate();
+        if (!reply.isSuccess())
+            return null;
+        return "\"" + Long.toHexString(epoch) + "-" + Long.toString(version) + "\"";
+    }
+
+    /**
+     * Gets the number of current inconsistencies
+     *
+     * @return The number of current inconsistencies, or -1 if the index could not be refreshed
+     */
+    public synchronized int getCount() {
+        Reply reply = ensureUpToDate();
+        if (!reply.isSuccess())
+            return -1;
+        return inconsistencies.size();
+    }
+
+    /**
+     * Gets the number of current inconsistencies for each consistency constraint
+     *
+     * @return The operation's result
+     */
+    public synchronized Reply getCounters() {
+        Reply reply = ensureUpToDate();
+        if (!reply.isSuccess())
+            return reply;
+        return new ReplyResult<>(new Counters(version, constraints, new HashMap<>(counts)));
+    }
+
+    /**
+     * Gets the inconsistencies that appeared or were resolved since a version of this index
+     * When the version is unknown or too old for the kept history, all the current inconsistencies are returned as appeared.
+     *
+     * @param since The version of this index known by the client
+     * @return The operation's result
+     */
+    public synchronized Reply getDelta(long since) {
+        Reply reply = ensureUpToDate();
+        if (!reply.isSuccess())
+            return reply;
+        if (since < historyFloor || since > version)
+            return new ReplyResult<>(new Delta(since, version, false, new ArrayList<>(inconsistencies.values()), Collections.<XOWLInconsistency>emptyList()));
+        // for each inconsistency, the first and last change since the version
+        Map<String, Change[]> changes = new LinkedHashMap<>();
+        for (Change change : history) {
+            if (change.version <= since)
+                continue;
+            Change[] bounds = changes.get(change.inconsistency.getIdentifier());
+            if (bounds == null)
+                changes.put(change.inconsistency.getIdentifier(), new Change[]{change, change});
+            else
+                bounds[1] = change;
+        }
+        Collection<XOWLInconsistency> appeared = new ArrayList<>();
+        Collection<XOWLInconsistency> resolved = new ArrayList<>();
+        for (Change[] bounds : changes.values()) {
+            // an inconsistency that was there before and is still there, or that came and went, is unchanged
+            if (bounds[0].appeared && bounds[1].appeared)
+                appeared.add(bounds[1].inconsistency);
+            else if (!bounds[0].appeared && !bounds[1].appeared)
+                resolved.add(bounds[1].inconsistency);
+        }
+        return new ReplyResult<>(new Delta(since, version, true, appeared, resolved));
+    }
+
+    /**
+     * Ensures that this index is up to date, refreshing it if necessary
+     *
+     * @return The operation's result
+     */
+    private Reply ensureUpToDate() {
+        if (!subscribed) {
+            EventService eventService = Register.getComponent(EventService.class);
+            if (eventService != null) {
+                for (int i = 0; i != INVALIDATING_EVENTS.length; i++)
+                    eventService.subscribe(this, INVALIDATING_EVENTS[i]);
+                subscribed = true;
+                outdated = true;
+            }
+        }
+        if (subscribed && !outdated && System.currentTimeMillis() - lastRefresh < REFRESH_MAX_AGE)
+            return new ReplyResult<>(version);
+        // reset the flag before querying so that a change during the refresh is not missed
+        outdated = false;
+        Reply reply = refresh();
+        if (!reply.isSuccess())
+            outdated = true;
+        return reply;
+    }
+
+    /**
+     * Refreshes this index from the live store
+     *
+     * @return The operation's result
+     */
+    private Reply refresh() {
+        Reply reply = service.getConsistencyConstraints();
+        if (!reply.isSuccess())
+            return reply;
+        Collection<XOWLConsistencyConstraint> newConstraints = ((ReplyResultCollection<XOWLConsistencyConstraint>) reply).getData();
+        reply = service.queryInconsistencies(newConstraints);
+        if (!reply.isSuccess())
+            return reply;
+        Collection<XOWLInconsistency> current = ((ReplyResultCollection<XOWLInconsistency>) reply).getData();
+        lastRefresh = System.currentTimeMillis();
+        constraints = newConstraints;
+
+        // compute the differences with the previous state
+        Map<String, XOWLInconsistency> newInconsistencies = new HashMap<>();
+        for (XOWLInconsistency inconsistency : current)
+            newInconsistencies.put(inconsistency.getIdentifier(), inconsistency);
+        List<Change> changes = new ArrayList<>();
+        for (XOWLInconsistency inconsistency : inconsistencies.values()) {
+            if (!newInconsistencies.containsKey(inconsistency.getIdentifier()))
+                changes.add(new Change(version + 1, inconsistency, false));
+        }
+        for (XOWLInconsistency inconsistency : newInconsistencies.values()) {
+            if (!inconsistencies.containsKey(inconsistency.getIdentifier()))
+                changes.add(new Change(version + 1, inconsistency, true));
+        }
+        if (changes.isEmpty())
+            return new ReplyResult<>(version);
+
+        // apply the changes
+        version++;
+        for (Change change : changes) {
+            String constraintId = change.inconsistency.getConstraint().getIdentifier();
+            Integer count = counts.get(constraintId);
+            if (change.appeared) {
+                inconsistencies.put(change.inconsistency.getIdentifier(), change.inconsistency);
+                counts.put(constraintId, count == null ? 1 : count + 1);
+            } else {
+                inconsistencies.remove(change.inconsistency.getIdentifier());
+                if (count == null || count <= 1)
+                    counts.remove(constraintId);
+                else
+                    counts.put(constraintId, count - 1);
+            }
+            history.addLast(change);
+        }
+        while (history.size() > HISTORY_CAPACITY)
+            historyFloor = history.removeFirst().version;
+        return new ReplyResult<>(version);
+    }
+
+    @Override
+    public String getIdentifier() {
+        return XOWLInconsistencyIndex.class.getCanonicalName();
+    }
+
+    @Override
+    public String getName() {
+        return PlatformUtils.NAME + " - Inconsistencies Index";
+    }
+
+    @Override
+    public void onEvent(Event event) {
+        if (event instanceof TripleStoreChangedEvent) {
+            // only the live store holds the inconsistencies
+            StorageService storageService = Register.getComponent(StorageService.class);
+            if (storageService != null && storageService.getLiveStore() != ((TripleStoreChangedEvent) event).getStore())
+                return;
+        }
+        outdated = true;
+    }
+}
@@ -20,6 +20,7 @@ package org.xowl.platform.services.denotation;
 import fr.cenotelie.commons.utils.api.Reply;
 import org.xowl.platform.kernel.security.SecuredService;
 
+import java.io.InputStream;
 import java.util.Collection;
 
 /**
@@ -69,6 +70,17 @@ public interface DenotationService extends SecuredService {
      */
     Reply upload(String name, String originalFileName, byte[] content);
 
+    /**
+     * Uploads a new document whose content is read from a stream
+     * The content is spooled to the storage without being buffered in memory.
+     *
+     * @param name             The document 's name
+     * @param originalFileName The original client's file name
+     * @param content          The stream for the document's content
+     * @return The document
+     */
+    Reply upload(String name, String originalFileName, InputStream content);
+
     /**
      * Drops the specified document
      *
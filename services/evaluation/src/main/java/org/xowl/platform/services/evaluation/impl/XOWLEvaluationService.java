@@ -22,7 +22,6 @@ import fr.cenotelie.commons.utils.TextUtils;
 import fr.cenotelie.commons.utils.api.*;
 import fr.cenotelie.commons.utils.http.HttpConstants;
 import fr.cenotelie.commons.utils.http.HttpResponse;
-import fr.cenotelie.commons.utils.http.URIUtils;
 import fr.cenotelie.commons.utils.json.Json;
 import fr.cenotelie.commons.utils.logging.BufferedLogger;
 import fr.cenotelie.hime.redist.ASTNode;
@@ -36,6 +35,7 @@ import org.xowl.platform.kernel.security.SecurityService;
 import org.xowl.platform.kernel.webapi.HttpApiRequest;
 import org.xowl.platform.kernel.webapi.HttpApiResource;
 import org.xowl.platform.kernel.webapi.HttpApiResourceBase;
+import org.xowl.platform.kernel.webapi.HttpApiRoute;
 import org.xowl.platform.kernel.webapi.HttpApiService;
 import org.xowl.platform.services.evaluation.*;
 
@@ -68,12 +68,37 @@ public class XOWLEvaluationService implements EvaluationService, HttpApiService
      * The URI for the API services
      */
     private final String apiUri;
+    /**
+     * The route for the evaluable types resource
+     */
+    private final HttpApiRoute routeEvaluableTypes;
+    /**
+     * The route for the evaluables resource
+     */
+    private final HttpApiRoute routeEvaluables;
+    /**
+     * The route for the criterion types resource
+     */
+    private final HttpApiRoute routeCriterionTypes;
+    /**
+     * The route for the evaluations resource
+     */
+    private final HttpApiRoute routeEvaluations;
+    /**
+     * The route for a specific evaluation
+     */
+    private final HttpApiRoute routeEvaluation;
 
     /**
      * Initializes this service
      */
     public XOWLEvaluationService() {
         this.apiUri = PlatformHttp.getUriPrefixApi() + "/services/evaluation";
+        this.routeEvaluableTypes = new HttpApiRoute(apiUri + "/evaluableTypes", HttpConstants.METHOD_GET);
+        this.routeEvaluables = new HttpApiRoute(apiUri + "/evaluables", HttpConstants.METHOD_GET);
+        this.routeCriterionTypes = new HttpApiRoute(apiUri + "/criterionTypes", HttpConstants.METHOD_GET);
+        this.routeEvaluations = new HttpApiRoute(apiUri + "/evaluations", HttpConstants.METHOD_GET, HttpConstants.METHOD_PUT);
+        this.routeEvaluation = new HttpApiRoute(apiUri + "/evaluations/{evaluationId}", HttpConstants.METHOD_GET);
     }
 
     @Override
@@ -92,10 +117,14 @@ public class XOWLEvaluationService implements EvaluationService, HttpApiService
     }
 
     @Override
-    public int canHandle(HttpApiRequest request) {
-        return request.getUri().startsWith(apiUri)
-                ? HttpApiService.PRIORITY_NORMAL
-                : HttpApiService.CANNOT_HANDLE;
+    public HttpApiRoute[] getRoutes() {
+        return new HttpApiRoute[]{
+                routeEvaluableTypes,
+                routeEvaluables,
+                routeCriterionTypes,
+                routeEvaluations,
+                routeEvaluation
+        };
     }
 
     @Override
@@ -105,43 +134,20 @@ public class XOWLEvaluationService implements EvaluationService, HttpApiService
 
     @Override
     public HttpResponse handle(SecurityService securityService, HttpApiRequest request) {
-        if (request.getUri().equals(apiUri + "/evaluableTypes")) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
+        HttpApiRoute route = request.getRoute();
+        if (route == routeEvaluableTypes)
             return onGetEvaluableTypes();
-        }
-        if (request.getUri().equals(apiUri + "/evaluables")) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
+        if (route == routeEvaluables)
             return onGetEvaluables(request);
-        }
-        if (request.getUri().equals(apiUri + "/criterionTypes")) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
+        if (route == routeCriterionTypes)
             return onGetCriterionTypes(request);
+        if (route == routeEvaluations) {
+            if (HttpConstants.METHOD_PUT.equals(request.getMethod()))
+                return onPutEvaluation(request);
+            return onGetEvaluations();
         }
-        if (request.getUri().equals(apiUri + "/evaluations")) {
-            switch (request.getMethod()) {
-                case HttpConstants.METHOD_GET:
-                    return onGetEvaluations();
-                case HttpConstants.METHOD_PUT:
-                    return onPutEvaluation(request);
-            }
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: GET, PUT");
-        }
-        if (request.getUri().startsWith(apiUri + "/evaluations")) {
-            String rest = request.getUri().substring(apiUri.length() + "/evaluations".length() + 1);
-            if (rest.isEmpty())
-                return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-            int index = rest.indexOf("/");
-            String evalId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-            if (index < 0) {
-                if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-                return onGetEvaluation(evalId);
-            }
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-        }
+        if (route == routeEvaluation)
+            return onGetEvaluation(request.getPathParameter("evaluationId"));
         return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
     }
 
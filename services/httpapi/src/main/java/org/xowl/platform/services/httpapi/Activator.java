@@ -21,6 +21,7 @@ import fr.cenotelie.commons.utils.logging.Logging;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.http.HttpService;
+import org.xowl.platform.kernel.ConfigurationService;
 import org.xowl.platform.kernel.PlatformHttp;
 import org.xowl.platform.kernel.Register;
 import org.xowl.platform.kernel.RegisterWaiter;
@@ -45,17 +46,17 @@ public class Activator implements BundleActivator {
 
     @Override
     public void start(BundleContext bundleContext) throws Exception {
-        server = new XOWLMainHTTPServer();
-
         Register.waitFor(PlatformHttp.class, new RegisterWaiter<PlatformHttp>() {
             @Override
             public void onAvailable(BundleContext bundleContext, PlatformHttp component) {
+                server = new XOWLMainHTTPServer(Register.getComponent(ConfigurationService.class));
                 Register.waitFor(HttpService.class, new RegisterWaiter<HttpService>() {
                     @Override
                     public void onAvailable(BundleContext bundleContext, HttpService component) {
                         bundleContext.registerService(Service.class, server, null);
                         bundleContext.registerService(HTTPServerService.class, server, new Hashtable<String, Object>());
                         bundleContext.registerService(WebUIContribution.class, new XOWLHttpApiDocumentationModule(), null);
+                        server.trackServices(bundleContext);
                         try {
                             component.registerServlet(PlatformHttp.getUriPrefixApi(), server, null, new XOWLMainHTTPContext(component));
                         } catch (Exception exception) {
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.services.httpapi.impl;
+
+import fr.cenotelie.commons.utils.ini.IniDocument;
+import fr.cenotelie.commons.utils.logging.Logging;
+
+/**
+ * The options for the output of the responses of an HTTP API service
+ *
+ * @author Laurent Wouters
+ */
+class XOWLHttpApiOutputOptions {
+    /**
+     * The default minimum size in bytes of a buffered body for it to be compressed
+     */
+    private static final int DEFAULT_COMPRESSION_MIN_SIZE = 1024;
+    /**
+     * The default maximum size in bytes of a buffered body for an entity tag to be computed from it
+     */
+    private static final int DEFAULT_ETAGS_MAX_SIZE = 256 * 1024;
+    /**
+     * The default options
+     */
+    public static final XOWLHttpApiOutputOptions DEFAULT = new XOWLHttpApiOutputOptions(true, DEFAULT_COMPRESSION_MIN_SIZE, true, DEFAULT_ETAGS_MAX_SIZE);
+
+    /**
+     * Whether the responses may be compressed when the client accepts it
+     */
+    public final boolean compression;
+    /**
+     * The minimum size in bytes of a buffered body for it to be compressed
+     */
+    public final int compressionMinSize;
+    /**
+     * Whether entity tags are produced for the responses and conditional requests are supported
+     */
+    public final boolean etags;
+    /**
+     * The maximum size in bytes of a buffered body for an entity tag to be computed from it
+     */
+    public final int etagsMaxSize;
+
+    /**
+     * Initializes these options
+     *
+     * @param compression        Whether the responses may be compressed when the client accepts it
+     * @param compressionMinSize The minimum size in bytes of a buffered body for it to be compressed
+     * @param etags              Whether entity tags are produced for the responses and conditional requests are supported
+     * @param etagsMaxSize       The maximum size in bytes of a buffered body for an entity tag to be computed from it
+     */
+    private XOWLHttpApiOutputOptions(boolean compression, int compressionMinSize, boolean etags, int etagsMaxSize) {
+        this.compression = compression;
+        this.compressionMinSize = compressionMinSize;
+        this.etags = etags;
+        this.etagsMaxSize = etagsMaxSize;
+    }
+
+    /**
+     * Loads the options from a configuration
+     *
+     * @param configuration The configuration
+     * @param section       The section to load from, or null for the root section
+     * @param defaults      The options to use for the unspecified values
+     * @return The options
+     */
+    public static XOWLHttpApiOutputOptions load(IniDocument configuration, String section, XOWLHttpApiOutputOptions defaults) {
+        boolean compression = defaults.compression;
+        int compressionMinSize = defaults.compressionMinSize;
+        boolean etags = defaults.etags;
+        int etagsMaxSize = defaults.etagsMaxSize;
+        String value = get(configuration, section, "compression");
+        if (value != null)
+            compression = Boolean.parseBoolean(value);
+        value = get(configuration, section, "etags");
+        if (value != null)
+            etags = Boolean.parseBoolean(value);
+        try {
+            value = get(configuration, section, "compressionMinSize");
+            if (value != null)
+                compressionMinSize = Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException exception) {
+            Logging.get().error(exception);
+        }
+        try {
+            value = get(configuration, section, "etagsMaxSize");
+            if (value != null)
+                etagsMaxSize = Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException exception) {
+            Logging.get().error(exception);
+        }
+        return new XOWLHttpApiOutputOptions(compression, compressionMinSize, etags, etagsMaxSize);
+    }
+
+    /**
+     * Gets a value from a configuration
+     *
+     * @param configuration The configuration
+     * @param section       The section to look into, or null for the root section
+     * @param key           The key of the value
+     * @return The value, or null if it is not specified
+     */
+    private static String get(IniDocument configuration, String section, String key) {
+        return section == null ? configuration.get(key) : configuration.get(section, key);
+    }
+}
@@ -17,11 +17,14 @@
 
 package org.xowl.platform.services.httpapi.impl;
 
+import fr.cenotelie.commons.utils.http.HttpConstants;
 import fr.cenotelie.commons.utils.http.URIUtils;
 import fr.cenotelie.commons.utils.logging.Logging;
 import org.xowl.platform.kernel.webapi.HttpApiRequest;
+import org.xowl.platform.kernel.webapi.HttpApiRoute;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -29,6 +32,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.Map;
 
 /**
  * Encapsulates a servlet request as an API request
@@ -36,6 +40,11 @@ import java.util.Enumeration;
  * @author Laurent Wouters
  */
 class XOWLHttpApiRequest implements HttpApiRequest {
+    /**
+     * The size of the buffer for reading the request's body
+     */
+    private static final int BUFFER_SIZE = 8192;
+
     /**
      * The original servlet request
      */
@@ -52,6 +61,18 @@ class XOWLHttpApiRequest implements HttpApiRequest {
      * The request's body
      */
     private byte[] content;
+    /**
+     * The route that matched this request
+     */
+    private HttpApiRoute route;
+    /**
+     * The path parameters extracted by the matching route
+     */
+    private Map<String, String> pathParameters;
+    /**
+     * Whether conditional requests are supported for the responses to this request
+     */
+    private boolean conditional;
 
     /**
      * Initializes this request
@@ -62,6 +83,26 @@ class XOWLHttpApiRequest implements HttpApiRequest {
         this.request = request;
     }
 
+    /**
+     * Sets the route that matched this request
+     *
+     * @param route          The matching route
+     * @param pathParameters The path parameters extracted by the route
+     */
+    public void setRoute(HttpApiRoute route, Map<String, String> pathParameters) {
+        this.route = route;
+        this.pathParameters = pathParameters;
+    }
+
+    /**
+     * Sets whether conditional requests are supported for the responses to this request
+     *
+     * @param conditional Whether conditional requests are supported
+     */
+    public void setConditional(boolean conditional) {
+        this.conditional = conditional;
+    }
+
     @Override
     public String getClient() {
         return request.getRemoteAddr();
@@ -142,10 +183,11 @@ class XOWLHttpApiRequest implements HttpApiRequest {
     public byte[] getContent() {
         if (content != null)
             return content;
-        if (request.getContentLength() > 0) {
+        long length = request.getContentLengthLong();
+        if (length > 0) {
             try (InputStream is = request.getInputStream()) {
-                ByteArrayOutputStream output = new ByteArrayOutputStream();
-                byte[] buffer = new byte[1024];
+                ByteArrayOutputStream output = new ByteArrayOutputStream((int) Math.min(length, Integer.MAX_VALUE - 8));
+                byte[] buffer = new byte[BUFFER_SIZE];
                 int read = is.read(buffer);
                 while (read > 0) {
                     output.write(buffer, 0, read);
@@ -158,4 +200,40 @@ class XOWLHttpApiRequest implements HttpApiRequest {
         }
         return content;
     }
+
+    @Override
+    public long getContentLength() {
+        if (content != null)
+            return content.length;
+        return request.getContentLengthLong();
+    }
+
+    @Override
+    public InputStream getContentStream() {
+        if (content != null)
+            return new ByteArrayInputStream(content);
+        try {
+            return request.getInputStream();
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+            return null;
+        }
+    }
+
+    @Override
+    public HttpApiRoute getRoute() {
+        return route;
+    }
+
+    @Override
+    public String getPathParameter(String name) {
+        return pathParameters == null ? null : pathParameters.get(name);
+    }
+
+    @Override
+    public boolean isNotModified(String etag) {
+        return conditional
+                && HttpConstants.METHOD_GET.equals(request.getMethod())
+                && XOWLMainHTTPServer.matchesETag(request, etag);
+    }
 }
@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.services.httpapi.impl;
+
+import fr.cenotelie.commons.utils.http.URIUtils;
+import fr.cenotelie.commons.utils.logging.Logging;
+import org.xowl.platform.kernel.webapi.HttpApiRoute;
+import org.xowl.platform.kernel.webapi.HttpApiService;
+
+import java.util.*;
+
+/**
+ * The routing table for the HTTP API services, compiled as a trie of the path segments of the declared routes
+ * When several routes match a request, literal segments are preferred over parameters, and parameters over remainders.
+ * Among the routes ending at the same point, the route with the highest priority is preferred.
+ *
+ * @author Laurent Wouters
+ */
+class XOWLHttpApiRouter {
+    /**
+     * A route of a service compiled in the routing table
+     */
+    public static class Endpoint {
+        /**
+         * The service that declared the route
+         */
+        public final HttpApiService service;
+        /**
+         * The declared route
+         */
+        public final HttpApiRoute route;
+        /**
+         * The names of the path parameters, in the order of the segments
+         */
+        public final String[] parameters;
+
+        /**
+         * Initializes this endpoint
+         *
+         * @param service    The service that declared the route
+         * @param route      The declared route
+         * @param parameters The names of the path parameters, in the order of the segments
+         */
+        public Endpoint(HttpApiService service, HttpApiRoute route, String[] parameters) {
+            this.service = service;
+            this.route = route;
+            this.parameters = parameters;
+        }
+    }
+
+    /**
+     * The result of the routing of a request
+     */
+    public static class Result {
+        /**
+         * The matching endpoint, if any
+         */
+        public Endpoint endpoint;
+        /**
+         * The path parameters for the matching endpoint
+         */
+        public Map<String, String> parameters;
+        /**
+         * The HTTP methods accepted by the routes matching the path of the request
+         */
+        public final Collection<String> allowedMethods = new LinkedHashSet<>();
+
+        /**
+         * Gets whether a route matched the path of the request but not its method
+         *
+         * @return Whether the method is not allowed
+         */
+        public boolean isMethodNotAllowed() {
+            return endpoint == null && !allowedMethods.isEmpty();
+        }
+    }
+
+    /**
+     * A node in the trie of path segments
+     */
+    private static class Node {
+        /**
+         * The children for literal segments
+         */
+        public final Map<String, Node> literals = new HashMap<>();
+        /**
+         * The child for parameter segments, if any
+         */
+        public Node parameter;
+        /**
+         * The routes ending at this node
+         */
+        public final List<Endpoint> endpoints = new ArrayList<>(1);
+        /**
+         * The routes ending with a remainder at this node
+         */
+        public final List<Endpoint> remainders = new ArrayList<>(1);
+    }
+
+    /**
+     * Orders the endpoints by decreasing priority
+     */
+    private static final Comparator<Endpoint> ORDER = new Comparator<Endpoint>() {
+        @Override
+        public int compare(Endpoint endpoint1, Endpoint endpoint2) {
+            return Integer.compare(endpoint2.route.getPriority(), endpoint1.route.getPriority());
+        }
+    };
+
+    /**
+     * The root of the trie
+     */
+    private final Node root;
+
+    /**
+     * Initializes this routing table
+     *
+     * @param services The HTTP API services to route to
+     */
+    public XOWLHttpApiRouter(Collection<HttpApiService> services) {
+        this.root = new Node();
+        for (HttpApiService service : services) {
+            HttpApiRoute[] routes = service.getRoutes();
+            if (routes == null)
+                continue;
+            for (int i = 0; i != routes.length; i++)
+                add(service, routes[i]);
+        }
+        sort(root);
+    }
+
+    /**
+     * Adds a route to this routing table
+     *
+     * @param service The service that declared the route
+     * @param route   The declared route
+     */
+    private void add(HttpApiService service, HttpApiRoute route) {
+        String[] segments = HttpApiRoute.getSegments(route.getPath());
+        List<String> parameters = new ArrayList<>();
+        Node current = root;
+        for (int i = 0; i != segments.length; i++) {
+            if (HttpApiRoute.SEGMENT_REMAINDER.equals(segments[i])) {
+                if (i != segments.length - 1) {
+                    Logging.get().error("Invalid route " + route.toString() + " for service " + service.getIdentifier());
+                    return;
+                }
+                current.remainders.add(new Endpoint(service, route, parameters.toArray(new String[parameters.size()])));
+                return;
+            }
+            String parameter = HttpApiRoute.getParameterName(segments[i]);
+            if (parameter != null) {
+                parameters.add(parameter);
+                if (current.parameter == null)
+                    current.parameter = new Node();
+                current = current.parameter;
+            } else {
+                Node child = current.literals.get(segments[i]);
+                if (child == null) {
+                    child = new Node();
+                    current.literals.put(segments[i], child);
+                }
+                current = child;
+            }
+        }
+        current.endpoints.add(new Endpoint(service, route, parameters.toArray(new String[parameters.size()])));
+    }
+
+    /**
+     * Sorts the endpoints of a node and its descendants by decreasing priority
+     *
+     * @param node The node
+     */
+    private static void sort(Node node) {
+        Collections.sort(node.endpoints, ORDER);
+        Collections.sort(node.remainders, ORDER);
+        for (Node child : node.literals.values())
+            sort(child);
+        if (node.parameter != null)
+            sort(node.parameter);
+    }
+
+    /**
+     * Routes a request
+     *
+     * @param method The HTTP method of the request
+     * @param uri    The URI of the request
+     * @return The result of the routing
+     */
+    public Result route(String method, String uri) {
+        Result result = new Result();
+        String[] segments = HttpApiRoute.getSegments(uri);
+        match(root, segments, 0, new ArrayList<String>(), method, result);
+        return result;
+    }
+
+    /**
+     * Matches the segments of a request against a node
+     *
+     * @param node     The current node
+     * @param segments The segments of the request
+     * @param index    The index of the next segment to match
+     * @param values   The values of the path parameters matched so far
+     * @param method   The HTTP method of the request
+     * @param result   The result to fill
+     * @return Whether a matching endpoint was found
+     */
+    private static boolean match(Node node, String[] segments, int index, List<String> values, String method, Result result) {
+        if (index == segments.length) {
+            if (select(node.endpoints, values, method, result))
+                return true;
+        } else {
+            Node child = node.literals.get(segments[index]);
+            if (child != null && match(child, segments, index + 1, values, method, result))
+                return true;
+            if (node.parameter != null) {
+                values.add(segments[index]);
+                if (match(node.parameter, segments, index + 1, values, method, result))
+                    return true;
+                values.remove(values.size() - 1);
+            }
+        }
+        return select(node.remainders, values, method, result);
+    }
+
+    /**
+     * Selects the first endpoint that accepts the method of a request
+     *
+     * @param endpoints The candidate endpoints, by decreasing priority
+     * @param values    The values of the path parameters
+     * @param method    The HTTP method of the request
+     * @param result    The result to fill
+     * @return Whether an endpoint was selected
+     */
+    private static boolean select(List<Endpoint> endpoints, List<String> values, String method, Result result) {
+        for (int i = 0; i != endpoints.size(); i++) {
+            Endpoint endpoint = endpoints.get(i);
+            if (endpoint.route.accepts(method)) {
+                result.endpoint = endpoint;
+                if (endpoint.parameters.length == 0) {
+                    result.parameters = Collections.emptyMap();
+                } else {
+                    result.parameters = new HashMap<>();
+                    for (int j = 0; j != endpoint.parameters.length; j++)
+                        result.parameters.put(endpoint.parameters[j], URIUtils.decodeComponent(values.get(j)));
+                }
+                return true;
+            }
+            Collections.addAll(result.allowedMethods, endpoint.route.getMethods());
+        }
+        return false;
+    }
+}
@@ -25,29 +25,172 @@ import fr.cenotelie.commons.utils.collections.Couple;
 import fr.cenotelie.commons.utils.http.HttpConstants;
 import fr.cenotelie.commons.utils.http.HttpResponse;
 import fr.cenotelie.commons.utils.logging.Logging;
+import fr.cenotelie.commons.utils.ini.IniDocument;
+import fr.cenotelie.commons.utils.ini.IniSection;
+import org.osgi.framework.*;
+import org.xowl.platform.kernel.ConfigurationService;
 import org.xowl.platform.kernel.PlatformUtils;
 import org.xowl.platform.kernel.Register;
 import org.xowl.platform.kernel.security.SecurityService;
-import org.xowl.platform.kernel.webapi.HttpApiRequest;
 import org.xowl.platform.kernel.webapi.HttpApiService;
+import org.xowl.platform.kernel.webapi.HttpResponseStreamed;
 import org.xowl.platform.services.httpapi.HTTPServerService;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
-import java.util.Collection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * The main server for the platform
  *
  * @author Laurent Wouters
  */
-public class XOWLMainHTTPServer extends HttpServlet implements HTTPServerService {
+public class XOWLMainHTTPServer extends HttpServlet implements HTTPServerService, ServiceListener {
+    /**
+     * The prefix of the configuration sections for the options of a specific service
+     */
+    private static final String SECTION_SERVICE_PREFIX = "services.";
+    /**
+     * The HTTP header for the entity tag of a response
+     */
+    private static final String HEADER_ETAG = "ETag";
+    /**
+     * The HTTP header for the entity tags of a conditional request
+     */
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    /**
+     * The HTTP header for the encodings accepted by the client
+     */
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    /**
+     * The HTTP header for the encoding of the response's body
+     */
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    /**
+     * The gzip content encoding
+     */
+    private static final String ENCODING_GZIP = "gzip";
+    /**
+     * The deflate content encoding
+     */
+    private static final String ENCODING_DEFLATE = "deflate";
+
+    /**
+     * The default options for the output of the responses
+     */
+    private final XOWLHttpApiOutputOptions defaultOptions;
+    /**
+     * The options for the output of the responses of specific services, by service identifier
+     */
+    private final Map<String, XOWLHttpApiOutputOptions> serviceOptions;
+    /**
+     * The bundle context used to track the HTTP API services
+     */
+    private BundleContext context;
+    /**
+     * The currently registered HTTP API services
+     */
+    private final Map<ServiceReference, HttpApiService> services = new HashMap<>();
+    /**
+     * The current routing table, rebuilt when the HTTP API services change
+     */
+    private volatile XOWLHttpApiRouter router = new XOWLHttpApiRouter(Collections.<HttpApiService>emptyList());
+
+    /**
+     * Initializes this server
+     *
+     * @param configurationService The configuration service
+     */
+    public XOWLMainHTTPServer(ConfigurationService configurationService) {
+        this.serviceOptions = new HashMap<>();
+        IniDocument configuration = configurationService != null
+                ? configurationService.getConfigFor(HTTPServerService.class.getCanonicalName())
+                : null;
+        if (configuration == null) {
+            this.defaultOptions = XOWLHttpApiOutputOptions.DEFAULT;
+            return;
+        }
+        this.defaultOptions = XOWLHttpApiOutputOptions.load(configuration, null, XOWLHttpApiOutputOptions.DEFAULT);
+        for (IniSection section : configuration.getSections()) {
+            if (section.getName() == null || !section.getName().startsWith(SECTION_SERVICE_PREFIX))
+                continue;
+            serviceOptions.put(
+                    section.getName().substring(SECTION_SERVICE_PREFIX.length()),
+                    XOWLHttpApiOutputOptions.load(configuration, section.getName(), defaultOptions));
+        }
+    }
+
+    /**
+     * Starts tracking the HTTP API services to route the requests to
+     *
+     * @param context The bundle context used to track the services
+     */
+    public synchronized void trackServices(BundleContext context) {
+        this.context = context;
+        try {
+            context.addServiceListener(this, "(" + Constants.OBJECTCLASS + "=" + HttpApiService.class.getName() + ")");
+            ServiceReference[] references = context.getServiceReferences(HttpApiService.class.getName(), null);
+            if (references != null) {
+                for (int i = 0; i != references.length; i++)
+                    onServiceRegistered(references[i]);
+            }
+        } catch (InvalidSyntaxException exception) {
+            Logging.get().error(exception);
+        }
+        rebuildRouter();
+    }
+
+    @Override
+    public synchronized void serviceChanged(ServiceEvent serviceEvent) {
+        if (context == null)
+            return;
+        switch (serviceEvent.getType()) {
+            case ServiceEvent.REGISTERED:
+            case ServiceEvent.MODIFIED:
+                onServiceRegistered(serviceEvent.getServiceReference());
+                break;
+            case ServiceEvent.UNREGISTERING:
+            case ServiceEvent.MODIFIED_ENDMATCH:
+                if (services.remove(serviceEvent.getServiceReference()) != null)
+                    context.ungetService(serviceEvent.getServiceReference());
+                break;
+        }
+        rebuildRouter();
+    }
+
+    /**
+     * When an HTTP API service is registered
+     *
+     * @param reference The reference to the service
+     */
+    private void onServiceRegistered(ServiceReference reference) {
+        if (services.containsKey(reference))
+            return;
+        HttpApiService service = (HttpApiService) context.getService(reference);
+        if (service != null)
+            services.put(reference, service);
+    }
+
+    /**
+     * Rebuilds the routing table from the currently registered services
+     */
+    private void rebuildRouter() {
+        router = new XOWLHttpApiRouter(services.values());
+    }
+
     @Override
     public String getIdentifier() {
         return XOWLMainHTTPServer.class.getCanonicalName();
@@ -90,8 +233,9 @@ public class XOWLMainHTTPServer extends HttpServlet implements HTTPServerService
      *
      * @param servletRequest  The request
      * @param servletResponse The response
+     * @throws ServletException When the response failed after being committed and must be aborted
      */
-    private void handleRequest(HttpServletRequest servletRequest, HttpServletResponse servletResponse) {
+    private void handleRequest(HttpServletRequest servletRequest, HttpServletResponse servletResponse) throws ServletException {
         addCORSHeader(servletRequest, servletResponse);
         addCacheControlHeader(servletResponse);
 
@@ -101,30 +245,50 @@ public class XOWLMainHTTPServer extends HttpServlet implements HTTPServerService
             return;
         }
 
-        HttpApiRequest apiRequest = new XOWLHttpApiRequest(servletRequest);
+        XOWLHttpApiRequest apiRequest = new XOWLHttpApiRequest(servletRequest);
         try {
-            Collection<HttpApiService> services = Register.getComponents(HttpApiService.class);
-            HttpApiService service = null;
-            int priority = HttpApiService.CANNOT_HANDLE;
-            for (HttpApiService candidate : services) {
-                int result = candidate.canHandle(apiRequest);
-                if (result > priority) {
-                    service = candidate;
-                    priority = result;
+            XOWLHttpApiRouter.Result route = router.route(apiRequest.getMethod(), apiRequest.getUri());
+            if (route.endpoint == null) {
+                if (route.isMethodNotAllowed()) {
+                    StringBuilder builder = new StringBuilder();
+                    for (String method : route.allowedMethods) {
+                        if (builder.length() > 0)
+                            builder.append(", ");
+                        builder.append(method);
+                    }
+                    servletResponse.setHeader("Allow", builder.toString());
+                    doResponse(servletRequest, servletResponse, null, new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: " + builder.toString()));
+                } else {
+                    servletResponse.setStatus(HttpURLConnection.HTTP_NOT_FOUND);
                 }
-            }
-            if (service == null) {
-                servletResponse.setStatus(HttpURLConnection.HTTP_NOT_FOUND);
                 return;
             }
+            apiRequest.setRoute(route.endpoint.route, route.parameters);
+            HttpApiService service = route.endpoint.service;
             if (service.requireAuth(apiRequest) && !checkAuthentication(securityService, servletRequest, servletResponse)) {
                 servletResponse.setStatus(HttpURLConnection.HTTP_UNAUTHORIZED);
                 return;
             }
-            doResponse(servletResponse, service.handle(securityService, apiRequest));
+            XOWLHttpApiOutputOptions options = serviceOptions.get(service.getIdentifier());
+            if (options == null)
+                options = defaultOptions;
+            apiRequest.setConditional(options.etags);
+            doResponse(servletRequest, servletResponse, options, service.handle(securityService, apiRequest));
         } catch (Throwable exception) {
             Logging.get().error(exception);
-            doResponse(servletResponse, ReplyUtils.toHttpResponse(new ReplyException(exception)));
+            if (servletResponse.isCommitted()) {
+                // the status and a part of the body have been sent, let the container abort the connection
+                // so that the client does not take the truncated body for a complete one
+                throw new ServletException(exception);
+            }
+            servletResponse.reset();
+            addCORSHeader(servletRequest, servletResponse);
+            addCacheControlHeader(servletResponse);
+            try {
+                doResponse(servletRequest, servletResponse, null, ReplyUtils.toHttpResponse(new ReplyException(exception)));
+            } catch (IOException ioException) {
+                Logging.get().error(ioException);
+            }
         } finally {
             securityService.logout();
         }
@@ -166,28 +330,240 @@ public class XOWLMainHTTPServer extends HttpServlet implements HTTPServerService
 
     /**
      * Outputs an API response to the servlet response
+     * When enabled by the options, the body is compressed with an encoding accepted by the client,
+     * and a conditional GET request for an unchanged entity is answered with 304 without a body.
+     * The entity tag is either provided by the service, e.g. from a version counter, or computed from a small enough buffered body.
+     * A service that checked the tag before building the response answers 304 by itself, the response is then passed through.
      *
+     * @param servletRequest  The servlet request
      * @param servletResponse The servlet response to fill
+     * @param options         The options for the output of the response, or null to output it as is
      * @param apiResponse     The API response
+     * @throws IOException When writing a streamed body failed, the response is then incomplete
      */
-    private void doResponse(HttpServletResponse servletResponse, HttpResponse apiResponse) {
-        servletResponse.setStatus(apiResponse.getCode());
+    private void doResponse(HttpServletRequest servletRequest, HttpServletResponse servletResponse, XOWLHttpApiOutputOptions options, HttpResponse apiResponse) throws IOException {
+        boolean notModified = apiResponse.getCode() == HttpURLConnection.HTTP_NOT_MODIFIED;
+        boolean conditional = options != null && options.etags
+                && (apiResponse.getCode() == HttpURLConnection.HTTP_OK || notModified)
+                && HttpConstants.METHOD_GET.equals(servletRequest.getMethod());
+        String etag = null;
         for (Couple<String, String> header : apiResponse.getHeaders()) {
-            servletResponse.addHeader(header.x, header.y);
+            if (conditional && HEADER_ETAG.equalsIgnoreCase(header.x))
+                etag = header.y;
+            else
+                servletResponse.addHeader(header.x, header.y);
+        }
+        if (notModified) {
+            if (etag != null) {
+                // tag the response as the full response would have been
+                String encoding = null;
+                if (options.compression) {
+                    servletResponse.addHeader("Vary", HEADER_ACCEPT_ENCODING);
+                    encoding = negotiateEncoding(servletRequest);
+                }
+                servletResponse.setHeader("Cache-Control", "private, no-cache, must-revalidate");
+                servletResponse.setHeader(HEADER_ETAG, getETagForEncoding(etag, encoding));
+            }
+            servletResponse.setStatus(HttpURLConnection.HTTP_NOT_MODIFIED);
+            return;
         }
+        boolean isStreamed = apiResponse instanceof HttpResponseStreamed;
+        byte[] body = isStreamed ? null : apiResponse.getBodyAsBytes();
+        if (conditional && etag == null && body != null && body.length <= options.etagsMaxSize)
+            etag = computeETag(body);
+
+        String encoding = null;
+        if (options != null && options.compression
+                && (isStreamed || (body != null && body.length >= options.compressionMinSize))
+                && isCompressible(apiResponse.getContentType())) {
+            servletResponse.addHeader("Vary", HEADER_ACCEPT_ENCODING);
+            encoding = negotiateEncoding(servletRequest);
+        }
+
+        if (etag != null) {
+            // let the client cache the response, provided it is revalidated
+            servletResponse.setHeader("Cache-Control", "private, no-cache, must-revalidate");
+            servletResponse.setHeader(HEADER_ETAG, getETagForEncoding(etag, encoding));
+            if (matchesETag(servletRequest, etag)) {
+                servletResponse.setStatus(HttpURLConnection.HTTP_NOT_MODIFIED);
+                return;
+            }
+        }
+
+        servletResponse.setStatus(apiResponse.getCode());
         if (apiResponse.getContentType() != null)
             servletResponse.setContentType(apiResponse.getContentType());
-        if (apiResponse.getBodyAsBytes() != null) {
-            servletResponse.setContentLength(apiResponse.getBodyAsBytes().length);
-            try (OutputStream os = servletResponse.getOutputStream()) {
-                os.write(apiResponse.getBodyAsBytes());
-                os.flush();
+        if (encoding != null)
+            servletResponse.setHeader(HEADER_CONTENT_ENCODING, encoding);
+        if (isStreamed) {
+            // the body is directly written to the client without buffering
+            // on failure, the stream is not closed so that the body is not properly terminated
+            OutputStream os = encode(servletResponse.getOutputStream(), encoding);
+            ((HttpResponseStreamed) apiResponse).writeBody(os);
+            os.flush();
+            os.close();
+        } else if (body != null) {
+            try {
+                if (encoding != null) {
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream(body.length / 4 + 64);
+                    try (OutputStream os = encode(buffer, encoding)) {
+                        os.write(body);
+                    }
+                    body = buffer.toByteArray();
+                }
+                servletResponse.setContentLength(body.length);
+                try (OutputStream os = servletResponse.getOutputStream()) {
+                    os.write(body);
+                    os.flush();
+                }
             } catch (IOException exception) {
                 Logging.get().error(exception);
             }
         }
     }
 
+    /**
+     * Computes a strong entity tag for a response's body
+     *
+     * @param body The response's body
+     * @return The entity tag, or null if it cannot be computed
+     */
+    private static String computeETag(byte[] body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(body);
+            StringBuilder builder = new StringBuilder("\"");
+            for (int i = 0; i != hash.length; i++) {
+                builder.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+                builder.append(Character.forDigit(hash[i] & 0xF, 16));
+            }
+            builder.append("\"");
+            return builder.toString();
+        } catch (NoSuchAlgorithmException exception) {
+            Logging.get().error(exception);
+            return null;
+        }
+    }
+
+    /**
+     * Gets the entity tag of the representation of an entity for a content encoding
+     * The compressed representations have distinct strong entity tags.
+     *
+     * @param etag     The entity tag of the entity
+     * @param encoding The content encoding, if any
+     * @return The entity tag for the representation
+     */
+    private static String getETagForEncoding(String etag, String encoding) {
+        if (encoding == null || !etag.endsWith("\""))
+            return etag;
+        return etag.substring(0, etag.length() - 1) + "-" + encoding + "\"";
+    }
+
+    /**
+     * Gets whether the entity tags of a conditional request match the entity tag of an entity
+     *
+     * @param request The request
+     * @param etag    The entity tag of the entity
+     * @return Whether a tag matches
+     */
+    static boolean matchesETag(HttpServletRequest request, String etag) {
+        Enumeration<String> values = request.getHeaders(HEADER_IF_NONE_MATCH);
+        if (values == null)
+            return false;
+        while (values.hasMoreElements()) {
+            String[] tags = values.nextElement().split(",");
+            for (int i = 0; i != tags.length; i++) {
+                String tag = tags[i].trim();
+                if (tag.equals("*"))
+                    return true;
+                // the weak comparison is used for If-None-Match
+                if (tag.startsWith("W/"))
+                    tag = tag.substring(2);
+                if (tag.equals(etag)
+                        || tag.equals(getETagForEncoding(etag, ENCODING_GZIP))
+                        || tag.equals(getETagForEncoding(etag, ENCODING_DEFLATE)))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets whether a content type is worth compressing
+     *
+     * @param contentType The content type
+     * @return Whether the content type is worth compressing
+     */
+    private static boolean isCompressible(String contentType) {
+        if (contentType == null)
+            return false;
+        contentType = contentType.toLowerCase();
+        return !(contentType.startsWith("image/")
+                || contentType.startsWith("audio/")
+                || contentType.startsWith("video/")
+                || contentType.contains("zip")
+                || contentType.contains("octet-stream"));
+    }
+
+    /**
+     * Negotiates the content encoding of the response with the client
+     *
+     * @param request The request
+     * @return The content encoding to use, or null if the body shall not be encoded
+     */
+    private static String negotiateEncoding(HttpServletRequest request) {
+        boolean acceptGzip = false;
+        boolean acceptDeflate = false;
+        Enumeration<String> values = request.getHeaders(HEADER_ACCEPT_ENCODING);
+        if (values == null)
+            return null;
+        while (values.hasMoreElements()) {
+            String[] codings = values.nextElement().split(",");
+            for (int i = 0; i != codings.length; i++) {
+                String[] parts = codings[i].split(";");
+                String coding = parts[0].trim().toLowerCase();
+                float quality = 1;
+                for (int j = 1; j != parts.length; j++) {
+                    String parameter = parts[j].trim();
+                    if (parameter.startsWith("q=")) {
+                        try {
+                            quality = Float.parseFloat(parameter.substring(2));
+                        } catch (NumberFormatException exception) {
+                            quality = 0;
+                        }
+                    }
+                }
+                if (quality <= 0)
+                    continue;
+                if (ENCODING_GZIP.equals(coding))
+                    acceptGzip = true;
+                else if (ENCODING_DEFLATE.equals(coding))
+                    acceptDeflate = true;
+            }
+        }
+        if (acceptGzip)
+            return ENCODING_GZIP;
+        if (acceptDeflate)
+            return ENCODING_DEFLATE;
+        return null;
+    }
+
+    /**
+     * Wraps an output stream so that the written data are encoded
+     *
+     * @param stream   The stream to wrap
+     * @param encoding The content encoding, if any
+     * @return The stream to write to
+     * @throws IOException When an error occurred while initializing the encoding
+     */
+    private static OutputStream encode(OutputStream stream, String encoding) throws IOException {
+        if (ENCODING_GZIP.equals(encoding))
+            return new GZIPOutputStream(stream, 8192);
+        if (ENCODING_DEFLATE.equals(encoding))
+            return new DeflaterOutputStream(stream);
+        return stream;
+    }
+
     /**
      * Adds the cache control headers a response
      *
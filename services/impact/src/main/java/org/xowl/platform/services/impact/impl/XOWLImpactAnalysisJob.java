@@ -22,7 +22,6 @@ import fr.cenotelie.commons.utils.api.Reply;
 import fr.cenotelie.commons.utils.api.ReplyResult;
 import fr.cenotelie.commons.utils.logging.Logging;
 import fr.cenotelie.hime.redist.ASTNode;
-import org.xowl.infra.store.RDFUtils;
 import org.xowl.infra.store.Vocabulary;
 import org.xowl.infra.store.rdf.*;
 import org.xowl.infra.store.sparql.Result;
@@ -32,6 +31,7 @@ import org.xowl.platform.kernel.PlatformUtils;
 import org.xowl.platform.kernel.Register;
 import org.xowl.platform.kernel.ReplyServiceUnavailable;
 import org.xowl.platform.kernel.jobs.JobBase;
+import org.xowl.platform.kernel.platform.PlatformUser;
 import org.xowl.platform.kernel.security.SecurityService;
 import org.xowl.platform.services.impact.ImpactAnalysisFilterLink;
 import org.xowl.platform.services.impact.ImpactAnalysisFilterType;
@@ -40,10 +40,11 @@ import org.xowl.platform.services.impact.ImpactAnalysisSetup;
 import org.xowl.platform.services.storage.StorageService;
 import org.xowl.platform.services.storage.TripleStore;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Represents a job that performs an impact analysis
@@ -51,6 +52,11 @@ import java.util.Map;
  * @author Laurent Wouters
  */
 class XOWLImpactAnalysisJob extends JobBase {
+    /**
+     * The maximum number of nodes described by a single query when the service is not available
+     */
+    private static final int BATCH_SIZE = 256;
+
     /**
      * The analysis setup
      */
@@ -157,87 +163,152 @@ class XOWLImpactAnalysisJob extends JobBase {
 
     /**
      * Browse the graph while applying the link filters on it
+     * The graph is explored breadth-first, one degree at a time.
+     * The nodes of a degree are described by batches of bounded size, possibly in parallel on the executor shared by the service.
      *
      * @param live       The live data base
      * @param finalParts The result parts to build
      */
     private void browseGraph(TripleStore live, List<XOWLImpactAnalysisResultPart> finalParts) {
-        List<XOWLImpactAnalysisResultPart> parts = new ArrayList<>();
-        parts.add(new XOWLImpactAnalysisResultPart(setup.getRoot()));
-        int i = 0;
-        while (i != parts.size()) {
-            int length = browseGraph(live, parts, i);
-            if (length == 0)
-                return;
-            for (int j = i; j != i + length; j++) {
-                XOWLImpactAnalysisResultPart current = parts.get(j);
+        XOWLImpactAnalysisResultPart root = new XOWLImpactAnalysisResultPart(setup.getRoot());
+        Map<String, XOWLImpactAnalysisResultPart> visited = new HashMap<>();
+        visited.put(root.getNode().getIRIValue(), root);
+        List<XOWLImpactAnalysisResultPart> frontier = new ArrayList<>();
+        frontier.add(root);
+        float degrees = Math.max(setup.getDegree(), 0) + 1;
+        ImpactAnalysisService service = Register.getComponent(ImpactAnalysisService.class);
+        int batchSize = service instanceof XOWLImpactAnalysisService ? ((XOWLImpactAnalysisService) service).getBatchSize() : BATCH_SIZE;
+        ExecutorService executor = service instanceof XOWLImpactAnalysisService ? ((XOWLImpactAnalysisService) service).getExecutor() : null;
+        while (!frontier.isEmpty()) {
+            int degree = frontier.get(0).getDegree();
+            List<List<XOWLImpactAnalysisResultPart>> batches = new ArrayList<>();
+            for (int i = 0; i < frontier.size(); i += batchSize)
+                batches.add(frontier.subList(i, Math.min(i + batchSize, frontier.size())));
+            List<Future<Collection<Quad>>> futures = null;
+            if (batches.size() > 1 && executor != null) {
+                futures = new ArrayList<>(batches.size());
+                for (List<XOWLImpactAnalysisResultPart> batch : batches)
+                    futures.add(executor.submit(newDescribeTask(live, batch)));
+            }
+            List<XOWLImpactAnalysisResultPart> next = new ArrayList<>();
+            for (int i = 0; i != batches.size(); i++) {
+                Collection<Quad> quads = futures == null ? describe(live, batches.get(i)) : await(futures.get(i));
+                if (quads == null) {
+                    if (futures != null) {
+                        for (Future<Collection<Quad>> future : futures)
+                            future.cancel(true);
+                    }
+                    return;
+                }
+                browseGraph(batches.get(i), quads, visited, next);
+                completionRate = Math.min((degree + (i + 1) / (float) batches.size()) / degrees, 0.99f);
+            }
+            for (XOWLImpactAnalysisResultPart current : frontier) {
                 if (applyTypeFilter(current))
                     finalParts.add(current);
             }
-            i += length;
+            frontier = next;
+        }
+    }
+
+    /**
+     * Creates a task that describes a batch of nodes on behalf of the owner of this job
+     *
+     * @param live  The live data base
+     * @param batch The nodes to describe
+     * @return The task
+     */
+    private Callable<Collection<Quad>> newDescribeTask(final TripleStore live, final List<XOWLImpactAnalysisResultPart> batch) {
+        final PlatformUser owner = getOwner();
+        return new Callable<Collection<Quad>>() {
+            @Override
+            public Collection<Quad> call() {
+                SecurityService securityService = Register.getComponent(SecurityService.class);
+                if (securityService == null)
+                    return null;
+                securityService.authenticate(owner);
+                try {
+                    return describe(live, batch);
+                } finally {
+                    securityService.logout();
+                }
+            }
+        };
+    }
+
+    /**
+     * Waits for the description of a batch of nodes
+     *
+     * @param future The future description
+     * @return The quads describing the nodes, or null if the description failed
+     */
+    private static Collection<Quad> await(Future<Collection<Quad>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException | ExecutionException exception) {
+            Logging.get().error(exception);
+            return null;
         }
     }
 
     /**
-     * Browses the graph for a range of nodes
+     * Describes a batch of nodes
      *
      * @param live  The live data base
-     * @param parts The current parts
-     * @param start The starting index of the parts to explorer
-     * @return The number of parts explored
+     * @param batch The nodes to describe
+     * @return The quads describing the nodes, or null if the description failed
      */
-    private int browseGraph(TripleStore live, List<XOWLImpactAnalysisResultPart> parts, int start) {
-        int length = parts.size() - start;
+    private static Collection<Quad> describe(TripleStore live, List<XOWLImpactAnalysisResultPart> batch) {
         StringBuilder builder = new StringBuilder("DESCRIBE");
-        for (int i = start; i != parts.size(); i++) {
+        for (XOWLImpactAnalysisResultPart part : batch) {
             builder.append(" <");
-            builder.append(TextUtils.escapeAbsoluteURIW3C(parts.get(i).getNode().getIRIValue()));
+            builder.append(TextUtils.escapeAbsoluteURIW3C(part.getNode().getIRIValue()));
             builder.append(">");
         }
         Reply reply = live.sparql(builder.toString(), null, null);
         if (!reply.isSuccess()) {
             Logging.get().error(reply.getMessage());
-            return 0;
+            return null;
         }
         Result result = ((ReplyResult<Result>) reply).getData();
         if (!result.isSuccess()) {
             Logging.get().error(((ResultFailure) result).getMessage());
-            return 0;
-        }
-        Collection<Quad> quads = ((ResultQuads) result).getQuads();
-        Map<SubjectNode, Collection<Quad>> data = PlatformUtils.mapBySubject(quads);
-        for (Map.Entry<SubjectNode, Collection<Quad>> entry : data.entrySet()) {
-            if (entry.getKey().getNodeType() == Node.TYPE_IRI)
-                browseGraph(parts, start, (IRINode) entry.getKey(), entry.getValue());
+            return null;
         }
-        return length;
+        return ((ResultQuads) result).getQuads();
     }
 
     /**
-     * Browses the graph for a set of new quads
+     * Browses the graph from a batch of described nodes
      *
-     * @param parts   The current parts
-     * @param start   The starting index of the parts to explorer
-     * @param subject The subject to look for
-     * @param quads   The incoming quads
+     * @param batch   The described nodes
+     * @param quads   The quads describing the nodes
+     * @param visited The visited nodes, by IRI
+     * @param next    The nodes to explore at the next degree
      */
-    private void browseGraph(List<XOWLImpactAnalysisResultPart> parts, int start, IRINode subject, Collection<Quad> quads) {
-        for (int i = start; i != parts.size(); i++) {
-            if (RDFUtils.same(parts.get(i).getNode(), subject)) {
-                browseGraph(parts, parts.get(i), quads);
-                return;
-            }
+    private void browseGraph(List<XOWLImpactAnalysisResultPart> batch, Collection<Quad> quads, Map<String, XOWLImpactAnalysisResultPart> visited, List<XOWLImpactAnalysisResultPart> next) {
+        Map<String, XOWLImpactAnalysisResultPart> described = new HashMap<>();
+        for (XOWLImpactAnalysisResultPart part : batch)
+            described.put(part.getNode().getIRIValue(), part);
+        Map<SubjectNode, Collection<Quad>> data = PlatformUtils.mapBySubject(quads);
+        for (Map.Entry<SubjectNode, Collection<Quad>> entry : data.entrySet()) {
+            if (entry.getKey().getNodeType() != Node.TYPE_IRI)
+                continue;
+            XOWLImpactAnalysisResultPart current = described.get(((IRINode) entry.getKey()).getIRIValue());
+            if (current != null)
+                browseGraph(current, entry.getValue(), visited, next);
         }
     }
 
     /**
      * Browses the graph for a set of new quads
      *
-     * @param parts   The current parts
      * @param current The current part to explore
      * @param quads   The incoming quads
+     * @param visited The visited nodes, by IRI
+     * @param next    The nodes to explore at the next degree
      */
-    private void browseGraph(List<XOWLImpactAnalysisResultPart> parts, XOWLImpactAnalysisResultPart current, Collection<Quad> quads) {
+    private void browseGraph(XOWLImpactAnalysisResultPart current, Collection<Quad> quads, Map<String, XOWLImpactAnalysisResultPart> visited, List<XOWLImpactAnalysisResultPart> next) {
         for (Quad quad : quads) {
             IRINode property = (IRINode) quad.getProperty();
             String propertyName = property.getIRIValue();
@@ -255,16 +326,14 @@ class XOWLImpactAnalysisJob extends JobBase {
                     continue;
                 if (current.getDegree() >= setup.getDegree())
                     continue;
-                boolean found = false;
-                for (XOWLImpactAnalysisResultPart part : parts) {
-                    if (part.getNode().equals(quad.getObject())) {
-                        part.addPaths(current, property);
-                        found = true;
-                        break;
-                    }
-                }
-                if (!found) {
-                    parts.add(new XOWLImpactAnalysisResultPart(current, property, (IRINode) quad.getObject()));
+                IRINode target = (IRINode) quad.getObject();
+                XOWLImpactAnalysisResultPart part = visited.get(target.getIRIValue());
+                if (part != null) {
+                    part.addPaths(current, property);
+                } else {
+                    part = new XOWLImpactAnalysisResultPart(current, property, target);
+                    visited.put(target.getIRIValue(), part);
+                    next.add(part);
                 }
             }
         }
@@ -25,9 +25,12 @@ import fr.cenotelie.commons.utils.api.ReplyResult;
 import fr.cenotelie.commons.utils.api.ReplyUtils;
 import fr.cenotelie.commons.utils.http.HttpConstants;
 import fr.cenotelie.commons.utils.http.HttpResponse;
+import fr.cenotelie.commons.utils.ini.IniDocument;
 import fr.cenotelie.commons.utils.json.Json;
 import fr.cenotelie.commons.utils.logging.BufferedLogger;
+import fr.cenotelie.commons.utils.logging.Logging;
 import fr.cenotelie.hime.redist.ASTNode;
+import org.xowl.platform.kernel.ConfigurationService;
 import org.xowl.platform.kernel.PlatformHttp;
 import org.xowl.platform.kernel.PlatformUtils;
 import org.xowl.platform.kernel.Register;
@@ -38,11 +41,16 @@ import org.xowl.platform.kernel.security.SecurityService;
 import org.xowl.platform.kernel.webapi.HttpApiRequest;
 import org.xowl.platform.kernel.webapi.HttpApiResource;
 import org.xowl.platform.kernel.webapi.HttpApiResourceBase;
+import org.xowl.platform.kernel.webapi.HttpApiRoute;
 import org.xowl.platform.kernel.webapi.HttpApiService;
 import org.xowl.platform.services.impact.ImpactAnalysisService;
 import org.xowl.platform.services.impact.ImpactAnalysisSetup;
 
 import java.net.HttpURLConnection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implements the impact analysis service
@@ -62,17 +70,89 @@ public class XOWLImpactAnalysisService implements ImpactAnalysisService, HttpApi
      * The resource for the API's schema
      */
     private static final HttpApiResource RESOURCE_SCHEMA = new HttpApiResourceBase(XOWLImpactAnalysisService.class, "/org/xowl/platform/services/impact/schema_platform_impact.json", "Impact Analysis Service - Schema", HttpConstants.MIME_JSON);
+    /**
+     * The default maximum number of nodes described by a single query
+     */
+    private static final int DESCRIBE_BATCH_SIZE = 256;
+    /**
+     * The default maximum number of queries executed in parallel
+     */
+    private static final int DESCRIBE_PARALLELISM = 4;
 
     /**
      * The URI for the API services
      */
     private final String apiUri;
+    /**
+     * The route for the impact analysis resource
+     */
+    private final HttpApiRoute routeAnalysis;
+    /**
+     * The maximum number of nodes described by a single query
+     */
+    private final int batchSize;
+    /**
+     * The maximum number of queries executed in parallel
+     */
+    private final int parallelism;
+    /**
+     * The executor shared by the analyses for describing batches of nodes in parallel, if any
+     */
+    private final ExecutorService executor;
 
     /**
      * Initializes this service
      */
     public XOWLImpactAnalysisService() {
+        ConfigurationService configurationService = Register.getComponent(ConfigurationService.class);
+        IniDocument configuration = configurationService.getConfigFor(ImpactAnalysisService.class.getCanonicalName());
         this.apiUri = PlatformHttp.getUriPrefixApi() + "/services/impact";
+        this.routeAnalysis = new HttpApiRoute(apiUri, HttpConstants.METHOD_POST);
+        int describeBatchSize = DESCRIBE_BATCH_SIZE;
+        int describeParallelism = DESCRIBE_PARALLELISM;
+        try {
+            String value = configuration.get("describe", "batchSize");
+            if (value != null)
+                describeBatchSize = Integer.parseInt(value);
+            value = configuration.get("describe", "parallelism");
+            if (value != null)
+                describeParallelism = Integer.parseInt(value);
+        } catch (NumberFormatException exception) {
+            Logging.get().error(exception);
+        }
+        this.batchSize = Math.max(1, describeBatchSize);
+        this.parallelism = Math.max(1, describeParallelism);
+        this.executor = parallelism > 1 ? Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            /**
+             * The number of created threads
+             */
+            private final AtomicInteger count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, XOWLImpactAnalysisService.class.getCanonicalName() + ".Describer" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }) : null;
+    }
+
+    /**
+     * Gets the maximum number of nodes described by a single query
+     *
+     * @return The maximum number of nodes described by a single query
+     */
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Gets the executor shared by the analyses for describing batches of nodes in parallel
+     *
+     * @return The executor, or null if the batches are described sequentially
+     */
+    ExecutorService getExecutor() {
+        return executor;
     }
 
     @Override
@@ -91,10 +171,10 @@ public class XOWLImpactAnalysisService implements ImpactAnalysisService, HttpApi
     }
 
     @Override
-    public int canHandle(HttpApiRequest request) {
-        return request.getUri().startsWith(apiUri)
-                ? HttpApiService.PRIORITY_NORMAL
-                : HttpApiService.CANNOT_HANDLE;
+    public HttpApiRoute[] getRoutes() {
+        return new HttpApiRoute[]{
+                routeAnalysis
+        };
     }
 
     @Override
@@ -104,8 +184,6 @@ public class XOWLImpactAnalysisService implements ImpactAnalysisService, HttpApi
 
     @Override
     public HttpResponse handle(SecurityService securityService, HttpApiRequest request) {
-        if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
         byte[] content = request.getContent();
         if (content == null || content.length == 0)
             return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
@@ -24,6 +24,7 @@ import org.xowl.platform.kernel.Register;
 import org.xowl.platform.kernel.RegisterWaiter;
 import org.xowl.platform.kernel.Service;
 import org.xowl.platform.kernel.security.SecuredService;
+import org.xowl.platform.kernel.statistics.MeasurableService;
 import org.xowl.platform.kernel.webapi.HttpApiService;
 import org.xowl.platform.services.importation.impl.XOWLImportationService;
 
@@ -42,6 +43,7 @@ public class Activator implements BundleActivator {
                 bundleContext.registerService(Service.class, service, null);
                 bundleContext.registerService(SecuredService.class, service, null);
                 bundleContext.registerService(HttpApiService.class, service, null);
+                bundleContext.registerService(MeasurableService.class, service, null);
                 bundleContext.registerService(ImportationService.class, service, null);
             }
         }, bundleContext);
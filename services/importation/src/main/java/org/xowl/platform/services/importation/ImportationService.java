@@ -18,11 +18,16 @@
 package org.xowl.platform.services.importation;
 
 import fr.cenotelie.commons.utils.api.Reply;
+import fr.cenotelie.commons.utils.collections.Couple;
+import fr.cenotelie.commons.utils.metrics.Metric;
+import fr.cenotelie.commons.utils.metrics.MetricBase;
 import org.xowl.platform.kernel.artifacts.Artifact;
 import org.xowl.platform.kernel.security.SecuredAction;
 import org.xowl.platform.kernel.security.SecuredActionPolicyIsResourceOwner;
 import org.xowl.platform.kernel.security.SecuredService;
+import org.xowl.platform.kernel.statistics.MeasurableService;
 
+import java.io.InputStream;
 import java.util.Collection;
 
 /**
@@ -30,7 +35,26 @@ import java.util.Collection;
  *
  * @author Laurent Wouters
  */
-public interface ImportationService extends SecuredService {
+public interface ImportationService extends SecuredService, MeasurableService {
+    /**
+     * The metric for the total number of uploaded bytes
+     */
+    Metric METRIC_UPLOADED_BYTES = new MetricBase(ImportationService.class.getCanonicalName() + ".UploadedBytes",
+            "Importation Service - Uploaded bytes",
+            "bytes",
+            1000000000,
+            new Couple<>(Metric.HINT_IS_NUMERIC, "true"),
+            new Couple<>(Metric.HINT_MIN_VALUE, "0"));
+    /**
+     * The metric for the throughput of the last completed upload
+     */
+    Metric METRIC_UPLOAD_THROUGHPUT = new MetricBase(ImportationService.class.getCanonicalName() + ".UploadThroughput",
+            "Importation Service - Upload throughput",
+            "bytes/s",
+            1000000000,
+            new Couple<>(Metric.HINT_IS_NUMERIC, "true"),
+            new Couple<>(Metric.HINT_MIN_VALUE, "0"));
+
     /**
      * Service action to upload documents
      */
@@ -83,6 +107,17 @@ public interface ImportationService extends SecuredService {
      */
     Reply upload(String name, String originalFileName, byte[] content);
 
+    /**
+     * Uploads a new document whose content is read from a stream
+     * The content is spooled to the storage without being buffered in memory.
+     *
+     * @param name             The document 's name
+     * @param originalFileName The original client's file name
+     * @param content          The stream for the document's content
+     * @return The document
+     */
+    Reply upload(String name, String originalFileName, InputStream content);
+
     /**
      * Drops the specified document
      *
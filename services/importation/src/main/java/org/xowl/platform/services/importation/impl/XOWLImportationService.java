@@ -22,10 +22,12 @@ import fr.cenotelie.commons.utils.TextUtils;
 import fr.cenotelie.commons.utils.api.*;
 import fr.cenotelie.commons.utils.http.HttpConstants;
 import fr.cenotelie.commons.utils.http.HttpResponse;
-import fr.cenotelie.commons.utils.http.URIUtils;
 import fr.cenotelie.commons.utils.ini.IniDocument;
 import fr.cenotelie.commons.utils.json.Json;
 import fr.cenotelie.commons.utils.logging.Logging;
+import fr.cenotelie.commons.utils.metrics.Metric;
+import fr.cenotelie.commons.utils.metrics.MetricSnapshot;
+import fr.cenotelie.commons.utils.metrics.MetricSnapshotLong;
 import fr.cenotelie.hime.redist.ASTNode;
 import org.xowl.platform.kernel.*;
 import org.xowl.platform.kernel.artifacts.Artifact;
@@ -39,12 +41,21 @@ import org.xowl.platform.kernel.security.SecurityService;
 import org.xowl.platform.kernel.webapi.HttpApiRequest;
 import org.xowl.platform.kernel.webapi.HttpApiResource;
 import org.xowl.platform.kernel.webapi.HttpApiResourceBase;
+import org.xowl.platform.kernel.webapi.HttpApiRoute;
 import org.xowl.platform.kernel.webapi.HttpApiService;
 import org.xowl.platform.services.importation.*;
 
 import java.io.*;
 import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implements the importation service for the platform
@@ -64,11 +75,59 @@ public class XOWLImportationService implements ImportationService, HttpApiServic
      * The resource for the API's schema
      */
     private static final HttpApiResource RESOURCE_SCHEMA = new HttpApiResourceBase(XOWLImportationService.class, "/org/xowl/platform/services/importation/schema_platform_importation.json", "Importation Service - Schema", HttpConstants.MIME_JSON);
+    /**
+     * The default maximum size in bytes of an uploaded document, 0 for no limit
+     */
+    private static final long DEFAULT_UPLOAD_MAX_SIZE = 0;
+    /**
+     * The size of the buffer for spooling an uploaded document to the storage
+     */
+    private static final int UPLOAD_BUFFER_SIZE = 65536;
+    /**
+     * The suffix of the files for the documents being uploaded
+     */
+    private static final String SUFFIX_PART = ".part";
 
     /**
      * The URI for the API services
      */
     private final String apiUri;
+    /**
+     * The route for the importers resource
+     */
+    private final HttpApiRoute routeImporters;
+    /**
+     * The route for a specific importer
+     */
+    private final HttpApiRoute routeImporter;
+    /**
+     * The route for the configurations of an importer
+     */
+    private final HttpApiRoute routeImporterConfigurations;
+    /**
+     * The route for the documents resource
+     */
+    private final HttpApiRoute routeDocuments;
+    /**
+     * The route for a specific document
+     */
+    private final HttpApiRoute routeDocument;
+    /**
+     * The route for previewing the importation of a document
+     */
+    private final HttpApiRoute routeDocumentPreview;
+    /**
+     * The route for importing a document
+     */
+    private final HttpApiRoute routeDocumentImport;
+    /**
+     * The route for the configurations resource
+     */
+    private final HttpApiRoute routeConfigurations;
+    /**
+     * The route for a specific configuration
+     */
+    private final HttpApiRoute routeConfiguration;
     /**
      * The current documents pending importation
      */
@@ -81,14 +140,38 @@ public class XOWLImportationService implements ImportationService, HttpApiServic
      * The directory for the persistent storage of the documents
      */
     private File storage;
+    /**
+     * The maximum size in bytes of an uploaded document, 0 for no limit
+     */
+    private long uploadMaxSize;
+    /**
+     * The total number of uploaded bytes
+     */
+    private final AtomicLong uploadedBytes;
+    /**
+     * The throughput in bytes per second of the last completed upload
+     */
+    private volatile long uploadThroughput;
 
     /**
      * Initializes this service
      */
     public XOWLImportationService() {
         this.apiUri = PlatformHttp.getUriPrefixApi() + "/services/importation";
+        this.routeImporters = new HttpApiRoute(apiUri + "/importers", HttpConstants.METHOD_GET);
+        this.routeImporter = new HttpApiRoute(apiUri + "/importers/{importerId}", HttpConstants.METHOD_GET);
+        this.routeImporterConfigurations = new HttpApiRoute(apiUri + "/importers/{importerId}/configurations", HttpConstants.METHOD_GET);
+        this.routeDocuments = new HttpApiRoute(apiUri + "/documents", HttpConstants.METHOD_GET, HttpConstants.METHOD_PUT);
+        this.routeDocument = new HttpApiRoute(apiUri + "/documents/{documentId}", HttpConstants.METHOD_GET, HttpConstants.METHOD_DELETE);
+        this.routeDocumentPreview = new HttpApiRoute(apiUri + "/documents/{documentId}/preview", HttpConstants.METHOD_POST);
+        this.routeDocumentImport = new HttpApiRoute(apiUri + "/documents/{documentId}/import", HttpConstants.METHOD_POST);
+        this.routeConfigurations = new HttpApiRoute(apiUri + "/configurations", HttpConstants.METHOD_GET, HttpConstants.METHOD_PUT);
+        this.routeConfiguration = new HttpApiRoute(apiUri + "/configurations/{configurationId}", HttpConstants.METHOD_GET, HttpConstants.METHOD_DELETE);
         this.documents = new HashMap<>();
         this.configurations = new HashMap<>();
+        this.uploadMaxSize = DEFAULT_UPLOAD_MAX_SIZE;
+        this.uploadedBytes = new AtomicLong(0);
+        this.uploadThroughput = 0;
     }
 
     /**
@@ -98,6 +181,13 @@ public class XOWLImportationService implements ImportationService, HttpApiServic
         if (storage == null) {
             ConfigurationService configurationService = Register.getComponent(ConfigurationService.class);
             IniDocument configuration = configurationService.getConfigFor(ImportationService.class.getCanonicalName());
+            try {
+                String value = configuration.get("uploadMaxSize");
+                if (value != null)
+                    uploadMaxSize = Long.parseLong(value);
+            } catch (NumberFormatException exception) {
+                Logging.get().error(exception);
+            }
             storage = PlatformUtils.resolve(configuration.get("storage"));
             reloadDocuments();
         }
@@ -119,6 +209,10 @@ public class XOWLImportationService implements ImportationService, HttpApiServic
                     } catch (IOException exception) {
                         Logging.get().error(exception);
                     }
+                } else if (files[i].getName().endsWith(SUFFIX_PART)) {
+                    // an upload that did not complete
+                    if (!files[i].delete())
+                        Logging.get().error("Failed to delete " + files[i].getAbsolutePath());
                 } else if (isConfigurationFile(files[i].getName())) {
                     try (Reader reader = IOUtils.getReader(files[i].getAbsolutePath())) {
                         String content = IOUtils.read(reader);
@@ -191,10 +285,18 @@ public class XOWLImportationService implements ImportationService, HttpApiServic
     }
 
     @Override
-    public int canHandle(HttpApiRequest request) {
-        return request.getUri().startsWith(apiUri)
-                ? HttpApiService.PRIORITY_NORMAL
-                : HttpApiService.CANNOT_HANDLE;
+    public HttpApiRoute[] getRoutes() {
+        return new HttpApiRoute[]{
+                routeImporters,
+                routeImporter,
+                routeImporterConfigurations,
+                routeDocuments,
+                routeDocument,
+                routeDocumentPreview,
+                routeDocumentImport,
+                routeConfigurations,
+                routeConfiguration
+        };
     }
 
     @Override
@@ -204,78 +306,38 @@ public class XOWLImportationService implements ImportationService, HttpApiServic
 
     @Override
     public HttpResponse handle(SecurityService securityService, HttpApiRequest request) {
-        if (request.getUri().equals(apiUri + "/importers")) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
+        HttpApiRoute route = request.getRoute();
+        if (route == routeImporters)
             return onGetImporters();
-        } else if (request.getUri().equals(apiUri + "/documents")) {
-            switch (request.getMethod()) {
-                case HttpConstants.METHOD_GET:
-                    return onGetDocuments();
-                case HttpConstants.METHOD_PUT:
-                    return onPutDocument(request);
-            }
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: GET, PUT");
-        } else if (request.getUri().equals(apiUri + "/configurations")) {
-            switch (request.getMethod()) {
-                case HttpConstants.METHOD_GET:
-                    return onGetConfigurations();
-                case HttpConstants.METHOD_PUT:
-                    return onPutConfiguration(request);
-            }
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: GET, PUT");
-        } else if (request.getUri().startsWith(apiUri + "/importers")) {
-            String rest = request.getUri().substring(apiUri.length() + "/importers".length() + 1);
-            if (rest.isEmpty())
-                return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-            int index = rest.indexOf("/");
-            String importerId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-            if (index < 0) {
-                if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-                return onGetImporter(importerId);
-            } else {
-                if ("/configurations".equals(rest.substring(index)))
-                    return onGetConfigurationsFor(importerId);
-            }
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-        } else if (request.getUri().startsWith(apiUri + "/documents")) {
-            String rest = request.getUri().substring(apiUri.length() + "/documents".length() + 1);
-            if (rest.isEmpty())
-                return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-            int index = rest.indexOf("/");
-            String documentId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-            if (index < 0) {
-                switch (request.getMethod()) {
-                    case HttpConstants.METHOD_GET:
-                        return onGetDocument(documentId);
-                    case HttpConstants.METHOD_DELETE:
-                        return onPostDropDocument(documentId);
-                }
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: GET, DELETE");
-            } else {
-                switch (rest.substring(index)) {
-                    case "/preview":
-                        return onGetPreview(documentId, request);
-                    case "/import":
-                        return onBeginImport(documentId, request);
-                }
-            }
-        } else if (request.getUri().startsWith(apiUri + "/configurations")) {
-            String rest = request.getUri().substring(apiUri.length() + "/configurations".length() + 1);
-            if (rest.isEmpty())
-                return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-            int index = rest.indexOf("/");
-            String configurationId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-            if (index < 0) {
-                switch (request.getMethod()) {
-                    case HttpConstants.METHOD_GET:
-                        return onGetConfiguration(configurationId);
-                    case HttpConstants.METHOD_DELETE:
-                        return onPostDeleteConfiguration(configurationId);
-                }
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: GET, DELETE");
-            }
+        if (route == routeImporter)
+            return onGetImporter(request.getPathParameter("importerId"));
+        if (route == routeImporterConfigurations)
+            return onGetConfigurationsFor(request.getPathParameter("importerId"));
+        if (route == routeDocuments) {
+            if (HttpConstants.METHOD_PUT.equals(request.getMethod()))
+                return onPutDocument(request);
+            return onGetDocuments();
+        }
+        if (route == routeDocument) {
+            String documentId = request.getPathParameter("documentId");
+            if (HttpConstants.METHOD_DELETE.equals(request.getMethod()))
+                return onPostDropDocument(documentId);
+            return onGetDocument(documentId);
+        }
+        if (route == routeDocumentPreview)
+            return onGetPreview(request.getPathParameter("documentId"), request);
+        if (route == routeDocumentImport)
+            return onBeginImport(request.getPathParameter("documentId"), request);
+        if (route == routeConfigurations) {
+            if (HttpConstants.METHOD_PUT.equals(request.getMethod()))
+                return onPutConfiguration(request);
+            return onGetConfigurations();
+        }
+        if (route == routeConfiguration) {
+            String configurationId = request.getPathParameter("configurationId");
+            if (HttpConstants.METHOD_DELETE.equals(request.getMethod()))
+                return onPostDeleteConfiguration(configurationId);
+            return onGetConfiguration(configurationId);
         }
         return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
     }
@@ -347,7 +409,13 @@ public class XOWLImportationService implements ImportationService, HttpApiServic
             return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'name'"));
         if (fileName == null)
             return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'fileName'"));
-        Reply reply = upload(name, fileName, request.getContent());
+        onActivated();
+        if (uploadMaxSize > 0 && request.getContentLength() > uploadMaxSize)
+            return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_CONTENT_TOO_LARGE, "Maximum size is " + Long.toString(uploadMaxSize) + " bytes"));
+        InputStream content = request.getContentStream();
+        if (content == null)
+            return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
+        Reply reply = upload(name, fileName, content);
         return ReplyUtils.toHttpResponse(reply);
     }
 
@@ -539,6 +607,11 @@ public class XOWLImportationService implements ImportationService, HttpApiServic
 
     @Override
     public Reply upload(String name, String fileName, byte[] content) {
+        return upload(name, fileName, new ByteArrayInputStream(content));
+    }
+
+    @Override
+    public Reply upload(String name, String fileName, InputStream content) {
         onActivated();
         SecurityService securityService = Register.getComponent(SecurityService.class);
         if (securityService == null)
@@ -549,25 +622,38 @@ public class XOWLImportationService implements ImportationService, HttpApiServic
         if (!storage.exists() && !storage.mkdirs())
             return new ReplyApiError(ArtifactStorageService.ERROR_STORAGE_FAILED, "Failed to access document storage");
         Document document = new Document(name, fileName);
-        reply = securityService.getSecuredResources().createDescriptorFor(document);
-        if (!reply.isSuccess())
-            return reply;
         File fileDescriptor = new File(storage, getDocDescriptorFile(document));
         File fileContent = new File(storage, getDocContentFile(document));
+        File filePart = new File(storage, getDocContentFile(document) + SUFFIX_PART);
+        reply = spool(content, filePart);
+        if (!reply.isSuccess()) {
+            if (filePart.exists() && !filePart.delete())
+                Logging.get().error("Failed to delete " + filePart.getAbsolutePath());
+            return reply;
+        }
+        reply = securityService.getSecuredResources().createDescriptorFor(document);
+        if (!reply.isSuccess()) {
+            if (!filePart.delete())
+                Logging.get().error("Failed to delete " + filePart.getAbsolutePath());
+            return reply;
+        }
+        try {
+            Files.move(filePart.toPath(), fileContent.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+            discardUpload(securityService, document, filePart);
+            return new ReplyApiError(ArtifactStorageService.ERROR_STORAGE_FAILED, "Failed to write document in storage");
+        }
         try (Writer writer = IOUtils.getWriter(fileDescriptor)) {
             writer.write(document.serializedJSON());
             writer.flush();
         } catch (IOException exception) {
             Logging.get().error(exception);
+            discardUpload(securityService, document, fileContent);
+            if (fileDescriptor.exists() && !fileDescriptor.delete())
+                Logging.get().error("Failed to delete " + fileDescriptor.getAbsolutePath());
             return new ReplyApiError(ArtifactStorageService.ERROR_STORAGE_FAILED, "Failed to write descriptor in storage");
         }
-        try (FileOutputStream stream = new FileOutputStream(fileContent)) {
-            stream.write(content);
-            stream.flush();
-        } catch (IOException exception) {
-            Logging.get().error(exception);
-            return new ReplyApiError(ArtifactStorageService.ERROR_STORAGE_FAILED, "Failed to write document in storage");
-        }
         synchronized (documents) {
             documents.put(document.getIdentifier(), document);
         }
@@ -577,6 +663,55 @@ public class XOWLImportationService implements ImportationService, HttpApiServic
         return new ReplyResult<>(document);
     }
 
+    /**
+     * Discards a failed upload after its security descriptor has been created
+     *
+     * @param securityService The current security service
+     * @param document        The uploaded document
+     * @param file            The file for the document's content
+     */
+    private static void discardUpload(SecurityService securityService, Document document, File file) {
+        if (file.exists() && !file.delete())
+            Logging.get().error("Failed to delete " + file.getAbsolutePath());
+        Reply reply = securityService.getSecuredResources().deleteDescriptorFor(document.getIdentifier());
+        if (!reply.isSuccess())
+            Logging.get().error("Failed to delete the security descriptor for " + document.getIdentifier());
+    }
+
+    /**
+     * Spools the content of an uploaded document to a file
+     * The content is transferred through a direct buffer, so that it is never entirely held in memory.
+     *
+     * @param content The stream for the document's content
+     * @param file    The file to write to
+     * @return The operation's result
+     */
+    private Reply spool(InputStream content, File file) {
+        long start = System.nanoTime();
+        long size = 0;
+        try (ReadableByteChannel input = Channels.newChannel(content);
+             FileChannel output = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(UPLOAD_BUFFER_SIZE);
+            while (input.read(buffer) >= 0) {
+                buffer.flip();
+                size += buffer.remaining();
+                if (uploadMaxSize > 0 && size > uploadMaxSize)
+                    return new ReplyApiError(ERROR_CONTENT_TOO_LARGE, "Maximum size is " + Long.toString(uploadMaxSize) + " bytes");
+                while (buffer.hasRemaining())
+                    output.write(buffer);
+                buffer.clear();
+            }
+            output.force(false);
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+            return new ReplyApiError(ArtifactStorageService.ERROR_STORAGE_FAILED, "Failed to write document in storage");
+        }
+        long elapsed = System.nanoTime() - start;
+        uploadedBytes.addAndGet(size);
+        uploadThroughput = elapsed > 0 ? (long) (size * 1000000000.0 / elapsed) : size;
+        return ReplySuccess.instance();
+    }
+
     @Override
     public Reply drop(String documentId) {
         onActivated();
@@ -631,6 +766,20 @@ public class XOWLImportationService implements ImportationService, HttpApiServic
         }
     }
 
+    @Override
+    public Collection<Metric> getMetrics() {
+        return Arrays.asList(METRIC_UPLOADED_BYTES, METRIC_UPLOAD_THROUGHPUT);
+    }
+
+    @Override
+    public MetricSnapshot pollMetric(Metric metric) {
+        if (metric == METRIC_UPLOADED_BYTES)
+            return new MetricSnapshotLong(uploadedBytes.get());
+        if (metric == METRIC_UPLOAD_THROUGHPUT)
+            return new MetricSnapshotLong(uploadThroughput);
+        return null;
+    }
+
     @Override
     public Collection<Importer> getImporters() {
         return Register.getComponents(Importer.class);
@@ -23,7 +23,6 @@ import fr.cenotelie.commons.utils.api.ReplyResult;
 import fr.cenotelie.commons.utils.api.ReplyUtils;
 import fr.cenotelie.commons.utils.http.HttpConstants;
 import fr.cenotelie.commons.utils.http.HttpResponse;
-import fr.cenotelie.commons.utils.http.URIUtils;
 import fr.cenotelie.commons.utils.ini.IniDocument;
 import fr.cenotelie.commons.utils.ini.IniSection;
 import org.xowl.platform.kernel.*;
@@ -36,6 +35,7 @@ import org.xowl.platform.kernel.security.SecurityService;
 import org.xowl.platform.kernel.webapi.HttpApiRequest;
 import org.xowl.platform.kernel.webapi.HttpApiResource;
 import org.xowl.platform.kernel.webapi.HttpApiResourceBase;
+import org.xowl.platform.kernel.webapi.HttpApiRoute;
 import org.xowl.platform.kernel.webapi.HttpApiService;
 import org.xowl.platform.services.marketplace.Marketplace;
 import org.xowl.platform.services.marketplace.MarketplaceProvider;
@@ -67,6 +67,18 @@ public class XOWLMarketplaceService implements MarketplaceService, HttpApiServic
      * The URI for the API services
      */
     private final String apiUri;
+    /**
+     * The route for the addons resource
+     */
+    private final HttpApiRoute routeAddons;
+    /**
+     * The route for a specific addon
+     */
+    private final HttpApiRoute routeAddon;
+    /**
+     * The route for the installation of an addon
+     */
+    private final HttpApiRoute routeAddonInstall;
     /**
      * The available marketplaces
      */
@@ -77,6 +89,9 @@ public class XOWLMarketplaceService implements MarketplaceService, HttpApiServic
      */
     public XOWLMarketplaceService() {
         this.apiUri = PlatformHttp.getUriPrefixApi() + "/services/marketplace";
+        this.routeAddons = new HttpApiRoute(apiUri + "/addons", HttpConstants.METHOD_GET);
+        this.routeAddon = new HttpApiRoute(apiUri + "/addons/{addonId}", HttpConstants.METHOD_GET);
+        this.routeAddonInstall = new HttpApiRoute(apiUri + "/addons/{addonId}/install", HttpConstants.METHOD_POST);
     }
 
     /**
@@ -128,10 +143,12 @@ public class XOWLMarketplaceService implements MarketplaceService, HttpApiServic
     }
 
     @Override
-    public int canHandle(HttpApiRequest request) {
-        return request.getUri().startsWith(apiUri)
-                ? HttpApiService.PRIORITY_NORMAL
-                : HttpApiService.CANNOT_HANDLE;
+    public HttpApiRoute[] getRoutes() {
+        return new HttpApiRoute[]{
+                routeAddons,
+                routeAddon,
+                routeAddonInstall
+        };
     }
 
     @Override
@@ -141,9 +158,8 @@ public class XOWLMarketplaceService implements MarketplaceService, HttpApiServic
 
     @Override
     public HttpResponse handle(SecurityService securityService, HttpApiRequest request) {
-        if (request.getUri().equals(apiUri + "/addons")) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
+        HttpApiRoute route = request.getRoute();
+        if (route == routeAddons) {
             String input = request.getParameter("input");
             Collection<Addon> addons = lookupAddons(input);
             StringBuilder builder = new StringBuilder("[");
@@ -156,27 +172,15 @@ public class XOWLMarketplaceService implements MarketplaceService, HttpApiServic
             }
             builder.append("]");
             return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
-        } else if (request.getUri().startsWith(apiUri + "/addons")) {
-            String rest = request.getUri().substring(apiUri.length() + "/addons".length() + 1);
-            if (rest.isEmpty())
+        }
+        if (route == routeAddon) {
+            Addon addon = getAddon(request.getPathParameter("addonId"));
+            if (addon == null)
                 return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-            int index = rest.indexOf("/");
-            String addonId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-            if (index < 0) {
-                if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-                Addon addon = getAddon(addonId);
-                if (addon == null)
-                    return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-                return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, addon.serializedJSON());
-            }
-            rest = rest.substring(index);
-            if (rest.equals("/install")) {
-                if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                    return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                return ReplyUtils.toHttpResponse(beginInstallOf(addonId));
-            }
+            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, addon.serializedJSON());
         }
+        if (route == routeAddonInstall)
+            return ReplyUtils.toHttpResponse(beginInstallOf(request.getPathParameter("addonId")));
         return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
     }
 
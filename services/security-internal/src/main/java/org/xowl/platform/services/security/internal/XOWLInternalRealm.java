@@ -619,6 +619,7 @@ class XOWLInternalRealm implements SecurityRealm, ManagedService {
             if (!reply.isSuccess())
                 return reply;
             XOWLInternalUser deleted = cacheUsers.remove(identifier);
+            securityService.onSecurityChanged();
             EventService eventService = Register.getComponent(EventService.class);
             if (eventService != null)
                 eventService.onEvent(new PlatformUserDeletedEvent(deleted, securityService));
@@ -647,6 +648,7 @@ class XOWLInternalRealm implements SecurityRealm, ManagedService {
             if (!reply.isSuccess())
                 return reply;
             XOWLInternalGroup deleted = cacheGroups.remove(identifier);
+            securityService.onSecurityChanged();
             EventService eventService = Register.getComponent(EventService.class);
             if (eventService != null)
                 eventService.onEvent(new PlatformGroupDeletedEvent(deleted, securityService));
@@ -678,6 +680,7 @@ class XOWLInternalRealm implements SecurityRealm, ManagedService {
             if (!reply.isSuccess())
                 return reply;
             PlatformRoleBase deleted = cacheRoles.remove(identifier);
+            securityService.onSecurityChanged();
             EventService eventService = Register.getComponent(EventService.class);
             if (eventService != null)
                 eventService.onEvent(new PlatformRoleDeletedEvent(deleted, securityService));
@@ -749,6 +752,10 @@ class XOWLInternalRealm implements SecurityRealm, ManagedService {
                 new BaseStoredProcedureContext(Collections.<String>emptyList(), Collections.<String>emptyList(), parameters));
         if (!reply.isSuccess())
             return reply;
+        securityService.onSecurityChanged();
+        EventService eventService = Register.getComponent(EventService.class);
+        if (eventService != null)
+            eventService.onEvent(new PlatformGroupMembershipChangedEvent(groupObject, newUser, securityService));
         return ReplySuccess.instance();
     }
 
@@ -776,6 +783,10 @@ class XOWLInternalRealm implements SecurityRealm, ManagedService {
                 new BaseStoredProcedureContext(Collections.<String>emptyList(), Collections.<String>emptyList(), parameters));
         if (!reply.isSuccess())
             return reply;
+        securityService.onSecurityChanged();
+        EventService eventService = Register.getComponent(EventService.class);
+        if (eventService != null)
+            eventService.onEvent(new PlatformGroupMembershipChangedEvent(groupObject, newUser, securityService));
         return ReplySuccess.instance();
     }
 
@@ -803,6 +814,10 @@ class XOWLInternalRealm implements SecurityRealm, ManagedService {
                 new BaseStoredProcedureContext(Collections.<String>emptyList(), Collections.<String>emptyList(), parameters));
         if (!reply.isSuccess())
             return reply;
+        securityService.onSecurityChanged();
+        EventService eventService = Register.getComponent(EventService.class);
+        if (eventService != null)
+            eventService.onEvent(new PlatformGroupMembershipChangedEvent(groupObject, newUser, securityService));
         return ReplySuccess.instance();
     }
 
@@ -830,6 +845,10 @@ class XOWLInternalRealm implements SecurityRealm, ManagedService {
                 new BaseStoredProcedureContext(Collections.<String>emptyList(), Collections.<String>emptyList(), parameters));
         if (!reply.isSuccess())
             return reply;
+        securityService.onSecurityChanged();
+        EventService eventService = Register.getComponent(EventService.class);
+        if (eventService != null)
+            eventService.onEvent(new PlatformGroupMembershipChangedEvent(groupObject, newUser, securityService));
         return ReplySuccess.instance();
     }
 
@@ -857,6 +876,10 @@ class XOWLInternalRealm implements SecurityRealm, ManagedService {
                 new BaseStoredProcedureContext(Collections.<String>emptyList(), Collections.<String>emptyList(), parameters));
         if (!reply.isSuccess())
             return reply;
+        securityService.onSecurityChanged();
+        EventService eventService = Register.getComponent(EventService.class);
+        if (eventService != null)
+            eventService.onEvent(new PlatformRoleAssignmentChangedEvent(roleObj, userObj, securityService));
         return ReplySuccess.instance();
     }
 
@@ -884,6 +907,10 @@ class XOWLInternalRealm implements SecurityRealm, ManagedService {
                 new BaseStoredProcedureContext(Collections.<String>emptyList(), Collections.<String>emptyList(), parameters));
         if (!reply.isSuccess())
             return reply;
+        securityService.onSecurityChanged();
+        EventService eventService = Register.getComponent(EventService.class);
+        if (eventService != null)
+            eventService.onEvent(new PlatformRoleAssignmentChangedEvent(roleObj, groupObj, securityService));
         return ReplySuccess.instance();
     }
 
@@ -911,6 +938,10 @@ class XOWLInternalRealm implements SecurityRealm, ManagedService {
                 new BaseStoredProcedureContext(Collections.<String>emptyList(), Collections.<String>emptyList(), parameters));
         if (!reply.isSuccess())
             return reply;
+        securityService.onSecurityChanged();
+        EventService eventService = Register.getComponent(EventService.class);
+        if (eventService != null)
+            eventService.onEvent(new PlatformRoleAssignmentChangedEvent(roleObj, userObj, securityService));
         return ReplySuccess.instance();
     }
 
@@ -938,6 +969,10 @@ class XOWLInternalRealm implements SecurityRealm, ManagedService {
                 new BaseStoredProcedureContext(Collections.<String>emptyList(), Collections.<String>emptyList(), parameters));
         if (!reply.isSuccess())
             return reply;
+        securityService.onSecurityChanged();
+        EventService eventService = Register.getComponent(EventService.class);
+        if (eventService != null)
+            eventService.onEvent(new PlatformRoleAssignmentChangedEvent(roleObj, groupObj, securityService));
         return ReplySuccess.instance();
     }
 
@@ -49,6 +49,24 @@ public interface StorageService extends ArtifactStorageService, MeasurableServic
             1000000000,
             new Couple<>(Metric.HINT_IS_NUMERIC, "true"),
             new Couple<>(Metric.HINT_MIN_VALUE, "0"));
+    /**
+     * The metric for the number of lookups answered by the index of artifacts' metadata
+     */
+    Metric METRIC_INDEX_HITS = new MetricBase(XOWLStorageService.class.getCanonicalName() + ".IndexHits",
+            "Storage Service - Artifacts index hits",
+            "lookups",
+            1000000000,
+            new Couple<>(Metric.HINT_IS_NUMERIC, "true"),
+            new Couple<>(Metric.HINT_MIN_VALUE, "0"));
+    /**
+     * The metric for the number of lookups that could not be answered by the index of artifacts' metadata
+     */
+    Metric METRIC_INDEX_MISSES = new MetricBase(XOWLStorageService.class.getCanonicalName() + ".IndexMisses",
+            "Storage Service - Artifacts index misses",
+            "lookups",
+            1000000000,
+            new Couple<>(Metric.HINT_IS_NUMERIC, "true"),
+            new Couple<>(Metric.HINT_MIN_VALUE, "0"));
 
     /**
      * Service action to execute queries on the store
@@ -21,6 +21,8 @@ import fr.cenotelie.commons.utils.api.Reply;
 import org.xowl.infra.server.api.XOWLDatabase;
 import org.xowl.platform.kernel.artifacts.Artifact;
 
+import java.util.Collection;
+
 /**
  * Represents a triple store for the platform
  *
@@ -42,6 +44,15 @@ public interface TripleStore extends XOWLDatabase {
      */
     Reply store(Artifact artifact);
 
+    /**
+     * Stores multiple artifacts in this store
+     * The artifacts are either all stored, or none of them is.
+     *
+     * @param artifacts The artifacts to store
+     * @return The operation's result
+     */
+    Reply storeAll(Collection<Artifact> artifacts);
+
     /**
      * Retrieves the artifact identified by the specified identifier
      *
@@ -0,0 +1,460 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.services.storage.impl;
+
+import org.xowl.infra.store.rdf.IRINode;
+import org.xowl.infra.store.rdf.LiteralNode;
+import org.xowl.infra.store.rdf.Node;
+import org.xowl.infra.store.rdf.Quad;
+import org.xowl.platform.kernel.KernelSchema;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Represents an in-memory index of the metadata of the artifacts in a federation store
+ * The index is maintained when artifacts are stored and deleted through the store.
+ * Any other modification of the store increments the generation of the index and invalidates it.
+ * When the index is complete, i.e. it contains all the artifacts in the store, listing artifacts can be answered from the index.
+ * Otherwise, the listings for a base or an archetype can be answered when all the artifacts for it have been filled in.
+ * The index is bounded: when the store contains more artifacts than the capacity, only the most recently used are kept.
+ *
+ * @author Laurent Wouters
+ */
+class XOWLArtifactIndex {
+    /**
+     * The default capacity of an index
+     */
+    public static final int DEFAULT_CAPACITY = 65536;
+
+    /**
+     * The maximum number of artifacts in this index
+     */
+    private final int capacity;
+    /**
+     * The metadata of the indexed artifacts, by identifier, in access order
+     */
+    private final LinkedHashMap<String, Collection<Quad>> metadata;
+    /**
+     * The identifiers of the indexed artifacts, in order
+     */
+    private final NavigableSet<String> identifiers;
+    /**
+     * The identifiers of the indexed artifacts, by base, in order
+     */
+    private final Map<String, NavigableSet<String>> byBase;
+    /**
+     * The identifiers of the indexed artifacts, by archetype, in order
+     */
+    private final Map<String, NavigableSet<String>> byArchetype;
+    /**
+     * The bases for which all the artifacts are in this index
+     */
+    private final Set<String> completeBases;
+    /**
+     * The archetypes for which all the artifacts are in this index
+     */
+    private final Set<String> completeArchetypes;
+    /**
+     * The current generation of this index
+     */
+    private long generation;
+    /**
+     * Whether this index contains all the artifacts in the store
+     */
+    private boolean isComplete;
+    /**
+     * The number of lookups that were answered by this index
+     */
+    private final AtomicLong hits;
+    /**
+     * The number of lookups that could not be answered by this index
+     */
+    private final AtomicLong misses;
+
+    /**
+     * Initializes this index
+     *
+     * @param capacity The maximum number of artifacts in this index
+     */
+    public XOWLArtifactIndex(int capacity) {
+        this.capacity = capacity;
+        this.metadata = new LinkedHashMap<>(16, 0.75f, true);
+        this.identifiers = new TreeSet<>();
+        this.byBase = new HashMap<>();
+        this.byArchetype = new HashMap<>();
+        this.completeBases = new HashSet<>();
+        this.completeArchetypes = new HashSet<>();
+        this.generation = 0;
+        this.isComplete = false;
+        this.hits = new AtomicLong(0);
+        this.misses = new AtomicLong(0);
+    }
+
+    /**
+     * Gets the number of lookups that were answered by this index
+     *
+     * @return The number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of lookups that could not be answered by this index
+     *
+     * @return The number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the current generation of this index
+     *
+     * @return The current generation
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Invalidates this index because the store has been modified in an unknown manner
+     */
+    public synchronized void invalidate() {
+        generation++;
+        metadata.clear();
+        identifiers.clear();
+        byBase.clear();
+        byArchetype.clear();
+        completeBases.clear();
+        completeArchetypes.clear();
+        isComplete = false;
+    }
+
+    /**
+     * Fills this index with the metadata of all the artifacts in the store
+     * The index is not filled if it has been modified since the specified generation, or if there are too many artifacts.
+     *
+     * @param fromGeneration The generation of this index when the metadata were fetched
+     * @param artifacts      The metadata of all the artifacts in the store
+     */
+    public synchronized void fill(long fromGeneration, Collection<Collection<Quad>> artifacts) {
+        if (fromGeneration != generation || artifacts.size() > capacity)
+            return;
+        metadata.clear();
+        identifiers.clear();
+        byBase.clear();
+        byArchetype.clear();
+        completeBases.clear();
+        completeArchetypes.clear();
+        for (Collection<Quad> quads : artifacts)
+            doPut(quads);
+        isComplete = true;
+    }
+
+    /**
+     * Fills this index with the metadata of all the artifacts with the specified base
+     * The index is not filled if it has been modified since the specified generation, or if there are too many artifacts.
+     *
+     * @param fromGeneration The generation of this index when the metadata were fetched
+     * @param base           The identifier of the base artifact
+     * @param artifacts      The metadata of all the artifacts with the base
+     */
+    public synchronized void fillForBase(long fromGeneration, String base, Collection<Collection<Quad>> artifacts) {
+        if (doFillFor(fromGeneration, artifacts))
+            completeBases.add(base);
+    }
+
+    /**
+     * Fills this index with the metadata of all the artifacts with the specified archetype
+     * The index is not filled if it has been modified since the specified generation, or if there are too many artifacts.
+     *
+     * @param fromGeneration The generation of this index when the metadata were fetched
+     * @param archetype      The identifier of the archetype
+     * @param artifacts      The metadata of all the artifacts with the archetype
+     */
+    public synchronized void fillForArchetype(long fromGeneration, String archetype, Collection<Collection<Quad>> artifacts) {
+        if (doFillFor(fromGeneration, artifacts))
+            completeArchetypes.add(archetype);
+    }
+
+    /**
+     * When an artifact has been stored
+     *
+     * @param quads The metadata of the artifact
+     */
+    public synchronized void onStored(Collection<Quad> quads) {
+        generation++;
+        doPut(quads);
+        evict();
+    }
+
+    /**
+     * When an artifact has been deleted
+     *
+     * @param identifier The identifier of the artifact
+     */
+    public synchronized void onDeleted(String identifier) {
+        generation++;
+        doRemove(identifier);
+    }
+
+    /**
+     * Gets the metadata of an artifact
+     *
+     * @param identifier The identifier of the artifact
+     * @return The metadata (empty if the artifact is known not to exist), or null if the index cannot answer
+     */
+    public synchronized Collection<Quad> get(String identifier) {
+        Collection<Quad> result = metadata.get(identifier);
+        if (result == null && isComplete)
+            result = Collections.emptyList();
+        countLookup(result != null);
+        return result;
+    }
+
+    /**
+     * Gets the metadata of all the artifacts in the store
+     *
+     * @return The metadata of the artifacts, or null if the index cannot answer
+     */
+    public synchronized Collection<Collection<Quad>> getAll() {
+        countLookup(isComplete);
+        if (!isComplete)
+            return null;
+        return new ArrayList<>(metadata.values());
+    }
+
+    /**
+     * Gets the metadata of all the artifacts with the specified base
+     *
+     * @param base The identifier of the base artifact
+     * @return The metadata of the artifacts, or null if the index cannot answer
+     */
+    public synchronized Collection<Collection<Quad>> getForBase(String base) {
+        return getFor(byBase, completeBases, base);
+    }
+
+    /**
+     * Gets the metadata of all the artifacts with the specified archetype
+     *
+     * @param archetype The identifier of the archetype
+     * @return The metadata of the artifacts, or null if the index cannot answer
+     */
+    public synchronized Collection<Collection<Quad>> getForArchetype(String archetype) {
+        return getFor(byArchetype, completeArchetypes, archetype);
+    }
+
+    /**
+     * Gets the metadata of a page of the artifacts in the store, ordered by identifier
+     * The artifacts can be restricted to an archetype or a base, the archetype takes precedence.
+     *
+     * @param archetype The identifier of the archetype of the artifacts, or null
+     * @param base      The identifier of the base artifact of the artifacts, or null
+     * @param cursor    The identifier of the last artifact on the previous page, or null for the first page
+     * @param count     The maximum number of artifacts on the page
+     * @return The metadata of the artifacts, or null if the index cannot answer
+     */
+    public synchronized Collection<Collection<Quad>> getPage(String archetype, String base, String cursor, int count) {
+        boolean canAnswer = isComplete
+                || (archetype != null && completeArchetypes.contains(archetype))
+                || (archetype == null && base != null && completeBases.contains(base));
+        countLookup(canAnswer);
+        if (!canAnswer)
+            return null;
+        NavigableSet<String> candidates = archetype != null ? byArchetype.get(archetype) : (base != null ? byBase.get(base) : identifiers);
+        if (candidates == null)
+            return Collections.emptyList();
+        if (cursor != null)
+            candidates = candidates.tailSet(cursor, false);
+        Collection<Collection<Quad>> result = new ArrayList<>(Math.min(count, candidates.size()));
+        for (String identifier : candidates) {
+            if (result.size() >= count)
+                break;
+            result.add(metadata.get(identifier));
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of artifacts in the store
+     *
+     * @return The number of artifacts, or -1 if the index cannot answer
+     */
+    public synchronized int getCount() {
+        countLookup(isComplete);
+        return isComplete ? metadata.size() : -1;
+    }
+
+    /**
+     * Gets the metadata of the artifacts registered in a map for a key
+     *
+     * @param map      The map to look into
+     * @param complete The keys for which all the artifacts are in this index
+     * @param key      The key
+     * @return The metadata of the artifacts, or null if the index cannot answer
+     */
+    private Collection<Collection<Quad>> getFor(Map<String, NavigableSet<String>> map, Set<String> complete, String key) {
+        boolean canAnswer = isComplete || complete.contains(key);
+        countLookup(canAnswer);
+        if (!canAnswer)
+            return null;
+        Collection<String> identifiers = map.get(key);
+        if (identifiers == null)
+            return Collections.emptyList();
+        Collection<Collection<Quad>> result = new ArrayList<>(identifiers.size());
+        for (String identifier : identifiers)
+            result.add(metadata.get(identifier));
+        return result;
+    }
+
+    /**
+     * Counts a lookup
+     *
+     * @param isHit Whether this is a hit
+     */
+    private void countLookup(boolean isHit) {
+        if (isHit)
+            hits.incrementAndGet();
+        else
+            misses.incrementAndGet();
+    }
+
+    /**
+     * Puts the metadata of the artifacts for a base or an archetype in this index
+     *
+     * @param fromGeneration The generation of this index when the metadata were fetched
+     * @param artifacts      The metadata of all the artifacts for the base or archetype
+     * @return Whether the artifacts have been put in this index
+     */
+    private boolean doFillFor(long fromGeneration, Collection<Collection<Quad>> artifacts) {
+        if (fromGeneration != generation || artifacts.size() > capacity)
+            return false;
+        for (Collection<Quad> quads : artifacts)
+            doPut(quads);
+        evict();
+        return true;
+    }
+
+    /**
+     * Evicts the least recently used artifacts when this index is over its capacity
+     * The listings that included an evicted artifact can no longer be answered.
+     */
+    private void evict() {
+        while (metadata.size() > capacity) {
+            String identifier = metadata.keySet().iterator().next();
+            String[] keys = getKeys(metadata.get(identifier));
+            if (keys[1] != null)
+                completeBases.remove(keys[1]);
+            if (keys[2] != null)
+                completeArchetypes.remove(keys[2]);
+            doRemove(identifier);
+            isComplete = false;
+        }
+    }
+
+    /**
+     * Puts the metadata of an artifact in this index
+     *
+     * @param quads The metadata of the artifact
+     */
+    private void doPut(Collection<Quad> quads) {
+        String[] keys = getKeys(quads);
+        if (keys[0] == null)
+            return;
+        doRemove(keys[0]);
+        metadata.put(keys[0], quads);
+        identifiers.add(keys[0]);
+        if (keys[1] != null)
+            register(byBase, keys[1], keys[0]);
+        if (keys[2] != null)
+            register(byArchetype, keys[2], keys[0]);
+    }
+
+    /**
+     * Removes the metadata of an artifact from this index
+     *
+     * @param identifier The identifier of the artifact
+     */
+    private void doRemove(String identifier) {
+        Collection<Quad> quads = metadata.remove(identifier);
+        if (quads == null)
+            return;
+        identifiers.remove(identifier);
+        String[] keys = getKeys(quads);
+        if (keys[1] != null)
+            unregister(byBase, keys[1], identifier);
+        if (keys[2] != null)
+            unregister(byArchetype, keys[2], identifier);
+    }
+
+    /**
+     * Gets the keys of an artifact in this index
+     *
+     * @param quads The metadata of the artifact
+     * @return The identifier, base and archetype of the artifact
+     */
+    private static String[] getKeys(Collection<Quad> quads) {
+        String[] keys = new String[3];
+        for (Quad quad : quads) {
+            if (keys[0] == null && quad.getSubject().getNodeType() == Node.TYPE_IRI)
+                keys[0] = ((IRINode) quad.getSubject()).getIRIValue();
+            if (quad.getProperty().getNodeType() != Node.TYPE_IRI)
+                continue;
+            String property = ((IRINode) quad.getProperty()).getIRIValue();
+            if (KernelSchema.BASE.equals(property) && quad.getObject().getNodeType() == Node.TYPE_IRI)
+                keys[1] = ((IRINode) quad.getObject()).getIRIValue();
+            else if (KernelSchema.ARCHETYPE.equals(property) && quad.getObject().getNodeType() == Node.TYPE_LITERAL)
+                keys[2] = ((LiteralNode) quad.getObject()).getLexicalValue();
+        }
+        return keys;
+    }
+
+    /**
+     * Registers an artifact in a map
+     *
+     * @param map        The map
+     * @param key        The key
+     * @param identifier The identifier of the artifact
+     */
+    private static void register(Map<String, NavigableSet<String>> map, String key, String identifier) {
+        NavigableSet<String> identifiers = map.get(key);
+        if (identifiers == null) {
+            identifiers = new TreeSet<>();
+            map.put(key, identifiers);
+        }
+        identifiers.add(identifier);
+    }
+
+    /**
+     * Unregisters an artifact from a map
+     *
+     * @param map        The map
+     * @param key        The key
+     * @param identifier The identifier of the artifact
+     */
+    private static void unregister(Map<String, NavigableSet<String>> map, String key, String identifier) {
+        NavigableSet<String> identifiers = map.get(key);
+        if (identifiers == null)
+            return;
+        identifiers.remove(identifier);
+        if (identifiers.isEmpty())
+            map.remove(key);
+    }
+}
@@ -0,0 +1,359 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Association Cénotélie (cenotelie.fr)
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+
+package org.xowl.platform.services.storage.impl;
+
+import fr.cenotelie.commons.utils.IOUtils;
+import fr.cenotelie.commons.utils.SHA1;
+import fr.cenotelie.commons.utils.TextUtils;
+import fr.cenotelie.commons.utils.api.*;
+import fr.cenotelie.commons.utils.http.HttpConstants;
+import fr.cenotelie.commons.utils.http.HttpResponse;
+import fr.cenotelie.commons.utils.logging.Logging;
+import org.xowl.platform.kernel.artifacts.Artifact;
+import org.xowl.platform.kernel.artifacts.ArtifactArchive;
+import org.xowl.platform.kernel.artifacts.ArtifactStorageService;
+import org.xowl.platform.kernel.webapi.HttpApiService;
+import org.xowl.platform.kernel.webapi.HttpResponseStreamed;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Pattern;
+
+/**
+ * Manages the chunked and resumable transfers of artifacts' archives between platforms
+ * Outgoing archives are produced once for an artifact and kept so that interrupted downloads can be resumed.
+ * Incoming archives are appended chunk by chunk and are only read when their checksum is verified.
+ * Archives that are not accessed for a given time are purged.
+ *
+ * @author Laurent Wouters
+ */
+class XOWLArtifactTransfers {
+    /**
+     * The default time to keep an unused archive, in seconds
+     */
+    public static final long DEFAULT_TTL = 24 * 3600;
+    /**
+     * The maximum size in bytes of a chunk
+     */
+    private static final long CHUNK_MAX_SIZE = 4 * ArtifactArchive.CHUNK_SIZE;
+    /**
+     * The pattern for valid identifiers of incoming transfers
+     */
+    private static final Pattern TRANSFER_ID = Pattern.compile("[A-Za-z0-9_\\-]{1,64}");
+    /**
+     * The suffix for the archive files
+     */
+    private static final String SUFFIX_ARCHIVE = ".gz";
+    /**
+     * The suffix for the files containing the checksum of an archive
+     */
+    private static final String SUFFIX_CHECKSUM = ".sha256";
+
+    /**
+     * The directory for the outgoing archives
+     */
+    private final File outgoing;
+    /**
+     * The directory for the incoming archives
+     */
+    private final File incoming;
+    /**
+     * The time to keep an unused archive, in milliseconds
+     */
+    private final long ttl;
+
+    /**
+     * Initializes this structure
+     *
+     * @param storage The directory for the storage of the archives
+     * @param ttl     The time to keep an unused archive, in seconds
+     */
+    public XOWLArtifactTransfers(File storage, long ttl) {
+        this.outgoing = new File(storage, "out");
+        this.incoming = new File(storage, "in");
+        this.ttl = ttl * 1000;
+        if (!outgoing.exists() && !outgoing.mkdirs())
+            Logging.get().error("Failed to create the directory " + outgoing.getAbsolutePath());
+        if (!incoming.exists() && !incoming.mkdirs())
+            Logging.get().error("Failed to create the directory " + incoming.getAbsolutePath());
+    }
+
+    /**
+     * Gets the descriptor of the archive for an artifact, producing the archive if necessary
+     *
+     * @param artifact The artifact
+     * @return The response
+     */
+    public HttpResponse getOutgoingDescriptor(Artifact artifact) {
+        purge(outgoing);
+        String name = SHA1.hashSHA1(artifact.getIdentifier());
+        File archive = new File(outgoing, name + SUFFIX_ARCHIVE);
+        File checksumFile = new File(outgoing, name + SUFFIX_CHECKSUM);
+        String checksum;
+        try {
+            if (archive.exists() && checksumFile.exists()) {
+                // artifacts are immutable, reuse the archive
+                checksum = new String(Files.readAllBytes(checksumFile.toPath()), IOUtils.CHARSET);
+                touch(archive);
+            } else {
+                File temporary = File.createTempFile(name, SUFFIX_ARCHIVE, outgoing);
+                try {
+                    checksum = ArtifactArchive.write(artifact, temporary);
+                    Files.write(checksumFile.toPath(), checksum.getBytes(IOUtils.CHARSET));
+                    Files.move(temporary.toPath(), archive.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    if (temporary.exists() && !temporary.delete())
+                        Logging.get().error("Failed to delete " + temporary.getAbsolutePath());
+                }
+            }
+        } catch (IOException exception) {
+            Logging.get().error(exception);
+            return ReplyUtils.toHttpResponse(new ReplyException(exception));
+        }
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, serializeDescriptor(artifact.getIdentifier(), archive.length(), checksum));
+    }
+
+    /**
+     * Gets a chunk of the archive for an artifact
+     *
+     * @param artifact The artifact
+     * @param offset   The offset of the chunk in the archive
+     * @param length   The maximum length of the chunk
+     * @return The response
+     */
+    public HttpResponse getOutgoingChunk(Artifact artifact, long offset, long length) {
+        File archive = new File(outgoing, SHA1.hashSHA1(artifact.getIdentifier()) + SUFFIX_ARCHIVE);
+        if (!archive.exists())
+            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+        if (offset < 0 || offset > archive.length())
+            return ReplyUtils.toHttpResponse(new ReplyApiError(HttpApiService.ERROR_PARAMETER_RANGE, "'offset' must be within the archive"));
+        if (length <= 0 || length > CHUNK_MAX_SIZE)
+            return ReplyUtils.toHttpResponse(new ReplyApiError(HttpApiService.ERROR_PARAMETER_RANGE, "'length' must be strictly positive and at most " + Long.toString(CHUNK_MAX_SIZE)));
+        touch(archive);
+        return new ChunkResponse(archive, offset, Math.min(length, archive.length() - offset));
+    }
+
+    /**
+     * Gets the current length of an incoming archive
+     *
+     * @param userId     The identifier of the user making the transfer
+     * @param transferId The identifier of the transfer
+     * @return The response
+     */
+    public HttpResponse getIncoming(String userId, String transferId) {
+        if (!TRANSFER_ID.matcher(transferId).matches())
+            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
+        File archive = getIncomingFile(userId, transferId);
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, serializeDescriptor(transferId, archive.exists() ? archive.length() : 0, null));
+    }
+
+    /**
+     * Appends a chunk to an incoming archive
+     *
+     * @param userId     The identifier of the user making the transfer
+     * @param transferId The identifier of the transfer
+     * @param offset     The offset of the chunk in the archive
+     * @param chunk      The chunk
+     * @return The response
+     */
+    public HttpResponse putIncomingChunk(String userId, String transferId, long offset, byte[] chunk) {
+        if (!TRANSFER_ID.matcher(transferId).matches())
+            return ReplyUtils.toHttpResponse(new ReplyApiError(HttpApiService.ERROR_PARAMETER_RANGE, "The transfer identifier must be made of at most 64 letters, digits, '_' and '-'"));
+        if (chunk == null || chunk.length == 0)
+            return ReplyUtils.toHttpResponse(new ReplyApiError(HttpApiService.ERROR_FAILED_TO_READ_CONTENT));
+        if (chunk.length > CHUNK_MAX_SIZE)
+            return ReplyUtils.toHttpResponse(new ReplyApiError(HttpApiService.ERROR_PARAMETER_RANGE, "A chunk must be at most " + Long.toString(CHUNK_MAX_SIZE) + " bytes"));
+        if (offset == 0)
+            purge(incoming);
+        File archive = getIncomingFile(userId, transferId);
+        synchronized (this) {
+            long length = archive.exists() ? archive.length() : 0;
+            if (offset != length)
+                // the client must resume from the current length
+                return ReplyUtils.toHttpResponse(new ReplyApiError(HttpApiService.ERROR_PARAMETER_RANGE, "'offset' must be the current length of the transfer: " + Long.toString(length)));
+            try (FileChannel channel = FileChannel.open(archive.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                channel.write(ByteBuffer.wrap(chunk));
+            } catch (IOException exception) {
+                Logging.get().error(exception);
+                return ReplyUtils.toHttpResponse(new ReplyException(exception));
+            }
+            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, serializeDescriptor(transferId, archive.length(), null));
+        }
+    }
+
+    /**
+     * Completes an incoming transfer and stores the transferred artifact
+     * The checksum of the archive is verified before its content is streamed into the storage.
+     * The archive is deleted when the artifact is stored, otherwise it is kept so that the transfer can be committed again.
+     *
+     * @param userId     The identifier of the user making the transfer
+     * @param transferId The identifier of the transfer
+     * @param checksum   The expected checksum of the archive
+     * @param storage    The storage for the artifact
+     * @return The protocol reply, with the artifact when successful
+     */
+    public Reply commitIncoming(String userId, String transferId, String checksum, ArtifactStorageService storage) {
+        if (!TRANSFER_ID.matcher(transferId).matches())
+            return ReplyNotFound.instance();
+        File archive = getIncomingFile(userId, transferId);
+        if (!archive.exists())
+            return ReplyNotFound.instance();
+        Reply reply = ArtifactArchive.read(archive, checksum);
+        if (!reply.isSuccess())
+            return reply;
+        Artifact artifact = ((ReplyResult<Artifact>) reply).getData();
+        reply = storage.store(artifact);
+        if (!reply.isSuccess())
+            return reply;
+        if (!archive.delete())
+            Logging.get().error("Failed to delete " + archive.getAbsolutePath());
+        return new ReplyResult<>(artifact);
+    }
+
+    /**
+     * Aborts an incoming transfer
+     *
+     * @param userId     The identifier of the user making the transfer
+     * @param transferId The identifier of the transfer
+     * @return The protocol reply
+     */
+    public Reply abortIncoming(String userId, String transferId) {
+        if (!TRANSFER_ID.matcher(transferId).matches())
+            return ReplyNotFound.instance();
+        File archive = getIncomingFile(userId, transferId);
+        if (!archive.exists())
+            return ReplyNotFound.instance();
+        if (!archive.delete())
+            return new ReplyApiError(ArtifactStorageService.ERROR_STORAGE_FAILED, "Failed to delete the transfer");
+        return ReplySuccess.instance();
+    }
+
+    /**
+     * Gets the file for an incoming archive
+     *
+     * @param userId     The identifier of the user making the transfer
+     * @param transferId The identifier of the transfer
+     * @return The file
+     */
+    private File getIncomingFile(String userId, String transferId) {
+        return new File(incoming, SHA1.hashSHA1(userId + "/" + transferId) + SUFFIX_ARCHIVE);
+    }
+
+    /**
+     * Purges the archives that have not been accessed for too long in a directory
+     *
+     * @param directory The directory to purge
+     */
+    private void purge(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null)
+            return;
+        long limit = System.currentTimeMillis() - ttl;
+        for (int i = 0; i != files.length; i++) {
+            if (files[i].lastModified() < limit && !files[i].delete())
+                Logging.get().error("Failed to delete " + files[i].getAbsolutePath());
+        }
+    }
+
+    /**
+     * Marks an archive as accessed
+     *
+     * @param archive The archive
+     */
+    private static void touch(File archive) {
+        long now = System.currentTimeMillis();
+        if (!archive.setLastModified(now))
+            return;
+        File checksum = new File(archive.getParentFile(), archive.getName().substring(0, archive.getName().length() - SUFFIX_ARCHIVE.length()) + SUFFIX_CHECKSUM);
+        if (checksum.exists())
+            checksum.setLastModified(now);
+    }
+
+    /**
+     * Serializes the descriptor of a transfer
+     *
+     * @param identifier The identifier of the transferred artifact or of the transfer
+     * @param length     The current length of the archive
+     * @param checksum   The checksum of the archive, if known
+     * @return The serialized descriptor
+     */
+    private static String serializeDescriptor(String identifier, long length, String checksum) {
+        return "{\"identifier\": \"" +
+                TextUtils.escapeStringJSON(identifier) +
+                "\", \"length\": " +
+                Long.toString(length) +
+                ", \"checksum\": \"" +
+                (checksum == null ? "" : TextUtils.escapeStringJSON(checksum)) +
+                "\"}";
+    }
+
+    /**
+     * The response for a chunk of an archive
+     */
+    private static class ChunkResponse extends HttpResponseStreamed {
+        /**
+         * The archive
+         */
+        private final File archive;
+        /**
+         * The offset of the chunk in the archive
+         */
+        private final long offset;
+        /**
+         * The length of the chunk
+         */
+        private final long length;
+
+        /**
+         * Initializes this response
+         *
+         * @param archive The archive
+         * @param offset  The offset of the chunk in the archive
+         * @param length  The length of the chunk
+         */
+        public ChunkResponse(File archive, long offset, long length) {
+            super(HttpURLConnection.HTTP_OK, ArtifactArchive.MIME_TYPE);
+            this.archive = archive;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public void writeBody(OutputStream stream) throws IOException {
+            WritableByteChannel target = Channels.newChannel(stream);
+            try (FileChannel channel = FileChannel.open(archive.toPath(), StandardOpenOption.READ)) {
+                long position = offset;
+                long end = offset + length;
+                while (position < end) {
+                    long count = channel.transferTo(position, end - position, target);
+                    if (count <= 0)
+                        throw new IOException("Unexpected end of the archive " + archive.getAbsolutePath());
+                    position += count;
+                }
+            }
+            stream.flush();
+        }
+    }
+}
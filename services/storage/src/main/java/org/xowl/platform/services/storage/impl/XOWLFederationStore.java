@@ -19,6 +19,7 @@ package org.xowl.platform.services.storage.impl;
 
 import fr.cenotelie.commons.utils.TextUtils;
 import fr.cenotelie.commons.utils.api.*;
+import fr.cenotelie.commons.utils.logging.Logging;
 import fr.cenotelie.commons.utils.metrics.Metric;
 import fr.cenotelie.commons.utils.metrics.MetricComposite;
 import org.xowl.infra.server.api.XOWLDatabase;
@@ -27,7 +28,9 @@ import org.xowl.infra.server.api.XOWLStoredProcedure;
 import org.xowl.infra.server.api.XOWLStoredProcedureContext;
 import org.xowl.infra.server.base.BaseDatabase;
 import org.xowl.infra.store.EntailmentRegime;
+import org.xowl.infra.store.rdf.IRINode;
 import org.xowl.infra.store.rdf.LiteralNode;
+import org.xowl.infra.store.rdf.Node;
 import org.xowl.infra.store.rdf.Quad;
 import org.xowl.infra.store.rdf.RDFPatternSolution;
 import org.xowl.infra.store.rdf.SubjectNode;
@@ -52,10 +55,23 @@ import java.util.*;
  * @author Laurent Wouters
  */
 abstract class XOWLFederationStore extends BaseDatabase implements TripleStore {
+    /**
+     * The default maximum number of quads in a single upload to the backend when storing artifacts
+     */
+    public static final int DEFAULT_BATCH_SIZE = 100000;
+
     /**
      * The metric for the statistics of this database
      */
     protected Metric metricStatistics;
+    /**
+     * The index of the artifacts' metadata in this store
+     */
+    protected final XOWLArtifactIndex index;
+    /**
+     * The maximum number of quads in a single upload to the backend when storing artifacts, or 0 for no limit
+     */
+    private final int batchSize;
     /**
      * The remote backend
      */
@@ -64,10 +80,14 @@ abstract class XOWLFederationStore extends BaseDatabase implements TripleStore {
     /**
      * Initializes this database
      *
-     * @param name The database's name
+     * @param name          The database's name
+     * @param indexCapacity The maximum number of artifacts in the index of artifacts' metadata
+     * @param batchSize     The maximum number of quads in a single upload to the backend, or 0 for no limit
      */
-    public XOWLFederationStore(String name) {
+    public XOWLFederationStore(String name, int indexCapacity, int batchSize) {
         super(name);
+        this.index = new XOWLArtifactIndex(indexCapacity);
+        this.batchSize = batchSize;
     }
 
     /**
@@ -88,6 +108,11 @@ abstract class XOWLFederationStore extends BaseDatabase implements TripleStore {
      */
     protected abstract XOWLDatabase resolveBackend();
 
+    /**
+     * When the content of this store may have changed
+     */
+    protected abstract void onChanged();
+
     @Override
     public Reply getMetric() {
         if (metricStatistics != null)
@@ -120,7 +145,12 @@ abstract class XOWLFederationStore extends BaseDatabase implements TripleStore {
         XOWLDatabase connection = getBackend();
         if (connection == null)
             return ReplyNetworkError.instance();
-        return connection.sparql(sparql, defaultIRIs, namedIRIs);
+        reply = connection.sparql(sparql, defaultIRIs, namedIRIs);
+        if (isUpdate(sparql)) {
+            index.invalidate();
+            onChanged();
+        }
+        return reply;
     }
 
     @Override
@@ -134,7 +164,67 @@ abstract class XOWLFederationStore extends BaseDatabase implements TripleStore {
         XOWLDatabase connection = getBackend();
         if (connection == null)
             return ReplyNetworkError.instance();
-        return connection.sparql(sparql);
+        reply = connection.sparql(sparql);
+        if (isUpdate(sparql)) {
+            index.invalidate();
+            onChanged();
+        }
+        return reply;
+    }
+
+    /**
+     * Gets whether a SPARQL command may modify the store
+     *
+     * @param sparql The SPARQL command
+     * @return Whether the command may modify the store
+     */
+    private static boolean isUpdate(Command sparql) {
+        return !(sparql instanceof CommandSelect
+                || sparql instanceof CommandConstruct
+                || sparql instanceof CommandDescribe
+                || sparql instanceof CommandAsk);
+    }
+
+    /**
+     * Gets whether a SPARQL command may modify the store
+     * The form of the command is read after its prologue, so that the IRIs and literals in its body are never looked at.
+     * A command that is not recognized as a query is conservatively considered to be an update.
+     *
+     * @param sparql The SPARQL command
+     * @return Whether the command may modify the store
+     */
+    private static boolean isUpdate(String sparql) {
+        int index = 0;
+        while (true) {
+            // skip the white spaces and the comments
+            while (index < sparql.length()) {
+                char c = sparql.charAt(index);
+                if (c == '#') {
+                    while (index < sparql.length() && sparql.charAt(index) != '\n')
+                        index++;
+                } else if (Character.isWhitespace(c)) {
+                    index++;
+                } else {
+                    break;
+                }
+            }
+            int start = index;
+            while (index < sparql.length() && Character.isLetter(sparql.charAt(index)))
+                index++;
+            String keyword = sparql.substring(start, index);
+            if (keyword.equalsIgnoreCase("BASE") || keyword.equalsIgnoreCase("PREFIX")) {
+                // skip the declaration up to the end of its IRI
+                index = sparql.indexOf('>', index);
+                if (index < 0)
+                    return true;
+                index++;
+            } else {
+                return !(keyword.equalsIgnoreCase("SELECT")
+                        || keyword.equalsIgnoreCase("CONSTRUCT")
+                        || keyword.equalsIgnoreCase("DESCRIBE")
+                        || keyword.equalsIgnoreCase("ASK"));
+            }
+        }
     }
 
     @Override
@@ -200,7 +290,9 @@ abstract class XOWLFederationStore extends BaseDatabase implements TripleStore {
         XOWLDatabase connection = getBackend();
         if (connection == null)
             return ReplyNetworkError.instance();
-        return connection.removeRule(rule);
+        reply = connection.removeRule(rule);
+        onChanged();
+        return reply;
     }
 
     @Override
@@ -214,7 +306,9 @@ abstract class XOWLFederationStore extends BaseDatabase implements TripleStore {
         XOWLDatabase connection = getBackend();
         if (connection == null)
             return ReplyNetworkError.instance();
-        return connection.removeRule(rule);
+        reply = connection.removeRule(rule);
+        onChanged();
+        return reply;
     }
 
     @Override
@@ -228,7 +322,9 @@ abstract class XOWLFederationStore extends BaseDatabase implements TripleStore {
         XOWLDatabase connection = getBackend();
         if (connection == null)
             return ReplyNetworkError.instance();
-        return connection.activateRule(rule);
+        reply = connection.activateRule(rule);
+        onChanged();
+        return reply;
     }
 
     @Override
@@ -242,7 +338,9 @@ abstract class XOWLFederationStore extends BaseDatabase implements TripleStore {
         XOWLDatabase connection = getBackend();
         if (connection == null)
             return ReplyNetworkError.instance();
-        return connection.activateRule(rule);
+        reply = connection.activateRule(rule);
+        onChanged();
+        return reply;
     }
 
     @Override
@@ -256,7 +354,9 @@ abstract class XOWLFederationStore extends BaseDatabase implements TripleStore {
         XOWLDatabase connection = getBackend();
         if (connection == null)
             return ReplyNetworkError.instance();
-        return connection.deactivateRule(rule);
+        reply = connection.deactivateRule(rule);
+        onChanged();
+        return reply;
     }
 
     @Override
@@ -270,7 +370,9 @@ abstract class XOWLFederationStore extends BaseDatabase implements TripleStore {
         XOWLDatabase connection = getBackend();
         if (connection == null)
             return ReplyNetworkError.instance();
-        return connection.deactivateRule(rule);
+        reply = connection.deactivateRule(rule);
+        onChanged();
+        return reply;
     }
 
     @Override
@@ -386,7 +488,10 @@ abstract class XOWLFederationStore extends BaseDatabase implements TripleStore {
         XOWLDatabase connection = getBackend();
         if (connection == null)
             return ReplyNetworkError.instance();
-        return connection.upload(syntax, content);
+        reply = connection.upload(syntax, content);
+        index.invalidate();
+        onChanged();
+        return reply;
     }
 
     @Override
@@ -400,7 +505,15 @@ abstract class XOWLFederationStore extends BaseDatabase implements TripleStore {
         XOWLDatabase connection = getBackend();
         if (connection == null)
             return ReplyNetworkError.instance();
-        return connection.upload(quads);
+        reply = connection.upload(quads);
+        for (Quad quad : quads) {
+            if (quad.getGraph().getNodeType() == Node.TYPE_IRI && KernelSchema.GRAPH_ARTIFACTS.equals(((IRINode) quad.getGraph()).getIRIValue())) {
+                index.invalidate();
+                break;
+            }
+        }
+        onChanged();
+        return reply;
     }
 
     @Override
@@ -411,9 +524,13 @@ abstract class XOWLFederationStore extends BaseDatabase implements TripleStore {
         Reply reply = securityService.checkAction(ArtifactStorageService.ACTION_RETRIEVE_METADATA);
         if (!reply.isSuccess())
             return reply;
+        Collection<Collection<Quad>> indexed = index.getAll();
+        if (indexed != null)
+            return new ReplyResultCollection<>(buildArtifactsFromIndex(indexed));
         XOWLDatabase connection = getBackend();
         if (connection == null)
             return ReplyNetworkError.instance();
+        long generation = index.getGeneration();
         StringWriter writer = new StringWriter();
         writer.write("DESCRIBE ?a WHERE { GRAPH <");
         writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.GRAPH_ARTIFACTS));
@@ -424,7 +541,167 @@ abstract class XOWLFederationStore extends BaseDatabase implements TripleStore {
         if (!reply.isSuccess())
             return reply;
         ResultQuads sparqlResult = ((ReplyResult<ResultQuads>) reply).getData();
-        return new ReplyResultCollection<>(buildArtifacts(sparqlResult.getQuads()));
+        Collection<Collection<Quad>> metadata = PlatformUtils.mapBySubject(sparqlResult.getQuads()).values();
+        index.fill(generation, metadata);
+        return new ReplyResultCollection<>(buildArtifactsFromIndex(metadata));
+    }
+
+    /**
+     * Gets the artifacts in this store that have the specified base
+     * This method does not perform security checks.
+     *
+     * @param base The identifier of the base artifact
+     * @return The operation's result which can be casted to ReplyResultCollection in case of success
+     */
+    public Reply getArtifactsForBase(String base) {
+        Collection<Collection<Quad>> indexed = index.getForBase(base);
+        if (indexed != null)
+            return new ReplyResultCollection<>(buildArtifactsFromIndex(indexed));
+        long generation = index.getGeneration();
+        StringWriter writer = new StringWriter();
+        writer.write("DESCRIBE ?a WHERE { GRAPH <");
+        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.GRAPH_ARTIFACTS));
+        writer.write("> { ?a a <");
+        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.ARTIFACT));
+        writer.write(">. ?a <");
+        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.BASE));
+        writer.write("> <");
+        writer.write(TextUtils.escapeAbsoluteURIW3C(base));
+        writer.write("> } }");
+        Reply reply = doSparql(writer.toString());
+        if (!reply.isSuccess())
+            return reply;
+        Collection<Collection<Quad>> metadata = PlatformUtils.mapBySubject(((ReplyResult<ResultQuads>) reply).getData().getQuads()).values();
+        index.fillForBase(generation, base, metadata);
+        return new ReplyResultCollection<>(buildArtifactsFromIndex(metadata));
+    }
+
+    /**
+     * Gets the artifacts in this store that have the specified archetype
+     * This method does not perform security checks.
+     *
+     * @param archetype The identifier of the archetype
+     * @return The operation's result which can be casted to ReplyResultCollection in case of success
+     */
+    public Reply getArtifactsForArchetype(String archetype) {
+        Collection<Collection<Quad>> indexed = index.getForArchetype(archetype);
+        if (indexed != null)
+            return new ReplyResultCollection<>(buildArtifactsFromIndex(indexed));
+        long generation = index.getGeneration();
+        StringWriter writer = new StringWriter();
+        writer.write("DESCRIBE ?a WHERE { GRAPH <");
+        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.GRAPH_ARTIFACTS));
+        writer.write("> { ?a a <");
+        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.ARTIFACT));
+        writer.write(">. ?a <");
+        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.ARCHETYPE));
+        writer.write("> \"");
+        writer.write(TextUtils.escapeAbsoluteURIW3C(archetype));
+        writer.write("\" } }");
+        Reply reply = doSparql(writer.toString());
+        if (!reply.isSuccess())
+            return reply;
+        Collection<Collection<Quad>> metadata = PlatformUtils.mapBySubject(((ReplyResult<ResultQuads>) reply).getData().getQuads()).values();
+        index.fillForArchetype(generation, archetype, metadata);
+        return new ReplyResultCollection<>(buildArtifactsFromIndex(metadata));
+    }
+
+    /**
+     * Gets a page of the artifacts in this store, ordered by identifier
+     * The artifacts can be restricted to an archetype or a base, the archetype takes precedence.
+     * Only the requested page is fetched from the backend.
+     * This method does not perform security checks.
+     *
+     * @param archetype The identifier of the archetype of the artifacts, or null
+     * @param base      The identifier of the base artifact of the artifacts, or null
+     * @param cursor    The identifier of the last artifact on the previous page, or null for the first page
+     * @param count     The maximum number of artifacts on the page
+     * @return The operation's result which can be casted to ReplyResultCollection in case of success
+     */
+    public Reply getArtifactsPage(String archetype, String base, String cursor, int count) {
+        Collection<Collection<Quad>> indexed = index.getPage(archetype, base, cursor, count);
+        if (indexed != null)
+            return new ReplyResultCollection<>(buildArtifactsFromIndex(indexed));
+        StringWriter writer = new StringWriter();
+        writer.write("DESCRIBE ?a WHERE { GRAPH <");
+        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.GRAPH_ARTIFACTS));
+        writer.write("> { ?a a <");
+        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.ARTIFACT));
+        writer.write(">");
+        if (archetype != null) {
+            writer.write(". ?a <");
+            writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.ARCHETYPE));
+            writer.write("> \"");
+            writer.write(TextUtils.escapeStringW3C(archetype));
+            writer.write("\"");
+        } else if (base != null) {
+            writer.write(". ?a <");
+            writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.BASE));
+            writer.write("> <");
+            writer.write(TextUtils.escapeAbsoluteURIW3C(base));
+            writer.write(">");
+        }
+        writer.write(" }");
+        if (cursor != null) {
+            writer.write(" FILTER (STR(?a) > \"");
+            writer.write(TextUtils.escapeStringW3C(cursor));
+            writer.write("\")");
+        }
+        writer.write(" } ORDER BY ?a LIMIT ");
+        writer.write(Integer.toString(count));
+        Reply reply = doSparql(writer.toString());
+        if (!reply.isSuccess())
+            return reply;
+        Collection<Quad> metadata = ((ReplyResult<ResultQuads>) reply).getData().getQuads();
+        // the described artifacts are not necessarily in order
+        List<Artifact> artifacts = new ArrayList<>(buildArtifacts(metadata));
+        Collections.sort(artifacts, new Comparator<Artifact>() {
+            @Override
+            public int compare(Artifact artifact1, Artifact artifact2) {
+                return artifact1.getIdentifier().compareTo(artifact2.getIdentifier());
+            }
+        });
+        return new ReplyResultCollection<>(artifacts);
+    }
+
+    /**
+     * Retrieves the artifact with the specified base and version
+     * This method does not perform security checks.
+     *
+     * @param base    The identifier of the base artifact
+     * @param version The version of the artifact
+     * @return The operation's result which can be casted to ReplyResult in case of success
+     */
+    public Reply retrieve(String base, String version) {
+        Collection<Collection<Quad>> indexed = index.getForBase(base);
+        if (indexed != null) {
+            for (Artifact artifact : buildArtifactsFromIndex(indexed)) {
+                if (version.equals(artifact.getVersion()))
+                    return new ReplyResult<>(artifact);
+            }
+            return ReplyNotFound.instance();
+        }
+        StringWriter writer = new StringWriter();
+        writer.write("DESCRIBE ?a WHERE { GRAPH <");
+        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.GRAPH_ARTIFACTS));
+        writer.write("> { ?a a <");
+        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.ARTIFACT));
+        writer.write(">. ?a <");
+        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.BASE));
+        writer.write("> <");
+        writer.write(TextUtils.escapeAbsoluteURIW3C(base));
+        writer.write(">. ?a <");
+        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.VERSION));
+        writer.write("> \"");
+        writer.write(TextUtils.escapeStringW3C(version));
+        writer.write("\" } }");
+        Reply reply = doSparql(writer.toString());
+        if (!reply.isSuccess())
+            return reply;
+        Collection<Quad> metadata = ((ReplyResult<ResultQuads>) reply).getData().getQuads();
+        if (metadata.isEmpty())
+            return ReplyNotFound.instance();
+        return new ReplyResult<>(buildArtifact(metadata));
     }
 
     /**
@@ -433,6 +710,9 @@ abstract class XOWLFederationStore extends BaseDatabase implements TripleStore {
      * @return The number of artifacts
      */
     public int getArtifactsCount() {
+        int count = index.getCount();
+        if (count >= 0)
+            return count;
         XOWLDatabase connection = getBackend();
         if (connection == null)
             return -1;
@@ -452,22 +732,148 @@ abstract class XOWLFederationStore extends BaseDatabase implements TripleStore {
 
     @Override
     public Reply store(Artifact artifact) {
+        return storeAll(Collections.singletonList(artifact));
+    }
+
+    @Override
+    public Reply storeAll(Collection<Artifact> artifacts) {
         SecurityService securityService = Register.getComponent(SecurityService.class);
         if (securityService == null)
             return ReplyServiceUnavailable.instance();
         Reply reply = securityService.checkAction(ArtifactStorageService.ACTION_STORE);
         if (!reply.isSuccess())
             return reply;
-        Collection<Quad> metadata = artifact.getMetadata();
-        if (metadata == null || metadata.isEmpty())
-            return new ReplyApiError(ArtifactStorageService.ERROR_INVALID_ARTIFACT, "Empty metadata.");
-        Collection<Quad> content = artifact.getContent();
-        if (content == null)
-            return new ReplyApiError(ArtifactStorageService.ERROR_STORAGE_FAILED, "Failed to fetch the artifact's content.");
-        reply = upload(metadata);
+        reply = securityService.checkAction(StorageService.ACTION_UPLOAD_RAW);
         if (!reply.isSuccess())
             return reply;
-        return upload(content);
+        List<Collection<Quad>> metadata = new ArrayList<>(artifacts.size());
+        for (Artifact artifact : artifacts) {
+            Collection<Quad> quads = artifact.getMetadata();
+            if (quads == null || quads.isEmpty())
+                return new ReplyApiError(ArtifactStorageService.ERROR_INVALID_ARTIFACT, "Empty metadata.");
+            metadata.add(quads);
+        }
+        XOWLDatabase connection = getBackend();
+        if (connection == null)
+            return ReplyNetworkError.instance();
+
+        // the identifiers of the artifacts that did not exist before, the only ones to roll back
+        List<String> created = getCreated(connection, artifacts);
+        if (created == null)
+            return new ReplyApiError(ArtifactStorageService.ERROR_STORAGE_FAILED, "Failed to check for existing artifacts.");
+
+        // send the content first, the metadata that makes the artifacts visible comes with the last batch
+        List<Quad> batch = new ArrayList<>();
+        for (Artifact artifact : artifacts) {
+            Iterator<Quad> content = artifact.getContentIterator();
+            if (content == null) {
+                rollback(connection, created);
+                return new ReplyApiError(ArtifactStorageService.ERROR_STORAGE_FAILED, "Failed to fetch the artifact's content.");
+            }
+            try {
+                while (content.hasNext()) {
+                    batch.add(content.next());
+                    if (batchSize > 0 && batch.size() >= batchSize) {
+                        reply = connection.upload(batch);
+                        if (!reply.isSuccess()) {
+                            rollback(connection, created);
+                            return reply;
+                        }
+                        batch = new ArrayList<>();
+                    }
+                }
+            } catch (IllegalStateException exception) {
+                rollback(connection, created);
+                return new ReplyApiError(ArtifactStorageService.ERROR_STORAGE_FAILED, "Failed to fetch the artifact's content: " + exception.getMessage());
+            }
+        }
+        for (Collection<Quad> quads : metadata)
+            batch.addAll(quads);
+        reply = connection.upload(batch);
+        if (!reply.isSuccess()) {
+            rollback(connection, created);
+            return reply;
+        }
+        for (Collection<Quad> quads : metadata)
+            index.onStored(quads);
+        onChanged();
+        return ReplySuccess.instance();
+    }
+
+    /**
+     * Gets the identifiers of the artifacts that do not exist yet in the backend, either through their metadata or their content
+     * The artifacts that are not resolved by the index are looked up with a single query.
+     *
+     * @param connection The connection to the backend
+     * @param artifacts  The artifacts to be stored
+     * @return The identifiers of the artifacts to be created, or null if this could not be determined
+     */
+    private List<String> getCreated(XOWLDatabase connection, Collection<Artifact> artifacts) {
+        List<String> created = new ArrayList<>(artifacts.size());
+        List<String> unknown = new ArrayList<>(artifacts.size());
+        for (Artifact artifact : artifacts) {
+            Collection<Quad> indexed = index.get(artifact.getIdentifier());
+            if (indexed == null || indexed.isEmpty())
+                unknown.add(artifact.getIdentifier());
+        }
+        if (unknown.isEmpty())
+            return created;
+        StringWriter writer = new StringWriter();
+        writer.write("SELECT DISTINCT ?a WHERE { VALUES ?a {");
+        for (String identifier : unknown) {
+            writer.write(" <");
+            writer.write(TextUtils.escapeAbsoluteURIW3C(identifier));
+            writer.write(">");
+        }
+        writer.write(" } { GRAPH <");
+        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.GRAPH_ARTIFACTS));
+        writer.write("> { ?a ?p ?o } } UNION { GRAPH ?a { ?s ?p ?o } } }");
+        Reply reply = connection.sparql(writer.toString(), null, null);
+        if (!reply.isSuccess())
+            return null;
+        Result result = ((ReplyResult<Result>) reply).getData();
+        if (result.isFailure())
+            return null;
+        Collection<String> existing = new HashSet<>();
+        for (RDFPatternSolution solution : ((ResultSolutions) result).getSolutions())
+            existing.add(((IRINode) solution.get("a")).getIRIValue());
+        for (String identifier : unknown) {
+            if (!existing.contains(identifier))
+                created.add(identifier);
+        }
+        return created;
+    }
+
+    /**
+     * Rolls back the partial storage of artifacts after a failure
+     * Only the artifacts created by the failed operation must be given, so that pre-existing artifacts are preserved.
+     *
+     * @param connection  The connection to the backend
+     * @param identifiers The identifiers of the created artifacts to remove
+     */
+    private void rollback(XOWLDatabase connection, Collection<String> identifiers) {
+        if (identifiers.isEmpty())
+            return;
+        StringWriter writer = new StringWriter();
+        boolean first = true;
+        for (String identifier : identifiers) {
+            if (!first)
+                writer.write("; ");
+            first = false;
+            writer.write("DELETE WHERE { GRAPH <");
+            writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.GRAPH_ARTIFACTS));
+            writer.write("> { <");
+            writer.write(TextUtils.escapeAbsoluteURIW3C(identifier));
+            writer.write("> ?p ?o } }; DROP SILENT GRAPH <");
+            writer.write(TextUtils.escapeAbsoluteURIW3C(identifier));
+            writer.write(">");
+        }
+        Reply reply = connection.sparql(writer.toString(), null, null);
+        if (!reply.isSuccess() || ((ReplyResult<Result>) reply).getData().isFailure()) {
+            Logging.get().error("Failed to roll back the storage of artifacts in " + identifier);
+            index.invalidate();
+            onChanged();
+        }
     }
 
     @Override
@@ -478,6 +884,12 @@ abstract class XOWLFederationStore extends BaseDatabase implements TripleStore {
         Reply reply = securityService.checkAction(ArtifactStorageService.ACTION_RETRIEVE_METADATA);
         if (!reply.isSuccess())
             return reply;
+        Collection<Quad> indexed = index.get(identifier);
+        if (indexed != null) {
+            if (indexed.isEmpty())
+                return ReplyNotFound.instance();
+            return new ReplyResult<>(buildArtifact(indexed));
+        }
         reply = sparql("DESCRIBE <" + TextUtils.escapeAbsoluteURIW3C(identifier) + ">", null, null);
         if (!reply.isSuccess())
             return reply;
@@ -506,12 +918,20 @@ abstract class XOWLFederationStore extends BaseDatabase implements TripleStore {
         writer.write("> ?p ?o } }; DROP SILENT GRAPH <");
         writer.write(TextUtils.escapeAbsoluteURIW3C(identifier));
         writer.write(">");
-        reply = sparql(writer.toString(), null, null);
+        reply = securityService.checkAction(StorageService.ACTION_QUERY);
+        if (!reply.isSuccess())
+            return reply;
+        reply = doSparql(writer.toString());
         if (!reply.isSuccess())
             return reply;
         Result result = ((ReplyResult<Result>) reply).getData();
-        if (result.isSuccess())
+        if (result.isSuccess()) {
+            index.onDeleted(identifier);
+            onChanged();
             return ReplySuccess.instance();
+        }
+        index.invalidate();
+        onChanged();
         return new ReplyApiError(ArtifactStorageService.ERROR_STORAGE_FAILED, ((ResultFailure) result).getMessage());
     }
 
@@ -530,6 +950,19 @@ abstract class XOWLFederationStore extends BaseDatabase implements TripleStore {
         return result;
     }
 
+    /**
+     * Builds the default artifacts from the metadata in the index
+     *
+     * @param metadata The metadata of the artifacts, grouped by artifact
+     * @return The artifacts
+     */
+    private Collection<Artifact> buildArtifactsFromIndex(Collection<Collection<Quad>> metadata) {
+        Collection<Artifact> result = new ArrayList<>(metadata.size());
+        for (Collection<Quad> quads : metadata)
+            result.add(buildArtifact(quads));
+        return result;
+    }
+
     /**
      * Builds the default artifact from the specified metadata
      *
@@ -540,24 +973,45 @@ abstract class XOWLFederationStore extends BaseDatabase implements TripleStore {
         return new ArtifactDeferred(metadata) {
             @Override
             protected Collection<Quad> load() {
-                SecurityService securityService = Register.getComponent(SecurityService.class);
-                if (securityService == null)
-                    return Collections.emptyList();
-                Reply reply = securityService.checkAction(ArtifactStorageService.ACTION_RETRIEVE_CONTENT);
-                if (!reply.isSuccess())
-                    return Collections.emptyList();
-                XOWLDatabase connection = getBackend();
-                if (connection == null)
-                    return Collections.emptyList();
-                reply = connection.sparql("CONSTRUCT FROM NAMED <" + TextUtils.escapeAbsoluteURIW3C(identifier) + "> WHERE { ?s ?p ?o }", null, null);
-                if (!reply.isSuccess())
-                    return Collections.emptyList();
-                Result result = ((ReplyResult<Result>) reply).getData();
-                return ((ResultQuads) result).getQuads();
+                Collection<Quad> content = fetchContent(identifier);
+                return content != null ? content : Collections.<Quad>emptyList();
+            }
+
+            @Override
+            protected Iterator<Quad> loadIterator() {
+                // the content is fetched in a single query before the iteration starts,
+                // so that a failure is reported before anything is sent to a client
+                Collection<Quad> content = fetchContent(identifier);
+                return content != null ? content.iterator() : null;
             }
         };
     }
 
+    /**
+     * Fetches the content of an artifact from the backend in a single query
+     *
+     * @param identifier The identifier of the artifact
+     * @return The content, or null if it could not be fetched
+     */
+    private Collection<Quad> fetchContent(String identifier) {
+        SecurityService securityService = Register.getComponent(SecurityService.class);
+        if (securityService == null)
+            return null;
+        Reply reply = securityService.checkAction(ArtifactStorageService.ACTION_RETRIEVE_CONTENT);
+        if (!reply.isSuccess())
+            return null;
+        XOWLDatabase connection = getBackend();
+        if (connection == null)
+            return null;
+        reply = connection.sparql("CONSTRUCT FROM NAMED <" + TextUtils.escapeAbsoluteURIW3C(identifier) + "> WHERE { ?s ?p ?o }", null, null);
+        if (!reply.isSuccess())
+            return null;
+        Result result = ((ReplyResult<Result>) reply).getData();
+        if (result.isFailure())
+            return null;
+        return ((ResultQuads) result).getQuads();
+    }
+
     /**
      * Executes a SPARQL query without security checks
      *
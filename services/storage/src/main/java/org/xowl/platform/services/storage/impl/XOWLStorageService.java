@@ -22,13 +22,13 @@ import fr.cenotelie.commons.utils.TextUtils;
 import fr.cenotelie.commons.utils.api.*;
 import fr.cenotelie.commons.utils.http.HttpConstants;
 import fr.cenotelie.commons.utils.http.HttpResponse;
-import fr.cenotelie.commons.utils.http.URIUtils;
 import fr.cenotelie.commons.utils.ini.IniDocument;
 import fr.cenotelie.commons.utils.logging.BufferedLogger;
 import fr.cenotelie.commons.utils.logging.Logging;
 import fr.cenotelie.commons.utils.metrics.Metric;
 import fr.cenotelie.commons.utils.metrics.MetricSnapshot;
 import fr.cenotelie.commons.utils.metrics.MetricSnapshotInt;
+import fr.cenotelie.commons.utils.metrics.MetricSnapshotLong;
 import org.xowl.infra.server.ServerConfiguration;
 import org.xowl.infra.server.api.XOWLDatabase;
 import org.xowl.infra.server.api.XOWLReplyUtils;
@@ -39,11 +39,12 @@ import org.xowl.infra.store.EntailmentRegime;
 import org.xowl.infra.store.RDFUtils;
 import org.xowl.infra.store.rdf.Changeset;
 import org.xowl.infra.store.rdf.Quad;
-import org.xowl.infra.store.sparql.ResultQuads;
 import org.xowl.platform.kernel.*;
 import org.xowl.platform.kernel.artifacts.Artifact;
+import org.xowl.platform.kernel.artifacts.ArtifactArchive;
 import org.xowl.platform.kernel.artifacts.ArtifactSchema;
 import org.xowl.platform.kernel.artifacts.ArtifactStorageService;
+import org.xowl.platform.kernel.events.EventService;
 import org.xowl.platform.kernel.jobs.Job;
 import org.xowl.platform.kernel.jobs.JobExecutionService;
 import org.xowl.platform.kernel.security.SecuredAction;
@@ -51,9 +52,13 @@ import org.xowl.platform.kernel.security.SecurityService;
 import org.xowl.platform.kernel.webapi.HttpApiRequest;
 import org.xowl.platform.kernel.webapi.HttpApiResource;
 import org.xowl.platform.kernel.webapi.HttpApiResourceBase;
+import org.xowl.platform.kernel.webapi.HttpApiRoute;
 import org.xowl.platform.kernel.webapi.HttpApiService;
+import org.xowl.platform.kernel.webapi.HttpResponseStreamedJSON;
+import org.xowl.platform.kernel.webapi.HttpResponseStreamedQuads;
 import org.xowl.platform.services.storage.StorageService;
 import org.xowl.platform.services.storage.TripleStore;
+import org.xowl.platform.services.storage.TripleStoreChangedEvent;
 import org.xowl.platform.services.storage.jobs.DeleteArtifactJob;
 import org.xowl.platform.services.storage.jobs.PullArtifactFromLiveJob;
 import org.xowl.platform.services.storage.jobs.PushArtifactToLiveJob;
@@ -61,10 +66,8 @@ import org.xowl.platform.services.storage.jobs.PushArtifactToLiveJob;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.net.HttpURLConnection;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implements a triple store service that is backed by a xOWL Server
@@ -80,12 +83,76 @@ public class XOWLStorageService implements StorageService, HttpApiService, Manag
      * The resource for the API's documentation
      */
     private static final HttpApiResource RESOURCE_DOCUMENTATION = new HttpApiResourceBase(XOWLStorageService.class, "/org/xowl/platform/services/storage/api_service_storage.html", "Storage Service - Documentation", HttpApiResource.MIME_HTML);
+    /**
+     * The response header that contains the cursor for the next page of artifacts
+     */
+    private static final String HEADER_NEXT_CURSOR = "X-Next-Cursor";
+    /**
+     * The response header that contains the entity tag of a collection of artifacts
+     */
+    private static final String HEADER_ETAG = "ETag";
+    /**
+     * The default number of artifacts in a page, when paging without a limit
+     */
+    private static final int PAGE_SIZE = 256;
+    /**
+     * The default maximum number of artifacts in a page
+     */
+    private static final int PAGE_SIZE_MAX = 4096;
 
 
     /**
      * The URI for the API services
      */
     private final String apiUri;
+    /**
+     * The route for the SPARQL resource
+     */
+    private final HttpApiRoute routeSparql;
+    /**
+     * The route for the artifacts resource
+     */
+    private final HttpApiRoute routeArtifacts;
+    /**
+     * The route for the diff of artifacts resource
+     */
+    private final HttpApiRoute routeArtifactsDiff;
+    /**
+     * The route for the live artifacts resource
+     */
+    private final HttpApiRoute routeArtifactsLive;
+    /**
+     * The route for a specific artifact
+     */
+    private final HttpApiRoute routeArtifact;
+    /**
+     * The route for the metadata of an artifact
+     */
+    private final HttpApiRoute routeArtifactMetadata;
+    /**
+     * The route for the content of an artifact
+     */
+    private final HttpApiRoute routeArtifactContent;
+    /**
+     * The route for the archive of an artifact
+     */
+    private final HttpApiRoute routeArtifactArchive;
+    /**
+     * The route for the activation of an artifact
+     */
+    private final HttpApiRoute routeArtifactActivate;
+    /**
+     * The route for the deactivation of an artifact
+     */
+    private final HttpApiRoute routeArtifactDeactivate;
+    /**
+     * The route for an incoming transfer
+     */
+    private final HttpApiRoute routeTransfer;
+    /**
+     * The route for the commit of an incoming transfer
+     */
+    private final HttpApiRoute routeTransferCommit;
     /**
      * The remote server
      */
@@ -102,6 +169,26 @@ public class XOWLStorageService implements StorageService, HttpApiService, Manag
      * The service store
      */
     private final XOWLFederationStore storeService;
+    /**
+     * The transfers of artifacts' archives
+     */
+    private final XOWLArtifactTransfers transfers;
+    /**
+     * The timestamp of the initialization of this service, used to distinguish the versions across restarts
+     */
+    private final long versionEpoch;
+    /**
+     * The version of the content of the stores, incremented on each change
+     */
+    private final AtomicLong version;
+    /**
+     * The number of artifacts in a page, when paging without a limit
+     */
+    private final int pageSize;
+    /**
+     * The maximum number of artifacts in a page
+     */
+    private final int pageSizeMax;
 
     /**
      * Initializes this service
@@ -110,8 +197,48 @@ public class XOWLStorageService implements StorageService, HttpApiService, Manag
         ConfigurationService configurationService = Register.getComponent(ConfigurationService.class);
         IniDocument configuration = configurationService.getConfigFor(StorageService.class.getCanonicalName());
         this.apiUri = PlatformHttp.getUriPrefixApi() + "/services/storage";
+        this.routeSparql = new HttpApiRoute(apiUri + "/sparql", HttpConstants.METHOD_POST);
+        this.routeArtifacts = new HttpApiRoute(apiUri + "/artifacts", HttpConstants.METHOD_GET);
+        this.routeArtifactsDiff = new HttpApiRoute(apiUri + "/artifacts/diff", HttpConstants.METHOD_POST);
+        this.routeArtifactsLive = new HttpApiRoute(apiUri + "/artifacts/live", HttpConstants.METHOD_GET);
+        this.routeArtifact = new HttpApiRoute(apiUri + "/artifacts/{artifactId}", HttpConstants.METHOD_GET, HttpConstants.METHOD_DELETE);
+        this.routeArtifactMetadata = new HttpApiRoute(apiUri + "/artifacts/{artifactId}/metadata", HttpConstants.METHOD_GET);
+        this.routeArtifactContent = new HttpApiRoute(apiUri + "/artifacts/{artifactId}/content", HttpConstants.METHOD_GET);
+        this.routeArtifactArchive = new HttpApiRoute(apiUri + "/artifacts/{artifactId}/archive", HttpConstants.METHOD_GET);
+        this.routeArtifactActivate = new HttpApiRoute(apiUri + "/artifacts/{artifactId}/activate", HttpConstants.METHOD_POST);
+        this.routeArtifactDeactivate = new HttpApiRoute(apiUri + "/artifacts/{artifactId}/deactivate", HttpConstants.METHOD_POST);
+        this.routeTransfer = new HttpApiRoute(apiUri + "/transfers/{transferId}", HttpConstants.METHOD_GET, HttpConstants.METHOD_PUT, HttpConstants.METHOD_DELETE);
+        this.routeTransferCommit = new HttpApiRoute(apiUri + "/transfers/{transferId}/commit", HttpConstants.METHOD_POST);
+        this.versionEpoch = System.currentTimeMillis();
+        this.version = new AtomicLong(0);
         this.server = resolveServer(configuration);
-        this.storeLive = new XOWLFederationStore(configuration.get("databases", STORE_ID_LIVE)) {
+        int indexCapacity = XOWLArtifactIndex.DEFAULT_CAPACITY;
+        int batchSize = XOWLFederationStore.DEFAULT_BATCH_SIZE;
+        long transfersTTL = XOWLArtifactTransfers.DEFAULT_TTL;
+        int listingPageSize = PAGE_SIZE;
+        int listingPageSizeMax = PAGE_SIZE_MAX;
+        try {
+            String value = configuration.get("index", "capacity");
+            if (value != null)
+                indexCapacity = Integer.parseInt(value);
+            value = configuration.get("upload", "batchSize");
+            if (value != null)
+                batchSize = Integer.parseInt(value);
+            value = configuration.get("transfers", "ttl");
+            if (value != null)
+                transfersTTL = Long.parseLong(value);
+            value = configuration.get("listing", "pageSize");
+            if (value != null)
+                listingPageSize = Integer.parseInt(value);
+            value = configuration.get("listing", "pageSizeMax");
+            if (value != null)
+                listingPageSizeMax = Integer.parseInt(value);
+        } catch (NumberFormatException exception) {
+            Logging.get().error(exception);
+        }
+        this.pageSizeMax = Math.max(1, listingPageSizeMax);
+        this.pageSize = Math.max(1, Math.min(listingPageSize, pageSizeMax));
+        this.storeLive = new XOWLFederationStore(configuration.get("databases", STORE_ID_LIVE), indexCapacity, batchSize) {
             @Override
             protected XOWLDatabase resolveBackend() {
                 XOWLDatabase database = XOWLStorageService.this.resolveRemote(this.getName());
@@ -131,19 +258,35 @@ public class XOWLStorageService implements StorageService, HttpApiService, Manag
                 }
                 return database;
             }
+
+            @Override
+            protected void onChanged() {
+                XOWLStorageService.this.onStoreChanged(this);
+            }
         };
-        this.storeLongTerm = new XOWLFederationStore(configuration.get("databases", STORE_ID_LONG_TERM)) {
+        this.storeLongTerm = new XOWLFederationStore(configuration.get("databases", STORE_ID_LONG_TERM), indexCapacity, batchSize) {
             @Override
             protected XOWLDatabase resolveBackend() {
                 return XOWLStorageService.this.resolveRemote(this.getName());
             }
+
+            @Override
+            protected void onChanged() {
+                XOWLStorageService.this.onStoreChanged(this);
+            }
         };
-        this.storeService = new XOWLFederationStore(configuration.get("databases", STORE_ID_SERVICE)) {
+        this.storeService = new XOWLFederationStore(configuration.get("databases", STORE_ID_SERVICE), indexCapacity, batchSize) {
             @Override
             protected XOWLDatabase resolveBackend() {
                 return XOWLStorageService.this.resolveRemote(this.getName());
             }
+
+            @Override
+            protected void onChanged() {
+                XOWLStorageService.this.onStoreChanged(this);
+            }
         };
+        this.transfers = new XOWLArtifactTransfers(PlatformUtils.resolve(configuration.get("transfers", "location")), transfersTTL);
     }
 
     /**
@@ -199,6 +342,27 @@ public class XOWLStorageService implements StorageService, HttpApiService, Manag
         return ((ReplyResult<XOWLDatabase>) reply).getData();
     }
 
+    /**
+     * When the content of a store may have changed
+     *
+     * @param store The changed store
+     */
+    private void onStoreChanged(TripleStore store) {
+        version.incrementAndGet();
+        EventService eventService = Register.getComponent(EventService.class);
+        if (eventService != null)
+            eventService.onEvent(new TripleStoreChangedEvent(store, this));
+    }
+
+    /**
+     * Gets an entity tag for the current version of the content of the stores
+     *
+     * @return The entity tag
+     */
+    private String getVersionTag() {
+        return "\"" + Long.toHexString(versionEpoch) + "-" + Long.toString(version.get()) + "\"";
+    }
+
     @Override
     public String getIdentifier() {
         return XOWLStorageService.class.getCanonicalName();
@@ -253,6 +417,11 @@ public class XOWLStorageService implements StorageService, HttpApiService, Manag
         return storeLongTerm.store(artifact);
     }
 
+    @Override
+    public Reply storeAll(Collection<Artifact> artifacts) {
+        return storeLongTerm.storeAll(artifacts);
+    }
+
     @Override
     public Reply retrieve(String identifier) {
         return storeLongTerm.retrieve(identifier);
@@ -266,27 +435,7 @@ public class XOWLStorageService implements StorageService, HttpApiService, Manag
         Reply reply = securityService.checkAction(ACTION_RETRIEVE_METADATA);
         if (!reply.isSuccess())
             return reply;
-        StringWriter writer = new StringWriter();
-        writer.write("DESCRIBE ?a WHERE { GRAPH <");
-        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.GRAPH_ARTIFACTS));
-        writer.write("> { ?a a <");
-        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.ARTIFACT));
-        writer.write(">. ?a <");
-        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.BASE));
-        writer.write("> <");
-        writer.write(TextUtils.escapeAbsoluteURIW3C(base));
-        writer.write(">. ?a <");
-        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.VERSION));
-        writer.write("> \"");
-        writer.write(TextUtils.escapeStringW3C(version));
-        writer.write("\" } }");
-        reply = storeLongTerm.doSparql(writer.toString());
-        if (!reply.isSuccess())
-            return reply;
-        Collection<Quad> metadata = ((ReplyResult<ResultQuads>) reply).getData().getQuads();
-        if (metadata.isEmpty())
-            return ReplyNotFound.instance();
-        return new ReplyResult<>(storeLongTerm.buildArtifact(metadata));
+        return storeLongTerm.retrieve(base, version);
     }
 
     @Override
@@ -315,21 +464,7 @@ public class XOWLStorageService implements StorageService, HttpApiService, Manag
         Reply reply = securityService.checkAction(ACTION_RETRIEVE_METADATA);
         if (!reply.isSuccess())
             return reply;
-        StringWriter writer = new StringWriter();
-        writer.write("DESCRIBE ?a WHERE { GRAPH <");
-        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.GRAPH_ARTIFACTS));
-        writer.write("> { ?a a <");
-        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.ARTIFACT));
-        writer.write(">. ?a <");
-        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.BASE));
-        writer.write("> <");
-        writer.write(TextUtils.escapeAbsoluteURIW3C(base));
-        writer.write("> } }");
-        reply = storeLongTerm.doSparql(writer.toString());
-        if (!reply.isSuccess())
-            return reply;
-        Collection<Quad> metadata = ((ReplyResult<ResultQuads>) reply).getData().getQuads();
-        return new ReplyResultCollection<>(storeLongTerm.buildArtifacts(metadata));
+        return storeLongTerm.getArtifactsForBase(base);
     }
 
     @Override
@@ -340,21 +475,7 @@ public class XOWLStorageService implements StorageService, HttpApiService, Manag
         Reply reply = securityService.checkAction(ACTION_RETRIEVE_METADATA);
         if (!reply.isSuccess())
             return reply;
-        StringWriter writer = new StringWriter();
-        writer.write("DESCRIBE ?a WHERE { GRAPH <");
-        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.GRAPH_ARTIFACTS));
-        writer.write("> { ?a a <");
-        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.ARTIFACT));
-        writer.write(">. ?a <");
-        writer.write(TextUtils.escapeAbsoluteURIW3C(KernelSchema.ARCHETYPE));
-        writer.write("> \"");
-        writer.write(TextUtils.escapeAbsoluteURIW3C(archetype));
-        writer.write("\" } }");
-        reply = storeLongTerm.doSparql(writer.toString());
-        if (!reply.isSuccess())
-            return reply;
-        Collection<Quad> metadata = ((ReplyResult<ResultQuads>) reply).getData().getQuads();
-        return new ReplyResultCollection<>(storeLongTerm.buildArtifacts(metadata));
+        return storeLongTerm.getArtifactsForArchetype(archetype);
     }
 
     @Override
@@ -377,6 +498,8 @@ public class XOWLStorageService implements StorageService, HttpApiService, Manag
         List<Metric> metrics = new ArrayList<>();
         metrics.add(METRIC_TOTAL_ARTIFACTS_COUNT);
         metrics.add(METRIC_LIVE_ARTIFACTS_COUNT);
+        metrics.add(METRIC_INDEX_HITS);
+        metrics.add(METRIC_INDEX_MISSES);
         metrics.add(((ReplyResult<Metric>) storeService.getMetric()).getData());
         metrics.add(((ReplyResult<Metric>) storeLongTerm.getMetric()).getData());
         metrics.add(((ReplyResult<Metric>) storeLive.getMetric()).getData());
@@ -389,6 +512,10 @@ public class XOWLStorageService implements StorageService, HttpApiService, Manag
             return new MetricSnapshotInt(storeLive.getArtifactsCount());
         } else if (metric == METRIC_TOTAL_ARTIFACTS_COUNT) {
             return new MetricSnapshotInt(storeLongTerm.getArtifactsCount());
+        } else if (metric == METRIC_INDEX_HITS) {
+            return new MetricSnapshotLong(storeLive.index.getHits() + storeLongTerm.index.getHits() + storeService.index.getHits());
+        } else if (metric == METRIC_INDEX_MISSES) {
+            return new MetricSnapshotLong(storeLive.index.getMisses() + storeLongTerm.index.getMisses() + storeService.index.getMisses());
         } else if (metric == storeService.metricStatistics) {
             Reply reply = storeService.getMetricSnapshot();
             if (!reply.isSuccess())
@@ -409,10 +536,21 @@ public class XOWLStorageService implements StorageService, HttpApiService, Manag
     }
 
     @Override
-    public int canHandle(HttpApiRequest request) {
-        return request.getUri().startsWith(apiUri)
-                ? HttpApiService.PRIORITY_NORMAL
-                : HttpApiService.CANNOT_HANDLE;
+    public HttpApiRoute[] getRoutes() {
+        return new HttpApiRoute[]{
+                routeSparql,
+                routeArtifacts,
+                routeArtifactsDiff,
+                routeArtifactsLive,
+                routeArtifact,
+                routeArtifactMetadata,
+                routeArtifactContent,
+                routeArtifactArchive,
+                routeArtifactActivate,
+                routeArtifactDeactivate,
+                routeTransfer,
+                routeTransferCommit
+        };
     }
 
     @Override
@@ -422,17 +560,29 @@ public class XOWLStorageService implements StorageService, HttpApiService, Manag
 
     @Override
     public HttpResponse handle(SecurityService securityService, HttpApiRequest request) {
-        if (request.getUri().equals(apiUri + "/sparql")) {
+        HttpApiRoute route = request.getRoute();
+        if (route == routeSparql)
             return onMessageSPARQL(request);
-        } else if (request.getUri().equals(apiUri + "/artifacts")) {
+        if (route == routeArtifacts)
             return handleArtifacts(request);
-        } else if (request.getUri().equals(apiUri + "/artifacts/diff")) {
+        if (route == routeArtifactsDiff)
             return handleArtifactsDiff(request);
-        } else if (request.getUri().equals(apiUri + "/artifacts/live")) {
-            return handleArtifactsLive();
-        } else if (request.getUri().startsWith(apiUri + "/artifacts")) {
-            return handleArtifact(request);
-        }
+        if (route == routeArtifactsLive)
+            return handleArtifactsLive(request);
+        if (route == routeArtifact)
+            return handleArtifact(request.getPathParameter("artifactId"), request);
+        if (route == routeArtifactMetadata)
+            return onMessageGetArtifactMetadata(request.getPathParameter("artifactId"), request.getHeader(HttpConstants.HEADER_ACCEPT));
+        if (route == routeArtifactContent)
+            return onMessageGetArtifactContent(request.getPathParameter("artifactId"), request.getHeader(HttpConstants.HEADER_ACCEPT));
+        if (route == routeArtifactArchive)
+            return onMessageGetArtifactArchive(request.getPathParameter("artifactId"), request);
+        if (route == routeArtifactActivate)
+            return onMessagePushToLive(request.getPathParameter("artifactId"));
+        if (route == routeArtifactDeactivate)
+            return onMessagePullFromLive(request.getPathParameter("artifactId"));
+        if (route == routeTransfer || route == routeTransferCommit)
+            return handleTransfer(securityService, request.getPathParameter("transferId"), request);
         return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
     }
 
@@ -443,78 +593,137 @@ public class XOWLStorageService implements StorageService, HttpApiService, Manag
      * @return The response
      */
     private HttpResponse handleArtifacts(HttpApiRequest request) {
-        if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-        // get artifacts
+        // the tag is obtained before the artifacts so that it is never newer than the content
+        String etag = getVersionTag();
+        if (request.isNotModified(etag))
+            return doResponseNotModified(etag);
         String archetype = request.getParameter("archetype");
+        String base = request.getParameter("base");
+        if (isPaged(request))
+            return doResponseArtifactsPage(request, etag, storeLongTerm, archetype, base);
         if (archetype != null) {
             // get all artifacts for an archetype
-            Reply reply = getArtifactsForArchetype(archetype);
-            if (!reply.isSuccess())
-                return ReplyUtils.toHttpResponse(reply);
-            boolean first = true;
-            StringBuilder builder = new StringBuilder("[");
-            for (Artifact artifact : ((ReplyResultCollection<Artifact>) reply).getData()) {
-                if (!first)
-                    builder.append(", ");
-                first = false;
-                builder.append(artifact.serializedJSON());
-            }
-            builder.append("]");
-            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
+            return doResponseArtifacts(etag, getArtifactsForArchetype(archetype));
         }
-        String base = request.getParameter("base");
         if (base != null) {
             // get all artifacts for an base
-            Reply reply = getArtifactsForBase(base);
-            if (!reply.isSuccess())
-                return ReplyUtils.toHttpResponse(reply);
-            boolean first = true;
-            StringBuilder builder = new StringBuilder("[");
-            for (Artifact artifact : ((ReplyResultCollection<Artifact>) reply).getData()) {
-                if (!first)
-                    builder.append(", ");
-                first = false;
-                builder.append(artifact.serializedJSON());
-            }
-            builder.append("]");
-            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
-        } else {
-            Reply reply = getAllArtifacts();
-            if (!reply.isSuccess())
-                return ReplyUtils.toHttpResponse(reply);
-            boolean first = true;
-            StringBuilder builder = new StringBuilder("[");
-            for (Artifact artifact : ((ReplyResultCollection<Artifact>) reply).getData()) {
-                if (!first)
-                    builder.append(", ");
-                first = false;
-                builder.append(artifact.serializedJSON());
-            }
-            builder.append("]");
-            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
+            return doResponseArtifacts(etag, getArtifactsForBase(base));
         }
+        return doResponseArtifacts(etag, getAllArtifacts());
     }
 
     /**
      * Handles the request for the /artifacts/live resource
      *
+     * @param request The request
+     * @return The response
+     */
+    private HttpResponse handleArtifactsLive(HttpApiRequest request) {
+        // the tag is obtained before the artifacts so that it is never newer than the content
+        String etag = getVersionTag();
+        if (request.isNotModified(etag))
+            return doResponseNotModified(etag);
+        if (isPaged(request))
+            return doResponseArtifactsPage(request, etag, storeLive, null, null);
+        return doResponseArtifacts(etag, getLiveArtifacts());
+    }
+
+    /**
+     * Gets whether a request for a collection of artifacts asks for a page
+     *
+     * @param request The request
+     * @return Whether the request specifies the paging parameters 'limit' and/or 'cursor'
+     */
+    private static boolean isPaged(HttpApiRequest request) {
+        return request.getParameter("cursor") != null || request.getParameter("limit") != null;
+    }
+
+    /**
+     * Builds the response for a request of a collection of artifacts when the client already holds the current version
+     * The artifacts are not fetched, but the client must still be allowed to retrieve them.
+     *
+     * @param etag The entity tag for the current version of the stores
+     * @return The response
+     */
+    private HttpResponse doResponseNotModified(String etag) {
+        SecurityService securityService = Register.getComponent(SecurityService.class);
+        if (securityService == null)
+            return ReplyUtils.toHttpResponse(ReplyServiceUnavailable.instance());
+        Reply reply = securityService.checkAction(ACTION_RETRIEVE_METADATA);
+        if (!reply.isSuccess())
+            return ReplyUtils.toHttpResponse(reply);
+        HttpResponse response = new HttpResponse(HttpURLConnection.HTTP_NOT_MODIFIED);
+        response.addHeader(HEADER_ETAG, etag);
+        return response;
+    }
+
+    /**
+     * Builds the response for a request of a collection of artifacts
+     * The response is streamed to the client.
+     * The response is tagged with the version of the stores so that polling clients can issue conditional requests.
+     *
+     * @param etag  The entity tag for the version of the stores the artifacts were obtained from
+     * @param reply The reply for the collection of artifacts
+     * @return The response
+     */
+    private HttpResponse doResponseArtifacts(String etag, Reply reply) {
+        if (!reply.isSuccess())
+            return ReplyUtils.toHttpResponse(reply);
+        Collection<Artifact> artifacts = ((ReplyResultCollection<Artifact>) reply).getData();
+        HttpResponse response = new HttpResponseStreamedJSON(HttpURLConnection.HTTP_OK, artifacts);
+        response.addHeader(HEADER_ETAG, etag);
+        return response;
+    }
+
+    /**
+     * Builds the response for a request of a page of artifacts
+     * The artifacts are ordered by their identifier and only the page is fetched from the store.
+     * The cursor is the identifier of the last artifact on the previous page.
+     * The page size is the 'limit' parameter, bounded by the configured maximum, or the configured default.
+     * When there are more artifacts, the cursor for the next page is given in the HEADER_NEXT_CURSOR header.
+     * The response is tagged with the version of the stores so that polling clients can issue conditional requests.
+     *
+     * @param request   The request
+     * @param etag      The entity tag for the version of the stores the artifacts are obtained from
+     * @param store     The store to get the artifacts from
+     * @param archetype The identifier of the archetype of the artifacts, or null
+     * @param base      The identifier of the base artifact of the artifacts, or null
      * @return The response
      */
-    private HttpResponse handleArtifactsLive() {
-        Reply reply = getLiveArtifacts();
+    private HttpResponse doResponseArtifactsPage(HttpApiRequest request, String etag, XOWLFederationStore store, String archetype, String base) {
+        int limit = pageSize;
+        String limitValue = request.getParameter("limit");
+        if (limitValue != null) {
+            try {
+                limit = Integer.parseInt(limitValue);
+            } catch (NumberFormatException exception) {
+                limit = 0;
+            }
+            if (limit <= 0)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_PARAMETER_RANGE, "'limit' must be a strictly positive integer"));
+            limit = Math.min(limit, pageSizeMax);
+        }
+        SecurityService securityService = Register.getComponent(SecurityService.class);
+        if (securityService == null)
+            return ReplyUtils.toHttpResponse(ReplyServiceUnavailable.instance());
+        Reply reply = securityService.checkAction(ACTION_RETRIEVE_METADATA);
+        if (!reply.isSuccess())
+            return ReplyUtils.toHttpResponse(reply);
+        // fetch one more artifact than the limit to know whether there is a next page
+        reply = store.getArtifactsPage(archetype, base, request.getParameter("cursor"), limit + 1);
         if (!reply.isSuccess())
             return ReplyUtils.toHttpResponse(reply);
-        boolean first = true;
-        StringBuilder builder = new StringBuilder("[");
-        for (Artifact artifact : ((ReplyResultCollection<Artifact>) reply).getData()) {
-            if (!first)
-                builder.append(", ");
-            first = false;
-            builder.append(artifact.serializedJSON());
+        List<Artifact> page = new ArrayList<>(((ReplyResultCollection<Artifact>) reply).getData());
+        String next = null;
+        if (page.size() > limit) {
+            page = page.subList(0, limit);
+            next = page.get(limit - 1).getIdentifier();
         }
-        builder.append("]");
-        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, builder.toString());
+        HttpResponse response = new HttpResponseStreamedJSON(HttpURLConnection.HTTP_OK, page);
+        response.addHeader(HEADER_ETAG, etag);
+        if (next != null)
+            response.addHeader(HEADER_NEXT_CURSOR, next);
+        return response;
     }
 
     /**
@@ -524,8 +733,6 @@ public class XOWLStorageService implements StorageService, HttpApiService, Manag
      * @return The response
      */
     private HttpResponse handleArtifactsDiff(HttpApiRequest request) {
-        if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
         // diff artifacts left and right
         String left = request.getParameter("left");
         String right = request.getParameter("right");
@@ -539,52 +746,17 @@ public class XOWLStorageService implements StorageService, HttpApiService, Manag
     /**
      * Handles the request for a specific artifact /artifacts/{artifactId}
      *
-     * @param request The request
+     * @param artifactId The identifier of the artifact
+     * @param request    The request
      * @return The response
      */
-    private HttpResponse handleArtifact(HttpApiRequest request) {
-        String rest = request.getUri().substring(apiUri.length() + "/artifacts".length() + 1);
-        if (rest.isEmpty())
-            return new HttpResponse(HttpURLConnection.HTTP_NOT_FOUND);
-        int index = rest.indexOf("/");
-        String artifactId = URIUtils.decodeComponent(index > 0 ? rest.substring(0, index) : rest);
-        if (index < 0) {
-            switch (request.getMethod()) {
-                case HttpConstants.METHOD_GET: {
-                    Reply reply = retrieve(artifactId);
-                    if (!reply.isSuccess())
-                        return ReplyUtils.toHttpResponse(reply);
-                    return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, ((ReplyResult<Artifact>) reply).getData().serializedJSON());
-                }
-                case HttpConstants.METHOD_DELETE:
-                    return onMessageDeleteArtifact(artifactId);
-            }
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected methods: GET, DELETE");
-        } else {
-            switch (rest.substring(index)) {
-                case "/metadata": {
-                    if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                        return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-                    return onMessageGetArtifactMetadata(artifactId, request.getHeader(HttpConstants.HEADER_ACCEPT));
-                }
-                case "/content": {
-                    if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                        return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
-                    return onMessageGetArtifactContent(artifactId, request.getHeader(HttpConstants.HEADER_ACCEPT));
-                }
-                case "/activate": {
-                    if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                        return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                    return onMessagePushToLive(artifactId);
-                }
-                case "/deactivate": {
-                    if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-                        return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
-                    return onMessagePullFromLive(artifactId);
-                }
-            }
-        }
-        return null;
+    private HttpResponse handleArtifact(String artifactId, HttpApiRequest request) {
+        if (HttpConstants.METHOD_DELETE.equals(request.getMethod()))
+            return onMessageDeleteArtifact(artifactId);
+        Reply reply = retrieve(artifactId);
+        if (!reply.isSuccess())
+            return ReplyUtils.toHttpResponse(reply);
+        return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, ((ReplyResult<Artifact>) reply).getData().serializedJSON());
     }
 
     @Override
@@ -629,8 +801,6 @@ public class XOWLStorageService implements StorageService, HttpApiService, Manag
      * @return The response
      */
     private HttpResponse onMessageSPARQL(HttpApiRequest request) {
-        if (!HttpConstants.METHOD_POST.equals(request.getMethod()))
-            return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected POST method");
         if (request.getContent() == null)
             return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_FAILED_TO_READ_CONTENT));
         String[] accept = request.getHeader(HttpConstants.HEADER_ACCEPT);
@@ -689,16 +859,91 @@ public class XOWLStorageService implements StorageService, HttpApiService, Manag
         Artifact artifact = ((ReplyResult<Artifact>) reply).getData();
         if (artifact == null)
             return ReplyUtils.toHttpResponse(new ReplyApiError(ArtifactStorageService.ERROR_STORAGE_FAILED, "Failed to retrieve the artifact"));
-        Collection<Quad> quads = artifact.getContent();
+        Iterator<Quad> quads = artifact.getContentIterator();
         if (quads == null)
             return ReplyUtils.toHttpResponse(new ReplyApiError(ArtifactStorageService.ERROR_STORAGE_FAILED, "Failed to retrieve the artifact's content"));
-
-        BufferedLogger logger = new BufferedLogger();
         String contentType = RDFUtils.coerceContentTypeQuads(Arrays.asList(accept));
-        String content = RDFUtils.serialize(logger, quads.iterator(), contentType);
-        if (!logger.getErrorMessages().isEmpty())
-            return ReplyUtils.toHttpResponse(new ReplyApiError(ArtifactStorageService.ERROR_STORAGE_FAILED, logger.getErrorsAsString()));
-        return new HttpResponse(HttpURLConnection.HTTP_OK, contentType, content);
+        return new HttpResponseStreamedQuads(HttpURLConnection.HTTP_OK, contentType, quads);
+    }
+
+    /**
+     * Responds to a request for the archive of a specified artifact
+     * Without the 'offset' parameter, the response is the descriptor of the archive.
+     * Otherwise, the response is the chunk of the archive at the offset.
+     *
+     * @param artifactId The identifier of an artifact
+     * @param request    The request
+     * @return The response
+     */
+    private HttpResponse onMessageGetArtifactArchive(String artifactId, HttpApiRequest request) {
+        SecurityService securityService = Register.getComponent(SecurityService.class);
+        if (securityService == null)
+            return ReplyUtils.toHttpResponse(ReplyServiceUnavailable.instance());
+        Reply reply = retrieve(artifactId);
+        if (!reply.isSuccess())
+            return ReplyUtils.toHttpResponse(reply);
+        Artifact artifact = ((ReplyResult<Artifact>) reply).getData();
+        if (artifact == null)
+            return ReplyUtils.toHttpResponse(new ReplyApiError(ArtifactStorageService.ERROR_STORAGE_FAILED, "Failed to retrieve the artifact"));
+        reply = securityService.checkAction(ACTION_RETRIEVE_CONTENT);
+        if (!reply.isSuccess())
+            return ReplyUtils.toHttpResponse(reply);
+
+        String offset = request.getParameter("offset");
+        if (offset == null)
+            return transfers.getOutgoingDescriptor(artifact);
+        String length = request.getParameter("length");
+        try {
+            return transfers.getOutgoingChunk(artifact,
+                    Long.parseLong(offset),
+                    length == null ? ArtifactArchive.CHUNK_SIZE : Long.parseLong(length));
+        } catch (NumberFormatException exception) {
+            return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_PARAMETER_RANGE, "'offset' and 'length' must be integers"));
+        }
+    }
+
+    /**
+     * Handles the request for an incoming transfer /transfers/{transferId}
+     *
+     * @param securityService The current security service
+     * @param transferId      The identifier of the transfer
+     * @param request         The request
+     * @return The response
+     */
+    private HttpResponse handleTransfer(SecurityService securityService, String transferId, HttpApiRequest request) {
+        Reply reply = securityService.checkAction(ACTION_STORE);
+        if (!reply.isSuccess())
+            return ReplyUtils.toHttpResponse(reply);
+        reply = securityService.checkAction(ACTION_UPLOAD_RAW);
+        if (!reply.isSuccess())
+            return ReplyUtils.toHttpResponse(reply);
+        String userId = securityService.getCurrentUser().getIdentifier();
+
+        if (request.getRoute() == routeTransferCommit) {
+            String checksum = request.getParameter("checksum");
+            if (checksum == null)
+                return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'checksum'"));
+            reply = transfers.commitIncoming(userId, transferId, checksum, this);
+            if (!reply.isSuccess())
+                return ReplyUtils.toHttpResponse(reply);
+            Artifact artifact = ((ReplyResult<Artifact>) reply).getData();
+            return new HttpResponse(HttpURLConnection.HTTP_OK, HttpConstants.MIME_JSON, artifact.serializedJSON());
+        }
+        switch (request.getMethod()) {
+            case HttpConstants.METHOD_PUT: {
+                String offset = request.getParameter("offset");
+                if (offset == null)
+                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_EXPECTED_QUERY_PARAMETERS, "'offset'"));
+                try {
+                    return transfers.putIncomingChunk(userId, transferId, Long.parseLong(offset), request.getContent());
+                } catch (NumberFormatException exception) {
+                    return ReplyUtils.toHttpResponse(new ReplyApiError(ERROR_PARAMETER_RANGE, "'offset' must be an integer"));
+                }
+            }
+            case HttpConstants.METHOD_DELETE:
+                return ReplyUtils.toHttpResponse(transfers.abortIncoming(userId, transferId));
+        }
+        return transfers.getIncoming(userId, transferId);
     }
 
     /**
@@ -27,6 +27,7 @@ import org.xowl.platform.kernel.security.SecurityService;
 import org.xowl.platform.kernel.webapi.HttpApiRequest;
 import org.xowl.platform.kernel.webapi.HttpApiResource;
 import org.xowl.platform.kernel.webapi.HttpApiResourceBase;
+import org.xowl.platform.kernel.webapi.HttpApiRoute;
 import org.xowl.platform.kernel.webapi.HttpApiService;
 import org.xowl.platform.services.webapp.WebModule;
 
@@ -55,12 +56,17 @@ public class XOWLWebModuleDirectory implements HttpApiService {
      * The URI for the API services
      */
     private final String apiUri;
+    /**
+     * The route for the modules resource
+     */
+    private final HttpApiRoute routeModules;
 
     /**
      * Initializes this service
      */
     public XOWLWebModuleDirectory() {
         this.apiUri = PlatformHttp.getUriPrefixApi() + "/services/webapp";
+        this.routeModules = new HttpApiRoute(apiUri + "/modules", HttpConstants.METHOD_GET);
     }
 
     @Override
@@ -74,10 +80,10 @@ public class XOWLWebModuleDirectory implements HttpApiService {
     }
 
     @Override
-    public int canHandle(HttpApiRequest request) {
-        return request.getUri().startsWith(apiUri)
-                ? HttpApiService.PRIORITY_NORMAL
-                : HttpApiService.CANNOT_HANDLE;
+    public HttpApiRoute[] getRoutes() {
+        return new HttpApiRoute[]{
+                routeModules
+        };
     }
 
     @Override
@@ -87,9 +93,7 @@ public class XOWLWebModuleDirectory implements HttpApiService {
 
     @Override
     public HttpResponse handle(SecurityService securityService, HttpApiRequest request) {
-        if (request.getUri().equals(apiUri + "/modules")) {
-            if (!HttpConstants.METHOD_GET.equals(request.getMethod()))
-                return new HttpResponse(HttpURLConnection.HTTP_BAD_METHOD, HttpConstants.MIME_TEXT_PLAIN, "Expected GET method");
+        if (request.getRoute() == routeModules) {
             StringBuilder builder = new StringBuilder("[");
             boolean first = true;
             for (WebModule module : Register.getComponents(WebModule.class)) {
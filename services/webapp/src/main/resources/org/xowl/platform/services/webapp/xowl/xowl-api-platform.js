@@ -588,6 +588,16 @@ XOWL.prototype.cancelJob = function (callback, jobId) {
 	}, "kernel/jobs/" + encodeURIComponent(jobId) + "/cancel", null, "POST", null, null);
 }
 
+XOWL.prototype.awaitJob = function (callback, jobId, timeout) {
+	this.doRequest(function (code, type, content) {
+		if (code === 200) {
+			callback(code, MIME_JSON, JSON.parse(content));
+		} else {
+			callback(code, type, content);
+		}
+	}, "kernel/jobs/" + encodeURIComponent(jobId) + "/await", {timeout: timeout}, "GET", null, null);
+}
+
 
 
 /*****************************************************
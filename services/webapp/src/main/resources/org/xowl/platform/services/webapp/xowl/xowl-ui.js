@@ -868,6 +868,19 @@ function onPopupConfirmCancel() {
  * Job tracking
  ****************************************************/
 
+/**
+ * The maximum time in milliseconds the platform is asked to hold a request awaiting a job
+ */
+var JOB_AWAIT_TIMEOUT = 30000;
+/**
+ * The time in milliseconds under which a reply to a request awaiting a job means the platform did not hold it
+ */
+var JOB_AWAIT_MIN_HOLD = 1000;
+/**
+ * The delay in milliseconds before awaiting a job again when the platform did not hold the previous request
+ */
+var JOB_AWAIT_RETRY_DELAY = 2000;
+
 /**
  * Wait for a job to complete
  *
@@ -884,20 +897,24 @@ function waitForJob(jobId, jobName, callback) {
 		return;
 
 	var trackOnce = function() {
-		xowl.getJob(function (status, ct, content) {
+		var start = Date.now();
+		xowl.awaitJob(function (status, ct, content) {
 			if (status == 200) {
-				if (content.status === "Completed") {
+				if (content.status === "Completed" || content.status === "Cancelled") {
 					onOperationEnded(status, content);
 					callback(content);
+				} else if (Date.now() - start < JOB_AWAIT_MIN_HOLD) {
+					// the platform did not hold the request, do not flood it
+					window.setTimeout(trackOnce, JOB_AWAIT_RETRY_DELAY);
 				} else {
-					window.setTimeout(trackOnce, 2000);
+					trackOnce();
 				}
 			} else {
 				onOperationEnded(status, content, { type: "fr.cenotelie.commons.utils.RichString", parts: [
 					"Failed to retrieve data for job ",
 					{type: "org.xowl.platform.kernel.jobs.Job", identifier: jobId, name: jobName}]});
 			}
-		}, jobId);
+		}, jobId, JOB_AWAIT_TIMEOUT);
 	};
 	trackOnce();
 }